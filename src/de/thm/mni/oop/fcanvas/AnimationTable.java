@@ -0,0 +1,304 @@
+package de.thm.mni.oop.fcanvas;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * <p>The running animations of a panel, evaluated once per frame.</p>
+ *
+ * <p>The state of all running animations is stored in parallel arrays, one entry per animation,
+ * so that a frame is a single sweep over these arrays without allocating memory. Finished
+ * animations are removed by moving the last entry into their place. Animations that wait for
+ * another animation to finish are kept aside and enter the arrays when they start.</p>
+ *
+ * <p>Each animation is identified by a handle. At most one animation changes a property of a
+ * component at a time: an animation that starts for a property that is already animated replaces
+ * the running animation, which counts as finished.</p>
+ *
+ * <p>This class is not thread-safe and must only be used on the event dispatch thread.</p>
+ *
+ * @author Christopher Schölzel
+ */
+class AnimationTable {
+	/**
+	 * Reads and writes the animated properties of components.
+	 */
+	interface Target {
+		/**
+		 * Returns the current value of a property.
+		 * @param id the id of the component
+		 * @param property one of the properties of {@link Tween}
+		 * @return the value or {@link Double#NaN} if the component does not exist or does not have the property
+		 */
+		double get(long id, int property);
+		/**
+		 * Changes a property.
+		 * @param id the id of the component
+		 * @param property one of the properties of {@link Tween}
+		 * @param value the new value
+		 * @return <code>false</code> if the component does not exist anymore
+		 */
+		boolean set(long id, int property, double value);
+	}
+
+	/**
+	 * An animation that has not started yet.
+	 */
+	private static final class Pending {
+		final long handle;
+		final long id;
+		final int property;
+		final double target;
+		final long durationNanos;
+		final int easing;
+		Pending(long handle, long id, int property, double target, long durationNanos, int easing) {
+			this.handle = handle;
+			this.id = id;
+			this.property = property;
+			this.target = target;
+			this.durationNanos = durationNanos;
+			this.easing = easing;
+		}
+	}
+
+	/**
+	 * Identifies an animated property of a component.
+	 */
+	private static final class Key {
+		final long id;
+		final int property;
+		Key(long id, int property) {
+			this.id = id;
+			this.property = property;
+		}
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) return false;
+			Key k = (Key) o;
+			return id == k.id && property == k.property;
+		}
+		@Override
+		public int hashCode() {
+			return Long.hashCode(id) * 31 + property;
+		}
+	}
+
+	private final Target target;
+	// state of the running animations
+	private long[] handles = new long[16];
+	private long[] ids = new long[16];
+	private int[] properties = new int[16];
+	private double[] from = new double[16];
+	private double[] to = new double[16];
+	private long[] starts = new long[16];
+	private long[] durations = new long[16];
+	private int[] easings = new int[16];
+	private int size = 0;
+	/** index of the running animation of each animated property */
+	private final Map<Key,Integer> running = new HashMap<Key,Integer>();
+	/** animated property of each running animation by handle */
+	private final Map<Long,Key> keys = new HashMap<Long,Key>();
+	/** animations that start when the animation with the handle used as key has finished */
+	private final Map<Long,List<Pending>> successors = new HashMap<Long,List<Pending>>();
+	/** animations that wait for another one by handle, to tell them apart from finished ones */
+	private final Map<Long,Pending> pending = new HashMap<Long,Pending>();
+	/** threads waiting for the animation with the handle used as key */
+	private final Map<Long,List<CountDownLatch>> waiters = new HashMap<Long,List<CountDownLatch>>();
+
+	/**
+	 * Creates an empty table.
+	 * @param target the components to animate
+	 */
+	AnimationTable(Target target) {
+		this.target = target;
+	}
+	/**
+	 * Returns the number of running animations.
+	 * @return running animations, without those waiting for another animation
+	 */
+	int size() {
+		return size;
+	}
+	/**
+	 * Starts an animation at the current value of the property.
+	 * @param handle the handle of the animation
+	 * @param id the id of the component
+	 * @param property one of the properties of {@link Tween}
+	 * @param value the target value
+	 * @param durationNanos the duration
+	 * @param easing one of the easing functions of {@link Tween}
+	 * @param now the current time in nanoseconds
+	 */
+	void start(long handle, long id, int property, double value, long durationNanos, int easing, long now) {
+		double current = target.get(id, property);
+		if (Double.isNaN(current)) {
+			finished(handle, now);
+			return;
+		}
+		Key key = new Key(id, property);
+		Integer replaced = running.get(key);
+		int i;
+		long old = 0;
+		if (replaced != null) {
+			i = replaced;
+			old = handles[i];
+			keys.remove(old);
+		} else {
+			if (size == handles.length) grow();
+			i = size++;
+			running.put(key, i);
+		}
+		keys.put(handle, key);
+		handles[i] = handle;
+		ids[i] = id;
+		properties[i] = property;
+		from[i] = current;
+		to[i] = value;
+		starts[i] = now;
+		durations[i] = durationNanos;
+		easings[i] = easing;
+		// after the new animation has been stored, since successors of the old one may replace it again
+		if (replaced != null) finished(old, now);
+	}
+	/**
+	 * Starts an animation when another one has finished, or immediately if it has already finished.
+	 * @param previous the handle of the other animation
+	 * @param handle the handle of the animation
+	 * @param id the id of the component
+	 * @param property one of the properties of {@link Tween}
+	 * @param value the target value
+	 * @param durationNanos the duration
+	 * @param easing one of the easing functions of {@link Tween}
+	 * @param now the current time in nanoseconds
+	 */
+	void startAfter(long previous, long handle, long id, int property, double value, long durationNanos, int easing, long now) {
+		if (!isActive(previous)) {
+			start(handle, id, property, value, durationNanos, easing, now);
+			return;
+		}
+		Pending p = new Pending(handle, id, property, value, durationNanos, easing);
+		pending.put(handle, p);
+		successors.computeIfAbsent(previous, k -> new ArrayList<Pending>()).add(p);
+	}
+	/**
+	 * Registers a latch that is released when an animation has finished.
+	 * @param handle the handle of the animation
+	 * @param latch the latch, released immediately if the animation has already finished
+	 */
+	void await(long handle, CountDownLatch latch) {
+		if (!isActive(handle)) {
+			latch.countDown();
+			return;
+		}
+		waiters.computeIfAbsent(handle, k -> new ArrayList<CountDownLatch>()).add(latch);
+	}
+	/**
+	 * Indicates whether an animation is running or waiting to start.
+	 * @param handle the handle of the animation
+	 * @return <code>true</code> if the animation has not finished yet
+	 */
+	boolean isActive(long handle) {
+		return keys.containsKey(handle) || pending.containsKey(handle);
+	}
+	/**
+	 * Stops an animation, which keeps the value that it has reached, and starts its successors.
+	 * @param handle the handle of the animation
+	 * @param now the current time in nanoseconds
+	 */
+	void cancel(long handle, long now) {
+		if (pending.containsKey(handle)) {
+			// it never starts, but its successors do
+			finished(handle, now);
+			return;
+		}
+		Key key = keys.get(handle);
+		if (key == null) return;
+		remove(running.get(key));
+		finished(handle, now);
+	}
+	/**
+	 * Sets all animated properties to their values at a point in time, removes finished
+	 * animations and starts their successors.
+	 * @param now the current time in nanoseconds
+	 */
+	void sweep(long now) {
+		int i = 0;
+		while (i < size) {
+			long elapsed = now - starts[i];
+			double t = durations[i] <= 0 || elapsed >= durations[i] ? 1 : Math.max(0, (double) elapsed / durations[i]);
+			double v = t == 1 ? to[i] : from[i] + (to[i] - from[i]) * Tween.ease(easings[i], t);
+			boolean exists = target.set(ids[i], properties[i], v);
+			if (exists && t < 1) {
+				i++;
+				continue;
+			}
+			long handle = handles[i];
+			remove(i);
+			// successors are appended and therefore also set in this sweep
+			finished(handle, now);
+		}
+	}
+	/**
+	 * Stops all animations and releases all waiting threads.
+	 */
+	void clear() {
+		size = 0;
+		running.clear();
+		keys.clear();
+		successors.clear();
+		pending.clear();
+		for(List<CountDownLatch> list : waiters.values()) {
+			for(CountDownLatch latch : list) latch.countDown();
+		}
+		waiters.clear();
+	}
+	/**
+	 * Removes the running animation at an index by moving the last one into its place.
+	 */
+	private void remove(int i) {
+		running.remove(keys.remove(handles[i]));
+		int last = --size;
+		if (i == last) return;
+		handles[i] = handles[last];
+		ids[i] = ids[last];
+		properties[i] = properties[last];
+		from[i] = from[last];
+		to[i] = to[last];
+		starts[i] = starts[last];
+		durations[i] = durations[last];
+		easings[i] = easings[last];
+		running.put(keys.get(handles[i]), i);
+	}
+	/**
+	 * Releases the threads waiting for an animation and starts its successors.
+	 */
+	private void finished(long handle, long now) {
+		pending.remove(handle);
+		List<CountDownLatch> list = waiters.remove(handle);
+		if (list != null) {
+			for(CountDownLatch latch : list) latch.countDown();
+		}
+		List<Pending> next = successors.remove(handle);
+		if (next == null) return;
+		for(Pending p : next) {
+			// a cancelled animation is no longer pending and does not start
+			if (pending.remove(p.handle) == null) continue;
+			start(p.handle, p.id, p.property, p.target, p.durationNanos, p.easing, now);
+		}
+	}
+	private void grow() {
+		int n = handles.length * 2;
+		handles = Arrays.copyOf(handles, n);
+		ids = Arrays.copyOf(ids, n);
+		properties = Arrays.copyOf(properties, n);
+		from = Arrays.copyOf(from, n);
+		to = Arrays.copyOf(to, n);
+		starts = Arrays.copyOf(starts, n);
+		durations = Arrays.copyOf(durations, n);
+		easings = Arrays.copyOf(easings, n);
+	}
+}
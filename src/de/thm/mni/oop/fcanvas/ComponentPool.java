@@ -0,0 +1,94 @@
+package de.thm.mni.oop.fcanvas;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+
+import de.thm.mni.oop.fcanvas.components.FCanvasComponent;
+import de.thm.mni.oop.fcanvas.components.Line;
+import de.thm.mni.oop.fcanvas.components.Oval;
+import de.thm.mni.oop.fcanvas.components.Polygon;
+import de.thm.mni.oop.fcanvas.components.Rectangle;
+import de.thm.mni.oop.fcanvas.components.Sprite;
+import de.thm.mni.oop.fcanvas.components.Text;
+
+/**
+ * <p>Recycles removed components, so that programs which repeatedly remove and
+ * redraw components do not allocate new component objects.</p>
+ *
+ * <p>At most {@link #MAX_POOLED} components per type are kept. This class is not
+ * thread-safe and must only be used on the event dispatch thread.</p>
+ *
+ * @author Christopher Schölzel
+ */
+class ComponentPool {
+	/** Maximum number of unused components that are kept per type */
+	static final int MAX_POOLED = 1024;
+	private final ArrayDeque<Rectangle> rectangles = new ArrayDeque<Rectangle>();
+	private final ArrayDeque<Oval> ovals = new ArrayDeque<Oval>();
+	private final ArrayDeque<Line> lines = new ArrayDeque<Line>();
+	private final ArrayDeque<Polygon> polygons = new ArrayDeque<Polygon>();
+	private final ArrayDeque<Text> texts = new ArrayDeque<Text>();
+	private final ArrayDeque<Sprite> sprites = new ArrayDeque<Sprite>();
+
+	Rectangle rectangle(int left, int top, int width, int height) {
+		Rectangle r = rectangles.poll();
+		if (r == null) return new Rectangle(left, top, width, height);
+		r.reset(left, top, width, height);
+		return r;
+	}
+	Oval oval(int left, int top, int width, int height) {
+		Oval o = ovals.poll();
+		if (o == null) return new Oval(left, top, width, height);
+		o.reset(left, top, width, height);
+		return o;
+	}
+	Line line(int x1, int y1, int x2, int y2) {
+		Line l = lines.poll();
+		if (l == null) return new Line(x1, y1, x2, y2);
+		l.reset(x1, y1, x2, y2);
+		return l;
+	}
+	Polygon polygon(int[] xcoords, int[] ycoords) {
+		Polygon p = polygons.poll();
+		if (p == null) return new Polygon(xcoords, ycoords);
+		p.reset(xcoords, ycoords);
+		return p;
+	}
+	Text text(String text, int left, int baseline) {
+		Text t = texts.poll();
+		if (t == null) return new Text(text, left, baseline);
+		t.reset(text, left, baseline);
+		return t;
+	}
+	Sprite sprite(String path, BufferedImage image, int left, int top, int width, int height) {
+		Sprite s = sprites.poll();
+		if (s == null) return new Sprite(path, image, left, top, width, height);
+		s.reset(path, image, left, top, width, height);
+		return s;
+	}
+	/**
+	 * Keeps a removed component for later reuse.
+	 * @param c a component that is no longer referenced by the panel
+	 */
+	void recycle(FCanvasComponent c) {
+		if (c instanceof Rectangle) {
+			offer(rectangles, (Rectangle) c);
+		} else if (c instanceof Oval) {
+			offer(ovals, (Oval) c);
+		} else if (c instanceof Line) {
+			offer(lines, (Line) c);
+		} else if (c instanceof Polygon) {
+			offer(polygons, (Polygon) c);
+		} else if (c instanceof Text) {
+			offer(texts, (Text) c);
+		} else if (c instanceof Sprite) {
+			Sprite s = (Sprite) c;
+			// the pooled sprite must not keep the image alive
+			s.reset(null, null, 0, 0, 0, 0);
+			offer(sprites, s);
+		}
+	}
+	private static <T> void offer(ArrayDeque<T> pool, T c) {
+		if (pool.size() < MAX_POOLED) pool.push(c);
+	}
+}
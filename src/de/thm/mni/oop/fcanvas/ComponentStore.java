@@ -0,0 +1,229 @@
+package de.thm.mni.oop.fcanvas;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.thm.mni.oop.fcanvas.components.FCanvasComponent;
+
+/**
+ * <p>Holds the components of a {@link FCanvasPanel} in an array of slots.</p>
+ *
+ * <p>The id of a component encodes its slot (lower 32 bit) and the generation of that
+ * slot (upper 32 bit). When a component is removed, the generation of its slot is
+ * increased and the slot is reused for the next new component. This way ids of removed
+ * components can be detected in O(1) by comparing the id stored in the slot, and no
+ * map entries have to be allocated for new components.</p>
+ *
+ * <p>Ids are allocated with {@link #allocate()}, which may be called from any thread
+ * without locking: released slots are kept on a lock-free stack and new slots are taken
+ * from an atomic counter. The stack is linked through an array indexed by slot, so that
+ * releasing and reusing a slot does not allocate memory. All other methods must only be
+ * called on the event dispatch thread. A slot is only released after the removal of its
+ * component has been applied on the event dispatch thread, so commands that are still
+ * queued for the old component cannot affect a new component in the same slot.</p>
+ *
+ * @author Christopher Schölzel
+ */
+class ComponentStore {
+	private static final int INITIAL_CAPACITY = 64;
+	/** Frame number for components that have not been moved since they were added */
+	private static final long NEVER_MOVED = Long.MIN_VALUE / 2;
+	/** Marks the end of the stack of released slots */
+	private static final int NO_SLOT = -1;
+	// allocation state, shared by all threads
+	/** top slot of the stack of released slots (lower 32 bit) and the number of changes of the top (upper 32 bit) */
+	private final AtomicLong freeTop = new AtomicLong(top(0, NO_SLOT));
+	/** released slot below each released slot, only written by the event dispatch thread */
+	private volatile int[] freeNext = new int[0];
+	/** generation of the next component in each released slot, only written by the event dispatch thread */
+	private volatile int[] nextGenerations = new int[0];
+	private final AtomicInteger slotCount = new AtomicInteger();
+	// state of the event dispatch thread
+	private FCanvasComponent[] components = new FCanvasComponent[0];
+	private long[] ids = new long[0];
+	private Layer[] layers = new Layer[0];
+	/** number of the frame in which each component has last been moved */
+	private long[] movedFrames = new long[0];
+	private int size = 0;
+	private final ZOrderTree tree = new ZOrderTree();
+
+	/**
+	 * Reserves a slot for a new component and returns the id of the component.
+	 *
+	 * This method is thread-safe and lock-free.
+	 * @return the id for the new component
+	 */
+	long allocate() {
+		long top = freeTop.get();
+		while ((int) top != NO_SLOT) {
+			int slot = (int) top;
+			// read before popping, the change counter makes the pop fail if the slot has been reused meanwhile
+			int next = freeNext[slot];
+			int gen = nextGenerations[slot];
+			if (freeTop.compareAndSet(top, top((int) (top >>> 32) + 1, next))) return id(slot, gen);
+			top = freeTop.get();
+		}
+		return id(slotCount.getAndIncrement(), 1);
+	}
+	/**
+	 * Makes a slot available for reuse with the next generation.
+	 * @param id the id of the component that occupied the slot
+	 */
+	private void release(long id) {
+		int slot = slot(id);
+		int gen = (int) (id >>> 32) + 1;
+		// generation 0 is skipped so that no component ever has the id 0
+		nextGenerations[slot] = gen == 0 ? 1 : gen;
+		int[] next = freeNext;
+		long top;
+		do {
+			top = freeTop.get();
+			next[slot] = (int) top;
+		} while (!freeTop.compareAndSet(top, top((int) (top >>> 32) + 1, slot)));
+	}
+	private static long top(int changes, int slot) {
+		return ((long) changes << 32) | (slot & 0xFFFFFFFFL);
+	}
+	/**
+	 * Extracts the slot from an id.
+	 * @param id the id of a component
+	 * @return the slot of the component
+	 */
+	static int slot(long id) {
+		return (int) id;
+	}
+	private static long id(int slot, int generation) {
+		return ((long) generation << 32) | (slot & 0xFFFFFFFFL);
+	}
+	/**
+	 * Indicates whether a component with the given id currently exists.
+	 * @param id the id of the component
+	 * @return <code>true</code> if the id belongs to a component that has been added and not removed
+	 */
+	boolean contains(long id) {
+		int slot = slot(id);
+		return slot >= 0 && slot < ids.length && ids[slot] == id;
+	}
+	/**
+	 * Returns the component with the given id.
+	 * @param id the id of the component
+	 * @return the component or <code>null</code> if the id is unknown or belongs to a removed component
+	 */
+	FCanvasComponent get(long id) {
+		return contains(id) ? components[slot(id)] : null;
+	}
+	/**
+	 * Returns the component in the given slot.
+	 * @param slot the slot of the component
+	 * @return the component or <code>null</code> if the slot is empty
+	 */
+	FCanvasComponent getAt(int slot) {
+		return components[slot];
+	}
+	/**
+	 * Returns the id of the component in the given slot.
+	 * @param slot the slot of the component
+	 * @return the id of the component in that slot
+	 */
+	long getId(int slot) {
+		return ids[slot];
+	}
+	/**
+	 * Returns the layer of a component.
+	 * @param id the id of the component
+	 * @return the layer or <code>null</code> if the id is unknown or belongs to a removed component
+	 */
+	Layer getLayer(long id) {
+		return contains(id) ? layers[slot(id)] : null;
+	}
+	/**
+	 * Changes the layer of a component. The component is not added to or removed from the layers.
+	 * @param id the id of an existing component
+	 * @param layer the new layer
+	 */
+	void setLayer(long id, Layer layer) {
+		layers[slot(id)] = layer;
+	}
+	/**
+	 * Records that a component has been moved, rotated or reshaped.
+	 * @param id the id of an existing component
+	 * @param frame the number of the next frame
+	 */
+	void setMoved(long id, long frame) {
+		movedFrames[slot(id)] = frame;
+	}
+	/**
+	 * Indicates whether a component has been moved in one of the last frames.
+	 * @param slot the slot of the component
+	 * @param frame the number of the current frame
+	 * @param frames the number of frames to look back
+	 * @return <code>true</code> if the component has been moved in the last <code>frames</code> frames
+	 */
+	boolean isMoving(int slot, long frame, int frames) {
+		return frame - movedFrames[slot] < frames;
+	}
+	/**
+	 * Stores a component in the slot given by its id.
+	 * @param id an id obtained from {@link #allocate()}
+	 * @param c the component
+	 * @param layer the layer of the component
+	 */
+	void put(long id, FCanvasComponent c, Layer layer) {
+		int slot = slot(id);
+		if (slot >= ids.length) {
+			int n = Math.max(slot + 1, Math.max(INITIAL_CAPACITY, ids.length * 2));
+			components = Arrays.copyOf(components, n);
+			ids = Arrays.copyOf(ids, n);
+			layers = Arrays.copyOf(layers, n);
+			movedFrames = Arrays.copyOf(movedFrames, n);
+			// copies that are published before any of the new slots can be released
+			freeNext = Arrays.copyOf(freeNext, n);
+			nextGenerations = Arrays.copyOf(nextGenerations, n);
+			tree.ensureCapacity(n);
+		}
+		components[slot] = c;
+		ids[slot] = id;
+		layers[slot] = layer;
+		movedFrames[slot] = NEVER_MOVED;
+		size++;
+	}
+	/**
+	 * Removes a component and releases its slot.
+	 * The component is not removed from its layer.
+	 * @param id the id of the component
+	 * @return the removed component or <code>null</code> if the id is unknown or belongs to a removed component
+	 */
+	FCanvasComponent remove(long id) {
+		if (!contains(id)) return null;
+		int slot = slot(id);
+		FCanvasComponent c = components[slot];
+		components[slot] = null;
+		ids[slot] = 0;
+		layers[slot] = null;
+		size--;
+		release(id);
+		return c;
+	}
+	/**
+	 * Returns the number of components.
+	 * @return number of components in the store
+	 */
+	int size() {
+		return size;
+	}
+	/**
+	 * Returns the number of slots that can currently be occupied.
+	 * @return upper bound (exclusive) for slots
+	 */
+	int capacity() {
+		return ids.length;
+	}
+	/**
+	 * Returns the tree that holds the drawing order of all layers.
+	 * @return the z-order tree
+	 */
+	ZOrderTree getTree() {
+		return tree;
+	}
+}
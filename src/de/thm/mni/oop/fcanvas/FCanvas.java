@@ -9,6 +9,7 @@ import java.awt.event.MouseEvent;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
@@ -72,6 +73,8 @@ public class FCanvas {
 	public static final String VERSION = "1.3.1";
 	/** File extensions recognized by {@link #saveToImage(String)} */
 	public static final List<String> SUPPORTED_IMAGE_FORMATS = Arrays.asList(new String[]{"jpg","bmp","png","gif"});
+	/** Maximum time in milliseconds that {@link #flush()} and {@link #awaitFrame()} wait. */
+	public static final int DEFAULT_AWAIT_TIMEOUT = 5000;
 	/** Ask time used for methods of the {@code sinceLastAsked} family when the event is checked for the first time. */
 	public static final int FIRST_ASK_TIME = 30;
 	private static Map<Integer,Long> keyLastSeen = new ConcurrentHashMap<Integer,Long>();
@@ -85,18 +88,45 @@ public class FCanvas {
 	private static Map<Integer,Boolean> keysDown = new ConcurrentHashMap<Integer,Boolean>();
 	private static Map<Integer,Boolean> buttonsDown = new ConcurrentHashMap<Integer,Boolean>();
 	private volatile static Point lastMousePoint = new Point(0,0);
-	protected static FCanvasGUI gui = new FCanvasGUI();
+	private static final MouseTrail mouseTrail = new MouseTrail(MouseTrail.DEFAULT_CAPACITY);
+	/** window of the canvas, <code>null</code> until it is needed for the first time, see {@link #gui()} */
+	protected static volatile FCanvasGUI gui = null;
+	private static final Object guiLock = new Object();
 	private static boolean autoupdate = true;
+	static {
+		Warmup.start();
+	}
 	/** Private constructor to prohibit instantiation */
 	private FCanvas() {}
+	/**
+	 * Returns the window of the canvas and creates it when it is needed for the first time.
+	 * Programs that only use methods which do not need the window, e.g. {@link #measureText(String, int)},
+	 * therefore do not initialize Swing and can also run in headless mode.
+	 * @return the window of the canvas
+	 */
+	protected static FCanvasGUI gui() {
+		FCanvasGUI g = gui;
+		if (g == null) {
+			synchronized (guiLock) {
+				g = gui;
+				if (g == null) {
+					g = new FCanvasGUI();
+					gui = g;
+				}
+			}
+		}
+		return g;
+	}
 	private static class MouseVarsUpdater extends MouseAdapter {
 		@Override
 		public void mouseDragged(MouseEvent e) {
 			lastMousePoint = e.getPoint();
+			mouseTrail.add(e.getX(), e.getY(), System.nanoTime());
 		}
 		@Override
 		public void mouseMoved(MouseEvent e) {
 			lastMousePoint = e.getPoint();
+			mouseTrail.add(e.getX(), e.getY(), System.nanoTime());
 		}
 		@Override
 		public void mouseClicked(MouseEvent e) {
@@ -127,13 +157,13 @@ public class FCanvas {
 	private static class Visualizer implements Runnable {
 		@Override
 		public void run() {
-			gui.setVisible(true);
+			gui().setVisible(true);
 		}
 	}
 	private static class Disposer implements Runnable {
 		@Override
 		public void run() {
-			gui.dispose();
+			gui().dispose();
 		}
 	}
 	/**
@@ -149,11 +179,11 @@ public class FCanvas {
 	*/
 	public static void show() {
 		//TODO bug if called twice
-		gui.getPanel().addKeyListener(new KeyVarsUpdater());
-		gui.getPanel().addMouseListener(new MouseVarsUpdater());
-		gui.getPanel().addMouseMotionListener(new MouseVarsUpdater());
-		gui.getPanel().setFocusable(true);
-		if(!gui.isVisible()) {
+		gui().getPanel().addKeyListener(new KeyVarsUpdater());
+		gui().getPanel().addMouseListener(new MouseVarsUpdater());
+		gui().getPanel().addMouseMotionListener(new MouseVarsUpdater());
+		gui().getPanel().setFocusable(true);
+		if(!gui().isVisible()) {
 			Thread t = new Thread(new Visualizer());
 			t.run();
 		}
@@ -164,6 +194,7 @@ public class FCanvas {
 	 * Once the window is closed, it cannot be reopened.
 	 */
 	public static void close() {
+		if (gui == null) return;
 		SwingUtilities.invokeLater(new Disposer());
 	}
 	/**
@@ -176,8 +207,8 @@ public class FCanvas {
 	 * @return id of the created rectangle
 	 */
 	public static long drawRectangle(int left, int top, int width, int height) {
-		long id = gui.getPanel().addRectangle(left, top, width, height);
-		if (autoupdate) gui.getPanel().updateCanvas();
+		long id = gui().getPanel().addRectangle(left, top, width, height);
+		if (autoupdate) gui().getPanel().updateCanvas();
 		return id;
 	}
 	/**
@@ -190,8 +221,8 @@ public class FCanvas {
 	 * @return id of the created line
 	 */
 	public static long drawLine(int x1, int y1, int x2, int y2) {
-		long id = gui.getPanel().addLine(x1,y1,x2,y2);
-		if (autoupdate) gui.getPanel().updateCanvas();
+		long id = gui().getPanel().addLine(x1,y1,x2,y2);
+		if (autoupdate) gui().getPanel().updateCanvas();
 		return id;
 	}
 	/**
@@ -204,8 +235,8 @@ public class FCanvas {
 	 * @return id of the created oval
 	 */
 	public static long drawOval(int left, int top, int width, int height) {
-		long id = gui.getPanel().addOval(left,top,width,height);
-		if (autoupdate) gui.getPanel().updateCanvas();
+		long id = gui().getPanel().addOval(left,top,width,height);
+		if (autoupdate) gui().getPanel().updateCanvas();
 		return id;
 	}
 	/**
@@ -217,8 +248,8 @@ public class FCanvas {
 	 * @return id of the created text
 	 */
 	public static long drawText(String text, int left, int baseline) {
-		long id = gui.getPanel().addText(text,left,baseline);
-		if (autoupdate) gui.getPanel().updateCanvas();
+		long id = gui().getPanel().addText(text,left,baseline);
+		if (autoupdate) gui().getPanel().updateCanvas();
 		return id;
 	}
 	/**
@@ -229,10 +260,129 @@ public class FCanvas {
 	 * @return id of the created polygon
 	 */
 	public static long drawPolygon(int[] xcoords,int[] ycoords) {
-		long id = gui.getPanel().addPolygon(xcoords,ycoords);
-		if (autoupdate) gui.getPanel().updateCanvas();
+		long id = gui().getPanel().addPolygon(xcoords,ycoords);
+		if (autoupdate) gui().getPanel().updateCanvas();
+		return id;
+	}
+	/**
+	 * Draws an image from a file on the canvas in its original size.
+	 * 
+	 * <p>Images are kept in memory after they have been loaded, so drawing the
+	 * same file many times (e.g. as sprites in a game) is fast.</p>
+	 * 
+	 * @param path the path of the image file (e.g. PNG, JPG or GIF)
+	 * @param left x-coordinate of the upper-left corner of the image
+	 * @param top y-coordinate of the upper-left corner of the image
+	 * @return id of the created image
+	 * @throws IOException if the file could not be read or is not an image
+	 * @since 1.4
+	 */
+	public static long drawImage(String path, int left, int top) throws IOException {
+		long id = gui().getPanel().addImage(path, left, top);
+		if (autoupdate) gui().getPanel().updateCanvas();
+		return id;
+	}
+	/**
+	 * Draws an image from a file on the canvas, enlarged or reduced by a factor.
+	 * 
+	 * @param path the path of the image file (e.g. PNG, JPG or GIF)
+	 * @param left x-coordinate of the upper-left corner of the image
+	 * @param top y-coordinate of the upper-left corner of the image
+	 * @param scale factor for width and height of the image (e.g. 2 for twice the size)
+	 * @return id of the created image
+	 * @throws IOException if the file could not be read or is not an image
+	 * @since 1.4
+	 */
+	public static long drawImage(String path, int left, int top, double scale) throws IOException {
+		long id = gui().getPanel().addImage(path, left, top, scale);
+		if (autoupdate) gui().getPanel().updateCanvas();
 		return id;
 	}
+	/**
+	 * Draws an image from a file on the canvas, stretched to the given width and height.
+	 * 
+	 * @param path the path of the image file (e.g. PNG, JPG or GIF)
+	 * @param left x-coordinate of the upper-left corner of the image
+	 * @param top y-coordinate of the upper-left corner of the image
+	 * @param width width of the image on the canvas
+	 * @param height height of the image on the canvas
+	 * @return id of the created image
+	 * @throws IOException if the file could not be read or is not an image
+	 * @since 1.4
+	 */
+	public static long drawImage(String path, int left, int top, int width, int height) throws IOException {
+		long id = gui().getPanel().addImage(path, left, top, width, height);
+		if (autoupdate) gui().getPanel().updateCanvas();
+		return id;
+	}
+	/**
+	 * Draws a tilemap: a grid of cells, each of which shows a tile of an atlas image.
+	 * 
+	 * <p>The atlas is divided into tiles of <code>tileWidth</code> x <code>tileHeight</code>
+	 * pixels, which are numbered row by row starting with 0 in the upper left corner. At first,
+	 * all cells are empty. Use {@link #setTile(long, int, int, int)} to show a tile in a cell.</p>
+	 * 
+	 * <p>A tilemap is much faster than drawing a rectangle or image for each cell of a game board,
+	 * since only the visible parts of the tilemap are drawn, and parts are only redrawn when
+	 * one of their tiles has changed.</p>
+	 * 
+	 * @param atlasPath the path of the atlas image file (e.g. PNG, JPG or GIF)
+	 * @param left x-coordinate of the upper-left corner of the tilemap
+	 * @param top y-coordinate of the upper-left corner of the tilemap
+	 * @param columns number of cells in each row
+	 * @param rows number of cells in each column
+	 * @param tileWidth width of a tile in pixels
+	 * @param tileHeight height of a tile in pixels
+	 * @return id of the created tilemap
+	 * @throws IOException if the atlas could not be read or is not an image
+	 * @since 1.4
+	 */
+	public static long drawTilemap(String atlasPath, int left, int top, int columns, int rows, int tileWidth, int tileHeight) throws IOException {
+		long id = gui().getPanel().addTilemap(atlasPath, left, top, columns, rows, tileWidth, tileHeight);
+		if (autoupdate) gui().getPanel().updateCanvas();
+		return id;
+	}
+	/**
+	 * Changes the tile that is shown in a cell of a tilemap.
+	 * 
+	 * @param id the id of the tilemap
+	 * @param column the column of the cell (starting with 0)
+	 * @param row the row of the cell (starting with 0)
+	 * @param tile the number of the tile in the atlas or -1 for an empty cell
+	 * @pre id must belong to an existing tilemap
+	 * @since 1.4
+	 */
+	public static void setTile(long id, int column, int row, int tile) {
+		gui().getPanel().setTile(id, column, row, tile);
+		if (autoupdate) gui().getPanel().updateCanvas();
+	}
+	/**
+	 * Changes the tiles of a rectangular area of cells of a tilemap at once.
+	 * 
+	 * @param id the id of the tilemap
+	 * @param column the column of the upper left cell of the area
+	 * @param row the row of the upper left cell of the area
+	 * @param width number of columns of the area
+	 * @param height number of rows of the area
+	 * @param tiles the numbers of the tiles row by row, i.e. the tile of the cell
+	 *        <code>(column + x, row + y)</code> is <code>tiles[y * width + x]</code>
+	 * @pre id must belong to an existing tilemap
+	 * @since 1.4
+	 */
+	public static void setTiles(long id, int column, int row, int width, int height, int[] tiles) {
+		gui().getPanel().setTiles(id, column, row, width, height, tiles);
+		if (autoupdate) gui().getPanel().updateCanvas();
+	}
+	/**
+	 * Starts loading an image file in the background, so that a later call of
+	 * {@link #drawImage(String, int, int)} with the same file returns faster.
+	 * 
+	 * @param path the path of the image file
+	 * @since 1.4
+	 */
+	public static void prefetchImage(String path) {
+		gui().getPanel().prefetchImage(path);
+	}
 	/**
 	 * Removes an object from the canvas.
 	 * 
@@ -240,8 +390,8 @@ public class FCanvas {
 	 * @pre id must belong to an existing canvas object
 	 */
 	public static void remove(long id) {
-		gui.getPanel().removeComponent(id);
-		if (autoupdate) gui.getPanel().updateCanvas();
+		gui().getPanel().removeComponent(id);
+		if (autoupdate) gui().getPanel().updateCanvas();
 	}
 	/**
 	 * <p>Moves an object on the canvas.</p>
@@ -263,8 +413,8 @@ public class FCanvas {
 	 */
 	public static void move(long id, int x, int y) {
 		// TODO would a delta make more sense here?
-		gui.getPanel().moveComponent(id, x, y);
-		if (autoupdate) gui.getPanel().updateCanvas();
+		gui().getPanel().moveComponent(id, x, y);
+		if (autoupdate) gui().getPanel().updateCanvas();
 	}
 	/**
 	 * Changes the font size of a text object.
@@ -274,8 +424,126 @@ public class FCanvas {
 	 * @pre id must belong to an existing text object
 	 */
 	public static void setFontSize(long id, int points) {
-		gui.getPanel().setFontSize(id, points);
-		if (autoupdate) gui.getPanel().updateCanvas();
+		gui().getPanel().setFontSize(id, points);
+		if (autoupdate) gui().getPanel().updateCanvas();
+	}
+	/**
+	 * <p>Changes the text of a text object.</p>
+	 * 
+	 * <p>Unlike removing the text and drawing a new one, the text keeps its id,
+	 * its properties and its position in the drawing order.</p>
+	 * 
+	 * @param id the id of the text object
+	 * @param text the new text
+	 * @pre id must belong to an existing text object
+	 * @since 1.4
+	 */
+	public static void setText(long id, String text) {
+		gui().getPanel().setText(id, text);
+		if (autoupdate) gui().getPanel().updateCanvas();
+	}
+	/**
+	 * <p>Returns the width of a text object, e.g. to center it or to place other objects next to it.</p>
+	 * 
+	 * <p>Changes of the text or its font size are taken into account immediately. Rotations are not
+	 * taken into account, the result is the length of the text along its baseline.</p>
+	 * 
+	 * <p><b>Example:</b> centering a text horizontally on a canvas of width 800</p>
+	 * 
+	 * <pre>
+	 * long title = drawText("Game Over", 0, 100);
+	 * setFontSize(title, 40);
+	 * move(title, (int) (800 - getTextWidth(title)) / 2, 100);
+	 * </pre>
+	 * 
+	 * @param id the id of the text object
+	 * @return the width in pixels, 0 if there is no text object with this id
+	 * @see #measureText(String, int)
+	 * @since 1.4
+	 */
+	public static double getTextWidth(long id) {
+		return gui().getPanel().getTextWidth(id);
+	}
+	/**
+	 * Returns the height of a text object, i.e. the distance between two lines of text
+	 * in its font size. Rotations are not taken into account.
+	 * 
+	 * @param id the id of the text object
+	 * @return the height in pixels, 0 if there is no text object with this id
+	 * @since 1.4
+	 */
+	public static double getTextHeight(long id) {
+		return gui().getPanel().getTextHeight(id);
+	}
+	/**
+	 * Returns the width that a text object would have if it was drawn with the given font size.
+	 * This allows to lay out texts before drawing them.
+	 * 
+	 * @param text the text
+	 * @param points the font size in pt
+	 * @return the width in pixels
+	 * @see #getTextWidth(long)
+	 * @since 1.4
+	 */
+	public static double measureText(String text, int points) {
+		return TextMetrics.shared().width(text, points);
+	}
+	/**
+	 * Changes the width and height of a rectangle, oval or image.
+	 * The upper left corner of the object stays in place.
+	 * 
+	 * @param id the id of the rectangle, oval or image
+	 * @param width the new width
+	 * @param height the new height
+	 * @pre id must belong to an existing rectangle, oval or image
+	 * @since 1.4
+	 */
+	public static void resize(long id, int width, int height) {
+		gui().getPanel().resizeComponent(id, width, height);
+		if (autoupdate) gui().getPanel().updateCanvas();
+	}
+	/**
+	 * Changes both points of a line.
+	 * 
+	 * @param id the id of the line
+	 * @param x1 new x-coordinate of the first point
+	 * @param y1 new y-coordinate of the first point
+	 * @param x2 new x-coordinate of the second point
+	 * @param y2 new y-coordinate of the second point
+	 * @pre id must belong to an existing line
+	 * @since 1.4
+	 */
+	public static void setLine(long id, int x1, int y1, int x2, int y2) {
+		gui().getPanel().setLinePoints(id, x1, y1, x2, y2);
+		if (autoupdate) gui().getPanel().updateCanvas();
+	}
+	/**
+	 * Changes the points of a polygon.
+	 * 
+	 * @param id the id of the polygon
+	 * @param xcoords array of the new x-coordinates of the polygon points
+	 * @param ycoords array of the new y-coordinates of the polygon points
+	 * @pre id must belong to an existing polygon
+	 * @since 1.4
+	 */
+	public static void setPolygonPoints(long id, int[] xcoords, int[] ycoords) {
+		gui().getPanel().setPolygonPoints(id, xcoords, ycoords);
+		if (autoupdate) gui().getPanel().updateCanvas();
+	}
+	/**
+	 * <p>Shows or hides an object.</p>
+	 * 
+	 * <p>A hidden object is not drawn, but keeps its id and all of its properties.
+	 * This is cheaper than removing an object and drawing it again later.</p>
+	 * 
+	 * @param id the id of the object
+	 * @param visible if <code>true</code> the object is drawn, otherwise it is hidden
+	 * @pre id must belong to an existing canvas object
+	 * @since 1.4
+	 */
+	public static void setVisible(long id, boolean visible) {
+		gui().getPanel().setComponentVisible(id, visible);
+		if (autoupdate) gui().getPanel().updateCanvas();
 	}
 	/**
 	 * Changes the stroke width for the object.
@@ -288,8 +556,8 @@ public class FCanvas {
 	 * @pre id must belong to an existing canvas object
 	 */
 	public static void setStrokeWidth(long id ,int w) {
-		gui.getPanel().setStrokeWidth(id, w);
-		if (autoupdate) gui.getPanel().updateCanvas();
+		gui().getPanel().setStrokeWidth(id, w);
+		if (autoupdate) gui().getPanel().updateCanvas();
 	}
 	/**
 	 * Changes the fill color of an object.
@@ -303,8 +571,8 @@ public class FCanvas {
 	 * @pre id must belong to an existing canvas object
 	 */
 	public static void setFillColor(long id ,int r, int g, int b) {
-		gui.getPanel().setFillColor(id, r,g,b,255);
-		if (autoupdate) gui.getPanel().updateCanvas();
+		gui().getPanel().setFillColor(id, r,g,b,255);
+		if (autoupdate) gui().getPanel().updateCanvas();
 	}
 	/**
 	 * Changes the fill color of an object.
@@ -319,8 +587,8 @@ public class FCanvas {
 	 * @pre id must belong to an existing canvas object
 	 */
 	public static void setFillColor(long id ,int r, int g, int b, int alpha) {
-		gui.getPanel().setFillColor(id, r,g,b,alpha);
-		if (autoupdate) gui.getPanel().updateCanvas();
+		gui().getPanel().setFillColor(id, r,g,b,alpha);
+		if (autoupdate) gui().getPanel().updateCanvas();
 	}
 	/**
 	 * Changes the stroke color of an object.
@@ -332,8 +600,8 @@ public class FCanvas {
 	 * @pre id must belong to an existing canvas object
 	 */
 	public static void setStrokeColor(long id ,int r, int g, int b) {
-		gui.getPanel().setStrokeColor(id, r,g,b,255);
-		if (autoupdate) gui.getPanel().updateCanvas();
+		gui().getPanel().setStrokeColor(id, r,g,b,255);
+		if (autoupdate) gui().getPanel().updateCanvas();
 	}
 	/**
 	 * Changes the stroke color of an object.
@@ -348,8 +616,8 @@ public class FCanvas {
 	 * @pre id must belong to an existing canvas object
 	 */
 	public static void setStrokeColor(long id ,int r, int g, int b, int alpha) {
-		gui.getPanel().setStrokeColor(id, r,g,b,alpha);
-		if (autoupdate) gui.getPanel().updateCanvas();
+		gui().getPanel().setStrokeColor(id, r,g,b,alpha);
+		if (autoupdate) gui().getPanel().updateCanvas();
 	}
 	/**
 	 * <p>Changes the rotation angle for an object.</p>
@@ -362,8 +630,94 @@ public class FCanvas {
 	 * @param degrees rotation angle in degrees
 	 */
 	public static void setRotation(long id, float degrees) {
-		gui.getPanel().setRotation(id, degrees);
-		if (autoupdate) gui.getPanel().updateCanvas();
+		gui().getPanel().setRotation(id, degrees);
+		if (autoupdate) gui().getPanel().updateCanvas();
+	}
+	/**
+	 * <p>Moves an object to another layer.</p>
+	 * 
+	 * <p>Objects on a layer with a higher number are drawn above objects on layers
+	 * with a lower number. Within the same layer, the order is determined by the z-index
+	 * (see {@link #setZIndex(long, int)}). All objects start on layer 0.</p>
+	 * 
+	 * @param id the id of the object
+	 * @param layer the number of the new layer
+	 * @pre id must belong to an existing canvas object
+	 * @see #freezeLayer(int)
+	 * @since 1.4
+	 */
+	public static void setLayer(long id, int layer) {
+		gui().getPanel().setLayer(id, layer);
+		if (autoupdate) gui().getPanel().updateCanvas();
+	}
+	/**
+	 * <p>Changes the position of an object on the z-axis within its layer.</p>
+	 * 
+	 * <p>Objects with a higher z-index are drawn above objects with a lower z-index.
+	 * If two objects have the same z-index, the one that has been drawn or reordered
+	 * later is drawn on top. All objects start with a z-index of 0.</p>
+	 * 
+	 * @param id the id of the object
+	 * @param z the new z-index
+	 * @pre id must belong to an existing canvas object
+	 * @see #bringToFront(long)
+	 * @see #sendToBack(long)
+	 * @since 1.4
+	 */
+	public static void setZIndex(long id, int z) {
+		gui().getPanel().setZIndex(id, z);
+		if (autoupdate) gui().getPanel().updateCanvas();
+	}
+	/**
+	 * Places an object above all other objects on the same layer.
+	 * 
+	 * @param id the id of the object
+	 * @pre id must belong to an existing canvas object
+	 * @see #setZIndex(long, int)
+	 * @since 1.4
+	 */
+	public static void bringToFront(long id) {
+		gui().getPanel().bringToFront(id);
+		if (autoupdate) gui().getPanel().updateCanvas();
+	}
+	/**
+	 * Places an object below all other objects on the same layer.
+	 * 
+	 * @param id the id of the object
+	 * @pre id must belong to an existing canvas object
+	 * @see #setZIndex(long, int)
+	 * @since 1.4
+	 */
+	public static void sendToBack(long id) {
+		gui().getPanel().sendToBack(id);
+		if (autoupdate) gui().getPanel().updateCanvas();
+	}
+	/**
+	 * <p>Freezes a layer, so that it is drawn from a cached image.</p>
+	 * 
+	 * <p>The image is only drawn again when an object on that layer changes. This is useful for
+	 * backgrounds with many objects that do not move (e.g. a maze or a grid), because then
+	 * only the moving objects on other layers have to be drawn for each frame.</p>
+	 * 
+	 * @param layer the number of the layer
+	 * @see #setLayer(long, int)
+	 * @see #thawLayer(int)
+	 * @since 1.4
+	 */
+	public static void freezeLayer(int layer) {
+		gui().getPanel().setLayerFrozen(layer, true);
+		if (autoupdate) gui().getPanel().updateCanvas();
+	}
+	/**
+	 * <p>Thaws a frozen layer, so that its objects are drawn one by one again.</p>
+	 * 
+	 * @param layer the number of the layer
+	 * @see #freezeLayer(int)
+	 * @since 1.4
+	 */
+	public static void thawLayer(int layer) {
+		gui().getPanel().setLayerFrozen(layer, false);
+		if (autoupdate) gui().getPanel().updateCanvas();
 	}
 	/**
 	 * <p>Changes the background color of the canvas.</p>
@@ -373,15 +727,15 @@ public class FCanvas {
 	 * @param b value for the blue channel (0 to 255)
 	 */
 	public static void setBackgroundColor(int r, int g, int b) {
-		gui.getPanel().setBackgroundColor(r, g, b);
-		if (autoupdate) gui.getPanel().updateCanvas();
+		gui().getPanel().setBackgroundColor(r, g, b);
+		if (autoupdate) gui().getPanel().updateCanvas();
 	}
 	/**
 	 * Removes all objects from the canvas.
 	 */
 	public static void clear() {
-		gui.getPanel().clear();
-		if (autoupdate) gui.getPanel().updateCanvas();
+		gui().getPanel().clear();
+		if (autoupdate) gui().getPanel().updateCanvas();
 	}
 	/**
 	 * <p>Makes all changes to the canvas visible.</p>
@@ -389,7 +743,141 @@ public class FCanvas {
 	 * @see #setAutoUpdate(boolean)
 	 */
 	public static void update() {
-		gui.getPanel().updateCanvas();
+		gui().getPanel().updateCanvas();
+	}
+	/**
+	 * <p>Animates an object: a property of the object, e.g. its x-coordinate, is changed smoothly from
+	 * its current value to a target value within the given time. The canvas computes the values in every
+	 * frame itself, so the program does not need a loop and can continue immediately.</p>
+	 * 
+	 * <p>Several properties can be animated at the same time, e.g. the x- and y-coordinate to move an
+	 * object diagonally. If a property is animated while another animation of the same property is still
+	 * running, the new animation replaces the old one. The animation ends early if the object is removed.</p>
+	 * 
+	 * <p><b>Example:</b> moving a ball to the right and fading it out</p>
+	 * 
+	 * <pre>
+	 * long ball = drawOval(0, 100, 50, 50);
+	 * setFillColor(ball, 255, 0, 0);
+	 * long move = animate(ball, Tween.X, 700, 2000, Tween.EASE_IN_OUT);
+	 * animateAfter(move, ball, Tween.FILL_ALPHA, 0, 500, Tween.LINEAR);
+	 * </pre>
+	 * 
+	 * @param id the id of the object
+	 * @param property the property to animate, one of {@link Tween#X}, {@link Tween#Y}, {@link Tween#ROTATION},
+	 *        {@link Tween#WIDTH}, {@link Tween#HEIGHT}, {@link Tween#STROKE_WIDTH}, {@link Tween#FILL_RED},
+	 *        {@link Tween#FILL_GREEN}, {@link Tween#FILL_BLUE} and {@link Tween#FILL_ALPHA}
+	 * @param target the value of the property at the end of the animation
+	 * @param durationMs the duration of the animation in milliseconds
+	 * @param easing how the speed changes during the animation, one of {@link Tween#LINEAR},
+	 *        {@link Tween#EASE_IN}, {@link Tween#EASE_OUT} and {@link Tween#EASE_IN_OUT}
+	 * @return a number that identifies the animation, e.g. for {@link #awaitAnimation(long)}
+	 * @since 1.4
+	 */
+	public static long animate(long id, int property, double target, int durationMs, int easing) {
+		return gui().getPanel().animate(id, property, target, durationMs, easing);
+	}
+	/**
+	 * Animates an object as soon as another animation has finished, so that sequences of animations
+	 * can be set up at once. Apart from that, this method works like {@link #animate(long, int, double, int, int)}.
+	 * 
+	 * @param previous the number of the animation after which this animation starts
+	 * @param id the id of the object
+	 * @param property the property to animate, e.g. {@link Tween#X}
+	 * @param target the value of the property at the end of the animation
+	 * @param durationMs the duration of the animation in milliseconds
+	 * @param easing how the speed changes during the animation, e.g. {@link Tween#LINEAR}
+	 * @return a number that identifies the animation
+	 * @since 1.4
+	 */
+	public static long animateAfter(long previous, long id, int property, double target, int durationMs, int easing) {
+		return gui().getPanel().animateAfter(previous, id, property, target, durationMs, easing);
+	}
+	/**
+	 * Stops an animation. The property keeps the value that it has reached so far.
+	 * 
+	 * @param animation the number of the animation
+	 * @since 1.4
+	 */
+	public static void cancelAnimation(long animation) {
+		gui().getPanel().cancelAnimation(animation);
+	}
+	/**
+	 * Waits until an animation has finished.
+	 * 
+	 * @param animation the number of the animation
+	 * @throws InterruptedException if the program is interrupted while waiting
+	 * @since 1.4
+	 */
+	public static void awaitAnimation(long animation) throws InterruptedException {
+		gui().getPanel().awaitAnimation(animation, Long.MAX_VALUE);
+	}
+	/**
+	 * Waits until an animation has finished, but at most the given time.
+	 * 
+	 * @param animation the number of the animation
+	 * @param timeoutMillis maximum time to wait in milliseconds
+	 * @return <code>true</code> if the animation has finished, <code>false</code> if the time ran out
+	 * @throws InterruptedException if the program is interrupted while waiting
+	 * @since 1.4
+	 */
+	public static boolean awaitAnimation(long animation, long timeoutMillis) throws InterruptedException {
+		return gui().getPanel().awaitAnimation(animation, timeoutMillis);
+	}
+	/**
+	 * <p>Waits until all previous drawing commands have been carried out.</p>
+	 * 
+	 * <p>Afterwards, {@link #saveToImage(String)} and the other methods that read the
+	 * content of the canvas are guaranteed to see all objects that have been drawn or
+	 * changed before. Waits at most {@link #DEFAULT_AWAIT_TIMEOUT} milliseconds.</p>
+	 * 
+	 * @return <code>true</code> if all previous commands have been carried out, <code>false</code> if the time ran out
+	 * @throws InterruptedException if the program is interrupted while waiting
+	 * @see #awaitFrame()
+	 * @since 1.4
+	 */
+	public static boolean flush() throws InterruptedException {
+		return flush(DEFAULT_AWAIT_TIMEOUT);
+	}
+	/**
+	 * <p>Waits until all previous drawing commands have been carried out.</p>
+	 * 
+	 * @param timeoutMillis maximum time to wait in milliseconds
+	 * @return <code>true</code> if all previous commands have been carried out, <code>false</code> if the time ran out
+	 * @throws InterruptedException if the program is interrupted while waiting
+	 * @see #flush()
+	 * @since 1.4
+	 */
+	public static boolean flush(long timeoutMillis) throws InterruptedException {
+		return gui().getPanel().flush(timeoutMillis);
+	}
+	/**
+	 * <p>Waits until all previous drawing commands have been carried out and are visible
+	 * in the canvas window.</p>
+	 * 
+	 * <p>Waits at most {@link #DEFAULT_AWAIT_TIMEOUT} milliseconds. If the window is not
+	 * shown, the method waits until the time has run out.</p>
+	 * 
+	 * @return <code>true</code> if the changes are visible, <code>false</code> if the time ran out
+	 * @throws InterruptedException if the program is interrupted while waiting
+	 * @see #flush()
+	 * @since 1.4
+	 */
+	public static boolean awaitFrame() throws InterruptedException {
+		return awaitFrame(DEFAULT_AWAIT_TIMEOUT);
+	}
+	/**
+	 * <p>Waits until all previous drawing commands have been carried out and are visible
+	 * in the canvas window.</p>
+	 * 
+	 * @param timeoutMillis maximum time to wait in milliseconds
+	 * @return <code>true</code> if the changes are visible, <code>false</code> if the time ran out
+	 * @throws InterruptedException if the program is interrupted while waiting
+	 * @see #awaitFrame()
+	 * @since 1.4
+	 */
+	public static boolean awaitFrame(long timeoutMillis) throws InterruptedException {
+		return gui().getPanel().awaitFrame(timeoutMillis);
 	}
 	/**
 	 * <p>Turns the autoupdate function on and off.</p>
@@ -525,6 +1013,63 @@ public class FCanvas {
 	public static int getLastMouseY() {
 		return lastMousePoint.y;
 	}
+	/**
+	 * Returns all positions of the mouse since the last call, so that the path of the
+	 * mouse can be drawn without gaps even if the program runs slowly.
+	 * 
+	 * <p>The positions are written into the given arrays, starting with the oldest one.
+	 * If more positions have been recorded than fit into the arrays, the remaining ones
+	 * are returned by the next call. Up to {@value MouseTrail#DEFAULT_CAPACITY} positions are
+	 * kept, older ones are lost.</p>
+	 * 
+	 * <p>Like {@link #getLastMouseX()}, the positions are window coordinates. Objects are drawn
+	 * in world coordinates, which only differ from window coordinates if the viewport has been
+	 * changed (see {@link #setViewport(double, double, double)}). The example converts them
+	 * with the current viewport.</p>
+	 * 
+	 * <p><b>Example:</b> drawing the path of the mouse with lines</p>
+	 * 
+	 * <pre>
+	 * int[] xs = new int[1000];
+	 * int[] ys = new int[1000];
+	 * int lastX = (int) Math.round(getViewportX() + getLastMouseX() / getZoom());
+	 * int lastY = (int) Math.round(getViewportY() + getLastMouseY() / getZoom());
+	 * while (true) {
+	 *     int n = getMouseTrail(xs, ys, null);
+	 *     for (int i = 0; i &lt; n; i++) {
+	 *         // window coordinates to world coordinates
+	 *         int x = (int) Math.round(getViewportX() + xs[i] / getZoom());
+	 *         int y = (int) Math.round(getViewportY() + ys[i] / getZoom());
+	 *         drawLine(lastX, lastY, x, y);
+	 *         lastX = x;
+	 *         lastY = y;
+	 *     }
+	 *     Thread.sleep(50);
+	 * }
+	 * </pre>
+	 * 
+	 * @param xs receives the x-coordinates of the positions in window coordinates
+	 * @param ys receives the y-coordinates of the positions in window coordinates
+	 * @param ts receives the time of each position as in {@link System#nanoTime()}, or <code>null</code> if the times are not needed
+	 * @return the number of positions that have been written into the arrays
+	 * @see #setMouseTrailCoalescing(int, long)
+	 * @since 1.4
+	 */
+	public static int getMouseTrail(int[] xs, int[] ys, long[] ts) {
+		return mouseTrail.drain(xs, ys, ts);
+	}
+	/**
+	 * Reduces the number of positions returned by {@link #getMouseTrail(int[], int[], long[])}
+	 * by combining positions that are close to each other in space or time. The newest
+	 * position of the mouse is always returned.
+	 * 
+	 * @param minDistance minimum distance between two positions in pixels, 0 to keep positions regardless of their distance
+	 * @param minIntervalNanos minimum time between two positions in nanoseconds, 0 to keep positions regardless of their time
+	 * @since 1.4
+	 */
+	public static void setMouseTrailCoalescing(int minDistance, long minIntervalNanos) {
+		mouseTrail.setCoalescing(minDistance, minIntervalNanos);
+	}
 	/**
 	 * Indicates whether the key <code>key</code> is currently being held down.
 	 * @param key the ID of the key to check (e.g. {@link KeyEvent#VK_0}, {@link KeyEvent#VK_ALT})
@@ -616,7 +1161,8 @@ public class FCanvas {
 	 * @return <code>true</code> if the window is visible, <code>false</code> otherwise
 	 */
 	public static boolean isVisible() {
-		return gui.isVisible();
+		FCanvasGUI g = gui;
+		return g != null && g.isVisible();
 	}
 	/**
 	 * Returns the current width of the drawing area.
@@ -624,7 +1170,7 @@ public class FCanvas {
 	 * @since 1.2
 	 */
 	public static int getCanvasWidth() {
-		return gui.getPanel().getWidth();
+		return gui().getPanel().getWidth();
 	}
 	/**
 	 * Returns the current height of the canvas.
@@ -632,7 +1178,7 @@ public class FCanvas {
 	 * @since 1.2
 	 */
 	public static int getCanvasHeight() {
-		return gui.getPanel().getHeight();
+		return gui().getPanel().getHeight();
 	}
 	/**
 	 * Changes the size of the drawing area.
@@ -641,9 +1187,9 @@ public class FCanvas {
 	 * @since 1.2
 	 */
 	public static void setCanvasSize(int w, int h) {
-		int woff = gui.getInsets().left+gui.getInsets().right;
-		int hoff = gui.getInsets().top+gui.getInsets().bottom;
-		gui.setSize(w+woff,h+hoff);
+		int woff = gui().getInsets().left+gui().getInsets().right;
+		int hoff = gui().getInsets().top+gui().getInsets().bottom;
+		gui().setSize(w+woff,h+hoff);
 	}
 	/**
 	 * <p>Changes antialiasing settings.</p>
@@ -653,7 +1199,17 @@ public class FCanvas {
 	 * @since 1.2
 	 */
 	public static void setAntialiasingEnabled(boolean enabled) {
-		gui.getPanel().setAntialiasingEnabled(enabled);
+		gui().getPanel().setAntialiasingEnabled(enabled);
+	}
+	/**
+	 * <p>Returns rendering statistics such as paint durations, the number of drawn
+	 * components and the number of pending commands.</p>
+	 * <p>The same statistics are also available as MBean via JMX.</p>
+	 * @return the metrics of the canvas
+	 * @since 1.4
+	 */
+	public static FCanvasMetrics getMetrics() {
+		return gui().getPanel().getMetrics();
 	}
 	/**
 	 * <p>Saves the current graphic as an image file.</p>
@@ -667,19 +1223,356 @@ public class FCanvas {
 	public static void saveToImage(String fname) throws IOException {
 		//TODO adjust jpg compression (default value 70% is a little harsh)
 		File f = new File(fname);
-		BufferedImage bi = gui.getPanel().toImage();
+		BufferedImage bi = gui().getPanel().toImage();
 		String ext = f.getName().substring(f.getName().lastIndexOf('.')+1);
 		ext = ext.toLowerCase();
 		if(!SUPPORTED_IMAGE_FORMATS.contains(ext)) ext = "png";
 		ImageIO.write(bi, ext, f);
 	}
+	/**
+	 * <p>Changes the part of the drawing that is visible in the window.</p>
+	 * <p>All objects and pixels are drawn on an unbounded plane, of which the window
+	 * only shows a part. The point (x, y) of this plane is shown in the upper left corner
+	 * of the window, and all distances are multiplied by <code>zoom</code>. For example,
+	 * <code>setViewport(1000, 0, 0.5)</code> shows the area from x = 1000 to x = 1000 + 2 * width.
+	 * Objects outside of the visible area are not drawn, so large worlds do not slow down
+	 * the drawing.</p>
+	 * <p>Mouse positions are still reported in window coordinates. The world coordinates of
+	 * a mouse position (mx, my) are <code>(getViewportX() + mx / getZoom(), getViewportY() + my / getZoom())</code>.</p>
+	 * @param x x-coordinate shown in the upper left corner
+	 * @param y y-coordinate shown in the upper left corner
+	 * @param zoom scale factor, 1 shows objects at their original size
+	 * @throws IllegalArgumentException if zoom is not positive
+	 * @since 1.4
+	 */
+	public static void setViewport(double x, double y, double zoom) {
+		gui().getPanel().setViewport(x, y, zoom);
+		if (autoupdate) gui().getPanel().updateCanvas();
+	}
+	/**
+	 * <p>Returns the x-coordinate shown in the upper left corner of the window.</p>
+	 * @return x-coordinate of the viewport
+	 * @see #setViewport(double, double, double)
+	 * @since 1.4
+	 */
+	public static double getViewportX() {
+		return gui().getPanel().getViewportX();
+	}
+	/**
+	 * <p>Returns the y-coordinate shown in the upper left corner of the window.</p>
+	 * @return y-coordinate of the viewport
+	 * @see #setViewport(double, double, double)
+	 * @since 1.4
+	 */
+	public static double getViewportY() {
+		return gui().getPanel().getViewportY();
+	}
+	/**
+	 * <p>Returns the scale factor of the viewport.</p>
+	 * @return zoom factor of the viewport
+	 * @see #setViewport(double, double, double)
+	 * @since 1.4
+	 */
+	public static double getZoom() {
+		return gui().getPanel().getZoom();
+	}
+	/**
+	 * <p>Changes when objects are drawn in reduced detail.</p>
+	 * <p>When the viewport is zoomed out, many objects are only one or two pixels
+	 * large. Drawing them in full detail takes as long as drawing large objects, but
+	 * looks almost the same as drawing a single pixel. Therefore objects smaller than
+	 * <code>pointSize</code> pixels are drawn as a single pixel, texts with a font size
+	 * below <code>textSize</code> pixels as a bar, and if more than <code>clusterSize</code>
+	 * small objects lie on top of each other, the remaining ones are combined into a filled
+	 * square. A value of 0 turns the respective simplification off.</p>
+	 * @param pointSize size in pixels on the screen below which objects are drawn as a single pixel (default: 1.5)
+	 * @param textSize font size in pixels on the screen below which texts are drawn as a bar (default: 3)
+	 * @param clusterSize number of small objects at the same place above which further objects are combined (default: 16)
+	 * @see #setViewport(double, double, double)
+	 * @since 1.4
+	 */
+	public static void setLevelOfDetail(double pointSize, double textSize, int clusterSize) {
+		gui().getPanel().setLevelOfDetail(pointSize, textSize, clusterSize);
+		if (autoupdate) gui().getPanel().updateCanvas();
+	}
+	/**
+	 * <p>Turns the automatic adaption of the drawing quality on or off (default: off).</p>
+	 * <p>If turned on, the canvas measures how long it takes to draw each frame. If this
+	 * takes longer than the frame budget (see {@link FCanvasMetrics#setFrameBudgetNanos(long)}),
+	 * the quality is lowered step by step: first, moving objects are drawn without antialiasing,
+	 * then lines and texts are drawn faster and with less precision, and finally more small
+	 * objects are drawn in reduced detail. When drawing is fast again for about a second,
+	 * the quality is raised again step by step.</p>
+	 * @param enabled if <code>true</code> the quality is adapted to the drawing time
+	 * @see #getQualityLevel()
+	 * @since 1.4
+	 */
+	public static void setQualityGovernorEnabled(boolean enabled) {
+		gui().getPanel().setQualityGovernorEnabled(enabled);
+		if (autoupdate) gui().getPanel().updateCanvas();
+	}
+	/**
+	 * <p>Shows or hides an overlay in the upper left corner of the canvas that helps to find out
+	 * why an animation is slow (default: hidden).</p>
+	 * <p>The overlay shows the number of frames per second, how long drawing a frame takes
+	 * (the median and the slowest 5% and 1% of all frames), how many objects were drawn or skipped
+	 * because they are outside the visible area, how many commands wait to be applied and how
+	 * much memory is used and collected. If drawing takes long, the canvas contains too many
+	 * objects; if many commands wait, the program issues them faster than they can be applied;
+	 * if neither is the case, the program's own loop is probably the cause.</p>
+	 * <p>The values are updated twice per second while the canvas is redrawn.</p>
+	 * @param visible if <code>true</code> the overlay is shown
+	 * @see #getMetrics()
+	 * @since 1.4
+	 */
+	public static void setPerformanceHudVisible(boolean visible) {
+		gui().getPanel().setPerformanceHudVisible(visible);
+		if (autoupdate) gui().getPanel().updateCanvas();
+	}
+	/**
+	 * <p>Returns the current drawing quality.</p>
+	 * @return a value between {@link FCanvasPanel#QUALITY_LOW} (0) and {@link FCanvasPanel#QUALITY_FULL} (3)
+	 * @see #setQualityGovernorEnabled(boolean)
+	 * @since 1.4
+	 */
+	public static int getQualityLevel() {
+		return gui().getPanel().getQualityLevel();
+	}
+	/**
+	 * <p>Saves the current graphic as SVG vector graphic.</p>
+	 * <p>Unlike {@link #saveToImage(String)}, the file can be scaled to any size
+	 * without becoming blurry, and its size only depends on the number of objects,
+	 * not on the size of the canvas. Pixels set with {@link #setPixel(int, int, int, int, int)}
+	 * are embedded as images.</p>
+	 * @param fname the name of the SVG file
+	 * @throws IOException if the file could not be written
+	 * @since 1.4
+	 */
+	public static void saveToSVG(String fname) throws IOException {
+		gui().getPanel().saveToSVG(Paths.get(fname));
+	}
+	/**
+	 * <p>Saves all objects of the canvas together with their properties, the drawing order,
+	 * the background color and the pixels set with {@link #setPixel(int, int, int, int, int)}
+	 * in a compact binary file.</p>
+	 * <p>Unlike an image, the file can be loaded with {@link #loadScene(String)} to continue
+	 * working with the objects.</p>
+	 * @param fname the name of the scene file
+	 * @throws IOException if the file could not be written
+	 * @see #loadScene(String)
+	 * @since 1.4
+	 */
+	public static void saveScene(String fname) throws IOException {
+		gui().getPanel().saveScene(Paths.get(fname));
+	}
+	/**
+	 * <p>Replaces the content of the canvas with a scene saved by {@link #saveScene(String)}.</p>
+	 * <p>The objects of the scene get new ids, which are returned in drawing order, i.e. the
+	 * object that is drawn first (at the bottom) comes first.</p>
+	 * @param fname the name of the scene file
+	 * @return the ids of the loaded objects
+	 * @throws IOException if the file could not be read or is not a scene file
+	 * @see #saveScene(String)
+	 * @since 1.4
+	 */
+	public static long[] loadScene(String fname) throws IOException {
+		long[] ids = gui().getPanel().loadScene(Paths.get(fname));
+		if (autoupdate) gui().getPanel().updateCanvas();
+		return ids;
+	}
+	/**
+	 * <p>Starts recording all drawing commands and all mouse and key events in a journal file.</p>
+	 * <p>The journal can be replayed with {@link JournalReplay} to reproduce the exact workload of
+	 * a program, e.g. to find out why it becomes slow after a while. Recording costs little
+	 * time, since the file is written by a background thread.</p>
+	 * @param fname the name of the journal file
+	 * @throws IOException if the file could not be created
+	 * @see #stopJournal()
+	 * @since 1.4
+	 */
+	public static void startJournal(String fname) throws IOException {
+		gui().getPanel().startJournal(Paths.get(fname));
+	}
+	/**
+	 * <p>Stops recording and closes the journal file.</p>
+	 * @throws IOException if the journal could not be written completely
+	 * @see #startJournal(String)
+	 * @since 1.4
+	 */
+	public static void stopJournal() throws IOException {
+		gui().getPanel().stopJournal();
+	}
 	
 	public static void setPixel(int x, int y, int r, int g , int b) {
-		gui.getPanel().setPixel(new Point(x,y), new Color(r,g,b));
+		gui().getPanel().setPixel(new Point(x,y), new Color(r,g,b));
 	}
 	
+	/**
+	 * Colors all pixels of a rectangular area with a function that computes the color
+	 * of a pixel from its coordinates, e.g. to draw fractals or noise.
+	 * 
+	 * <p>The function is called for many pixels at the same time on all cores of the
+	 * processor, so it must not change variables outside of the function. The method
+	 * returns when all pixels have been computed.</p>
+	 * 
+	 * <p><b>Example:</b> a color gradient from black to red and green</p>
+	 * 
+	 * <pre>
+	 * computePixels(0, 0, 256, 256, (x, y) -&gt; x &lt;&lt; 16 | y &lt;&lt; 8);
+	 * </pre>
+	 * 
+	 * @param x x-coordinate of the upper-left corner of the area
+	 * @param y y-coordinate of the upper-left corner of the area
+	 * @param width width of the area
+	 * @param height height of the area
+	 * @param f function that returns the color of the pixel (x, y) as <code>red &lt;&lt; 16 | green &lt;&lt; 8 | blue</code>
+	 * @since 1.4
+	 */
+	public static void computePixels(int x, int y, int width, int height, PixelFunction f) {
+		computePixels(x, y, width, height, f, false);
+	}
+	/**
+	 * Colors all pixels of a rectangular area with a function like
+	 * {@link #computePixels(int, int, int, int, PixelFunction)}, optionally showing
+	 * a coarse preview first that is refined step by step.
+	 * 
+	 * @param x x-coordinate of the upper-left corner of the area
+	 * @param y y-coordinate of the upper-left corner of the area
+	 * @param width width of the area
+	 * @param height height of the area
+	 * @param f function that returns the color of the pixel (x, y) as <code>red &lt;&lt; 16 | green &lt;&lt; 8 | blue</code>
+	 * @param progressive if <code>true</code>, a coarse version of the area is shown first and refined until all pixels are computed
+	 * @since 1.4
+	 */
+	public static void computePixels(int x, int y, int width, int height, PixelFunction f, boolean progressive) {
+		gui().getPanel().computePixels(x, y, width, height, f, progressive);
+		if (autoupdate) gui().getPanel().updateCanvas();
+	}
+	/**
+	 * Checks whether two objects on the canvas overlap, e.g. whether the player of a game
+	 * touches an enemy.
+	 * 
+	 * <p>The exact shapes of the objects are compared, including rotation, so two ovals
+	 * whose bounding boxes overlap only at their corners do not collide. Lines collide
+	 * where their stroke is drawn. Invisible objects do not collide with anything.</p>
+	 * 
+	 * <p>Changes that have not been applied yet are not taken into account, so call
+	 * {@link #flush()} before if objects have just been created or moved.</p>
+	 * 
+	 * @param id1 id of the first object
+	 * @param id2 id of the second object
+	 * @return <code>true</code> if the objects overlap
+	 * @since 1.4
+	 */
+	public static boolean intersects(long id1, long id2) {
+		return gui().getPanel().intersects(id1, id2);
+	}
+	/**
+	 * Returns all objects that overlap an object (see {@link #intersects(long, long)}).
+	 * 
+	 * <p>This is fast even for many objects, since only objects in the vicinity are checked.</p>
+	 * 
+	 * @param id id of the object
+	 * @return ids of all other objects that overlap it
+	 * @since 1.4
+	 */
+	public static long[] collisions(long id) {
+		return gui().getPanel().collisions(id);
+	}
+	/**
+	 * Returns all visible objects that overlap a rectangular area (see {@link #intersects(long, long)}).
+	 * 
+	 * @param x x-coordinate of the upper-left corner of the area
+	 * @param y y-coordinate of the upper-left corner of the area
+	 * @param width width of the area
+	 * @param height height of the area
+	 * @return ids of all objects that overlap the area
+	 * @since 1.4
+	 */
+	public static long[] componentsIn(int x, int y, int width, int height) {
+		return gui().getPanel().componentsIn(x, y, width, height);
+	}
+	/**
+	 * Returns the object that is visible at a point, e.g. to find out which object
+	 * has been clicked.
+	 * 
+	 * <p>An object is found if the point lies inside of it or on its border, taking
+	 * rotation into account. If several objects overlap at the point, the one that is
+	 * drawn on top is returned. Invisible objects are ignored.</p>
+	 * 
+	 * <p><b>Example:</b> the object under the mouse</p>
+	 * 
+	 * <pre>
+	 * long id = componentAt(getLastMouseX(), getLastMouseY());
+	 * </pre>
+	 * 
+	 * <p>If the viewport has been changed with {@link #setViewport(double, double, double)}, the
+	 * position of the mouse must be converted first:
+	 * <code>getViewportX() + getLastMouseX() / getZoom()</code>.</p>
+	 * 
+	 * @param x x-coordinate of the point
+	 * @param y y-coordinate of the point
+	 * @return id of the topmost object at the point or 0 if there is no object
+	 * @since 1.4
+	 */
+	public static long componentAt(double x, double y) {
+		return gui().getPanel().componentAt(x, y);
+	}
+	/**
+	 * Returns all objects at a point (see {@link #componentAt(double, double)}).
+	 * 
+	 * @param x x-coordinate of the point
+	 * @param y y-coordinate of the point
+	 * @return ids of all objects at the point, starting with the one that is drawn on top
+	 * @since 1.4
+	 */
+	public static long[] componentsAt(double x, double y) {
+		return gui().getPanel().componentsAt(x, y);
+	}
+	/**
+	 * Shows the frames that another program writes into a framebuffer file, e.g. an
+	 * emulator, a simulation or a video decoder written in another language.
+	 * 
+	 * <p>The file format is described in {@link SharedFramebuffer}, which can also be used
+	 * to write frames from Java. Each new frame appears on the canvas automatically as soon
+	 * as it is complete, without calls of {@link #update()}. The frames are drawn in front of
+	 * the pixels and behind all other objects on the canvas.</p>
+	 * 
+	 * @param path the path of the framebuffer file, preferably on a file system in memory like <code>/dev/shm</code>
+	 * @param left x-coordinate of the upper-left corner of the frames
+	 * @param top y-coordinate of the upper-left corner of the frames
+	 * @throws IOException if the file could not be read or is not a framebuffer
+	 * @since 1.4
+	 */
+	public static void showFramebuffer(String path, int left, int top) throws IOException {
+		gui().getPanel().showFramebuffer(Paths.get(path), left, top);
+	}
+	/**
+	 * Stops showing the frames of a framebuffer file.
+	 * 
+	 * @since 1.4
+	 */
+	public static void hideFramebuffer() {
+		gui().getPanel().hideFramebuffer();
+	}
+	/**
+	 * Returns the number of the frame of the framebuffer file that is shown on the canvas.
+	 * 
+	 * @return the frame number, 0 if no frame is shown
+	 * @since 1.4
+	 */
+	public static long getFramebufferSequence() {
+		return gui().getPanel().getFramebufferSequence();
+	}
+	/**
+	 * Formerly reserved memory for pixels up to the given coordinates.
+	 * @param x ignored
+	 * @param y ignored
+	 * @deprecated memory for pixels is reserved automatically in tiles around the pixels that are set
+	 */
+	@Deprecated
 	public static void setPixelBuffer(int x, int y) {
-		gui.getPanel().updateImageBuffer(x, y);
+		// nothing to do
 	}
 
 	/**
@@ -690,16 +1583,16 @@ public class FCanvas {
 	 * before any of the other display methods can be used.
 	 */
 	public static void reset() {
-		for (KeyListener k: gui.getPanel().getKeyListeners()) {
-			if (k instanceof KeyVarsUpdater) { gui.getPanel().removeKeyListener(k); }
+		for (KeyListener k: gui().getPanel().getKeyListeners()) {
+			if (k instanceof KeyVarsUpdater) { gui().getPanel().removeKeyListener(k); }
 		}
-		for (MouseListener m: gui.getPanel().getMouseListeners()) {
-			if (m instanceof MouseVarsUpdater) { gui.getPanel().removeMouseListener(m); }
+		for (MouseListener m: gui().getPanel().getMouseListeners()) {
+			if (m instanceof MouseVarsUpdater) { gui().getPanel().removeMouseListener(m); }
 		}
-		for (MouseMotionListener m: gui.getPanel().getMouseMotionListeners()) {
-			if (m instanceof MouseVarsUpdater) { gui.getPanel().removeMouseMotionListener(m); }
+		for (MouseMotionListener m: gui().getPanel().getMouseMotionListeners()) {
+			if (m instanceof MouseVarsUpdater) { gui().getPanel().removeMouseMotionListener(m); }
 		}
-		gui.getPanel().reset();
+		gui().getPanel().reset();
 		keyLastSeen = new ConcurrentHashMap<Integer,Long>();
 		keyLastAsked = new ConcurrentHashMap<Integer,Long>();
 		keyPressCountLast = new ConcurrentHashMap<Integer,Long>();
@@ -711,6 +1604,7 @@ public class FCanvas {
 		keysDown = new ConcurrentHashMap<Integer,Boolean>();
 		buttonsDown = new ConcurrentHashMap<Integer,Boolean>();
 		lastMousePoint = new Point(0,0);
+		mouseTrail.clear();
 		autoupdate = true;
 	}
 	
@@ -733,7 +1627,7 @@ public class FCanvas {
 		setFillColor(r2,0,0,255);
 		setFillColor(r3,255,0,0,150);
 		Thread.sleep(1000);
-		System.out.println(gui.getPanel().getSize());
+		System.out.println(gui().getPanel().getSize());
 		setStrokeWidth(r,5);
 		setFillColor(r,255,0,0,255);
 		setStrokeColor(r,0,0,255,255);
@@ -771,10 +1665,8 @@ public class FCanvas {
 		long kugel = drawOval(getLastMouseX(),getLastMouseY(),40,40);
 		for(int i = 0; i < 150; i++) {
 			move(kugel,getLastMouseX(),getLastMouseY());
-			remove(text);
-			remove(text2);
-			text = drawText(wasKeyPressed(KeyEvent.VK_DOWN,1000) ? "DOWN pressed" : "DOWN not pressed",200,200);
-			text2 = drawText(wasMouseButtonPressed(MouseEvent.BUTTON1,1000) ? "Button 1 pressed" : "Button 1 not pressed",300,200);
+			setText(text, wasKeyPressed(KeyEvent.VK_DOWN,1000) ? "DOWN pressed" : "DOWN not pressed");
+			setText(text2, wasMouseButtonPressed(MouseEvent.BUTTON1,1000) ? "Button 1 pressed" : "Button 1 not pressed");
 			setRotation(p,i*2);
 			Thread.sleep(33);
 		}
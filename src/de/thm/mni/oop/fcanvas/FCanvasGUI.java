@@ -30,4 +30,12 @@ public class FCanvasGUI extends JFrame {
 	public FCanvasPanel getPanel() {
 		return canvas;
 	}
+	/**
+	 * Closes the window and disposes its {@link FCanvasPanel}.
+	 */
+	@Override
+	public void dispose() {
+		super.dispose();
+		canvas.dispose();
+	}
 }
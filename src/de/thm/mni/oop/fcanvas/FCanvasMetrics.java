@@ -0,0 +1,315 @@
+package de.thm.mni.oop.fcanvas;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.swing.SwingUtilities;
+
+/**
+ * <p>Low-overhead rendering statistics of a {@link FCanvasPanel}.</p>
+ *
+ * <p>Paint statistics are only written by the event dispatch thread, while the
+ * mutation counters may be updated concurrently by any thread. Recording a value
+ * never allocates or blocks, so the metrics are always enabled.</p>
+ *
+ * <p>The number and duration of garbage collections are taken from the garbage collector
+ * beans of the JVM, so that dropped frames can be correlated with collections.</p>
+ *
+ * <p>Paint durations are collected in a histogram with power-of-two buckets
+ * (starting at 1024 ns), which means that percentiles are reported as the upper
+ * bound of the respective bucket.</p>
+ *
+ * @author Christopher Schölzel
+ * @see FCanvasPanel#getMetrics()
+ */
+public class FCanvasMetrics implements FCanvasMetricsMBean {
+	/** JMX domain under which the metrics of all panels are registered */
+	public static final String JMX_DOMAIN = "de.thm.mni.oop.fcanvas";
+	/** Default frame budget (60 frames per second) */
+	public static final long DEFAULT_FRAME_BUDGET_NANOS = 1_000_000_000L / 60;
+	private static final int BUCKET_SHIFT = 10;
+	private static final int BUCKETS = 40;
+	private static final AtomicInteger panelCounter = new AtomicInteger();
+	private final AtomicLongArray paintHistogram = new AtomicLongArray(BUCKETS);
+	private final LongAdder commandsPosted = new LongAdder();
+	private final LongAdder commandsApplied = new LongAdder();
+	private final LongAdder repaintRequests = new LongAdder();
+	private volatile long staleCommands = 0;
+	private volatile long framesPainted = 0;
+	private volatile long lastPaintNanos = 0;
+	private volatile long totalPaintNanos = 0;
+	private volatile long maxPaintNanos = 0;
+	private volatile long droppedFrames = 0;
+	private volatile int componentCount = 0;
+	private volatile int componentsDrawn = 0;
+	private volatile int componentsCulled = 0;
+	private volatile int componentsSimplified = 0;
+	private volatile long pixelBufferBytes = 0;
+	private volatile long frameBudgetNanos = DEFAULT_FRAME_BUDGET_NANOS;
+	// values of the cumulative counters at the last reset
+	private volatile long appliedAtReset = 0;
+	private volatile long repaintsAtReset = 0;
+	private volatile long gcCountAtReset;
+	private volatile long gcTimeAtReset;
+	private final GarbageCollectorMXBean[] collectors;
+	private ObjectName objectName;
+
+	/**
+	 * Creates empty metrics.
+	 */
+	public FCanvasMetrics() {
+		collectors = ManagementFactory.getGarbageCollectorMXBeans().toArray(new GarbageCollectorMXBean[0]);
+		gcCountAtReset = totalGcCount();
+		gcTimeAtReset = totalGcTime();
+	}
+
+	/**
+	 * Registers this object with the platform MBean server.
+	 *
+	 * <p>Failure to register (e.g. due to a security manager) is ignored, since
+	 * the metrics are still available through the Java API.</p>
+	 */
+	void register() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(JMX_DOMAIN + ":type=FCanvasMetrics,name=panel" + panelCounter.incrementAndGet());
+			server.registerMBean(this, name);
+			objectName = name;
+		} catch (JMException | SecurityException e) {
+			objectName = null;
+		}
+	}
+	/**
+	 * Removes this object from the platform MBean server. Has no effect if it is not registered.
+	 */
+	void unregister() {
+		ObjectName name = objectName;
+		if (name == null) return;
+		objectName = null;
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+		} catch (JMException | SecurityException e) {
+			// already unregistered, e.g. by a JMX client
+		}
+	}
+	/**
+	 * Returns the name under which this object is registered as MBean.
+	 * @return the JMX object name or <code>null</code> if registration failed
+	 */
+	public ObjectName getObjectName() {
+		return objectName;
+	}
+	/**
+	 * Records that a command has been posted to the event dispatch thread.
+	 */
+	void commandPosted() {
+		commandsPosted.increment();
+	}
+	/**
+	 * Records that a command has been applied on the event dispatch thread.
+	 */
+	void commandApplied() {
+		commandsApplied.increment();
+	}
+	/**
+	 * Records a command whose component did not exist. Must only be called from the event dispatch thread.
+	 */
+	void staleCommand() {
+		staleCommands++;
+	}
+	/**
+	 * Records a repaint request.
+	 */
+	void repaintRequested() {
+		repaintRequests.increment();
+	}
+	/**
+	 * Records the size of the pixel layer.
+	 * @param bytes size of the pixel buffer in bytes
+	 */
+	void pixelBufferResized(long bytes) {
+		pixelBufferBytes = bytes;
+	}
+	/**
+	 * Records a painted frame. Must only be called from the event dispatch thread.
+	 * @param nanos duration of the paint in nanoseconds
+	 * @param count number of components in the scene
+	 * @param drawn number of drawn components
+	 * @param culled number of culled components
+	 * @param simplified number of components drawn in reduced detail
+	 */
+	void framePainted(long nanos, int count, int drawn, int culled, int simplified) {
+		int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos >> BUCKET_SHIFT));
+		paintHistogram.incrementAndGet(bucket);
+		lastPaintNanos = nanos;
+		totalPaintNanos += nanos;
+		if (nanos > maxPaintNanos) maxPaintNanos = nanos;
+		if (nanos > frameBudgetNanos) droppedFrames++;
+		componentCount = count;
+		componentsDrawn = drawn;
+		componentsCulled = culled;
+		componentsSimplified = simplified;
+		framesPainted++;
+	}
+
+	@Override
+	public long getFramesPainted() {
+		return framesPainted;
+	}
+
+	@Override
+	public long getLastPaintTimeNanos() {
+		return lastPaintNanos;
+	}
+
+	@Override
+	public long getMeanPaintTimeNanos() {
+		long frames = framesPainted;
+		return frames == 0 ? 0 : totalPaintNanos / frames;
+	}
+
+	@Override
+	public long getMaxPaintTimeNanos() {
+		return maxPaintNanos;
+	}
+
+	@Override
+	public long getPaintTimePercentileNanos(double percentile) {
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) total += paintHistogram.get(i);
+		if (total == 0) return 0;
+		long threshold = (long) Math.ceil(total * Math.min(100, Math.max(0, percentile)) / 100.0);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += paintHistogram.get(i);
+			if (seen >= threshold && seen > 0) return 1L << (i + BUCKET_SHIFT);
+		}
+		return maxPaintNanos;
+	}
+
+	@Override
+	public int getComponentCount() {
+		return componentCount;
+	}
+
+	@Override
+	public int getComponentsDrawn() {
+		return componentsDrawn;
+	}
+
+	@Override
+	public int getComponentsCulled() {
+		return componentsCulled;
+	}
+
+	@Override
+	public int getComponentsSimplified() {
+		return componentsSimplified;
+	}
+
+	@Override
+	public long getPendingCommands() {
+		return Math.max(0, commandsPosted.sum() - commandsApplied.sum());
+	}
+
+	@Override
+	public long getCommandsApplied() {
+		return commandsApplied.sum() - appliedAtReset;
+	}
+
+	@Override
+	public long getStaleCommands() {
+		return staleCommands;
+	}
+
+	@Override
+	public long getRepaintRequests() {
+		return repaintRequests.sum() - repaintsAtReset;
+	}
+
+	@Override
+	public double getRepaintCoalescingRatio() {
+		long frames = framesPainted;
+		return frames == 0 ? 0 : (double) getRepaintRequests() / frames;
+	}
+
+	@Override
+	public long getPixelBufferBytes() {
+		return pixelBufferBytes;
+	}
+
+	@Override
+	public long getDroppedFrames() {
+		return droppedFrames;
+	}
+
+	@Override
+	public long getFrameBudgetNanos() {
+		return frameBudgetNanos;
+	}
+
+	@Override
+	public void setFrameBudgetNanos(long nanos) {
+		frameBudgetNanos = nanos;
+	}
+
+	@Override
+	public long getGcCount() {
+		return totalGcCount() - gcCountAtReset;
+	}
+
+	@Override
+	public long getGcTimeMillis() {
+		return totalGcTime() - gcTimeAtReset;
+	}
+
+	private long totalGcCount() {
+		long sum = 0;
+		for (GarbageCollectorMXBean b : collectors) sum += Math.max(0, b.getCollectionCount());
+		return sum;
+	}
+
+	private long totalGcTime() {
+		long sum = 0;
+		for (GarbageCollectorMXBean b : collectors) sum += Math.max(0, b.getCollectionTime());
+		return sum;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * <p>The number of pending commands is preserved, since those commands
+	 * have not been applied yet. Since the paint statistics are only written by the
+	 * event dispatch thread, a reset that is requested by another thread (e.g. by a JMX
+	 * client) is performed asynchronously on the event dispatch thread.</p>
+	 */
+	@Override
+	public void reset() {
+		if (!SwingUtilities.isEventDispatchThread()) {
+			SwingUtilities.invokeLater(this::reset);
+			return;
+		}
+		for (int i = 0; i < BUCKETS; i++) paintHistogram.set(i, 0);
+		// the cumulative counters are updated concurrently, so they are not reset but
+		// remembered, which also keeps the number of pending commands
+		appliedAtReset = commandsApplied.sum();
+		repaintsAtReset = repaintRequests.sum();
+		gcCountAtReset = totalGcCount();
+		gcTimeAtReset = totalGcTime();
+		staleCommands = 0;
+		framesPainted = 0;
+		lastPaintNanos = 0;
+		totalPaintNanos = 0;
+		maxPaintNanos = 0;
+		droppedFrames = 0;
+		componentsDrawn = 0;
+		componentsCulled = 0;
+		componentsSimplified = 0;
+	}
+}
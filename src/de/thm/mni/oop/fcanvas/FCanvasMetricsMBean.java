@@ -0,0 +1,124 @@
+package de.thm.mni.oop.fcanvas;
+
+/**
+ * <p>JMX management interface of {@link FCanvasMetrics}.</p>
+ *
+ * <p>Each {@link FCanvasPanel} registers its metrics with the platform MBean server
+ * under the domain <code>de.thm.mni.oop.fcanvas</code>, so that they can be inspected
+ * with tools like JConsole or VisualVM next to the standard memory and garbage
+ * collector beans of the JVM.</p>
+ *
+ * @author Christopher Schölzel
+ * @see FCanvasMetrics
+ */
+public interface FCanvasMetricsMBean {
+	/**
+	 * Returns the number of frames painted since the last reset.
+	 * @return number of painted frames
+	 */
+	public long getFramesPainted();
+	/**
+	 * Returns the duration of the last paint.
+	 * @return duration of the last paint in nanoseconds
+	 */
+	public long getLastPaintTimeNanos();
+	/**
+	 * Returns the mean duration of all paints since the last reset.
+	 * @return mean paint duration in nanoseconds
+	 */
+	public long getMeanPaintTimeNanos();
+	/**
+	 * Returns the longest paint duration since the last reset.
+	 * @return maximum paint duration in nanoseconds
+	 */
+	public long getMaxPaintTimeNanos();
+	/**
+	 * Returns an upper bound for the given percentile of paint durations.
+	 * @param percentile the percentile (0 to 100)
+	 * @return paint duration in nanoseconds below which the given percentage of frames were painted
+	 */
+	public long getPaintTimePercentileNanos(double percentile);
+	/**
+	 * Returns the number of components in the scene at the time of the last frame.
+	 * @return number of components
+	 */
+	public int getComponentCount();
+	/**
+	 * Returns the number of components drawn in the last frame.
+	 * @return number of drawn components
+	 */
+	public int getComponentsDrawn();
+	/**
+	 * Returns the number of components that were skipped in the last frame,
+	 * because they did not intersect the visible area.
+	 * @return number of culled components
+	 */
+	public int getComponentsCulled();
+	/**
+	 * Returns the number of drawn components in the last frame that were drawn in
+	 * reduced detail, because they were too small on the screen.
+	 * @return number of simplified components
+	 */
+	public int getComponentsSimplified();
+	/**
+	 * Returns the number of commands that have been issued but not yet applied
+	 * on the event dispatch thread.
+	 * @return current command queue depth
+	 */
+	public long getPendingCommands();
+	/**
+	 * Returns the number of commands applied since the last reset.
+	 * @return number of applied commands
+	 */
+	public long getCommandsApplied();
+	/**
+	 * Returns the number of commands that referred to a component that did not exist
+	 * (anymore) when the command was applied.
+	 * @return number of commands with stale ids
+	 */
+	public long getStaleCommands();
+	/**
+	 * Returns the number of repaint requests since the last reset.
+	 * @return number of repaint requests
+	 */
+	public long getRepaintRequests();
+	/**
+	 * Returns the number of repaint requests per painted frame.
+	 * @return average number of repaint requests that were coalesced into one frame
+	 */
+	public double getRepaintCoalescingRatio();
+	/**
+	 * Returns the size of the memory used for the pixel layer.
+	 * @return size of the pixel buffer in bytes
+	 */
+	public long getPixelBufferBytes();
+	/**
+	 * Returns the number of frames whose paint took longer than the frame budget.
+	 * @return number of dropped frames
+	 */
+	public long getDroppedFrames();
+	/**
+	 * Returns the frame budget used to determine dropped frames.
+	 * @return frame budget in nanoseconds
+	 */
+	public long getFrameBudgetNanos();
+	/**
+	 * Changes the frame budget used to determine dropped frames.
+	 * @param nanos new frame budget in nanoseconds
+	 */
+	public void setFrameBudgetNanos(long nanos);
+	/**
+	 * Returns the number of garbage collections of all collectors of the JVM since the last reset.
+	 * @return number of garbage collections
+	 */
+	public long getGcCount();
+	/**
+	 * Returns the accumulated time of the garbage collections of all collectors of the JVM since the last reset.
+	 * @return garbage collection time in milliseconds
+	 */
+	public long getGcTimeMillis();
+	/**
+	 * Resets all counters and histograms.
+	 */
+	public void reset();
+}
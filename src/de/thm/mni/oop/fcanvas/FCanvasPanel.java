@@ -1,26 +1,54 @@
 package de.thm.mni.oop.fcanvas;
 
+import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Point;
 import java.awt.RenderingHints;
+import java.awt.Shape;
 import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.swing.JPanel;
 import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 
 import de.thm.mni.oop.fcanvas.components.FCanvasComponent;
 import de.thm.mni.oop.fcanvas.components.Line;
 import de.thm.mni.oop.fcanvas.components.Oval;
 import de.thm.mni.oop.fcanvas.components.Polygon;
 import de.thm.mni.oop.fcanvas.components.Rectangle;
+import de.thm.mni.oop.fcanvas.components.Sprite;
 import de.thm.mni.oop.fcanvas.components.Text;
+import de.thm.mni.oop.fcanvas.components.Tilemap;
 
 /**
  * <p>This class contains the functionality behind the FCanvas interface.</p>
@@ -28,467 +56,2573 @@ import de.thm.mni.oop.fcanvas.components.Text;
  * <p>The FCanvasPanel overrides the {@link #paintComponent(Graphics)} method of the JPanel class to paint a number of internally stored objects.</p>
  * 
  * <p>The methods for adding, removing and modifying components are thread-safe and can also be called from outside the event dispatch thread.</p>
+ * 
+ * <p>None of these methods acquires a lock: ids are allocated atomically and the changes are
+ * appended to a lock-free queue that is drained on the event dispatch thread. Changes issued
+ * by the same thread are always applied in the order in which they were issued, so e.g. a
+ * component can be modified right after it has been added. Changes issued concurrently by
+ * different threads are applied in some interleaving of these per-thread orders. Use
+ * {@link #flush(long)} to wait until the changes of the calling thread have been applied.</p>
+ * 
+ * <p>Component ids encode a slot and its generation. Slots of removed components and the component
+ * objects themselves are recycled, and commands that refer to an id of a removed component are ignored
+ * (see {@link FCanvasMetrics#getStaleCommands()}).</p>
  * @author Christopher Schölzel
  */
 public class FCanvasPanel extends JPanel {
 	private static final long serialVersionUID = 1303009389955966295L;
-	private long idcounter = 0;
-	private Map<Long,FCanvasComponent> components;
-	private Map<Point,Color> pixels;
-	private BufferedImage imageBuffer;
-	private int bufferMaxX = 0;
-	private int bufferMaxY = 0;
-	private List<Long> sortedKeys;
+	/** Quality level: all components are drawn with the configured settings */
+	public static final int QUALITY_FULL = 3;
+	/** Quality level: components that have recently been moved are drawn without antialiasing */
+	public static final int QUALITY_STATIC_ANTIALIASING = 2;
+	/** Quality level: additionally, strokes and texts are rendered for speed and text antialiasing is off */
+	public static final int QUALITY_SPEED = 1;
+	/** Quality level: additionally, the thresholds for drawing components in reduced detail are raised */
+	public static final int QUALITY_LOW = 0;
+	/** Number of frames after a move in which a component counts as moving */
+	private static final int MOTION_FRAMES = 10;
+	/** Number of pixels below which {@link #computePixels(int, int, int, int, PixelFunction, boolean)} does not split a band of rows */
+	private static final int COMPUTE_GRAIN = 4096;
+	/** Distance between the pixels that are computed in the first pass of a progressive computation */
+	private static final int COARSE_STEP = 8;
+	/** Interval in which a shared framebuffer is checked for new frames */
+	private static final int FRAMEBUFFER_POLL_MILLIS = 4;
+	/** Interval in which running animations are advanced */
+	private static final int ANIMATION_FRAME_MILLIS = 16;
+	private final ComponentStore components = new ComponentStore();
+	private final ComponentPool pool = new ComponentPool();
+	private PixelLayer pixels = new PixelLayer();
+	// viewport, only written on the event dispatch thread
+	private volatile double viewX = 0;
+	private volatile double viewY = 0;
+	private volatile double zoom = 1;
+	private TreeMap<Integer,Layer> layers;
 	private boolean useAntialiasing = false;
+	private int componentsDrawn = 0;
+	private int componentsCulled = 0;
+	private final FCanvasMetrics metrics = new FCanvasMetrics();
+	private final LevelOfDetail detail = new LevelOfDetail();
+	private final QualityGovernor governor = new QualityGovernor();
+	private final SpatialIndex spatial = new SpatialIndex();
+	/** texts as issued by the calling threads, so that they can be measured before the commands are applied */
+	private final ConcurrentHashMap<Long,TextMetrics.Label> labels = new ConcurrentHashMap<Long,TextMetrics.Label>();
+	/** copy of the level of the governor for other threads */
+	private volatile int qualityLevel = QUALITY_FULL;
+	/** number of frames painted on the screen, only accessed on the event dispatch thread */
+	private long frameNumber = 0;
+	private volatile Journal journal = null;
+	/** guards starting and stopping the journal */
+	private final Object journalLock = new Object();
+	/** maximum time the event dispatch thread spends on pending commands before other events are processed */
+	private static final long DRAIN_BUDGET_NANOS = 8_000_000L;
+	/** commands and other tasks that wait to be executed on the event dispatch thread */
+	private final Queue<Runnable> pending = new ConcurrentLinkedQueue<Runnable>();
+	private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+	/** threads waiting in {@link #awaitFrame(long)}, only accessed on the event dispatch thread */
+	private final List<CountDownLatch> frameWaiters = new ArrayList<CountDownLatch>();
+	/** shown shared framebuffer or <code>null</code>, only accessed on the event dispatch thread */
+	private FramebufferDisplay framebuffer = null;
+	private final Timer framebufferTimer;
+	/** copy of the number of the shown frame for other threads */
+	private volatile long framebufferSequence = 0;
+	/** performance overlay or <code>null</code> if hidden, only written on the event dispatch thread */
+	private volatile PerformanceHud hud = null;
+	private final AtomicLong animationCounter = new AtomicLong();
+	/** running animations, only accessed on the event dispatch thread */
+	private final AnimationTable animations = new AnimationTable(new AnimationTarget());
+	private final Timer animationTimer;
 	/**
 	 * Creates a new CanvasPanel with white background.
 	 */
 	public FCanvasPanel() {
-		components = new HashMap<Long,FCanvasComponent>();
-		pixels = new HashMap<Point,Color>();
-		sortedKeys = new ArrayList<Long>();
+		layers = new TreeMap<Integer,Layer>();
 		setBackground(Color.WHITE);
-		updateImageBuffer(1,1);
+		metrics.register();
+		framebufferTimer = new Timer(FRAMEBUFFER_POLL_MILLIS, e -> pollFramebuffer());
+		framebufferTimer.setCoalesce(true);
+		animationTimer = new Timer(ANIMATION_FRAME_MILLIS, e -> stepAnimations());
+		animationTimer.setCoalesce(true);
 	}
-	private class ComponentAdder<T> implements Runnable {
-		private Map<Long,? super T> map;
-		private T obj;
-		private long id;
-		public ComponentAdder(Map<Long,? super T> map, long id, T obj) {
-			this.map = map;
-			this.obj = obj;
-			this.id = id;
+	/**
+	 * A change to the panel that is applied on the event dispatch thread.
+	 *
+	 * Subclasses implement {@link #apply()} instead of {@link #run()} so that
+	 * all commands are accounted for in the {@link FCanvasMetrics}.
+	 */
+	private abstract class Command implements Runnable {
+		/**
+		 * Performs the actual change. Called on the event dispatch thread.
+		 */
+		protected abstract void apply();
+		@Override
+		public final void run() {
+			try {
+				apply();
+			} finally {
+				metrics.commandApplied();
+			}
+		}
+	}
+	/**
+	 * Schedules a command for execution on the event dispatch thread.
+	 * @param cmd the command to execute
+	 */
+	private void post(Command cmd) {
+		metrics.commandPosted();
+		enqueue(cmd);
+	}
+	/**
+	 * <p>Appends a task to the queue of pending changes and makes sure that the queue
+	 * will be drained on the event dispatch thread.</p>
+	 * 
+	 * <p>The queue is lock-free, and only the first task that is added to an empty queue
+	 * posts an event to the event queue of AWT. Since the queue is first-in-first-out,
+	 * tasks added by the same thread are executed in the order in which they were added.</p>
+	 * @param task the task to execute
+	 */
+	private void enqueue(Runnable task) {
+		pending.add(task);
+		if (drainScheduled.compareAndSet(false, true)) {
+			SwingUtilities.invokeLater(drainer);
 		}
+	}
+	/**
+	 * Executes pending tasks on the event dispatch thread. If producers keep adding tasks,
+	 * the drainer yields after {@link #DRAIN_BUDGET_NANOS} and reschedules itself, so that
+	 * painting and input events are not starved. It also reschedules itself if a task throws
+	 * an exception, so that the remaining tasks do not wait for the next one to be added.
+	 */
+	private final Runnable drainer = new Runnable() {
 		@Override
 		public void run() {
-			map.put(id, obj);
-			sortedKeys.add(id);
+			// cleared first, so that a task added during the drain schedules another run at worst
+			drainScheduled.set(false);
+			long deadline = System.nanoTime() + DRAIN_BUDGET_NANOS;
+			int count = 0;
+			Runnable task;
+			try {
+				while ((task = pending.poll()) != null) {
+					task.run();
+					if ((++count & 0xFF) == 0 && System.nanoTime() - deadline > 0) break;
+				}
+			} finally {
+				spatial.commit(components);
+				if (!pending.isEmpty() && drainScheduled.compareAndSet(false, true)) {
+					SwingUtilities.invokeLater(this);
+				}
+			}
+		}
+	};
+	/**
+	 * A command that modifies a single component. The command has no effect
+	 * if the component does not exist (anymore), but is counted as stale
+	 * command in the {@link FCanvasMetrics}.
+	 */
+	private abstract class ComponentCommand extends Command {
+		private final long id;
+		public ComponentCommand(long id) {
+			this.id = id;
+		}
+		/**
+		 * Performs the actual change on the component.
+		 * @param c the component with the id of this command
+		 */
+		protected abstract void modify(FCanvasComponent c);
+		@Override
+		protected final void apply() {
+			FCanvasComponent c = components.get(id);
+			if (c == null) {
+				metrics.staleCommand();
+				return;
+			}
+			modify(c);
+			components.getLayer(id).invalidate();
+			spatial.mark(ComponentStore.slot(id));
+		}
+	}
+	/**
+	 * A command that adds a new component in the slot reserved for its id.
+	 */
+	private abstract class ComponentAdder extends Command {
+		private final long id;
+		public ComponentAdder(long id) {
+			this.id = id;
+		}
+		/**
+		 * Creates the new component, preferably by reusing a component from the {@link ComponentPool}.
+		 * @return the new component
+		 */
+		protected abstract FCanvasComponent create();
+		@Override
+		protected final void apply() {
+			Layer layer = getLayer(0);
+			components.put(id, create(), layer);
+			layer.add(ComponentStore.slot(id), 0);
+			markReordered(layer, ComponentStore.slot(id));
 		}
 	}
-	private class PixelSetter implements Runnable {
+	private class PixelSetter extends Command {
 		private Point p;
 		private Color c;
 		public PixelSetter(Point loc, Color c) {
 			this.p = loc;
 			this.c = c;
 		}
-		public void run() {
-			pixels.put(p, c);
-			updateImageBuffer(p.x,p.y);
-			imageBuffer.setRGB(p.x, p.y, c.getRGB());
+		@Override
+		protected void apply() {
+			long bytes = pixels.getBytes();
+			pixels.set(p.x, p.y, c.getRGB());
+			if (pixels.getBytes() != bytes) metrics.pixelBufferResized(pixels.getBytes());
+		}
+	}
+	/**
+	 * Computes a band of rows of a rectangular area of pixels, splitting it into smaller
+	 * bands that are computed in parallel if it contains many pixels.
+	 */
+	private static final class PixelBand extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final PixelFunction f;
+		private final int x;
+		private final int y;
+		private final int width;
+		private final int height;
+		private final int[] argb;
+		private final int from;
+		private final int to;
+		private final int step;
+		private final int computed;
+		/**
+		 * Creates a band of rows.
+		 * @param f the function that computes the pixels
+		 * @param x world x-coordinate of the upper left corner of the area
+		 * @param y world y-coordinate of the upper left corner of the area
+		 * @param width width of the area
+		 * @param height height of the area
+		 * @param argb the pixels of the area in row-major order
+		 * @param from first row of the band relative to y, a multiple of step
+		 * @param to row after the band relative to y
+		 * @param step only every step-th pixel in each direction is computed and fills a square of step x step pixels
+		 * @param computed step of the previous pass, whose pixels are kept, or 0
+		 */
+		PixelBand(PixelFunction f, int x, int y, int width, int height, int[] argb, int from, int to, int step, int computed) {
+			this.f = f;
+			this.x = x;
+			this.y = y;
+			this.width = width;
+			this.height = height;
+			this.argb = argb;
+			this.from = from;
+			this.to = to;
+			this.step = step;
+			this.computed = computed;
+		}
+		@Override
+		protected void compute() {
+			int rows = (to - from + step - 1) / step;
+			if (rows > 1 && (long) rows * ((width + step - 1) / step) > COMPUTE_GRAIN) {
+				int mid = from + rows / 2 * step;
+				invokeAll(new PixelBand(f, x, y, width, height, argb, from, mid, step, computed),
+						new PixelBand(f, x, y, width, height, argb, mid, to, step, computed));
+				return;
+			}
+			for(int r = from; r < to; r += step) {
+				boolean oldRow = computed != 0 && r % computed == 0;
+				for(int c = 0; c < width; c += step) {
+					int i = r * width + c;
+					// pixels of the previous pass are not computed again
+					int v = oldRow && c % computed == 0 ? argb[i] : 0xFF000000 | f.rgb(x + c, y + r);
+					if (step == 1) {
+						argb[i] = v;
+						continue;
+					}
+					int w = Math.min(step, width - c);
+					for(int br = r; br < Math.min(r + step, height); br++) {
+						Arrays.fill(argb, br * width + c, br * width + c + w, v);
+					}
+				}
+			}
 		}
 	}
-	private class ComponentRemover implements Runnable {
+	private class ComponentRemover extends Command {
 		private long id;
 		public ComponentRemover(long id) {
 			this.id = id;
 		}
 		@Override
-		public void run() {
-			if (components.containsKey(id)) {
-				components.remove(id);
-				sortedKeys.remove(id);
+		protected void apply() {
+			Layer layer = components.getLayer(id);
+			if (layer == null) {
+				metrics.staleCommand();
+				return;
 			}
+			layer.remove(ComponentStore.slot(id));
+			pool.recycle(components.remove(id));
+			labels.remove(id);
+			spatial.mark(ComponentStore.slot(id));
+			discardIfEmpty(layer);
 		}
 	}
 	/**
-	 * Increases the size of the cached BufferedImage if necessary
+	 * Records in the spatial index that a component has been placed in the drawing order of a layer.
+	 * Must only be called on the event dispatch thread.
+	 * @param layer the layer of the component
+	 * @param slot the slot of the component
 	 */
-	public void updateImageBuffer(int maxx, int maxy) {
-		if (bufferMaxX > maxx && bufferMaxY > maxy) return;
-		bufferMaxX = Math.max(bufferMaxX, maxx*2);
-		bufferMaxY = Math.max(bufferMaxY, maxy*2);
-		imageBuffer = new BufferedImage(bufferMaxX,bufferMaxY, BufferedImage.TYPE_INT_ARGB);
-		for(Point p : pixels.keySet()) {
-			imageBuffer.setRGB(p.x, p.y, pixels.get(p).getRGB());
+	private void markReordered(Layer layer, int slot) {
+		spatial.mark(slot);
+		if (!layer.takeRenumbered()) return;
+		for(int s = layer.first(); s != ZOrderTree.NIL; s = layer.next(s)) {
+			spatial.mark(s);
 		}
 	}
+	/**
+	 * Returns the layer with the given number, creating it if necessary.
+	 * Must only be called on the event dispatch thread.
+	 * @param n the number of the layer
+	 * @return the layer with the number n
+	 */
+	private Layer getLayer(int n) {
+		Layer layer = layers.get(n);
+		if (layer == null) {
+			layer = new Layer(components.getTree(), n);
+			layers.put(n, layer);
+		}
+		return layer;
+	}
+	/**
+	 * Removes a layer if it is no longer needed.
+	 * Must only be called on the event dispatch thread.
+	 * @param layer the layer to check
+	 */
+	private void discardIfEmpty(Layer layer) {
+		if (!layer.isDisposable()) return;
+		layers.values().remove(layer);
+	}
+	/**
+	 * Formerly increased the size of the image holding the pixel layer.
+	 * @param maxx ignored
+	 * @param maxy ignored
+	 * @deprecated the pixel layer is divided into tiles that are allocated when the first of their pixels is set
+	 */
+	@Deprecated
+	public void updateImageBuffer(int maxx, int maxy) {
+		// nothing to do
+	}
 	/**
 	 * Repaints the Canvas and makes all changes visible.
 	 */
-	public synchronized void updateCanvas() {
+	public void updateCanvas() {
+		Journal j = journal;
+		if (j != null) j.record(Journal.UPDATE);
+		metrics.repaintRequested();
 		Runnable run = new Runnable(){
 			@Override
 			public void run() {
 				FCanvasPanel.this.repaint();
 			}
 		};
-		SwingUtilities.invokeLater(run);
+		// queued behind the pending commands, so that the next frame contains them
+		enqueue(run);
 	}
 	
 	@Override
 	public void paintComponent(Graphics g) {
+		long nanos = render(g, true);
+		// painted after the paint time has been measured, so that it does not distort it
+		if (hud != null) hud.paint((Graphics2D) g, getGraphicsConfiguration());
+		frameNumber++;
+		if (governor.framePainted(nanos, metrics.getFrameBudgetNanos())) {
+			qualityLevel = governor.getLevel();
+			// cached layers have been rendered with the old quality
+			for(Layer layer : layers.values()) {
+				layer.invalidate();
+			}
+		}
+		// the frame contains all commands that were applied before the waiters were registered
+		for(CountDownLatch waiter : frameWaiters) {
+			waiter.countDown();
+		}
+		frameWaiters.clear();
+	}
+	/**
+	 * Paints a frame as {@link #paintComponent(Graphics)} would, but without releasing
+	 * threads waiting for a frame on the screen. Used by {@link JournalReplay}.
+	 * Must only be called on the event dispatch thread.
+	 * @param g the Graphics object to paint on
+	 */
+	void paintOffscreen(Graphics g) {
+		render(g, true);
+	}
+	/**
+	 * Paints the background, the pixel layer and all components.
+	 * Must only be called on the event dispatch thread.
+	 * @param g the Graphics object to paint on
+	 * @param frame if <code>true</code> the paint is counted as frame in the metrics
+	 * @return the time it took to paint in nanoseconds
+	 */
+	private long render(Graphics g, boolean frame) {
+		long start = System.nanoTime();
 		super.paintComponent(g);
 		//Copy Graphics object so changes do not affect other components
 		Graphics2D g2 = (Graphics2D)g.create();
+		int quality = governor.getLevel();
+		detail.setReduced(quality <= QUALITY_LOW);
+		applyRenderingHints(g2, quality);
+		java.awt.Rectangle clip = g2.getClipBounds();
+		if (clip == null) clip = new java.awt.Rectangle(0, 0, getWidth(), getHeight());
+		AffineTransform screen = g2.getTransform();
+		AffineTransform view = getViewTransform();
+		g2.transform(view);
+		Rectangle2D area = toWorld(view, clip);
+		pixels.paint(g2, area);
+		if (framebuffer != null) framebuffer.paint(g2);
+		componentsDrawn = 0;
+		componentsCulled = 0;
+		for(Layer layer : layers.values()) {
+			if (!layer.isFrozen()) {
+				paintLayer(g2, layer, area, view);
+				continue;
+			}
+			if (layer.needsRendering(getWidth(), getHeight())) {
+				Graphics2D lg = layer.beginRendering(getGraphicsConfiguration(), getWidth(), getHeight());
+				applyRenderingHints(lg, quality);
+				lg.transform(view);
+				int drawn = componentsDrawn;
+				int culled = componentsCulled;
+				paintLayer(lg, layer, toWorld(view, new java.awt.Rectangle(0, 0, getWidth(), getHeight())), view);
+				lg.dispose();
+				layer.setRenderedCounts(componentsDrawn - drawn, componentsCulled - culled);
+			} else {
+				// members in the cached image count as drawn in every frame that shows it
+				componentsDrawn += layer.getCacheDrawn();
+				componentsCulled += layer.getCacheCulled();
+			}
+			// the cache already contains the view transform
+			g2.setTransform(screen);
+			g2.drawImage(layer.getCache(), 0, 0, null);
+			g2.transform(view);
+		}
+		g2.dispose();
+		int count = components.size();
+		long nanos = System.nanoTime() - start;
+		// taken in any case, so that the count of the next frame does not include this paint
+		int simplified = detail.takeSimplified();
+		if (frame) metrics.framePainted(nanos, count, componentsDrawn, componentsCulled, simplified);
+		return nanos;
+	}
+	/**
+	 * Sets the rendering hints for the antialiasing setting and a quality level.
+	 * @param g2 the Graphics object to paint on
+	 * @param quality the quality level of the {@link QualityGovernor}
+	 */
+	private void applyRenderingHints(Graphics2D g2, int quality) {
 		Object val = useAntialiasing ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF;
 		g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, val);
+		if (quality <= QUALITY_SPEED) {
+			g2.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED);
+			g2.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_NORMALIZE);
+			g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_OFF);
+		}
+	}
+	/**
+	 * Returns the transformation from world coordinates to the coordinates of this panel.
+	 * @return the view transform of the current viewport
+	 */
+	private AffineTransform getViewTransform() {
+		double z = zoom;
+		return new AffineTransform(z, 0, 0, z, -viewX * z, -viewY * z);
+	}
+	/**
+	 * Converts an area of the panel to world coordinates.
+	 * @param view the view transform
+	 * @param area the area in panel coordinates
+	 * @return the area in world coordinates, enlarged by one pixel for rounding
+	 */
+	private static Rectangle2D toWorld(AffineTransform view, java.awt.Rectangle area) {
+		double z = view.getScaleX();
+		double x = (area.x - 1 - view.getTranslateX()) / z;
+		double y = (area.y - 1 - view.getTranslateY()) / z;
+		return new Rectangle2D.Double(x, y, (area.width + 2) / z, (area.height + 2) / z);
+	}
+	/**
+	 * Paints all components of a layer.
+	 * @param g2 the Graphics object to paint on
+	 * @param layer the layer to paint
+	 * @param clip the visible area in world coordinates or <code>null</code> if all components should be drawn
+	 * @param view the view transform that has been applied to g2
+	 */
+	private void paintLayer(Graphics2D g2, Layer layer, Rectangle2D clip, AffineTransform view) {
 		//remember old transformation matrix to reset
 		AffineTransform t = g2.getTransform();
-		//List<Long> sortedKeys = new ArrayList<Long>(components.keySet());
-		//Collections.sort(sortedKeys);
-		g2.drawImage(imageBuffer, null, 0,0);
-		for(long id : sortedKeys) {
-			FCanvasComponent c = components.get(id);
+		detail.begin(view, getWidth(), getHeight());
+		// under pressure, antialiasing is only used for components that stand still
+		boolean staticAntialiasing = useAntialiasing && governor.getLevel() <= QUALITY_STATIC_ANTIALIASING;
+		boolean antialiasing = useAntialiasing;
+		for(int slot = layer.first(); slot != ZOrderTree.NIL; slot = layer.next(slot)) {
+			FCanvasComponent c = components.getAt(slot);
+			if (!c.isVisible()) continue;
+			// skip components that cannot be visible
+			if (clip != null && !clip.intersects(c.getBounds())) {
+				componentsCulled++;
+				continue;
+			}
+			componentsDrawn++;
+			// components that are too small on the screen are simplified
+			if (detail.paint(g2, c)) continue;
+			if (staticAntialiasing && antialiasing == components.isMoving(slot, frameNumber, MOTION_FRAMES)) {
+				antialiasing = !antialiasing;
+				g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, antialiasing ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF);
+			}
 			g2.setStroke(c.getStroke());
-			if(c instanceof Rectangle) {
-				Rectangle r = (Rectangle) c;
-				g2.rotate(Math.toRadians(r.getRotation()),r.getLeft()+r.getWidth()/2.0,r.getTop()+r.getHeight()/2.0);
-				g2.setPaint(r.getFillColor());
-				// draw the filled rectangle first
-				g2.fillRect(r.getLeft(), r.getTop(), r.getWidth(), r.getHeight());
-				g2.setPaint(r.getStrokeColor());
-				// and then the border
-				g2.drawRect(r.getLeft(), r.getTop(), r.getWidth(), r.getHeight());
-			} else if (c instanceof Oval) {
-				Oval o = (Oval)c;
-				g2.rotate(Math.toRadians(o.getRotation()),o.getLeft()+o.getWidth()/2.0,o.getTop()+o.getHeight()/2.0);
-				g2.setPaint(o.getFillColor());
-				g2.fillOval(o.getLeft(), o.getTop(), o.getWidth(), o.getHeight());
-				g2.setPaint(o.getStrokeColor());
-				g2.drawOval(o.getLeft(), o.getTop(), o.getWidth(), o.getHeight());
-			} else if (c instanceof Line) {
-				Line l = (Line)c;
-				g2.rotate(Math.toRadians(l.getRotation()),l.getX1()+(l.getX2()-l.getX1())/2.0,l.getY1()+(l.getY2()-l.getY1())/2.0);
-				g2.setPaint(l.getStrokeColor());
-				g2.drawLine(l.getX1(), l.getY1(), l.getX2(), l.getY2());
-			} else if (c instanceof Text) {
+			if (c instanceof Text) {
+				// glyphs cannot be cached as shape, so the cached transform is applied instead
 				Text tx = (Text)c;
-				g2.rotate(Math.toRadians(tx.getRotation()),tx.getLeft(),tx.getBaseline());
+				boolean rotated = tx.getRotation() != 0;
+				if (rotated) g2.transform(tx.getTransform());
 				g2.setPaint(tx.getStrokeColor());
 				g2.setFont(tx.getFont());
 				g2.drawString(tx.getText(), tx.getLeft(), tx.getBaseline());
-			} else if (c instanceof Polygon) {
-				Polygon p = (Polygon)c;
-				g2.rotate(Math.toRadians(p.getRotation()),p.getCentroidX(),p.getCentroidY());
-				g2.setPaint(p.getFillColor());
-				g2.fillPolygon(p.getXCoords(),p.getYCoords(), p.getXCoords().length);
-				g2.setPaint(p.getStrokeColor());
-				g2.drawPolygon(p.getXCoords(),p.getYCoords(), p.getXCoords().length);
+				if (rotated) g2.setTransform(t);
+			} else if (c instanceof Sprite) {
+				Sprite s = (Sprite)c;
+				boolean rotated = s.getRotation() != 0;
+				if (rotated) g2.transform(s.getTransform());
+				// a plain copy of the pixels unless the sprite has been resized
+				g2.drawImage(s.getImage(), s.getLeft(), s.getTop(), s.getWidth(), s.getHeight(), null);
+				if (rotated) g2.setTransform(t);
+			} else if (c instanceof Tilemap) {
+				paintTilemap(g2, (Tilemap)c, clip);
+				g2.setTransform(t);
+			} else if (c instanceof Line) {
+				g2.setPaint(c.getStrokeColor());
+				g2.draw(c.getShape());
+			} else {
+				// rectangles, ovals and polygons: the filled area first, then the border
+				Shape shape = c.getShape();
+				g2.setPaint(c.getFillColor());
+				g2.fill(shape);
+				g2.setPaint(c.getStrokeColor());
+				g2.draw(shape);
+			}
+		}
+		if (antialiasing != useAntialiasing) {
+			g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		}
+		detail.end(g2);
+	}
+	/**
+	 * Paints the chunks of a tilemap that intersect the visible area.
+	 * @param g2 the Graphics object to paint on, transformed to world coordinates
+	 * @param tm the tilemap
+	 * @param clip the visible area in world coordinates or <code>null</code> if all chunks should be drawn
+	 */
+	private static void paintTilemap(Graphics2D g2, Tilemap tm, Rectangle2D clip) {
+		Rectangle2D area = clip;
+		if (tm.getRotation() != 0) {
+			g2.transform(tm.getTransform());
+			// the visible area in the coordinates of the unrotated tilemap
+			try {
+				if (area != null) area = tm.getTransform().createInverse().createTransformedShape(area).getBounds2D();
+			} catch (NoninvertibleTransformException e) {
+				area = null;
+			}
+		}
+		int cw = tm.getTileWidth() * Tilemap.CHUNK_SIZE;
+		int ch = tm.getTileHeight() * Tilemap.CHUNK_SIZE;
+		int cx0 = 0;
+		int cy0 = 0;
+		int cx1 = tm.getChunkColumns() - 1;
+		int cy1 = tm.getChunkRows() - 1;
+		if (area != null) {
+			cx0 = (int) Math.max(cx0, Math.floor((area.getMinX() - tm.getLeft()) / cw));
+			cy0 = (int) Math.max(cy0, Math.floor((area.getMinY() - tm.getTop()) / ch));
+			cx1 = (int) Math.min(cx1, Math.floor((area.getMaxX() - tm.getLeft()) / cw));
+			cy1 = (int) Math.min(cy1, Math.floor((area.getMaxY() - tm.getTop()) / ch));
+		}
+		for(int cy = cy0; cy <= cy1; cy++) {
+			for(int cx = cx0; cx <= cx1; cx++) {
+				g2.drawImage(tm.getChunk(cx, cy), tm.getLeft() + cx * cw, tm.getTop() + cy * ch, null);
 			}
-			g2.setTransform(t);
 		}
 	}
 	
-	public synchronized void setPixel(Point p, Color c) {
+	public void setPixel(Point p, Color c) {
+		Journal j = journal;
+		if (j != null) j.recordValues(Journal.PIXEL, p.x, p.y, c.getRGB());
 		PixelSetter ps = new PixelSetter(p,c);
-		SwingUtilities.invokeLater(ps);
+		post(ps);
 	}
 	/**
-	 * <p>Adds a rectangle.</p>
+	 * <p>Sets the pixels of a rectangular area to the colors computed by a function.</p>
+	 * 
+	 * <p>The function is evaluated in parallel on all cores of the processor, using bands of
+	 * rows on the common {@link ForkJoinPool}. The computed pixels are then written into the
+	 * pixel layer with a single command. The calling thread waits until all pixels have been
+	 * computed. If the function throws an exception, it is rethrown to the caller and the
+	 * pixels of the unfinished pass are not set.</p>
+	 * 
+	 * <p>If <code>progressive</code> is <code>true</code>, the area is first computed with only every
+	 * {@value #COARSE_STEP}th pixel in each direction, each filling a square of neighbouring pixels,
+	 * and then refined in passes that halve the distance until all pixels have been computed.
+	 * Each pass is shown on the screen as soon as it is finished, which gives early feedback for
+	 * functions that are expensive to compute. Pixels of earlier passes are not computed again,
+	 * so this takes only slightly longer than computing all pixels at once.</p>
 	 * 
 	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
 	 * 
-	 * @param left x-coordinate of the upper-left corner of the rectangle
-	 * @param top Y-coordinate of the upper-left corner of the rectangle
-	 * @param width Width of the rectangle
-	 * @param height Height of the rectangle
-	 * @return id of the created rectangle
+	 * @param x x-coordinate of the upper-left corner of the area
+	 * @param y y-coordinate of the upper-left corner of the area
+	 * @param width width of the area
+	 * @param height height of the area
+	 * @param f the function that computes the color of a pixel from its coordinates
+	 * @param progressive if <code>true</code>, the area is refined from coarse to fine and each pass is shown
 	 */
-	public synchronized long addRectangle(int left, int top, int width, int height) {
-		final Rectangle r = new Rectangle(left,top,width,height);
-		final long id = ++idcounter;
-		ComponentAdder<Rectangle> add = new ComponentAdder<Rectangle>(components,id,r);
-		SwingUtilities.invokeLater(add);
-		return id;
+	public void computePixels(final int x, final int y, final int width, final int height, PixelFunction f, boolean progressive) {
+		if (width <= 0 || height <= 0) return;
+		if ((long) width * height > Integer.MAX_VALUE - 8) throw new IllegalArgumentException("Area too large: " + width + "x" + height);
+		int[] argb = new int[width * height];
+		int computed = 0;
+		for(int step = progressive ? COARSE_STEP : 1; step >= 1; step /= 2) {
+			ForkJoinPool.commonPool().invoke(new PixelBand(f, x, y, width, height, argb, 0, height, step, computed));
+			computed = step;
+			// the next pass changes the array while this one may still be copied
+			final int[] pass = step == 1 ? argb : argb.clone();
+			if (step == 1) {
+				Journal j = journal;
+				if (j != null) j.recordValues(Journal.PIXELS, x, y, width, height, argb);
+			}
+			post(new Command() {
+				@Override
+				protected void apply() {
+					long bytes = pixels.getBytes();
+					pixels.setPixels(x, y, width, height, pass);
+					if (pixels.getBytes() != bytes) metrics.pixelBufferResized(pixels.getBytes());
+				}
+			});
+			if (step > 1) updateCanvas();
+		}
 	}
 	/**
-	 * <p>Adds an oval.</p>
+	 * <p>Indicates whether two components overlap.</p>
+	 * 
+	 * <p>Components are compared by their exact outlines, taking rotation, the curves of ovals
+	 * and the corners of polygons into account. Lines are treated as the area that is covered by
+	 * their stroke, the stroke of all other components is ignored. Invisible components do not
+	 * overlap with anything.</p>
+	 * 
+	 * <p>The query is answered from an index that is updated on the event dispatch thread after
+	 * the pending commands have been applied, so it does not wait for the event dispatch thread.
+	 * Use {@link #flush(long)} first to make sure that the changes of the calling thread are included.</p>
 	 * 
 	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
 	 * 
-	 * @param left x-coordinate of the top left point of the oval's bounding box
-	 * @param top Y coordinate of the upper left point of the bounding box of the oval
-	 * @param width Width of the oval
-	 * @param height Height of the oval
-	 * @return id of the created oval
+	 * @param id1 the id of the first component
+	 * @param id2 the id of the second component
+	 * @return <code>true</code> if both components exist, are visible and overlap, <code>false</code> if the ids are equal
 	 */
-	public synchronized long addOval(int left, int top, int width, int height) {
-		final Oval o = new Oval(left,top,width,height);
-		final long id = ++idcounter;
-		ComponentAdder<Oval> add = new ComponentAdder<Oval>(components,id,o);
-		SwingUtilities.invokeLater(add);
-		return id;
+	public boolean intersects(long id1, long id2) {
+		return spatial.intersects(id1, id2);
 	}
 	/**
-	 * <p>Adds a straight line between the points (x1,y1) and (x2,y2).</p>
+	 * <p>Returns all components that overlap a component, as defined by {@link #intersects(long, long)}.</p>
+	 * 
+	 * <p>Only components near the given component are tested, so calling this method for each of
+	 * thousands of components in every frame is feasible.</p>
 	 * 
 	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
 	 * 
-	 * @param x1 x-coordinate of the first point
-	 * @param y1 y coordinate of the first point
-	 * @param x2 x-coordinate of the second point
-	 * @param y2 y coordinate of the second point
-	 * @return id of the created line
+	 * @param id the id of the component
+	 * @return the ids of all other components that overlap it, empty if it does not exist or is invisible
 	 */
-	public synchronized long addLine(int x1, int y1, int x2, int y2) {
-		final Line l = new Line(x1,y1,x2,y2);
-		final long id = ++idcounter;
-		ComponentAdder<Line> add = new ComponentAdder<Line>(components,id,l);
-		SwingUtilities.invokeLater(add);
-		return id;
+	public long[] collisions(long id) {
+		return spatial.collisions(id);
 	}
 	/**
-	 * <p>Adds a polygon.</p>
+	 * <p>Returns all visible components that overlap a rectangle, as defined by {@link #intersects(long, long)}.</p>
 	 * 
 	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
 	 * 
-	 * @param xcoords array of x-coordinates of polygon points
-	 * @param ycoords array of y-coordinates of polygon points
-	 * @return id of the created polygon
+	 * @param x x-coordinate of the upper-left corner of the rectangle
+	 * @param y y-coordinate of the upper-left corner of the rectangle
+	 * @param width width of the rectangle
+	 * @param height height of the rectangle
+	 * @return the ids of all components that overlap the rectangle
 	 */
-	public synchronized long addPolygon(int[] xcoords, int[] ycoords) {
-		final Polygon p = new Polygon(xcoords,ycoords);
-		final long id = ++idcounter;
-		ComponentAdder<Polygon> add = new ComponentAdder<Polygon>(components,id,p);
-		SwingUtilities.invokeLater(add);
-		return id;
+	public long[] componentsIn(double x, double y, double width, double height) {
+		return spatial.componentsIn(x, y, width, height);
 	}
 	/**
-	 * <p>Adds a text.</p>
+	 * <p>Returns the topmost component at a point, e.g. to select the component under the mouse.</p>
+	 * 
+	 * <p>A component is hit if the point lies in its filled area or on its stroke, taking rotation
+	 * and the exact shape of ovals and polygons into account. Lines are hit on their stroke, texts,
+	 * images and tilemaps within their bounding box. Invisible components are never hit. Like
+	 * {@link #intersects(long, long)}, the query is answered from an index without waiting for the
+	 * event dispatch thread and only tests the components near the point.</p>
 	 * 
 	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
 	 * 
-	 * @param text the text to draw
-	 * @param left the x-coordinate of the first character
-	 * @param baseline the y-coordinate of the baseline of the first character
-	 * @return id of the created text
+	 * @param x x-coordinate of the point in world coordinates
+	 * @param y y-coordinate of the point in world coordinates
+	 * @return the id of the component that is drawn on top of all others at this point, 0 if there is none
 	 */
-	public synchronized long addText(String text, int left, int baseline) {
-		final Text t = new Text(text,left,baseline);
-		final long id = ++idcounter;
-		ComponentAdder<Text> add = new ComponentAdder<Text>(components,id,t);
-		SwingUtilities.invokeLater(add);
-		return id;
+	public long componentAt(double x, double y) {
+		return spatial.componentAt(x, y);
 	}
 	/**
-	 * <p>Changes the font size of a text component.</p>
+	 * <p>Returns all components at a point, as defined by {@link #componentAt(double, double)}.</p>
 	 * 
 	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
 	 * 
-	 * @param id the id of the text component
-	 * @param points the new font size in pt
-	 * @pre id must belong to an existing text component
+	 * @param x x-coordinate of the point in world coordinates
+	 * @param y y-coordinate of the point in world coordinates
+	 * @return the ids of the components in the reverse drawing order, i.e. the topmost component first
 	 */
-	public synchronized void setFontSize(final long id, final int points) {
-		Runnable run = new Runnable(){
+	public long[] componentsAt(double x, double y) {
+		return spatial.componentsAt(x, y);
+	}
+	/**
+	 * <p>Shows the frames of a {@link SharedFramebuffer} that is written by another process or thread,
+	 * replacing a framebuffer that is already shown.</p>
+	 * 
+	 * <p>The framebuffer is drawn above the pixel layer and below all components. It is checked for
+	 * new frames every {@value #FRAMEBUFFER_POLL_MILLIS} ms on the event dispatch thread, and each new
+	 * frame is copied in a single bulk transfer from the mapped file and repainted without a call of
+	 * {@link #updateCanvas()}. Frames that the writer produces faster than they are checked are skipped.
+	 * Since the frames are produced outside of the panel, they are neither recorded in a
+	 * journal nor saved in scenes. A journal only records that the file is shown.</p>
+	 * 
+	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
+	 * 
+	 * @param file the path of the framebuffer file
+	 * @param left x-coordinate of the upper-left corner of the frames
+	 * @param top y-coordinate of the upper-left corner of the frames
+	 * @throws IOException if the file cannot be read or is not a framebuffer
+	 */
+	public void showFramebuffer(Path file, final int left, final int top) throws IOException {
+		final SharedFramebuffer fb = SharedFramebuffer.open(file);
+		Journal j = journal;
+		if (j != null) j.recordValues(Journal.SHOW_FRAMEBUFFER, file.toAbsolutePath().toString(), left, top);
+		post(new Command() {
 			@Override
-			public void run() {
-				FCanvasComponent c = getFCComponent(id);
-				if(!(c instanceof Text)) return;
-				Text t = (Text)c;
-				t.setFontSize(points);
+			protected void apply() {
+				closeFramebuffer();
+				framebuffer = new FramebufferDisplay(fb, left, top);
+				pollFramebuffer();
+				framebufferTimer.start();
 			}
-		};
-		SwingUtilities.invokeLater(run);
+		});
 	}
 	/**
-	 * <p>Changes the fill color of a component.</p>
-	 * 
-	 * <p>Has no effect on lines and text.</p>
+	 * <p>Stops showing the framebuffer and closes its file.</p>
 	 * 
 	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
-	 *
-	 * @param id the id of the component
-	 * @param r value for the red channel (0 to 255)
-	 * @param g value for the green channel (0 to 255)
-	 * @param b value for the blue channel (0 to 255)
-	 * @param a value for the alpha channel (0 to 255)
-	 * @pre id must belong to an existing component
 	 */
-	public synchronized void setFillColor(final long id,final int r,final int g,final int b,final int a) {
-		Runnable run = new Runnable(){
+	public void hideFramebuffer() {
+		Journal j = journal;
+		if (j != null) j.record(Journal.HIDE_FRAMEBUFFER);
+		post(new Command() {
 			@Override
-			public void run() {
-				getFCComponent(id).setFillColor(r, g, b, a);
+			protected void apply() {
+				closeFramebuffer();
 			}
-		};
-		SwingUtilities.invokeLater(run);
+		});
 	}
 	/**
-	 * <p>Changes the stroke color of a component.</p>
+	 * Returns the number of the frame of the shared framebuffer that is shown, e.g. to let
+	 * a producer wait until its frames are displayed.
+	 * @return the frame number, 0 if no framebuffer or no frame of it is shown
+	 */
+	public long getFramebufferSequence() {
+		return framebufferSequence;
+	}
+	/**
+	 * Shows the newest frame of the framebuffer if there is one.
+	 * Must only be called on the event dispatch thread.
+	 */
+	private void pollFramebuffer() {
+		if (framebuffer == null || !framebuffer.poll()) return;
+		framebufferSequence = framebuffer.getSequence();
+		repaint();
+	}
+	/**
+	 * Removes the shown framebuffer if there is one.
+	 * Must only be called on the event dispatch thread.
+	 */
+	private void closeFramebuffer() {
+		framebufferTimer.stop();
+		if (framebuffer == null) return;
+		framebuffer.close();
+		framebuffer = null;
+		framebufferSequence = 0;
+		repaint();
+	}
+	/**
+	 * Reads and writes the animated properties of the components of this panel.
+	 */
+	private class AnimationTarget implements AnimationTable.Target {
+		@Override
+		public double get(long id, int property) {
+			FCanvasComponent c = components.get(id);
+			if (c == null) return Double.NaN;
+			switch (property) {
+				case Tween.X:
+					return originX(c);
+				case Tween.Y:
+					return originY(c);
+				case Tween.ROTATION:
+					return c.getRotation();
+				case Tween.WIDTH:
+					if (c instanceof Rectangle) return ((Rectangle) c).getWidth();
+					if (c instanceof Oval) return ((Oval) c).getWidth();
+					if (c instanceof Sprite) return ((Sprite) c).getWidth();
+					return Double.NaN;
+				case Tween.HEIGHT:
+					if (c instanceof Rectangle) return ((Rectangle) c).getHeight();
+					if (c instanceof Oval) return ((Oval) c).getHeight();
+					if (c instanceof Sprite) return ((Sprite) c).getHeight();
+					return Double.NaN;
+				case Tween.STROKE_WIDTH:
+					if (!(c.getStroke() instanceof BasicStroke)) return Double.NaN;
+					return ((BasicStroke) c.getStroke()).getLineWidth();
+				default:
+					if (!(c.getFillColor() instanceof Color)) return Double.NaN;
+					Color fill = (Color) c.getFillColor();
+					switch (property) {
+						case Tween.FILL_RED: return fill.getRed();
+						case Tween.FILL_GREEN: return fill.getGreen();
+						case Tween.FILL_BLUE: return fill.getBlue();
+						default: return fill.getAlpha();
+					}
+			}
+		}
+		@Override
+		public boolean set(long id, int property, double value) {
+			FCanvasComponent c = components.get(id);
+			if (c == null) return false;
+			int v = (int) Math.round(value);
+			switch (property) {
+				case Tween.X:
+					c.move(v, (int) originY(c));
+					components.setMoved(id, frameNumber);
+					break;
+				case Tween.Y:
+					c.move((int) originX(c), v);
+					components.setMoved(id, frameNumber);
+					break;
+				case Tween.ROTATION:
+					c.setRotation((float) value);
+					components.setMoved(id, frameNumber);
+					break;
+				case Tween.WIDTH:
+					if (c instanceof Rectangle) ((Rectangle) c).setWidth(v);
+					else if (c instanceof Oval) ((Oval) c).setWidth(v);
+					else if (c instanceof Sprite) ((Sprite) c).setWidth(v);
+					components.setMoved(id, frameNumber);
+					break;
+				case Tween.HEIGHT:
+					if (c instanceof Rectangle) ((Rectangle) c).setHeight(v);
+					else if (c instanceof Oval) ((Oval) c).setHeight(v);
+					else if (c instanceof Sprite) ((Sprite) c).setHeight(v);
+					components.setMoved(id, frameNumber);
+					break;
+				case Tween.STROKE_WIDTH:
+					c.setStrokeWidth(v);
+					break;
+				default:
+					if (!(c.getFillColor() instanceof Color)) break;
+					Color fill = (Color) c.getFillColor();
+					v = Math.max(0, Math.min(255, v));
+					c.setFillColor(property == Tween.FILL_RED ? v : fill.getRed(),
+							property == Tween.FILL_GREEN ? v : fill.getGreen(),
+							property == Tween.FILL_BLUE ? v : fill.getBlue(),
+							property == Tween.FILL_ALPHA ? v : fill.getAlpha());
+			}
+			components.getLayer(id).invalidate();
+			spatial.mark(ComponentStore.slot(id));
+			return true;
+		}
+	}
+	/**
+	 * Returns the x-coordinate of the point that {@link FCanvasComponent#move(int, int)} moves.
+	 * @param c the component
+	 * @return the x-coordinate of its origin
+	 */
+	private static double originX(FCanvasComponent c) {
+		if (c instanceof Rectangle) return ((Rectangle) c).getLeft();
+		if (c instanceof Oval) return ((Oval) c).getLeft();
+		if (c instanceof Text) return ((Text) c).getLeft();
+		if (c instanceof Line) return ((Line) c).getX1();
+		if (c instanceof Sprite) return ((Sprite) c).getLeft();
+		if (c instanceof Tilemap) return ((Tilemap) c).getLeft();
+		if (c instanceof Polygon && ((Polygon) c).getXCoords().length > 0) return ((Polygon) c).getXCoords()[0];
+		return Double.NaN;
+	}
+	/**
+	 * Returns the y-coordinate of the point that {@link FCanvasComponent#move(int, int)} moves.
+	 * @param c the component
+	 * @return the y-coordinate of its origin
+	 */
+	private static double originY(FCanvasComponent c) {
+		if (c instanceof Rectangle) return ((Rectangle) c).getTop();
+		if (c instanceof Oval) return ((Oval) c).getTop();
+		if (c instanceof Text) return ((Text) c).getBaseline();
+		if (c instanceof Line) return ((Line) c).getY1();
+		if (c instanceof Sprite) return ((Sprite) c).getTop();
+		if (c instanceof Tilemap) return ((Tilemap) c).getTop();
+		if (c instanceof Polygon && ((Polygon) c).getYCoords().length > 0) return ((Polygon) c).getYCoords()[0];
+		return Double.NaN;
+	}
+	/**
+	 * Checks the arguments of an animation.
+	 */
+	private static void checkAnimation(int property, int durationMillis, int easing) {
+		if (property < 0 || property >= Tween.PROPERTIES) throw new IllegalArgumentException("Unknown property " + property);
+		if (easing < 0 || easing >= Tween.EASINGS) throw new IllegalArgumentException("Unknown easing " + easing);
+		if (durationMillis < 0) throw new IllegalArgumentException("Duration must not be negative");
+	}
+	/**
+	 * <p>Animates a property of a component: starting from its current value, the property
+	 * is changed in every frame until it reaches the target value after the given duration.</p>
 	 * 
-	 * <p>With <code>alpha == 0</code> the bar becomes invisible.</p>
+	 * <p>The values are computed on the event dispatch thread once per frame for all running
+	 * animations, so the calling thread does not need a loop and thousands of simultaneous
+	 * animations are cheap. If an animation of the same property of the same component is
+	 * already running, it is replaced and counts as finished. An animation ends early if its
+	 * component is removed. Coordinates, sizes, stroke widths and colors are rounded to whole numbers.</p>
 	 * 
 	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
 	 * 
 	 * @param id the id of the component
-	 * @param r value for the red channel (0 to 255)
-	 * @param g value for the green channel (0 to 255)
-	 * @param b value for the blue channel (0 to 255)
-	 * @param a value for the alpha channel (0 to 255)
-	 * @pre id must belong to an existing component
+	 * @param property the property to animate, e.g. {@link Tween#X}
+	 * @param target the value of the property at the end of the animation
+	 * @param durationMillis the duration in milliseconds
+	 * @param easing the easing function, e.g. {@link Tween#EASE_IN_OUT}
+	 * @return a handle that identifies the animation
+	 * @see #animateAfter(long, long, int, double, int, int)
+	 * @see #awaitAnimation(long, long)
 	 */
-	public synchronized void setStrokeColor(final long id,final int r,final int g,final int b,final int a) {
-		Runnable run = new Runnable(){
+	public long animate(final long id, final int property, final double target, final int durationMillis, final int easing) {
+		checkAnimation(property, durationMillis, easing);
+		final long handle = animationCounter.incrementAndGet();
+		Journal j = journal;
+		if (j != null) j.record(Journal.ANIMATE, handle, id, property, target, durationMillis, easing);
+		post(new Command() {
 			@Override
-			public void run() {
-				getFCComponent(id).setStrokeColor(r, g, b, a);
+			protected void apply() {
+				animations.start(handle, id, property, target, durationMillis * 1_000_000L, easing, System.nanoTime());
+				animationTimer.start();
 			}
-		};
-		SwingUtilities.invokeLater(run);
+		});
+		return handle;
 	}
 	/**
-	 * <p>Changes the stroke width for the component.</p>
+	 * <p>Animates a property of a component as soon as another animation has finished, e.g. to
+	 * build a sequence of animations. The animation starts from the value of the property at
+	 * that time. If the other animation has already finished, the animation starts immediately.</p>
 	 * 
 	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
 	 * 
-	 * In the case of ovals, rectangles and polygons, this means the width of the border.
-	 * This method has no effect on text.
-	 * 
+	 * @param previous the handle of the other animation
 	 * @param id the id of the component
-	 * @param w the new stroke width (in pixels)
-	 * @pre id must belong to an existing component
+	 * @param property the property to animate, e.g. {@link Tween#X}
+	 * @param target the value of the property at the end of the animation
+	 * @param durationMillis the duration in milliseconds
+	 * @param easing the easing function, e.g. {@link Tween#EASE_IN_OUT}
+	 * @return a handle that identifies the animation
+	 * @see #animate(long, int, double, int, int)
 	 */
-	public synchronized void setStrokeWidth(final long id,final int w) {
-		Runnable run = new Runnable(){
+	public long animateAfter(final long previous, final long id, final int property, final double target, final int durationMillis, final int easing) {
+		checkAnimation(property, durationMillis, easing);
+		final long handle = animationCounter.incrementAndGet();
+		Journal j = journal;
+		if (j != null) j.record(Journal.ANIMATE_AFTER, previous, handle, id, property, target, durationMillis, easing);
+		post(new Command() {
 			@Override
-			public void run() {
-				getFCComponent(id).setStrokeWidth(w);
-				FCanvasPanel.this.repaint();
+			protected void apply() {
+				animations.startAfter(previous, handle, id, property, target, durationMillis * 1_000_000L, easing, System.nanoTime());
+				animationTimer.start();
 			}
-		};
-		SwingUtilities.invokeLater(run);
+		});
+		return handle;
 	}
 	/**
-	 * <p>Changes the rotation angle for a component.</p>
-	 * 
-	 * <p>Rectangles, ovals, lines and polygons are rotated around their center.</p>
-	 * 
-	 * <p>Texts are rotated around their origin (left,baseline).</p>
+	 * <p>Stops an animation. The property keeps the value that it has reached, and animations
+	 * that wait for this animation start. Animations that have already finished are not affected.</p>
 	 * 
 	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
 	 * 
-	 * @param id the id of the component
-	 * @param r rotation angle in degrees
+	 * @param handle the handle of the animation
 	 */
-	public synchronized void setRotation(final long id,final float r) {
-		Runnable run = new Runnable(){
+	public void cancelAnimation(final long handle) {
+		Journal j = journal;
+		if (j != null) j.record(Journal.CANCEL_ANIMATION, handle);
+		post(new Command() {
 			@Override
-			public void run() {
-				getFCComponent(id).setRotation(r);
+			protected void apply() {
+				animations.cancel(handle, System.nanoTime());
 			}
-		};
-		SwingUtilities.invokeLater(run);
+		});
 	}
 	/**
-	 * <p>Moves a component.</p>
-	 * 
-	 * <p>The meaning of the x and y parameters differ depending on the type of
-	 * Component to move:</p>
+	 * <p>Blocks until an animation has finished, i.e. until the frame in which its property has reached
+	 * the target value, or until it has been replaced, cancelled or its component removed.</p>
 	 * 
-	 * <ul>
-	 * <li><em>Ovals and Rectangles</em>: (x,y) is the new top left point of the component.
-	 * <li><em>Lines and polygons</em>: (x,y) is the new coordinate of the first point of the component.
-	 * <li><em>Text</em>:x is the new x-coordinate of the first character, y is the new y-coordinate of
-	 * the first character's baseline.
-	 * </ul>
+	 * <p>The calling thread waits on a latch that is released by the event dispatch thread, so it does not poll.</p>
 	 * 
-	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
+	 * <p>This method must not be called on the event dispatch thread.</p>
 	 * 
-	 * @param id id of the component to move
-	 * @param x x-coordinate of the new origin point
-	 * @param y Y coordinate of the new origin point
-	 * @pre id must belong to an existing component
+	 * @param handle the handle of the animation
+	 * @param timeoutMillis maximum time to wait in milliseconds
+	 * @return <code>true</code> if the animation has finished, <code>false</code> if the timeout has elapsed
+	 * @throws InterruptedException if the calling thread is interrupted while waiting
+	 * @throws IllegalStateException if called on the event dispatch thread
 	 */
-	public synchronized void moveComponent(final long id,final int x, final int y) {
-		Runnable run = new Runnable(){
+	public boolean awaitAnimation(final long handle, long timeoutMillis) throws InterruptedException {
+		final CountDownLatch latch = new CountDownLatch(1);
+		// queued behind the command that started the animation
+		enqueueToken(new Command() {
 			@Override
-			public void run() {
-				getFCComponent(id).move(x, y);
+			protected void apply() {
+				animations.await(handle, latch);
 			}
-		};
-		SwingUtilities.invokeLater(run);
+		});
+		return latch.await(timeoutMillis, TimeUnit.MILLISECONDS);
 	}
 	/**
-	 * Helper function to find a component by its id.
-	 * @param id the id of the component
-	 * @return the respective component or <code>null</code> if no component with this id exists
+	 * Advances all running animations to the current time.
+	 * Must only be called on the event dispatch thread.
+	 */
+	private void stepAnimations() {
+		animations.sweep(System.nanoTime());
+		spatial.commit(components);
+		if (animations.size() == 0) animationTimer.stop();
+		repaint();
+	}
+	/**
+	 * <p>Adds a rectangle.</p>
+	 * 
+	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
+	 * 
+	 * @param left x-coordinate of the upper-left corner of the rectangle
+	 * @param top Y-coordinate of the upper-left corner of the rectangle
+	 * @param width Width of the rectangle
+	 * @param height Height of the rectangle
+	 * @return id of the created rectangle
+	 */
+	public long addRectangle(final int left, final int top, final int width, final int height) {
+		final long id = components.allocate();
+		Journal j = journal;
+		if (j != null) j.record(Journal.ADD_RECTANGLE, id, left, top, width, height);
+		post(new ComponentAdder(id) {
+			@Override
+			protected FCanvasComponent create() {
+				return pool.rectangle(left,top,width,height);
+			}
+		});
+		return id;
+	}
+	/**
+	 * <p>Adds an oval.</p>
+	 * 
+	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
+	 * 
+	 * @param left x-coordinate of the top left point of the oval's bounding box
+	 * @param top Y coordinate of the upper left point of the bounding box of the oval
+	 * @param width Width of the oval
+	 * @param height Height of the oval
+	 * @return id of the created oval
+	 */
+	public long addOval(final int left, final int top, final int width, final int height) {
+		final long id = components.allocate();
+		Journal j = journal;
+		if (j != null) j.record(Journal.ADD_OVAL, id, left, top, width, height);
+		post(new ComponentAdder(id) {
+			@Override
+			protected FCanvasComponent create() {
+				return pool.oval(left,top,width,height);
+			}
+		});
+		return id;
+	}
+	/**
+	 * <p>Adds a straight line between the points (x1,y1) and (x2,y2).</p>
+	 * 
+	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
+	 * 
+	 * @param x1 x-coordinate of the first point
+	 * @param y1 y coordinate of the first point
+	 * @param x2 x-coordinate of the second point
+	 * @param y2 y coordinate of the second point
+	 * @return id of the created line
+	 */
+	public long addLine(final int x1, final int y1, final int x2, final int y2) {
+		final long id = components.allocate();
+		Journal j = journal;
+		if (j != null) j.record(Journal.ADD_LINE, id, x1, y1, x2, y2);
+		post(new ComponentAdder(id) {
+			@Override
+			protected FCanvasComponent create() {
+				return pool.line(x1,y1,x2,y2);
+			}
+		});
+		return id;
+	}
+	/**
+	 * <p>Adds a polygon.</p>
+	 * 
+	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
+	 * 
+	 * @param xcoords array of x-coordinates of polygon points
+	 * @param ycoords array of y-coordinates of polygon points
+	 * @return id of the created polygon
+	 */
+	public long addPolygon(int[] xcoords, int[] ycoords) {
+		final long id = components.allocate();
+		Journal j = journal;
+		if (j != null) j.record(Journal.ADD_POLYGON, id, xcoords, ycoords);
+		// copied here, since the caller may change the arrays before the command is applied
+		final int[] xs = xcoords.clone();
+		final int[] ys = ycoords.clone();
+		post(new ComponentAdder(id) {
+			@Override
+			protected FCanvasComponent create() {
+				return pool.polygon(xs,ys);
+			}
+		});
+		return id;
+	}
+	/**
+	 * <p>Adds a text.</p>
+	 * 
+	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
+	 * 
+	 * @param text the text to draw
+	 * @param left the x-coordinate of the first character
+	 * @param baseline the y-coordinate of the baseline of the first character
+	 * @return id of the created text
+	 */
+	public long addText(final String text, final int left, final int baseline) {
+		final long id = components.allocate();
+		Journal j = journal;
+		if (j != null) j.record(Journal.ADD_TEXT, id, text, left, baseline);
+		labels.put(id, new TextMetrics.Label(text, Text.DEFAULT_FONT_SIZE));
+		post(new ComponentAdder(id) {
+			@Override
+			protected FCanvasComponent create() {
+				return pool.text(text,left,baseline);
+			}
+		});
+		return id;
+	}
+	/**
+	 * <p>Adds an image in its original size.</p>
+	 * 
+	 * <p>The file is decoded on the calling thread, unless it is already in the image cache
+	 * that is shared by all panels (see {@link #addImage(String, int, int, int, int)}).</p>
+	 * 
+	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
+	 * 
+	 * @param path the path of the image file, all formats supported by {@link javax.imageio.ImageIO} can be used
+	 * @param left x-coordinate of the upper-left corner of the image
+	 * @param top y-coordinate of the upper-left corner of the image
+	 * @return id of the created image
+	 * @throws IOException if the file cannot be read or decoded
+	 */
+	public long addImage(String path, int left, int top) throws IOException {
+		BufferedImage image = ImageCache.shared().get(path);
+		return addSprite(path, image, left, top, image.getWidth(), image.getHeight());
+	}
+	/**
+	 * <p>Adds an image scaled by a factor.</p>
+	 * 
+	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
+	 * 
+	 * @param path the path of the image file, all formats supported by {@link javax.imageio.ImageIO} can be used
+	 * @param left x-coordinate of the upper-left corner of the image
+	 * @param top y-coordinate of the upper-left corner of the image
+	 * @param scale factor by which width and height of the image are multiplied
+	 * @return id of the created image
+	 * @throws IOException if the file cannot be read or decoded
+	 * @see #addImage(String, int, int, int, int)
+	 */
+	public long addImage(String path, int left, int top, double scale) throws IOException {
+		if (!(scale > 0)) throw new IllegalArgumentException("Scale must be positive: " + scale);
+		BufferedImage original = ImageCache.shared().get(path);
+		int width = Math.max(1, (int) Math.round(original.getWidth() * scale));
+		int height = Math.max(1, (int) Math.round(original.getHeight() * scale));
+		return addImage(path, left, top, width, height);
+	}
+	/**
+	 * <p>Adds an image scaled to the given size.</p>
+	 * 
+	 * <p>Decoded images are kept in a cache that is shared by all panels and bounded by
+	 * {@link #setImageCacheSize(long)}. Images that show the same file in the same size share
+	 * a single decoded copy, which has been converted to the format of the screen and scaled
+	 * in advance, so that drawing it is a plain copy of its pixels. Therefore, adding many
+	 * images of the same file only decodes it once, and the image is never decoded when it
+	 * is drawn. Use {@link #prefetchImage(String)} to decode a file in the background before
+	 * it is needed.</p>
+	 * 
+	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
+	 * 
+	 * @param path the path of the image file, all formats supported by {@link javax.imageio.ImageIO} can be used
+	 * @param left x-coordinate of the upper-left corner of the image
+	 * @param top y-coordinate of the upper-left corner of the image
+	 * @param width width of the image on the canvas
+	 * @param height height of the image on the canvas
+	 * @return id of the created image
+	 * @throws IOException if the file cannot be read or decoded
+	 */
+	public long addImage(String path, int left, int top, int width, int height) throws IOException {
+		if (width <= 0 || height <= 0) throw new IllegalArgumentException("Image size must be positive: " + width + "x" + height);
+		return addSprite(path, ImageCache.shared().get(path, width, height), left, top, width, height);
+	}
+	private long addSprite(final String path, final BufferedImage image, final int left, final int top, final int width, final int height) {
+		final long id = components.allocate();
+		Journal j = journal;
+		if (j != null) j.record(Journal.ADD_IMAGE, id, path, left, top, width, height);
+		post(new ComponentAdder(id) {
+			@Override
+			protected FCanvasComponent create() {
+				return pool.sprite(path,image,left,top,width,height);
+			}
+		});
+		return id;
+	}
+	/**
+	 * <p>Adds a tilemap, a grid of cells that show tiles cut from an atlas image (see {@link Tilemap}).</p>
+	 * 
+	 * <p>All cells are empty at first, use {@link #setTile(long, int, int, int)} and
+	 * {@link #setTiles(long, int, int, int, int, int[])} to fill them. The tilemap is drawn
+	 * in chunks of {@value Tilemap#CHUNK_SIZE}x{@value Tilemap#CHUNK_SIZE} cells, and only the
+	 * chunks that are visible are drawn. Each chunk is cached as image and only redrawn when
+	 * one of its tiles changes, so the time it takes to draw the tilemap depends on the size of
+	 * the visible area and not on the number of cells. The atlas is loaded through the image
+	 * cache (see {@link #addImage(String, int, int, int, int)}).</p>
+	 * 
+	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
+	 * 
+	 * @param atlasPath the path of the atlas image file
+	 * @param left x-coordinate of the upper-left corner of the tilemap
+	 * @param top y-coordinate of the upper-left corner of the tilemap
+	 * @param columns number of cells in each row
+	 * @param rows number of cells in each column
+	 * @param tileWidth width of a tile in the atlas and of a cell on the canvas
+	 * @param tileHeight height of a tile in the atlas and of a cell on the canvas
+	 * @return id of the created tilemap
+	 * @throws IOException if the atlas cannot be read or decoded
+	 */
+	public long addTilemap(final String atlasPath, final int left, final int top, final int columns, final int rows, final int tileWidth, final int tileHeight) throws IOException {
+		// created on the calling thread, so that invalid sizes are reported to the caller
+		final Tilemap tm = new Tilemap(atlasPath, ImageCache.shared().get(atlasPath), left, top, columns, rows, tileWidth, tileHeight);
+		final long id = components.allocate();
+		Journal j = journal;
+		if (j != null) j.record(Journal.ADD_TILEMAP, id, atlasPath, left, top, columns, rows, tileWidth, tileHeight);
+		post(new ComponentAdder(id) {
+			@Override
+			protected FCanvasComponent create() {
+				return tm;
+			}
+		});
+		return id;
+	}
+	/**
+	 * <p>Changes the tile of a single cell of a tilemap.</p>
+	 * 
+	 * <p>Only the chunk that contains the cell is redrawn. Cells outside of the tilemap are ignored.</p>
+	 * 
+	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
+	 * 
+	 * @param id the id of the tilemap
+	 * @param column the column of the cell
+	 * @param row the row of the cell
+	 * @param tile the number of the tile in the atlas (counted row by row) or {@link Tilemap#EMPTY}
+	 * @pre id must belong to an existing tilemap
+	 */
+	public void setTile(final long id, final int column, final int row, final int tile) {
+		Journal j = journal;
+		if (j != null) j.record(Journal.TILE, id, column, row, tile);
+		Command cmd = new ComponentCommand(id){
+			@Override
+			protected void modify(FCanvasComponent c) {
+				if(!(c instanceof Tilemap)) return;
+				((Tilemap)c).setTile(column, row, tile);
+			}
+		};
+		post(cmd);
+	}
+	/**
+	 * <p>Changes the tiles of a rectangular area of cells of a tilemap with a single command.</p>
+	 * 
+	 * <p>Only the chunks that contain changed cells are redrawn. Cells outside of the tilemap are ignored.</p>
+	 * 
+	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
+	 * 
+	 * @param id the id of the tilemap
+	 * @param column the column of the upper left cell of the area
+	 * @param row the row of the upper left cell of the area
+	 * @param width number of columns of the area
+	 * @param height number of rows of the area
+	 * @param tiles <code>width * height</code> tile numbers row by row
+	 * @pre id must belong to an existing tilemap
+	 */
+	public void setTiles(final long id, final int column, final int row, final int width, final int height, int[] tiles) {
+		if (width < 0 || height < 0 || (long) width * height > tiles.length) {
+			throw new IllegalArgumentException("Expected " + width + "x" + height + " tiles, got " + tiles.length);
+		}
+		Journal j = journal;
+		if (j != null) j.record(Journal.TILES, id, column, row, width, height, tiles);
+		// copied here, since the caller may change the array before the command is applied
+		final int[] ts = tiles.clone();
+		Command cmd = new ComponentCommand(id){
+			@Override
+			protected void modify(FCanvasComponent c) {
+				if(!(c instanceof Tilemap)) return;
+				((Tilemap)c).setTiles(column, row, width, height, ts);
+			}
+		};
+		post(cmd);
+	}
+	/**
+	 * <p>Starts decoding an image file on a background thread, so that a later call of
+	 * {@link #addImage(String, int, int)} does not have to wait for it. Errors are
+	 * reported by that call.</p>
+	 * 
+	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
+	 * 
+	 * @param path the path of the image file
+	 */
+	public void prefetchImage(String path) {
+		ImageCache.shared().prefetch(path);
+	}
+	/**
+	 * <p>Changes the bound for the memory occupied by the decoded images of all panels
+	 * (default: {@value ImageCache#DEFAULT_MAX_BYTES} bytes). When it is exceeded, the least
+	 * recently used images are dropped from the cache. Images that are shown keep their
+	 * pixels, but have to be decoded again if they are added again.</p>
+	 * 
+	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
+	 * 
+	 * @param bytes bound for the memory in bytes
+	 */
+	public static void setImageCacheSize(long bytes) {
+		ImageCache.shared().setMaxBytes(bytes);
+	}
+	/**
+	 * <p>Changes the font size of a text component.</p>
+	 * 
+	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
+	 * 
+	 * @param id the id of the text component
+	 * @param points the new font size in pt
+	 * @pre id must belong to an existing text component
+	 */
+	public void setFontSize(final long id, final int points) {
+		Journal j = journal;
+		if (j != null) j.record(Journal.FONT_SIZE, id, points);
+		labels.computeIfPresent(id, (k, l) -> new TextMetrics.Label(l.text, points));
+		Command cmd = new ComponentCommand(id){
+			@Override
+			protected void modify(FCanvasComponent c) {
+				if(!(c instanceof Text)) return;
+				Text t = (Text)c;
+				t.setFontSize(points);
+			}
+		};
+		post(cmd);
+	}
+	/**
+	 * <p>Changes the fill color of a component.</p>
+	 * 
+	 * <p>Has no effect on lines and text.</p>
+	 * 
+	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
+	 *
+	 * @param id the id of the component
+	 * @param r value for the red channel (0 to 255)
+	 * @param g value for the green channel (0 to 255)
+	 * @param b value for the blue channel (0 to 255)
+	 * @param a value for the alpha channel (0 to 255)
+	 * @pre id must belong to an existing component
+	 */
+	public void setFillColor(final long id,final int r,final int g,final int b,final int a) {
+		Journal j = journal;
+		if (j != null) j.record(Journal.FILL_COLOR, id, Journal.argb(r, g, b, a));
+		Command cmd = new ComponentCommand(id){
+			@Override
+			protected void modify(FCanvasComponent c) {
+				c.setFillColor(r, g, b, a);
+			}
+		};
+		post(cmd);
+	}
+	/**
+	 * <p>Changes the stroke color of a component.</p>
+	 * 
+	 * <p>With <code>alpha == 0</code> the bar becomes invisible.</p>
+	 * 
+	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
+	 * 
+	 * @param id the id of the component
+	 * @param r value for the red channel (0 to 255)
+	 * @param g value for the green channel (0 to 255)
+	 * @param b value for the blue channel (0 to 255)
+	 * @param a value for the alpha channel (0 to 255)
+	 * @pre id must belong to an existing component
+	 */
+	public void setStrokeColor(final long id,final int r,final int g,final int b,final int a) {
+		Journal j = journal;
+		if (j != null) j.record(Journal.STROKE_COLOR, id, Journal.argb(r, g, b, a));
+		Command cmd = new ComponentCommand(id){
+			@Override
+			protected void modify(FCanvasComponent c) {
+				c.setStrokeColor(r, g, b, a);
+			}
+		};
+		post(cmd);
+	}
+	/**
+	 * <p>Changes the stroke width for the component.</p>
+	 * 
+	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
+	 * 
+	 * In the case of ovals, rectangles and polygons, this means the width of the border.
+	 * This method has no effect on text.
+	 * 
+	 * @param id the id of the component
+	 * @param w the new stroke width (in pixels)
+	 * @pre id must belong to an existing component
+	 */
+	public void setStrokeWidth(final long id,final int w) {
+		Journal j = journal;
+		if (j != null) j.record(Journal.STROKE_WIDTH, id, w);
+		Command cmd = new ComponentCommand(id){
+			@Override
+			protected void modify(FCanvasComponent c) {
+				c.setStrokeWidth(w);
+				FCanvasPanel.this.repaint();
+			}
+		};
+		post(cmd);
+	}
+	/**
+	 * <p>Changes the rotation angle for a component.</p>
+	 * 
+	 * <p>Rectangles, ovals, lines and polygons are rotated around their center.</p>
+	 * 
+	 * <p>Texts are rotated around their origin (left,baseline).</p>
+	 * 
+	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
+	 * 
+	 * @param id the id of the component
+	 * @param r rotation angle in degrees
+	 */
+	public void setRotation(final long id,final float r) {
+		Journal j = journal;
+		if (j != null) j.record(Journal.ROTATION, id, Float.floatToIntBits(r));
+		Command cmd = new ComponentCommand(id){
+			@Override
+			protected void modify(FCanvasComponent c) {
+				c.setRotation(r);
+				components.setMoved(id, frameNumber);
+			}
+		};
+		post(cmd);
+	}
+	/**
+	 * <p>Moves a component.</p>
+	 * 
+	 * <p>The meaning of the x and y parameters differ depending on the type of
+	 * Component to move:</p>
+	 * 
+	 * <ul>
+	 * <li><em>Ovals and Rectangles</em>: (x,y) is the new top left point of the component.
+	 * <li><em>Lines and polygons</em>: (x,y) is the new coordinate of the first point of the component.
+	 * <li><em>Text</em>:x is the new x-coordinate of the first character, y is the new y-coordinate of
+	 * the first character's baseline.
+	 * </ul>
+	 * 
+	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
+	 * 
+	 * @param id id of the component to move
+	 * @param x x-coordinate of the new origin point
+	 * @param y Y coordinate of the new origin point
+	 * @pre id must belong to an existing component
+	 */
+	public void moveComponent(final long id,final int x, final int y) {
+		Journal j = journal;
+		if (j != null) j.record(Journal.MOVE, id, x, y);
+		Command cmd = new ComponentCommand(id){
+			@Override
+			protected void modify(FCanvasComponent c) {
+				c.move(x, y);
+				components.setMoved(id, frameNumber);
+			}
+		};
+		post(cmd);
+	}
+	/**
+	 * <p>Changes the text of a text component.</p>
+	 * 
+	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
+	 * 
+	 * @param id the id of the text component
+	 * @param text the new text
+	 * @pre id must belong to an existing text component
+	 */
+	public void setText(final long id, final String text) {
+		Journal j = journal;
+		if (j != null) j.record(Journal.TEXT, id, text);
+		labels.computeIfPresent(id, (k, l) -> new TextMetrics.Label(text, l.size));
+		Command cmd = new ComponentCommand(id){
+			@Override
+			protected void modify(FCanvasComponent c) {
+				if(!(c instanceof Text)) return;
+				((Text)c).setText(text);
+			}
+		};
+		post(cmd);
+	}
+	/**
+	 * <p>Returns the width of a text component, i.e. the width of its bounding box if it is not rotated.</p>
+	 * 
+	 * <p>The result takes all changes of the text and its font size into account that have been issued
+	 * before, even if they have not been applied yet. Texts are measured without a Graphics object and
+	 * the widths of the characters of each font size are cached, so measuring thousands of texts in
+	 * every frame is feasible.</p>
+	 * 
+	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
+	 * 
+	 * @param id the id of the text component
+	 * @return the width in pixels, 0 if the component does not exist or is not a text
+	 */
+	public double getTextWidth(long id) {
+		TextMetrics.Label l = labels.get(id);
+		return l == null ? 0 : l.width();
+	}
+	/**
+	 * <p>Returns the height of a text component, i.e. the height of its bounding box if it is not rotated.
+	 * The height is the same for all texts of the same font size that consist of latin characters.</p>
+	 * 
+	 * <p>Like {@link #getTextWidth(long)}, the result takes all changes into account that have been issued before.</p>
+	 * 
+	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
+	 * 
+	 * @param id the id of the text component
+	 * @return the height in pixels, 0 if the component does not exist or is not a text
+	 */
+	public double getTextHeight(long id) {
+		TextMetrics.Label l = labels.get(id);
+		return l == null ? 0 : l.height();
+	}
+	/**
+	 * <p>Returns the width that a text component would have, without creating it.</p>
+	 * 
+	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
+	 * 
+	 * @param text the text
+	 * @param points the font size in pt
+	 * @return the width in pixels
+	 * @see #getTextWidth(long)
+	 */
+	public double measureText(String text, int points) {
+		return TextMetrics.shared().width(text, points);
+	}
+	/**
+	 * <p>Changes the size of a rectangle, oval or image. The upper left corner stays in place.</p>
+	 * 
+	 * <p>Has no effect on other components.</p>
+	 * 
+	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
+	 * 
+	 * @param id the id of the rectangle, oval or image
+	 * @param width the new width
+	 * @param height the new height
+	 * @pre id must belong to an existing rectangle, oval or image
+	 */
+	public void resizeComponent(final long id, final int width, final int height) {
+		Journal j = journal;
+		if (j != null) j.record(Journal.RESIZE, id, width, height);
+		Command cmd = new ComponentCommand(id){
+			@Override
+			protected void modify(FCanvasComponent c) {
+				if (c instanceof Rectangle) {
+					Rectangle r = (Rectangle)c;
+					r.setWidth(width);
+					r.setHeight(height);
+				} else if (c instanceof Oval) {
+					Oval o = (Oval)c;
+					o.setWidth(width);
+					o.setHeight(height);
+				} else if (c instanceof Sprite) {
+					// the image is scaled when it is drawn
+					Sprite s = (Sprite)c;
+					s.setWidth(width);
+					s.setHeight(height);
+				}
+				components.setMoved(id, frameNumber);
+			}
+		};
+		post(cmd);
+	}
+	/**
+	 * <p>Changes both end points of a line.</p>
+	 * 
+	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
+	 * 
+	 * @param id the id of the line
+	 * @param x1 new x-coordinate of the first point
+	 * @param y1 new y-coordinate of the first point
+	 * @param x2 new x-coordinate of the second point
+	 * @param y2 new y-coordinate of the second point
+	 * @pre id must belong to an existing line
+	 */
+	public void setLinePoints(final long id, final int x1, final int y1, final int x2, final int y2) {
+		Journal j = journal;
+		if (j != null) j.record(Journal.LINE_POINTS, id, x1, y1, x2, y2);
+		Command cmd = new ComponentCommand(id){
+			@Override
+			protected void modify(FCanvasComponent c) {
+				if(!(c instanceof Line)) return;
+				Line l = (Line)c;
+				l.setX1(x1);
+				l.setY1(y1);
+				l.setX2(x2);
+				l.setY2(y2);
+				components.setMoved(id, frameNumber);
+			}
+		};
+		post(cmd);
+	}
+	/**
+	 * <p>Changes the points of a polygon.</p>
+	 * 
+	 * <p>If the number of points does not change, the coordinates are copied into the
+	 * existing arrays of the polygon.</p>
+	 * 
+	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
+	 * 
+	 * @param id the id of the polygon
+	 * @param xcoords array of the new x-coordinates of the polygon points
+	 * @param ycoords array of the new y-coordinates of the polygon points
+	 * @pre id must belong to an existing polygon
+	 */
+	public void setPolygonPoints(final long id, int[] xcoords, int[] ycoords) {
+		Journal j = journal;
+		if (j != null) j.record(Journal.POLYGON_POINTS, id, xcoords, ycoords);
+		// copied here, since the caller may change the arrays before the command is applied
+		final int[] xs = xcoords.clone();
+		final int[] ys = ycoords.clone();
+		Command cmd = new ComponentCommand(id){
+			@Override
+			protected void modify(FCanvasComponent c) {
+				if(!(c instanceof Polygon)) return;
+				((Polygon)c).setPoints(xs, ys);
+				components.setMoved(id, frameNumber);
+			}
+		};
+		post(cmd);
+	}
+	/**
+	 * <p>Shows or hides a component.</p>
+	 * 
+	 * <p>A hidden component keeps its id, properties and position in the drawing order,
+	 * so it can be shown again without drawing it anew.</p>
+	 * 
+	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
+	 * 
+	 * @param id the id of the component
+	 * @param visible if <code>true</code> the component is drawn, otherwise it is hidden
+	 * @pre id must belong to an existing component
+	 */
+	public void setComponentVisible(final long id, final boolean visible) {
+		Journal j = journal;
+		if (j != null) j.record(Journal.VISIBLE, id, visible ? 1 : 0);
+		Command cmd = new ComponentCommand(id){
+			@Override
+			protected void modify(FCanvasComponent c) {
+				c.setVisible(visible);
+			}
+		};
+		post(cmd);
+	}
+	/**
+	 * Helper function to find a component by its id.
+	 * 
+	 * Must only be called on the event dispatch thread.
+	 * @param id the id of the component
+	 * @return the respective component or <code>null</code> if no component with this id exists
 	 */
 	protected FCanvasComponent getFCComponent(long id) {
-		if (components.containsKey(id)) return components.get(id);
-		return null;
+		return components.get(id);
+	}
+	/**
+	 * <p>Removes a component.</p>
+	 * 
+	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
+	 * 
+	 * @param id id of the object to be removed
+	 * @pre id must belong to an existing component
+	 */
+	public void removeComponent(final long id) {
+		Journal j = journal;
+		if (j != null) j.record(Journal.REMOVE, id);
+		post(new ComponentRemover(id));
+	}
+	/**
+	 * <p>Changes the background color of the panel.</p>
+	 * 
+	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
+	 * 
+	 * @param r value for the red channel (0 to 255)
+	 * @param g value for the green channel (0 to 255)
+	 * @param b value for the blue channel (0 to 255)
+	 */
+	public void setBackgroundColor(final int r,final int g,final int b) {
+		Journal j = journal;
+		if (j != null) j.recordValues(Journal.BACKGROUND, r, g, b);
+		Command cmd = new Command(){
+			@Override
+			protected void apply() {
+				setBackground(new Color(r,g,b));
+			}
+		};
+		post(cmd);
+	}
+	/**
+	 * <p>Removes all objects.</p>
+	 * 
+	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
+	 */
+	public void clear() {
+		Journal j = journal;
+		if (j != null) j.record(Journal.CLEAR);
+		Command cmd = new Command(){
+			@Override
+			protected void apply() {
+				removeAllComponents();
+			}
+		};
+		post(cmd);
 	}
 	/**
-	 * <p>Removes a component.</p>
+	 * Removes all components and releases their slots.
+	 * Must only be called on the event dispatch thread.
+	 */
+	private void removeAllComponents() {
+		for(int slot = 0; slot < components.capacity(); slot++) {
+			FCanvasComponent c = components.getAt(slot);
+			if (c == null) continue;
+			long id = components.getId(slot);
+			components.remove(id);
+			// only the labels of removed texts, texts whose commands are still queued keep theirs
+			labels.remove(id);
+			pool.recycle(c);
+			spatial.mark(slot);
+		}
+		for(Layer layer : layers.values()) {
+			layer.clear();
+		}
+		layers.values().removeIf(Layer::isDisposable);
+	}
+	/**
+	 * <p>Changes antialiasing settings (disabled by default).</p>
+	 * @param enabled if <code>true</code> uses antialiasing
+	 */
+	public void setAntialiasingEnabled(final boolean enabled) {
+		Journal j = journal;
+		if (j != null) j.recordValues(Journal.ANTIALIASING, enabled ? 1 : 0);
+		post(new Command() {
+			@Override
+			protected void apply() {
+				useAntialiasing = enabled;
+				// cached layers have been rendered with the old setting
+				for(Layer layer : layers.values()) {
+					layer.invalidate();
+				}
+			}
+		});
+	}
+	/**
+	 * <p>Changes the part of the world that is shown in this panel.</p>
+	 * 
+	 * <p>Components and pixels are placed in an unbounded world coordinate space. The
+	 * viewport shows the world point (x, y) in the upper left corner of the panel,
+	 * scaled by the given zoom factor, i.e. the panel coordinates of a world point (wx, wy) are
+	 * ((wx - x) * zoom, (wy - y) * zoom). Only components and pixel tiles that intersect
+	 * the viewport are drawn. Initially, the viewport is (0, 0) with zoom 1, so world
+	 * and panel coordinates are the same.</p>
+	 * 
+	 * <p>Mouse positions are reported in panel coordinates.</p>
 	 * 
 	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
 	 * 
-	 * @param id id of the object to be removed
+	 * @param x world x-coordinate of the upper left corner of the panel
+	 * @param y world y-coordinate of the upper left corner of the panel
+	 * @param zoom scale factor from world to panel coordinates
+	 * @throws IllegalArgumentException if a value is not finite or zoom is not positive
+	 */
+	public void setViewport(final double x, final double y, final double zoom) {
+		if (!Double.isFinite(x) || !Double.isFinite(y) || !Double.isFinite(zoom) || zoom <= 0) {
+			throw new IllegalArgumentException("Invalid viewport " + x + ", " + y + ", zoom " + zoom);
+		}
+		Journal j = journal;
+		if (j != null) j.recordValues(Journal.VIEWPORT, x, y, zoom);
+		post(new Command() {
+			@Override
+			protected void apply() {
+				viewX = x;
+				viewY = y;
+				FCanvasPanel.this.zoom = zoom;
+				// cached layers have been rendered with the old view
+				for(Layer layer : layers.values()) {
+					layer.invalidate();
+				}
+			}
+		});
+	}
+	/**
+	 * Returns the world x-coordinate shown in the upper left corner of the panel.
+	 * Changes by {@link #setViewport(double, double, double)} are only visible after they have been applied.
+	 * @return x-coordinate of the viewport
+	 */
+	public double getViewportX() {
+		return viewX;
+	}
+	/**
+	 * Returns the world y-coordinate shown in the upper left corner of the panel.
+	 * Changes by {@link #setViewport(double, double, double)} are only visible after they have been applied.
+	 * @return y-coordinate of the viewport
+	 */
+	public double getViewportY() {
+		return viewY;
+	}
+	/**
+	 * Returns the scale factor from world to panel coordinates.
+	 * Changes by {@link #setViewport(double, double, double)} are only visible after they have been applied.
+	 * @return zoom factor of the viewport
+	 */
+	public double getZoom() {
+		return zoom;
+	}
+	/**
+	 * <p>Enables or disables the adaptation of the rendering quality to the paint times.</p>
+	 * 
+	 * <p>If enabled, the paint time of each frame is compared to the frame budget of the
+	 * {@link FCanvasMetrics}. When frames take too long, the quality is lowered step by step
+	 * (see {@link #QUALITY_STATIC_ANTIALIASING}, {@link #QUALITY_SPEED} and {@link #QUALITY_LOW}),
+	 * and when there is enough headroom for a longer time, it is raised again (see {@link QualityGovernor}).
+	 * Disabling the governor restores {@link #QUALITY_FULL}.</p>
+	 * 
+	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
+	 * 
+	 * @param enabled if <code>true</code> the quality is adapted to the paint times
+	 * @see #getQualityLevel()
+	 * @see FCanvasMetrics#setFrameBudgetNanos(long)
+	 */
+	public void setQualityGovernorEnabled(final boolean enabled) {
+		Journal j = journal;
+		if (j != null) j.recordValues(Journal.QUALITY_GOVERNOR, enabled ? 1 : 0);
+		post(new Command() {
+			@Override
+			protected void apply() {
+				governor.setEnabled(enabled);
+				if (qualityLevel != governor.getLevel()) {
+					qualityLevel = governor.getLevel();
+					for(Layer layer : layers.values()) {
+						layer.invalidate();
+					}
+				}
+			}
+		});
+	}
+	/**
+	 * <p>Shows or hides an overlay in the upper left corner of the panel with the frame rate,
+	 * paint time percentiles, drawn, culled and simplified components, pending commands, heap usage
+	 * and garbage collections, so that the cause of a slow animation can be seen at a glance.</p>
+	 * 
+	 * <p>The overlay is painted after the paint time of a frame has been measured and does not
+	 * allocate memory, so it does not distort the numbers it shows. It is updated twice per second
+	 * while frames are painted. It is only shown on the screen, not in images of the panel.</p>
+	 * 
+	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
+	 * 
+	 * @param visible if <code>true</code> the overlay is shown
+	 * @see #getMetrics()
+	 */
+	public void setPerformanceHudVisible(final boolean visible) {
+		Journal j = journal;
+		if (j != null) j.recordValues(Journal.PERFORMANCE_HUD, visible ? 1 : 0);
+		post(new Command() {
+			@Override
+			protected void apply() {
+				if (!visible) {
+					hud = null;
+				} else if (hud == null) {
+					hud = new PerformanceHud(metrics);
+				}
+			}
+		});
+	}
+	/**
+	 * <p>Indicates whether the performance overlay is shown.</p>
+	 * 
+	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
+	 * 
+	 * @return <code>true</code> if the overlay is shown
+	 * @see #setPerformanceHudVisible(boolean)
+	 */
+	public boolean isPerformanceHudVisible() {
+		return hud != null;
+	}
+	/**
+	 * Returns the current quality level chosen by the quality governor.
+	 * @return one of {@link #QUALITY_FULL}, {@link #QUALITY_STATIC_ANTIALIASING}, {@link #QUALITY_SPEED} and {@link #QUALITY_LOW}
+	 * @see #setQualityGovernorEnabled(boolean)
+	 */
+	public int getQualityLevel() {
+		return qualityLevel;
+	}
+	/**
+	 * <p>Changes the thresholds for drawing components in reduced detail.</p>
+	 * 
+	 * <p>Components that are very small on the screen (e.g. when the viewport is zoomed out)
+	 * are simplified to keep painting fast: shapes whose projected size is below
+	 * <code>pointSize</code> pixels are drawn as a single pixel, texts with a projected font
+	 * size below <code>textSize</code> pixels as a bar, and once more than <code>clusterSize</code>
+	 * small shapes have been drawn into a cell of {@value LevelOfDetail#CELL_SIZE}x{@value LevelOfDetail#CELL_SIZE}
+	 * pixels, further shapes in that cell just fill the cell. A value of 0 disables the respective
+	 * simplification. The defaults are {@value LevelOfDetail#DEFAULT_POINT_SIZE}, {@value LevelOfDetail#DEFAULT_TEXT_SIZE}
+	 * and {@value LevelOfDetail#DEFAULT_CLUSTER_SIZE}.</p>
+	 * 
+	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
+	 * 
+	 * @param pointSize projected size in pixels below which shapes are drawn as single pixel
+	 * @param textSize projected font size in pixels below which texts are drawn as bar
+	 * @param clusterSize number of small shapes per cell above which further shapes are aggregated
+	 * @see FCanvasMetrics#getComponentsSimplified()
+	 */
+	public void setLevelOfDetail(final double pointSize, final double textSize, final int clusterSize) {
+		Journal j = journal;
+		if (j != null) j.recordValues(Journal.LEVEL_OF_DETAIL, pointSize, textSize, clusterSize);
+		post(new Command() {
+			@Override
+			protected void apply() {
+				detail.setThresholds(pointSize, textSize, clusterSize);
+				for(Layer layer : layers.values()) {
+					layer.invalidate();
+				}
+			}
+		});
+	}
+	/**
+	 * <p>Moves a component to another layer.</p>
+	 * 
+	 * <p>Layers are drawn in ascending order, i.e. components on a layer with a higher
+	 * number occlude components on layers with a lower number. Within a layer, the order is
+	 * determined by the z-index (see {@link #setZIndex(long, int)}). All components start on layer 0.</p>
+	 * 
+	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
+	 * 
+	 * @param id the id of the component
+	 * @param n the number of the new layer
 	 * @pre id must belong to an existing component
 	 */
-	public synchronized void removeComponent(final long id) {
-		Runnable run = new ComponentRemover(id);
-		SwingUtilities.invokeLater(run);
+	public void setLayer(final long id, final int n) {
+		Journal j = journal;
+		if (j != null) j.record(Journal.LAYER, id, n);
+		post(new Command() {
+			@Override
+			protected void apply() {
+				Layer old = components.getLayer(id);
+				if (old == null) {
+					metrics.staleCommand();
+					return;
+				}
+				Layer layer = getLayer(n);
+				if (layer == old) return;
+				int slot = ComponentStore.slot(id);
+				int z = old.getZIndex(slot);
+				old.remove(slot);
+				layer.add(slot, z);
+				components.setLayer(id, layer);
+				markReordered(layer, slot);
+				discardIfEmpty(old);
+			}
+		});
+	}
+	/**
+	 * Base class for commands that change the position of a component within its layer.
+	 */
+	private abstract class ReorderCommand extends Command {
+		private final long id;
+		public ReorderCommand(long id) {
+			this.id = id;
+		}
+		/**
+		 * Performs the actual reordering.
+		 * @param layer the layer of the component
+		 * @param slot the slot of the component
+		 */
+		protected abstract void reorder(Layer layer, int slot);
+		@Override
+		protected final void apply() {
+			Layer layer = components.getLayer(id);
+			if (layer == null) {
+				metrics.staleCommand();
+				return;
+			}
+			reorder(layer, ComponentStore.slot(id));
+			markReordered(layer, ComponentStore.slot(id));
+		}
 	}
 	/**
-	 * <p>Changes the background color of the panel.</p>
+	 * <p>Changes the z-index of a component.</p>
+	 * 
+	 * <p>Within a layer, components with a higher z-index occlude components with a lower
+	 * z-index. Among components with the same z-index, the component that has been added
+	 * or reordered last is drawn on top. All components start with a z-index of 0.</p>
 	 * 
 	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
 	 * 
-	 * @param r value for the red channel (0 to 255)
-	 * @param g value for the green channel (0 to 255)
-	 * @param b value for the blue channel (0 to 255)
+	 * @param id the id of the component
+	 * @param z the new z-index
+	 * @pre id must belong to an existing component
 	 */
-	public synchronized void setBackgroundColor(final int r,final int g,final int b) {
-		Runnable run = new Runnable(){
+	public void setZIndex(final long id, final int z) {
+		Journal j = journal;
+		if (j != null) j.record(Journal.Z_INDEX, id, z);
+		post(new ReorderCommand(id) {
 			@Override
-			public void run() {
-				setBackground(new Color(r,g,b));
+			protected void reorder(Layer layer, int slot) {
+				layer.setZIndex(slot, z);
 			}
-		};
-		SwingUtilities.invokeLater(run);
+		});
 	}
 	/**
-	 * <p>Removes all objects.</p>
+	 * <p>Places a component on top of all other components in its layer.</p>
+	 * 
+	 * <p>If other components in the layer have a higher z-index, the z-index of the
+	 * component is raised accordingly.</p>
 	 * 
 	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
+	 * 
+	 * @param id the id of the component
+	 * @pre id must belong to an existing component
 	 */
-	public synchronized void clear() {
-		Runnable run = new Runnable(){
+	public void bringToFront(final long id) {
+		Journal j = journal;
+		if (j != null) j.record(Journal.BRING_TO_FRONT, id);
+		post(new ReorderCommand(id) {
 			@Override
-			public void run() {
-				components.clear();
-				sortedKeys.clear();
+			protected void reorder(Layer layer, int slot) {
+				layer.bringToFront(slot);
 			}
-		};
-		SwingUtilities.invokeLater(run);
+		});
 	}
 	/**
-	 * <p>Changes antialiasing settings (disabled by default).</p>
-	 * @param enabled if <code>true</code> uses antialiasing
+	 * <p>Places a component below all other components in its layer.</p>
+	 * 
+	 * <p>If other components in the layer have a lower z-index, the z-index of the
+	 * component is lowered accordingly.</p>
+	 * 
+	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
+	 * 
+	 * @param id the id of the component
+	 * @pre id must belong to an existing component
+	 */
+	public void sendToBack(final long id) {
+		Journal j = journal;
+		if (j != null) j.record(Journal.SEND_TO_BACK, id);
+		post(new ReorderCommand(id) {
+			@Override
+			protected void reorder(Layer layer, int slot) {
+				layer.sendToBack(slot);
+			}
+		});
+	}
+	/**
+	 * <p>Freezes or thaws a layer.</p>
+	 * 
+	 * <p>A frozen layer is drawn from a cached image, which is only rendered again when a
+	 * component on this layer is added, removed or changed. Freezing a layer that contains
+	 * many components that rarely change (e.g. a background) therefore makes painting much
+	 * cheaper. Layers that change in almost every frame should not be frozen.</p>
+	 * 
+	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
+	 * 
+	 * @param n the number of the layer
+	 * @param frozen if <code>true</code> the layer is cached, otherwise it is drawn component by component
 	 */
-	public synchronized void setAntialiasingEnabled(boolean enabled) {
-		useAntialiasing = enabled;
+	public void setLayerFrozen(final int n, final boolean frozen) {
+		Journal j = journal;
+		if (j != null) j.recordValues(Journal.LAYER_FROZEN, n, frozen ? 1 : 0);
+		post(new Command() {
+			@Override
+			protected void apply() {
+				Layer layer = getLayer(n);
+				layer.setFrozen(frozen);
+				discardIfEmpty(layer);
+			}
+		});
 	}
 
 	/**
 	 * Resets the whole panel removing all components and returning all
 	 * settings to their default values.
 	 */
-	public synchronized void reset() {
-		SwingUtilities.invokeLater( () ->  {
-			idcounter = 0;
-			bufferMaxX = 0;
-			bufferMaxY = 0;
+	public void reset() {
+		Journal j = journal;
+		if (j != null) j.record(Journal.RESET);
+		enqueue( () ->  {
 			useAntialiasing = false;
-			components = new HashMap<Long,FCanvasComponent>();
-			pixels = new HashMap<Point,Color>();
-			sortedKeys = new ArrayList<Long>();
+			// slots are released instead of replacing the store, since ids
+			// allocated before the reset may still be in use by queued commands
+			removeAllComponents();
+			pixels.clear();
+			closeFramebuffer();
+			hud = null;
+			animations.clear();
+			animationTimer.stop();
+			layers = new TreeMap<Integer,Layer>();
+			viewX = 0;
+			viewY = 0;
+			zoom = 1;
+			detail.setThresholds(LevelOfDetail.DEFAULT_POINT_SIZE, LevelOfDetail.DEFAULT_TEXT_SIZE, LevelOfDetail.DEFAULT_CLUSTER_SIZE);
+			governor.setEnabled(false);
+			qualityLevel = QUALITY_FULL;
+			metrics.reset();
+			metrics.pixelBufferResized(0);
+			setBackground(Color.WHITE);
 		});
-		setBackground(Color.WHITE);
-		updateImageBuffer(1,1);
+	}
+
+	/**
+	 * <p>Blocks until all commands that have been issued by the calling thread before
+	 * this call have been applied on the event dispatch thread.</p>
+	 * 
+	 * <p>The changes are not necessarily visible on the screen yet (see {@link #awaitFrame(long)}).
+	 * The method waits for a completion token that is queued behind the previous commands,
+	 * so it does not poll and returns as soon as the token has been processed.</p>
+	 * 
+	 * <p>This method must not be called on the event dispatch thread.</p>
+	 * 
+	 * @param timeoutMillis maximum time to wait in milliseconds
+	 * @return <code>true</code> if all previous commands have been applied, <code>false</code> if the timeout elapsed before
+	 * @throws InterruptedException if the calling thread is interrupted while waiting
+	 * @throws IllegalStateException if called on the event dispatch thread
+	 */
+	public boolean flush(long timeoutMillis) throws InterruptedException {
+		final CountDownLatch done = new CountDownLatch(1);
+		enqueueToken(new Command() {
+			@Override
+			protected void apply() {
+				done.countDown();
+			}
+		});
+		return done.await(timeoutMillis, TimeUnit.MILLISECONDS);
+	}
+	/**
+	 * <p>Blocks until all commands that have been issued by the calling thread before
+	 * this call have been applied and a frame containing the changes has been painted
+	 * on the screen.</p>
+	 * 
+	 * <p>A repaint is requested regardless of the autoupdate setting. Calls to
+	 * {@link #toImage()} do not count as frames. If the panel is not showing on the screen,
+	 * no frame is painted and the method returns <code>false</code> after the timeout.</p>
+	 * 
+	 * <p>This method must not be called on the event dispatch thread.</p>
+	 * 
+	 * @param timeoutMillis maximum time to wait in milliseconds
+	 * @return <code>true</code> if a frame with all previous changes has been painted, <code>false</code> if the timeout elapsed before
+	 * @throws InterruptedException if the calling thread is interrupted while waiting
+	 * @throws IllegalStateException if called on the event dispatch thread
+	 */
+	public boolean awaitFrame(long timeoutMillis) throws InterruptedException {
+		final CountDownLatch presented = new CountDownLatch(1);
+		enqueueToken(new Command() {
+			@Override
+			protected void apply() {
+				frameWaiters.add(presented);
+				repaint();
+			}
+		});
+		return presented.await(timeoutMillis, TimeUnit.MILLISECONDS);
+	}
+	/**
+	 * Queues a command that releases a waiting thread.
+	 * @param token the command that releases the waiting thread
+	 * @throws IllegalStateException if called on the event dispatch thread, since the token could never be processed while waiting
+	 */
+	private void enqueueToken(Command token) {
+		if (SwingUtilities.isEventDispatchThread()) {
+			throw new IllegalStateException("Cannot wait for the event dispatch thread on the event dispatch thread");
+		}
+		// the waiting thread may query the spatial index next
+		enqueue(() -> spatial.commit(components));
+		post(token);
+	}
+	/**
+	 * <p>Saves all components, their properties and drawing order, the frozen layers,
+	 * the background color and the pixel layer to a binary scene file (see {@link SceneFile}).</p>
+	 * 
+	 * <p>The scene is written on the event dispatch thread after all previously issued
+	 * commands have been applied, so that the file contains a consistent snapshot. The data
+	 * is streamed to a file channel through a small buffer, so that the size of the scene
+	 * does not affect the memory required for writing.</p>
+	 * 
+	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
+	 * 
+	 * @param path the file to write
+	 * @throws IOException if the file cannot be written
+	 * @see #loadScene(Path)
+	 */
+	public void saveScene(Path path) throws IOException {
+		try (FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			snapshotOnEDT(() -> {
+				writeScene(ch);
+				return null;
+			});
+		}
+	}
+	/**
+	 * A snapshot of the state of the panel.
+	 * @param <T> the type of the snapshot
+	 */
+	private interface Snapshot<T> {
+		/**
+		 * Takes the snapshot. Called on the event dispatch thread.
+		 * @return the snapshot
+		 * @throws IOException if the snapshot cannot be encoded
+		 */
+		T take() throws IOException;
+	}
+	/**
+	 * A command that takes a snapshot and keeps the result or the exception thrown while
+	 * taking it, so that both reach the thread waiting for the snapshot.
+	 * @param <T> the type of the snapshot
+	 */
+	private final class SnapshotCommand<T> extends Command {
+		private final Snapshot<T> snapshot;
+		private final CountDownLatch done = new CountDownLatch(1);
+		// published to the waiting thread by the latch
+		private T result;
+		private IOException ioError;
+		private Throwable error;
+		SnapshotCommand(Snapshot<T> snapshot) {
+			this.snapshot = snapshot;
+		}
+		@Override
+		protected void apply() {
+			try {
+				result = snapshot.take();
+			} catch (IOException e) {
+				ioError = e;
+			} catch (RuntimeException | Error e) {
+				error = e;
+			} finally {
+				done.countDown();
+			}
+		}
+		/**
+		 * Returns the snapshot or rethrows the unchecked exception thrown while taking it.
+		 * Must only be called after the command has been applied.
+		 * @return the snapshot
+		 */
+		T get() {
+			if (error instanceof RuntimeException) throw (RuntimeException) error;
+			if (error instanceof Error) throw (Error) error;
+			return result;
+		}
+	}
+	/**
+	 * Takes a snapshot on the event dispatch thread after all previously issued commands
+	 * have been applied and waits until it is taken.
+	 * @param <T> the type of the snapshot
+	 * @param snapshot the snapshot to take
+	 * @return the snapshot
+	 * @throws IOException if the snapshot fails or the calling thread is interrupted while waiting
+	 */
+	private <T> T snapshotOnEDT(final Snapshot<T> snapshot) throws IOException {
+		if (SwingUtilities.isEventDispatchThread()) {
+			return snapshot.take();
+		}
+		SnapshotCommand<T> cmd = new SnapshotCommand<T>(snapshot);
+		post(cmd);
+		try {
+			cmd.done.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the snapshot");
+		}
+		if (cmd.ioError != null) throw cmd.ioError;
+		return cmd.get();
+	}
+	/**
+	 * <p>Saves the content of the panel as SVG document.</p>
+	 * 
+	 * <p>The document shows the current viewport (see {@link #setViewport(double, double, double)}).
+	 * Components are written as SVG elements in world coordinates and in drawing order, hidden
+	 * components and components outside of the viewport are omitted. The pixel layer is embedded
+	 * as PNG images of its tiles of {@value PixelLayer#TILE_SIZE}x{@value PixelLayer#TILE_SIZE}
+	 * pixels that intersect the viewport. Copies of the visible components and of these tiles
+	 * are taken on the event dispatch thread after all previously issued commands have been
+	 * applied. The document is then streamed to a buffered writer and the tiles are encoded on
+	 * the calling thread, without building a document tree, so that frames are not delayed by
+	 * the encoding and the file system.</p>
+	 * 
+	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
+	 * 
+	 * @param path the file to write
+	 * @throws IOException if the file cannot be written
+	 */
+	public void saveToSVG(Path path) throws IOException {
+		SvgWriter.Document document = snapshotOnEDT(this::snapshotSVG);
+		try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+			document.write(out);
+		}
+	}
+	/**
+	 * Takes a snapshot of the current content as SVG document.
+	 * Must only be called on the event dispatch thread.
+	 * @return the snapshot
+	 */
+	private SvgWriter.Document snapshotSVG() {
+		SvgWriter.Document w = new SvgWriter.Document();
+		AffineTransform view = getViewTransform();
+		Rectangle2D area = toWorld(view, new java.awt.Rectangle(0, 0, getWidth(), getHeight()));
+		w.begin(getWidth(), getHeight(), viewX, viewY, zoom, getBackground(), useAntialiasing);
+		for(PixelLayer.Tile tile : pixels.getTiles()) {
+			if (area.intersects(tile.x, tile.y, PixelLayer.TILE_SIZE, PixelLayer.TILE_SIZE)) {
+				w.tile(tile);
+			}
+		}
+		for(Layer layer : layers.values()) {
+			for(int slot = layer.first(); slot != ZOrderTree.NIL; slot = layer.next(slot)) {
+				FCanvasComponent c = components.getAt(slot);
+				if (c.isVisible() && area.intersects(c.getBounds())) w.component(c);
+			}
+		}
+		return w;
+	}
+	/**
+	 * Writes the current scene to a channel.
+	 * Must only be called on the event dispatch thread.
+	 * @param ch the channel to write to
+	 * @throws IOException if the channel cannot be written
+	 */
+	private void writeScene(WritableByteChannel ch) throws IOException {
+		SceneFile.Writer w = new SceneFile.Writer(ch);
+		w.header(getWidth(), getHeight(), getBackground().getRGB(), useAntialiasing, components.size(), viewX, viewY, zoom);
+		int[] frozen = new int[layers.size()];
+		int frozenCount = 0;
+		for(Map.Entry<Integer,Layer> e : layers.entrySet()) {
+			Layer layer = e.getValue();
+			if (layer.isFrozen()) frozen[frozenCount++] = e.getKey();
+			for(int slot = layer.first(); slot != ZOrderTree.NIL; slot = layer.next(slot)) {
+				w.component(components.getAt(slot), e.getKey(), layer.getZIndex(slot));
+			}
+		}
+		w.frozenLayers(frozen, frozenCount);
+		w.pixels(pixels);
+		w.finish();
+	}
+	/**
+	 * <p>Replaces the current scene with a scene loaded from a file written by {@link #saveScene(Path)}.</p>
+	 * 
+	 * <p>The file is memory-mapped and decoded on the calling thread. The components are then
+	 * inserted with a single command, which builds the drawing order of each layer in linear time.
+	 * The settings of the panel that are not part of the scene (e.g. its size) are not changed.</p>
+	 * 
+	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
+	 * 
+	 * @param path the file to read
+	 * @return the ids of the loaded components in drawing order
+	 * @throws IOException if the file cannot be read or is not a valid scene file
+	 * @see #saveScene(Path)
+	 */
+	public long[] loadScene(Path path) throws IOException {
+		try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+			return loadScene(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+		}
+	}
+	/**
+	 * Replaces the current scene with a scene decoded from the content of a scene file.
+	 * Used by {@link #loadScene(Path)} and {@link JournalReplay}.
+	 * @param data the content of the scene file between its position and its limit, the position is not changed
+	 * @return the ids of the loaded components in drawing order
+	 * @throws IOException if the data is not a valid scene file
+	 */
+	long[] loadScene(ByteBuffer data) throws IOException {
+		final SceneFile.Content scene = SceneFile.read(data.duplicate());
+		final long[] ids = new long[scene.components.length];
+		// the ids are new, so neither they nor their labels can be affected by queued commands;
+		// the labels of the replaced components are removed when the scene is applied
+		for(int i = 0; i < ids.length; i++) {
+			ids[i] = components.allocate();
+			if (scene.components[i] instanceof Text) {
+				Text t = (Text) scene.components[i];
+				labels.put(ids[i], new TextMetrics.Label(t.getText(), t.getFont().getSize()));
+			}
+		}
+		Journal j = journal;
+		if (j != null) j.record(Journal.LOAD_SCENE, ids, data);
+		post(new Command() {
+			@Override
+			protected void apply() {
+				applyScene(scene, ids);
+			}
+		});
+		return ids;
+	}
+	/**
+	 * Replaces the current scene with a decoded scene.
+	 * Must only be called on the event dispatch thread.
+	 * @param scene the decoded scene
+	 * @param ids the ids allocated for the components of the scene
+	 */
+	private void applyScene(SceneFile.Content scene, long[] ids) {
+		removeAllComponents();
+		// layers that are not part of the scene would otherwise keep e.g. their frozen state
+		layers.clear();
+		setBackground(new Color(scene.background, true));
+		useAntialiasing = scene.antialiasing;
+		int[] slots = new int[ids.length];
+		int i = 0;
+		while (i < ids.length) {
+			// components of the same layer are stored consecutively and in drawing order
+			int n = scene.layers[i];
+			Layer layer = getLayer(n);
+			int from = i;
+			for(; i < ids.length && scene.layers[i] == n; i++) {
+				slots[i] = ComponentStore.slot(ids[i]);
+				components.put(ids[i], scene.components[i], layer);
+				spatial.mark(slots[i]);
+			}
+			layer.addAll(slots, scene.zs, from, i);
+		}
+		for(int n : scene.frozenLayers) {
+			getLayer(n).setFrozen(true);
+		}
+		pixels = scene.pixels;
+		metrics.pixelBufferResized(pixels.getBytes());
+		viewX = scene.viewX;
+		viewY = scene.viewY;
+		zoom = scene.zoom;
+	}
+	/**
+	 * <p>Starts recording all calls of the methods that change this panel and all
+	 * mouse and key events of this panel in a journal file.</p>
+	 * 
+	 * <p>The file can be replayed with {@link JournalReplay} to reproduce the workload of a
+	 * session. Records are encoded into a buffer and written by a background thread. If a
+	 * journal is already being recorded, it is closed first.</p>
+	 * 
+	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
+	 * 
+	 * @param path the file to write, an existing file is overwritten
+	 * @throws IOException if the file cannot be created or the previous journal cannot be closed
+	 * @see #stopJournal()
+	 */
+	public void startJournal(Path path) throws IOException {
+		synchronized (journalLock) {
+			stopJournal();
+			Journal j = new Journal(path);
+			addMouseListener(j.getInputRecorder());
+			addMouseMotionListener(j.getInputRecorder());
+			addKeyListener(j.getInputRecorder());
+			journal = j;
+		}
+	}
+	/**
+	 * <p>Stops recording and closes the journal file. Has no effect if no journal is being recorded.</p>
+	 * 
+	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
+	 * 
+	 * @throws IOException if the journal could not be written completely
+	 * @see #startJournal(Path)
+	 */
+	public void stopJournal() throws IOException {
+		synchronized (journalLock) {
+			Journal j = journal;
+			if (j == null) return;
+			journal = null;
+			removeMouseListener(j.getInputRecorder());
+			removeMouseMotionListener(j.getInputRecorder());
+			removeKeyListener(j.getInputRecorder());
+			j.close();
+		}
+	}
+	/**
+	 * <p>Releases the resources of this panel that are not reclaimed by the garbage collector:
+	 * the metrics are removed from the platform MBean server, and a shown framebuffer is closed
+	 * and running animations are stopped after all previously issued commands have been applied.</p>
+	 * 
+	 * <p>A panel should be disposed when it is no longer used, e.g. after an offscreen replay.
+	 * It must not be shown again afterwards.</p>
+	 * 
+	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
+	 */
+	public void dispose() {
+		metrics.unregister();
+		enqueue(() -> {
+			closeFramebuffer();
+			animations.clear();
+			animationTimer.stop();
+		});
+	}
+	/**
+	 * <p>Returns the rendering statistics of this panel.</p>
+	 *
+	 * <p>The same object is registered as MBean with the platform MBean server
+	 * until the panel is disposed (see {@link #dispose()}).</p>
+	 * @return the metrics of this panel
+	 */
+	public FCanvasMetrics getMetrics() {
+		return metrics;
 	}
 
 	/**
 	 * <p>Draws the current graphic to a BufferedImage</p>
+	 * 
+	 * <p>The image is drawn on the event dispatch thread after all previously issued commands
+	 * have been applied. It is not a frame on the screen, so it neither counts as frame in the
+	 * metrics nor releases threads waiting for a frame. An exception thrown while drawing is
+	 * rethrown on the calling thread.</p>
+	 * 
+	 * <p>This method is thread-safe and can also be called from outside the event dispatch thread.</p>
+	 * 
 	 * @return BufferedImage with an image of the current canvas content
 	 */
-	public synchronized BufferedImage toImage() {
-		int type = BufferedImage.TYPE_INT_ARGB;
-		type = BufferedImage.TYPE_INT_RGB;
-		BufferedImage img = new BufferedImage(getWidth(),getHeight(),type);
-		paintComponent(img.getGraphics());
-		return img;
+	public BufferedImage toImage() {
+		// drawing does not throw IOException, so only unchecked exceptions reach the caller
+		SnapshotCommand<BufferedImage> cmd = new SnapshotCommand<BufferedImage>(() -> {
+			BufferedImage img = new BufferedImage(getWidth(), getHeight(), BufferedImage.TYPE_INT_RGB);
+			Graphics g = img.getGraphics();
+			try {
+				render(g, false);
+			} finally {
+				g.dispose();
+			}
+			// only returned once it is completely drawn
+			return img;
+		});
+		if (SwingUtilities.isEventDispatchThread()) {
+			cmd.apply();
+			return cmd.get();
+		}
+		post(cmd);
+		boolean interrupted = false;
+		while (true) {
+			try {
+				cmd.done.await();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) Thread.currentThread().interrupt();
+		return cmd.get();
 	}
 }
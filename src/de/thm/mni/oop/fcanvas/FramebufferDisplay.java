@@ -0,0 +1,82 @@
+package de.thm.mni.oop.fcanvas;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+
+/**
+ * <p>Shows the frames of a {@link SharedFramebuffer} on a panel.</p>
+ *
+ * <p>New frames are copied into the data array of an image that is not shown, which then
+ * replaces the shown image. A copy that was overwritten by the writer is discarded, so the
+ * shown image always contains a complete frame.</p>
+ *
+ * <p>This class is not thread-safe and must only be used on the event dispatch thread.</p>
+ *
+ * @author Christopher Schölzel
+ */
+class FramebufferDisplay {
+	private final SharedFramebuffer framebuffer;
+	private final int left;
+	private final int top;
+	private BufferedImage front;
+	private BufferedImage back;
+	/** number of the shown frame, 0 if none has been shown yet */
+	private long sequence = 0;
+
+	/**
+	 * Creates a display that does not show anything until the first frame has been read.
+	 * @param framebuffer the framebuffer to show
+	 * @param left world x-coordinate of the upper left corner of the frames
+	 * @param top world y-coordinate of the upper left corner of the frames
+	 */
+	FramebufferDisplay(SharedFramebuffer framebuffer, int left, int top) {
+		this.framebuffer = framebuffer;
+		this.left = left;
+		this.top = top;
+		front = new BufferedImage(framebuffer.getWidth(), framebuffer.getHeight(), BufferedImage.TYPE_INT_ARGB);
+		back = new BufferedImage(framebuffer.getWidth(), framebuffer.getHeight(), BufferedImage.TYPE_INT_ARGB);
+	}
+	/**
+	 * Shows the last complete frame of the framebuffer if it is newer than the shown one.
+	 * @return <code>true</code> if a new frame is shown and the panel must be repainted
+	 */
+	boolean poll() {
+		if (framebuffer.getSequence() == sequence) return false;
+		int[] data = ((DataBufferInt) back.getRaster().getDataBuffer()).getData();
+		long read = framebuffer.readFrame(data);
+		// a torn copy is discarded, the next poll reads the newer frame
+		if (read == 0) return false;
+		BufferedImage shown = front;
+		front = back;
+		back = shown;
+		sequence = read;
+		return true;
+	}
+	/**
+	 * Returns the number of the shown frame.
+	 * @return frame number, 0 if no frame has been shown yet
+	 */
+	long getSequence() {
+		return sequence;
+	}
+	/**
+	 * Draws the shown frame.
+	 * @param g2 the Graphics object in world coordinates
+	 */
+	void paint(Graphics2D g2) {
+		if (sequence == 0) return;
+		g2.drawImage(front, left, top, null);
+	}
+	/**
+	 * Stops showing the framebuffer and closes its file.
+	 */
+	void close() {
+		try {
+			framebuffer.close();
+		} catch (IOException e) {
+			// the file is only read, nothing is lost
+		}
+	}
+}
@@ -0,0 +1,307 @@
+package de.thm.mni.oop.fcanvas;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+/**
+ * <p>Holds decoded images for the sprites of all {@link FCanvasPanel}s, so that sprites that
+ * show the same file in the same size share a single image and files are only decoded once.</p>
+ *
+ * <p>Images are identified by the normalized absolute path of their file and the size in
+ * which they are shown. The image in its original size is decoded first, scaled images are
+ * created from it. Each image is converted once into a format that is compatible with the
+ * screen, so that drawing it is a plain copy of its pixels.</p>
+ *
+ * <p>The cache is bounded by the memory occupied by the pixels of the images. When the bound is
+ * exceeded, the least recently used images are dropped. Sprites keep their image, so dropping an
+ * image only means that it has to be decoded again for the next sprite that uses the same file.</p>
+ *
+ * <p>All methods are thread-safe. If several threads request the same image at the same time,
+ * only one of them decodes it and the others wait for the result.</p>
+ *
+ * @author Christopher Schölzel
+ */
+class ImageCache {
+	/** Default bound for the memory occupied by the cached images in bytes */
+	static final long DEFAULT_MAX_BYTES = 64L << 20;
+	private static final ImageCache SHARED = new ImageCache(DEFAULT_MAX_BYTES);
+	/** cached and pending images in the order of their last use */
+	private final LinkedHashMap<Key,Entry> entries = new LinkedHashMap<Key,Entry>(16, 0.75f, true);
+	private long maxBytes;
+	private long bytes = 0;
+	private final AtomicInteger decodes = new AtomicInteger();
+	private ExecutorService prefetcher = null;
+
+	/**
+	 * Identifies an image by its file and size. A size of 0 denotes the original size.
+	 */
+	private static final class Key {
+		final String path;
+		final int width;
+		final int height;
+		Key(String path, int width, int height) {
+			this.path = path;
+			this.width = width;
+			this.height = height;
+		}
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) return false;
+			Key k = (Key) o;
+			return width == k.width && height == k.height && path.equals(k.path);
+		}
+		@Override
+		public int hashCode() {
+			return (path.hashCode() * 31 + width) * 31 + height;
+		}
+	}
+
+	/**
+	 * An image that is being loaded or has been loaded.
+	 */
+	private static final class Entry extends FutureTask<BufferedImage> {
+		/** memory occupied by the image, 0 while it is loaded or if it is shared with another entry */
+		long bytes = 0;
+		Entry(Callable<BufferedImage> loader) {
+			super(loader);
+		}
+	}
+
+	/**
+	 * Creates an empty cache.
+	 * @param maxBytes bound for the memory occupied by the cached images in bytes
+	 */
+	ImageCache(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+	/**
+	 * Returns the cache that is shared by all panels.
+	 * @return the shared cache
+	 */
+	static ImageCache shared() {
+		return SHARED;
+	}
+	/**
+	 * Returns an image in its original size, decoding it if it is not cached.
+	 * @param path the path of the image file
+	 * @return the image, which must not be modified
+	 * @throws IOException if the file cannot be read or decoded
+	 */
+	BufferedImage get(String path) throws IOException {
+		return get(path, 0, 0);
+	}
+	/**
+	 * Returns an image in the given size, decoding and scaling it if it is not cached.
+	 * @param path the path of the image file
+	 * @param width the width of the image or 0 for the original width
+	 * @param height the height of the image or 0 for the original height
+	 * @return the image, which must not be modified
+	 * @throws IOException if the file cannot be read or decoded
+	 */
+	BufferedImage get(String path, int width, int height) throws IOException {
+		if (width < 0 || height < 0) throw new IllegalArgumentException("Negative image size " + width + "x" + height);
+		// a size of 0x0 pixels cannot be drawn, so only one of them may be 0
+		if (width == 0 || height == 0) {
+			width = 0;
+			height = 0;
+		}
+		final Key key = new Key(Paths.get(path).toAbsolutePath().normalize().toString(), width, height);
+		Entry entry;
+		boolean owner = false;
+		synchronized (this) {
+			entry = entries.get(key);
+			if (entry == null) {
+				entry = new Entry(() -> load(key));
+				entries.put(key, entry);
+				owner = true;
+			}
+		}
+		// decoded outside of the lock, so that other images can be requested meanwhile
+		if (owner) entry.run();
+		BufferedImage image;
+		try {
+			image = entry.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for " + path);
+		} catch (ExecutionException e) {
+			synchronized (this) {
+				// failures are not cached, the file may be fixed later
+				entries.remove(key, entry);
+			}
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) throw (IOException) cause;
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			throw new IOException("Cannot load " + path, cause);
+		}
+		if (owner) added(key, entry, image);
+		return image;
+	}
+	/**
+	 * Starts decoding an image in its original size on a background thread, so that a later call
+	 * of {@link #get(String, int, int)} finds it in the cache. Errors are reported by that call.
+	 * @param path the path of the image file
+	 */
+	void prefetch(final String path) {
+		ExecutorService executor;
+		synchronized (this) {
+			if (prefetcher == null) {
+				prefetcher = Executors.newSingleThreadExecutor(r -> {
+					Thread t = new Thread(r, "FCanvas image prefetcher");
+					t.setDaemon(true);
+					return t;
+				});
+			}
+			executor = prefetcher;
+		}
+		executor.execute(() -> {
+			try {
+				get(path);
+			} catch (IOException | RuntimeException e) {
+				// reported when the image is used
+			}
+		});
+	}
+	/**
+	 * Accounts for a newly loaded image and drops the least recently used images if the bound is exceeded.
+	 */
+	private synchronized void added(Key key, Entry entry, BufferedImage image) {
+		// the entry may have been removed by clear() while it was loaded
+		if (entries.get(key) != entry) return;
+		if (key.width != 0) {
+			Entry original = entries.get(new Key(key.path, 0, 0));
+			// an image requested in its original size is shared with the original entry
+			if (original != null && original.isDone() && resultOf(original) == image) return;
+		}
+		entry.bytes = 4L * image.getWidth() * image.getHeight();
+		bytes += entry.bytes;
+		trim(entry);
+	}
+	/**
+	 * Drops the least recently used images until the bound is met.
+	 * @param keep an entry that is kept even if it exceeds the bound on its own or <code>null</code>
+	 */
+	private void trim(Entry keep) {
+		Iterator<Map.Entry<Key,Entry>> it = entries.entrySet().iterator();
+		while (bytes > maxBytes && it.hasNext()) {
+			Entry e = it.next().getValue();
+			if (e == keep) break;
+			// images that are still loaded are accounted for when they are done
+			if (!e.isDone()) continue;
+			bytes -= e.bytes;
+			it.remove();
+		}
+	}
+	/**
+	 * Returns the image of an entry that is done or <code>null</code> if loading it has failed.
+	 */
+	private static BufferedImage resultOf(Entry e) {
+		try {
+			return e.get();
+		} catch (InterruptedException | ExecutionException ex) {
+			return null;
+		}
+	}
+	/**
+	 * Decodes an image and converts it into a compatible format in the size given by the key.
+	 */
+	private BufferedImage load(Key key) throws IOException {
+		if (key.width != 0) {
+			BufferedImage original = get(key.path);
+			if (original.getWidth() == key.width && original.getHeight() == key.height) return original;
+			return convert(original, key.width, key.height);
+		}
+		BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(readFile(Paths.get(key.path))));
+		if (decoded == null) throw new IOException("Unsupported image format: " + key.path);
+		decodes.incrementAndGet();
+		return convert(decoded, decoded.getWidth(), decoded.getHeight());
+	}
+	/**
+	 * Reads a whole file through a file channel.
+	 */
+	private static byte[] readFile(Path path) throws IOException {
+		try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = ch.size();
+			if (size > Integer.MAX_VALUE) throw new IOException("Image file too large: " + path);
+			ByteBuffer buf = ByteBuffer.allocate((int) size);
+			while (buf.hasRemaining() && ch.read(buf) >= 0) {
+				// read until the buffer is full or the file ends
+			}
+			return buf.array();
+		}
+	}
+	/**
+	 * Copies an image into a new image of the given size in the format of the screen
+	 * (or premultiplied ARGB without a screen).
+	 */
+	private static BufferedImage convert(BufferedImage src, int width, int height) {
+		BufferedImage dst;
+		if (GraphicsEnvironment.isHeadless()) {
+			dst = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+		} else {
+			GraphicsConfiguration gc = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+			dst = gc.createCompatibleImage(width, height, src.getTransparency());
+		}
+		Graphics2D g = dst.createGraphics();
+		g.setComposite(AlphaComposite.Src);
+		if (width != src.getWidth() || height != src.getHeight()) {
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		}
+		g.drawImage(src, 0, 0, width, height, null);
+		g.dispose();
+		return dst;
+	}
+	/**
+	 * Changes the bound for the memory occupied by the cached images and drops the least
+	 * recently used images if the new bound is exceeded.
+	 * @param maxBytes bound in bytes
+	 */
+	synchronized void setMaxBytes(long maxBytes) {
+		this.maxBytes = maxBytes;
+		trim(null);
+	}
+	/**
+	 * Returns the memory occupied by the cached images.
+	 * @return size of the pixels of all cached images in bytes
+	 */
+	synchronized long getBytes() {
+		return bytes;
+	}
+	/**
+	 * Returns the number of files that have been decoded.
+	 * @return number of decoded files since the cache was created
+	 */
+	int getDecodes() {
+		return decodes.get();
+	}
+	/**
+	 * Drops all cached images.
+	 */
+	synchronized void clear() {
+		entries.clear();
+		bytes = 0;
+	}
+}
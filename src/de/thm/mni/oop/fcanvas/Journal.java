@@ -0,0 +1,627 @@
+package de.thm.mni.oop.fcanvas;
+
+import java.awt.event.KeyEvent;
+import java.awt.event.KeyListener;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseListener;
+import java.awt.event.MouseMotionListener;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * <p>Records the calls of the mutating methods of a {@link FCanvasPanel} and the input events
+ * it receives in an append-only binary file, so that a session can be replayed with
+ * {@link JournalReplay}.</p>
+ *
+ * <p>The file starts with the magic number <code>"FCJL"</code> (int) and the format version (short).
+ * Each record consists of an opcode (byte), the time in nanoseconds since the previous record
+ * (unsigned variable-length long) and the arguments of the call. Ids are stored as unsigned
+ * variable-length longs, all other numbers as zigzag-encoded variable-length ints, so that small
+ * coordinates take only one or two bytes. Floats are stored by their bits, doubles as eight bytes
+ * and strings as length followed by their UTF-8 bytes.</p>
+ *
+ * <p>Records are encoded into one of a few buffers, which are handed to a background thread for
+ * writing when they are full. The calling threads therefore only block on I/O if the writer thread
+ * falls behind by more than all buffers. All methods are thread-safe.</p>
+ *
+ * <p>The journal keeps its own lock, which is only taken while a journal is recorded. Records of
+ * the same thread are in the order of the calls. Since the panel does not serialize its callers,
+ * calls of different threads that race on the same component may be recorded in a different
+ * order than the one in which they were applied.</p>
+ *
+ * <p>Scenes loaded with {@link FCanvasPanel#loadScene(Path)} are embedded in the journal, so that
+ * it can be replayed without the scene file. The frames of a shared framebuffer are produced
+ * outside of the panel and are not recorded: only showing and hiding the framebuffer is recorded,
+ * and a replay shows the frames that the recorded file contains at that time. A replay refuses
+ * a journal that shows a framebuffer file that does not exist anymore. Animations are recorded
+ * when they are started and cancelled, their frames are computed again by the replay.</p>
+ *
+ * @author Christopher Schölzel
+ */
+class Journal {
+	/** The characters "FCJL" */
+	static final int MAGIC = 0x46434A4C;
+	/** The version of the format written by this class */
+	static final short VERSION = 1;
+	static final byte ADD_RECTANGLE = 1;
+	static final byte ADD_OVAL = 2;
+	static final byte ADD_LINE = 3;
+	static final byte ADD_POLYGON = 4;
+	static final byte ADD_TEXT = 5;
+	static final byte REMOVE = 6;
+	static final byte MOVE = 7;
+	static final byte FONT_SIZE = 8;
+	static final byte FILL_COLOR = 9;
+	static final byte STROKE_COLOR = 10;
+	static final byte STROKE_WIDTH = 11;
+	static final byte ROTATION = 12;
+	static final byte TEXT = 13;
+	static final byte RESIZE = 14;
+	static final byte LINE_POINTS = 15;
+	static final byte POLYGON_POINTS = 16;
+	static final byte VISIBLE = 17;
+	static final byte LAYER = 18;
+	static final byte Z_INDEX = 19;
+	static final byte BRING_TO_FRONT = 20;
+	static final byte SEND_TO_BACK = 21;
+	static final byte LAYER_FROZEN = 22;
+	static final byte BACKGROUND = 23;
+	static final byte CLEAR = 24;
+	static final byte RESET = 25;
+	static final byte ANTIALIASING = 26;
+	static final byte PIXEL = 27;
+	static final byte UPDATE = 28;
+	static final byte MOUSE = 29;
+	static final byte KEY = 30;
+	static final byte VIEWPORT = 31;
+	static final byte LEVEL_OF_DETAIL = 32;
+	static final byte QUALITY_GOVERNOR = 33;
+	static final byte ADD_IMAGE = 34;
+	static final byte ADD_TILEMAP = 35;
+	static final byte TILE = 36;
+	static final byte TILES = 37;
+	static final byte PIXELS = 38;
+	static final byte LOAD_SCENE = 39;
+	static final byte SHOW_FRAMEBUFFER = 40;
+	static final byte HIDE_FRAMEBUFFER = 41;
+	static final byte PERFORMANCE_HUD = 42;
+	static final byte ANIMATE = 43;
+	static final byte ANIMATE_AFTER = 44;
+	static final byte CANCEL_ANIMATION = 45;
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final int BUFFER_COUNT = 4;
+	/** Largest number of bytes written without checking the space in the buffer */
+	private static final int MAX_CHUNK = 16;
+	/** Marks the end of the journal for the writer thread */
+	private static final ByteBuffer END = ByteBuffer.allocate(0);
+	private final FileChannel channel;
+	private final BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<ByteBuffer>(BUFFER_COUNT);
+	private final BlockingQueue<ByteBuffer> full = new LinkedBlockingQueue<ByteBuffer>();
+	private final Thread writer;
+	private final InputRecorder input = new InputRecorder();
+	private ByteBuffer current;
+	private long lastTime;
+	private boolean closed = false;
+	private volatile IOException error = null;
+
+	/**
+	 * Creates a new journal file and starts the writer thread.
+	 * @param path the file to write, an existing file is overwritten
+	 * @throws IOException if the file cannot be created
+	 */
+	Journal(Path path) throws IOException {
+		channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+		for(int i = 1; i < BUFFER_COUNT; i++) {
+			free.add(ByteBuffer.allocateDirect(BUFFER_SIZE));
+		}
+		current = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		current.putInt(MAGIC);
+		current.putShort(VERSION);
+		lastTime = System.nanoTime();
+		writer = new Thread(this::writeBuffers, "FCanvas journal writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+	/**
+	 * Body of the writer thread.
+	 */
+	private void writeBuffers() {
+		while (true) {
+			ByteBuffer buf = takeUninterruptibly(full);
+			if (buf == END) return;
+			try {
+				// after an error, the remaining records are discarded
+				while (error == null && buf.hasRemaining()) {
+					channel.write(buf);
+				}
+			} catch (IOException e) {
+				error = e;
+			}
+			buf.clear();
+			free.add(buf);
+		}
+	}
+	private static ByteBuffer takeUninterruptibly(BlockingQueue<ByteBuffer> queue) {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return queue.take();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		} finally {
+			if (interrupted) Thread.currentThread().interrupt();
+		}
+	}
+	/**
+	 * Packs the channels of a color into one int as used by {@link java.awt.Color#getRGB()}.
+	 * @param r value for the red channel (0 to 255)
+	 * @param g value for the green channel (0 to 255)
+	 * @param b value for the blue channel (0 to 255)
+	 * @param a value for the alpha channel (0 to 255)
+	 * @return the color as ARGB value
+	 */
+	static int argb(int r, int g, int b, int a) {
+		return (a & 0xFF) << 24 | (r & 0xFF) << 16 | (g & 0xFF) << 8 | (b & 0xFF);
+	}
+	/**
+	 * Returns the listener that records the input events of the panel.
+	 * @return listener for mouse, mouse motion and key events
+	 */
+	InputRecorder getInputRecorder() {
+		return input;
+	}
+	/**
+	 * Writes all remaining records, stops the writer thread and closes the file.
+	 * Further records are ignored.
+	 * @throws IOException if the journal could not be written completely
+	 */
+	synchronized void close() throws IOException {
+		if (closed) return;
+		closed = true;
+		current.flip();
+		full.add(current);
+		full.add(END);
+		boolean interrupted = false;
+		while (writer.isAlive()) {
+			try {
+				writer.join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) Thread.currentThread().interrupt();
+		channel.close();
+		if (error != null) throw error;
+	}
+	/**
+	 * Starts a new record with the current time. Must be called while holding the lock.
+	 * @return <code>false</code> if the journal has already been closed
+	 */
+	private boolean begin(byte op) {
+		if (closed) return false;
+		long now = System.nanoTime();
+		ensure(MAX_CHUNK);
+		current.put(op);
+		putVarLong(now - lastTime);
+		lastTime = now;
+		return true;
+	}
+	/**
+	 * Hands the current buffer to the writer thread if it has less than n bytes left.
+	 */
+	private void ensure(int n) {
+		if (current.remaining() >= n) return;
+		current.flip();
+		full.add(current);
+		current = takeUninterruptibly(free);
+	}
+	private void putVarLong(long v) {
+		while ((v & ~0x7FL) != 0) {
+			current.put((byte) ((v & 0x7F) | 0x80));
+			v >>>= 7;
+		}
+		current.put((byte) v);
+	}
+	private void id(long id) {
+		ensure(MAX_CHUNK);
+		putVarLong(id);
+	}
+	private void num(int v) {
+		ensure(MAX_CHUNK);
+		// zigzag encoding maps small negative numbers to small positive numbers
+		putVarLong(((v << 1) ^ (v >> 31)) & 0xFFFFFFFFL);
+	}
+	private void nums(int[] values) {
+		num(values.length);
+		for(int v : values) num(v);
+	}
+	private void bytes(byte[] bytes) {
+		bytes(ByteBuffer.wrap(bytes));
+	}
+	private void bytes(ByteBuffer data) {
+		ByteBuffer src = data.duplicate();
+		num(src.remaining());
+		int end = src.limit();
+		while (src.hasRemaining()) {
+			ensure(1);
+			src.limit(src.position() + Math.min(src.remaining(), current.remaining()));
+			current.put(src);
+			src.limit(end);
+		}
+	}
+	private void string(String s) {
+		bytes(s.getBytes(StandardCharsets.UTF_8));
+	}
+	/**
+	 * Records a call without arguments.
+	 * @param op the opcode of the call
+	 */
+	synchronized void record(byte op) {
+		begin(op);
+	}
+	/**
+	 * Records a call with an id.
+	 * @param op the opcode of the call
+	 * @param id the id of the component
+	 */
+	synchronized void record(byte op, long id) {
+		if (!begin(op)) return;
+		id(id);
+	}
+	/**
+	 * Records a call with an id and a number.
+	 * @param op the opcode of the call
+	 * @param id the id of the component
+	 * @param a the number
+	 */
+	synchronized void record(byte op, long id, int a) {
+		if (!begin(op)) return;
+		id(id);
+		num(a);
+	}
+	/**
+	 * Records a call with an id and two numbers.
+	 * @param op the opcode of the call
+	 * @param id the id of the component
+	 * @param a the first number
+	 * @param b the second number
+	 */
+	synchronized void record(byte op, long id, int a, int b) {
+		if (!begin(op)) return;
+		id(id);
+		num(a);
+		num(b);
+	}
+	/**
+	 * Records a call with an id and three numbers.
+	 * @param op the opcode of the call
+	 * @param id the id of the component
+	 * @param a the first number
+	 * @param b the second number
+	 * @param c the third number
+	 */
+	synchronized void record(byte op, long id, int a, int b, int c) {
+		if (!begin(op)) return;
+		id(id);
+		num(a);
+		num(b);
+		num(c);
+	}
+	/**
+	 * Records a call with an id and four numbers.
+	 * @param op the opcode of the call
+	 * @param id the id of the component
+	 * @param a the first number
+	 * @param b the second number
+	 * @param c the third number
+	 * @param d the fourth number
+	 */
+	synchronized void record(byte op, long id, int a, int b, int c, int d) {
+		if (!begin(op)) return;
+		id(id);
+		num(a);
+		num(b);
+		num(c);
+		num(d);
+	}
+	/**
+	 * Records a call with an id, four numbers and an array.
+	 * @param op the opcode of the call
+	 * @param id the id of the component
+	 * @param a the first number
+	 * @param b the second number
+	 * @param c the third number
+	 * @param d the fourth number
+	 * @param values the array
+	 */
+	synchronized void record(byte op, long id, int a, int b, int c, int d, int[] values) {
+		if (!begin(op)) return;
+		id(id);
+		num(a);
+		num(b);
+		num(c);
+		num(d);
+		nums(values);
+	}
+	/**
+	 * Records a call with an id and two coordinate arrays.
+	 * @param op the opcode of the call
+	 * @param id the id of the component
+	 * @param xs the x-coordinates
+	 * @param ys the y-coordinates
+	 */
+	synchronized void record(byte op, long id, int[] xs, int[] ys) {
+		if (!begin(op)) return;
+		id(id);
+		nums(xs);
+		nums(ys);
+	}
+	/**
+	 * Records a call with an id and a string.
+	 * @param op the opcode of the call
+	 * @param id the id of the component
+	 * @param s the string
+	 */
+	synchronized void record(byte op, long id, String s) {
+		if (!begin(op)) return;
+		id(id);
+		string(s);
+	}
+	/**
+	 * Records a call with an id, a string and two numbers.
+	 * @param op the opcode of the call
+	 * @param id the id of the component
+	 * @param s the string
+	 * @param a the first number
+	 * @param b the second number
+	 */
+	synchronized void record(byte op, long id, String s, int a, int b) {
+		if (!begin(op)) return;
+		id(id);
+		string(s);
+		num(a);
+		num(b);
+	}
+	/**
+	 * Records a call with an id, a string and four numbers.
+	 * @param op the opcode of the call
+	 * @param id the id of the component
+	 * @param s the string
+	 * @param a the first number
+	 * @param b the second number
+	 * @param c the third number
+	 * @param d the fourth number
+	 */
+	synchronized void record(byte op, long id, String s, int a, int b, int c, int d) {
+		if (!begin(op)) return;
+		id(id);
+		string(s);
+		num(a);
+		num(b);
+		num(c);
+		num(d);
+	}
+	/**
+	 * Records a call with an id, a string and six numbers.
+	 * @param op the opcode of the call
+	 * @param id the id of the component
+	 * @param s the string
+	 * @param a the first number
+	 * @param b the second number
+	 * @param c the third number
+	 * @param d the fourth number
+	 * @param e the fifth number
+	 * @param f the sixth number
+	 */
+	synchronized void record(byte op, long id, String s, int a, int b, int c, int d, int e, int f) {
+		if (!begin(op)) return;
+		id(id);
+		string(s);
+		num(a);
+		num(b);
+		num(c);
+		num(d);
+		num(e);
+		num(f);
+	}
+	/**
+	 * Records a call with two ids, a number, a double and two numbers.
+	 * @param op the opcode of the call
+	 * @param handle the first id, e.g. the handle of an animation
+	 * @param id the second id, e.g. the id of the component
+	 * @param a the first number
+	 * @param v the double
+	 * @param b the second number
+	 * @param c the third number
+	 */
+	synchronized void record(byte op, long handle, long id, int a, double v, int b, int c) {
+		if (!begin(op)) return;
+		id(handle);
+		id(id);
+		num(a);
+		ensure(8);
+		current.putDouble(v);
+		num(b);
+		num(c);
+	}
+	/**
+	 * Records a call with three ids, a number, a double and two numbers.
+	 * @param op the opcode of the call
+	 * @param previous the first id, e.g. the handle of the animation to wait for
+	 * @param handle the second id, e.g. the handle of the animation
+	 * @param id the third id, e.g. the id of the component
+	 * @param a the first number
+	 * @param v the double
+	 * @param b the second number
+	 * @param c the third number
+	 */
+	synchronized void record(byte op, long previous, long handle, long id, int a, double v, int b, int c) {
+		if (!begin(op)) return;
+		id(previous);
+		id(handle);
+		id(id);
+		num(a);
+		ensure(8);
+		current.putDouble(v);
+		num(b);
+		num(c);
+	}
+	/**
+	 * Records a call with several ids and a block of binary data.
+	 * @param op the opcode of the call
+	 * @param ids the ids of the components
+	 * @param data the data between its position and its limit, the position is not changed
+	 */
+	synchronized void record(byte op, long[] ids, ByteBuffer data) {
+		if (!begin(op)) return;
+		num(ids.length);
+		for(long id : ids) id(id);
+		bytes(data);
+	}
+	/**
+	 * Records a call with a string and two numbers that are not ids.
+	 * @param op the opcode of the call
+	 * @param s the string
+	 * @param a the first number
+	 * @param b the second number
+	 */
+	synchronized void recordValues(byte op, String s, int a, int b) {
+		if (!begin(op)) return;
+		string(s);
+		num(a);
+		num(b);
+	}
+	/**
+	 * Records a call with four numbers that are not ids and an array.
+	 * @param op the opcode of the call
+	 * @param a the first number
+	 * @param b the second number
+	 * @param c the third number
+	 * @param d the fourth number
+	 * @param values the array
+	 */
+	synchronized void recordValues(byte op, int a, int b, int c, int d, int[] values) {
+		if (!begin(op)) return;
+		num(a);
+		num(b);
+		num(c);
+		num(d);
+		nums(values);
+	}
+	/**
+	 * Records a call with a number that is not an id.
+	 * @param op the opcode of the call
+	 * @param a the number
+	 */
+	synchronized void recordValues(byte op, int a) {
+		if (!begin(op)) return;
+		num(a);
+	}
+	/**
+	 * Records a call with two numbers that are not ids.
+	 * @param op the opcode of the call
+	 * @param a the first number
+	 * @param b the second number
+	 */
+	synchronized void recordValues(byte op, int a, int b) {
+		if (!begin(op)) return;
+		num(a);
+		num(b);
+	}
+	/**
+	 * Records a call with three numbers that are not ids.
+	 * @param op the opcode of the call
+	 * @param a the first number
+	 * @param b the second number
+	 * @param c the third number
+	 */
+	synchronized void recordValues(byte op, int a, int b, int c) {
+		if (!begin(op)) return;
+		num(a);
+		num(b);
+		num(c);
+	}
+	/**
+	 * Records a call with three doubles and no id.
+	 * @param op the opcode of the call
+	 * @param a the first value
+	 * @param b the second value
+	 * @param c the third value
+	 */
+	synchronized void recordValues(byte op, double a, double b, double c) {
+		if (!begin(op)) return;
+		ensure(24);
+		current.putDouble(a);
+		current.putDouble(b);
+		current.putDouble(c);
+	}
+
+	/**
+	 * Records the input events of the panel.
+	 */
+	class InputRecorder implements MouseListener, MouseMotionListener, KeyListener {
+		private void mouse(MouseEvent e) {
+			synchronized (Journal.this) {
+				if (!begin(MOUSE)) return;
+				num(e.getID());
+				num(e.getX());
+				num(e.getY());
+				num(e.getButton());
+				num(e.getModifiersEx());
+			}
+		}
+		private void key(KeyEvent e) {
+			synchronized (Journal.this) {
+				if (!begin(KEY)) return;
+				num(e.getID());
+				num(e.getKeyCode());
+				num(e.getKeyChar());
+				num(e.getModifiersEx());
+			}
+		}
+		@Override
+		public void mouseClicked(MouseEvent e) {
+			mouse(e);
+		}
+		@Override
+		public void mousePressed(MouseEvent e) {
+			mouse(e);
+		}
+		@Override
+		public void mouseReleased(MouseEvent e) {
+			mouse(e);
+		}
+		@Override
+		public void mouseEntered(MouseEvent e) {}
+		@Override
+		public void mouseExited(MouseEvent e) {}
+		@Override
+		public void mouseDragged(MouseEvent e) {
+			mouse(e);
+		}
+		@Override
+		public void mouseMoved(MouseEvent e) {
+			mouse(e);
+		}
+		@Override
+		public void keyTyped(KeyEvent e) {}
+		@Override
+		public void keyPressed(KeyEvent e) {
+			key(e);
+		}
+		@Override
+		public void keyReleased(KeyEvent e) {
+			key(e);
+		}
+	}
+}
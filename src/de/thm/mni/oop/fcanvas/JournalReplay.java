@@ -0,0 +1,444 @@
+package de.thm.mni.oop.fcanvas;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.event.KeyEvent;
+import java.awt.event.KeyListener;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseListener;
+import java.awt.event.MouseMotionListener;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * <p>Replays a journal recorded with {@link FCanvasPanel#startJournal(Path)} against a panel
+ * that is not shown on the screen.</p>
+ *
+ * <p>All recorded calls are issued from the replaying thread in the recorded order. Ids are
+ * translated to the ids assigned by the replay panel. Whenever the recorded program requested
+ * a repaint, a frame is painted into an offscreen image on the event dispatch thread. Like the
+ * Swing repaint manager, requests are coalesced while a frame is pending, so that a replay as
+ * fast as possible is not slowed down by frames that would never have been shown. Input events
+ * are delivered to the mouse and key listeners of the panel. Loaded scenes are taken from the
+ * journal, shared framebuffers are opened at their recorded path.</p>
+ *
+ * <p>The replay can either keep the recorded timing or run as fast as possible. Afterwards the
+ * {@link FCanvasMetrics} of the panel show the rendering statistics of the workload.</p>
+ *
+ * <p>Usage: <code>java de.thm.mni.oop.fcanvas.JournalReplay [--realtime] [--size WIDTHxHEIGHT] journal</code></p>
+ *
+ * @author Christopher Schölzel
+ * @since 1.4
+ */
+public class JournalReplay {
+	private final FCanvasPanel panel;
+	private final boolean realTime;
+	private final Map<Long,Long> ids = new HashMap<Long,Long>();
+	private final Map<Long,Long> animations = new HashMap<Long,Long>();
+	private final AtomicBoolean framePending = new AtomicBoolean(false);
+	private BufferedImage frame;
+	private long records = 0;
+
+	/**
+	 * Creates a replay for the given panel.
+	 * @param panel the panel to replay the journal on, its size determines the size of the painted frames
+	 * @param realTime if <code>true</code> the recorded delays between calls are kept, otherwise the journal is replayed as fast as possible
+	 */
+	public JournalReplay(FCanvasPanel panel, boolean realTime) {
+		this.panel = panel;
+		this.realTime = realTime;
+	}
+	/**
+	 * Replays a journal and waits until all calls have been applied.
+	 *
+	 * A journal that ends within a record (e.g. because the recording program crashed)
+	 * is replayed up to the last complete record.
+	 * @param journal the journal file
+	 * @return the number of replayed records
+	 * @throws IOException if the file cannot be read or is not a journal
+	 * @throws InterruptedException if the replaying thread is interrupted
+	 */
+	public long replay(Path journal) throws IOException, InterruptedException {
+		frame = new BufferedImage(Math.max(1, panel.getWidth()), Math.max(1, panel.getHeight()), BufferedImage.TYPE_INT_RGB);
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(journal)))) {
+			if (in.readInt() != Journal.MAGIC) throw new IOException("Not a FCanvas journal");
+			short version = in.readShort();
+			if (version != Journal.VERSION) throw new IOException("Unsupported journal version " + version);
+			long start = System.nanoTime();
+			long time = 0;
+			int op;
+			while ((op = in.read()) != -1) {
+				try {
+					time += readVarLong(in);
+					if (realTime) {
+						long wait = start + time - System.nanoTime();
+						if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+					}
+					apply((byte) op, in);
+				} catch (EOFException e) {
+					break;
+				}
+				records++;
+			}
+		}
+		panel.flush(Long.MAX_VALUE);
+		return records;
+	}
+	private void apply(byte op, DataInputStream in) throws IOException {
+		switch (op) {
+		case Journal.ADD_RECTANGLE: {
+			long id = readVarLong(in);
+			ids.put(id, panel.addRectangle(num(in), num(in), num(in), num(in)));
+			break;
+		}
+		case Journal.ADD_OVAL: {
+			long id = readVarLong(in);
+			ids.put(id, panel.addOval(num(in), num(in), num(in), num(in)));
+			break;
+		}
+		case Journal.ADD_LINE: {
+			long id = readVarLong(in);
+			ids.put(id, panel.addLine(num(in), num(in), num(in), num(in)));
+			break;
+		}
+		case Journal.ADD_POLYGON: {
+			long id = readVarLong(in);
+			ids.put(id, panel.addPolygon(nums(in), nums(in)));
+			break;
+		}
+		case Journal.ADD_TEXT: {
+			long id = readVarLong(in);
+			ids.put(id, panel.addText(string(in), num(in), num(in)));
+			break;
+		}
+		case Journal.ADD_IMAGE: {
+			long id = readVarLong(in);
+			ids.put(id, panel.addImage(string(in), num(in), num(in), num(in), num(in)));
+			break;
+		}
+		case Journal.ADD_TILEMAP: {
+			long id = readVarLong(in);
+			ids.put(id, panel.addTilemap(string(in), num(in), num(in), num(in), num(in), num(in), num(in)));
+			break;
+		}
+		case Journal.TILE:
+			panel.setTile(id(in), num(in), num(in), num(in));
+			break;
+		case Journal.TILES:
+			panel.setTiles(id(in), num(in), num(in), num(in), num(in), nums(in));
+			break;
+		case Journal.REMOVE:
+			panel.removeComponent(id(in));
+			break;
+		case Journal.MOVE:
+			panel.moveComponent(id(in), num(in), num(in));
+			break;
+		case Journal.FONT_SIZE:
+			panel.setFontSize(id(in), num(in));
+			break;
+		case Journal.FILL_COLOR: {
+			long id = id(in);
+			Color c = new Color(num(in), true);
+			panel.setFillColor(id, c.getRed(), c.getGreen(), c.getBlue(), c.getAlpha());
+			break;
+		}
+		case Journal.STROKE_COLOR: {
+			long id = id(in);
+			Color c = new Color(num(in), true);
+			panel.setStrokeColor(id, c.getRed(), c.getGreen(), c.getBlue(), c.getAlpha());
+			break;
+		}
+		case Journal.STROKE_WIDTH:
+			panel.setStrokeWidth(id(in), num(in));
+			break;
+		case Journal.ROTATION:
+			panel.setRotation(id(in), Float.intBitsToFloat(num(in)));
+			break;
+		case Journal.TEXT:
+			panel.setText(id(in), string(in));
+			break;
+		case Journal.RESIZE:
+			panel.resizeComponent(id(in), num(in), num(in));
+			break;
+		case Journal.LINE_POINTS:
+			panel.setLinePoints(id(in), num(in), num(in), num(in), num(in));
+			break;
+		case Journal.POLYGON_POINTS:
+			panel.setPolygonPoints(id(in), nums(in), nums(in));
+			break;
+		case Journal.VISIBLE:
+			panel.setComponentVisible(id(in), num(in) != 0);
+			break;
+		case Journal.LAYER:
+			panel.setLayer(id(in), num(in));
+			break;
+		case Journal.Z_INDEX:
+			panel.setZIndex(id(in), num(in));
+			break;
+		case Journal.BRING_TO_FRONT:
+			panel.bringToFront(id(in));
+			break;
+		case Journal.SEND_TO_BACK:
+			panel.sendToBack(id(in));
+			break;
+		case Journal.LAYER_FROZEN:
+			panel.setLayerFrozen(num(in), num(in) != 0);
+			break;
+		case Journal.BACKGROUND:
+			panel.setBackgroundColor(num(in), num(in), num(in));
+			break;
+		case Journal.CLEAR:
+			panel.clear();
+			break;
+		case Journal.RESET:
+			panel.reset();
+			break;
+		case Journal.ANTIALIASING:
+			panel.setAntialiasingEnabled(num(in) != 0);
+			break;
+		case Journal.PIXEL:
+			panel.setPixel(new Point(num(in), num(in)), new Color(num(in), true));
+			break;
+		case Journal.PIXELS: {
+			final int x = num(in);
+			final int y = num(in);
+			final int width = num(in);
+			int height = num(in);
+			final int[] argb = nums(in);
+			panel.computePixels(x, y, width, height, (px, py) -> argb[(py - y) * width + px - x], false);
+			break;
+		}
+		case Journal.VIEWPORT:
+			panel.setViewport(in.readDouble(), in.readDouble(), in.readDouble());
+			break;
+		case Journal.LEVEL_OF_DETAIL:
+			panel.setLevelOfDetail(in.readDouble(), in.readDouble(), (int) in.readDouble());
+			break;
+		case Journal.QUALITY_GOVERNOR:
+			panel.setQualityGovernorEnabled(num(in) != 0);
+			break;
+		case Journal.LOAD_SCENE: {
+			long[] recorded = new long[num(in)];
+			for(int i = 0; i < recorded.length; i++) {
+				recorded[i] = readVarLong(in);
+			}
+			byte[] scene = new byte[num(in)];
+			in.readFully(scene);
+			long[] loaded = panel.loadScene(ByteBuffer.wrap(scene));
+			for(int i = 0; i < recorded.length; i++) {
+				ids.put(recorded[i], loaded[i]);
+			}
+			break;
+		}
+		case Journal.SHOW_FRAMEBUFFER: {
+			String file = string(in);
+			try {
+				panel.showFramebuffer(Paths.get(file), num(in), num(in));
+			} catch (NoSuchFileException e) {
+				throw new IOException("The journal shows the framebuffer " + file + ", which does not exist anymore", e);
+			}
+			break;
+		}
+		case Journal.HIDE_FRAMEBUFFER:
+			panel.hideFramebuffer();
+			break;
+		case Journal.PERFORMANCE_HUD:
+			panel.setPerformanceHudVisible(num(in) != 0);
+			break;
+		case Journal.ANIMATE: {
+			long handle = readVarLong(in);
+			animations.put(handle, panel.animate(id(in), num(in), in.readDouble(), num(in), num(in)));
+			break;
+		}
+		case Journal.ANIMATE_AFTER: {
+			long previous = animation(in);
+			long handle = readVarLong(in);
+			animations.put(handle, panel.animateAfter(previous, id(in), num(in), in.readDouble(), num(in), num(in)));
+			break;
+		}
+		case Journal.CANCEL_ANIMATION:
+			panel.cancelAnimation(animation(in));
+			break;
+		case Journal.UPDATE:
+			panel.updateCanvas();
+			requestFrame();
+			break;
+		case Journal.MOUSE: {
+			int id = num(in);
+			int x = num(in);
+			int y = num(in);
+			int button = num(in);
+			dispatch(new MouseEvent(panel, id, System.currentTimeMillis(), num(in), x, y, 1, false, button));
+			break;
+		}
+		case Journal.KEY: {
+			int id = num(in);
+			int code = num(in);
+			char c = (char) num(in);
+			dispatch(new KeyEvent(panel, id, System.currentTimeMillis(), num(in), code, c));
+			break;
+		}
+		default:
+			throw new IOException("Unknown journal record " + op);
+		}
+	}
+	/**
+	 * Paints a frame on the event dispatch thread unless a frame is already pending.
+	 */
+	private void requestFrame() {
+		if (!framePending.compareAndSet(false, true)) return;
+		SwingUtilities.invokeLater(() -> {
+			framePending.set(false);
+			Graphics2D g = frame.createGraphics();
+			panel.paintOffscreen(g);
+			g.dispose();
+		});
+	}
+	/**
+	 * Delivers a recorded mouse event to the listeners of the panel on the event dispatch thread.
+	 */
+	private void dispatch(final MouseEvent e) {
+		SwingUtilities.invokeLater(() -> {
+			for(MouseListener l : panel.getMouseListeners()) {
+				switch (e.getID()) {
+				case MouseEvent.MOUSE_PRESSED: l.mousePressed(e); break;
+				case MouseEvent.MOUSE_RELEASED: l.mouseReleased(e); break;
+				case MouseEvent.MOUSE_CLICKED: l.mouseClicked(e); break;
+				default: break;
+				}
+			}
+			for(MouseMotionListener l : panel.getMouseMotionListeners()) {
+				switch (e.getID()) {
+				case MouseEvent.MOUSE_MOVED: l.mouseMoved(e); break;
+				case MouseEvent.MOUSE_DRAGGED: l.mouseDragged(e); break;
+				default: break;
+				}
+			}
+		});
+	}
+	/**
+	 * Delivers a recorded key event to the listeners of the panel on the event dispatch thread.
+	 */
+	private void dispatch(final KeyEvent e) {
+		SwingUtilities.invokeLater(() -> {
+			for(KeyListener l : panel.getKeyListeners()) {
+				if (e.getID() == KeyEvent.KEY_PRESSED) {
+					l.keyPressed(e);
+				} else if (e.getID() == KeyEvent.KEY_RELEASED) {
+					l.keyReleased(e);
+				}
+			}
+		});
+	}
+	/**
+	 * Reads a recorded id and translates it to the id of the replayed component.
+	 * Ids that have not been created during the replay are translated to 0, which never
+	 * belongs to a component.
+	 */
+	private long id(DataInputStream in) throws IOException {
+		Long id = ids.get(readVarLong(in));
+		return id == null ? 0 : id;
+	}
+	/**
+	 * Reads the handle of a recorded animation and translates it to the handle of the replayed
+	 * animation, or to 0 if it has not been started during the replay.
+	 */
+	private long animation(DataInputStream in) throws IOException {
+		return getAnimation(readVarLong(in));
+	}
+	/**
+	 * Translates the handle of a recorded animation to the handle of the replayed animation. Used by tests.
+	 * @param recorded the handle returned to the recording program
+	 * @return the handle of the replayed animation, 0 if the animation has not been replayed
+	 */
+	long getAnimation(long recorded) {
+		Long handle = animations.get(recorded);
+		return handle == null ? 0 : handle;
+	}
+	private static long readVarLong(DataInputStream in) throws IOException {
+		long v = 0;
+		int shift = 0;
+		int b;
+		do {
+			b = in.readUnsignedByte();
+			v |= (long) (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return v;
+	}
+	private static int num(DataInputStream in) throws IOException {
+		int v = (int) readVarLong(in);
+		return (v >>> 1) ^ -(v & 1);
+	}
+	private static int[] nums(DataInputStream in) throws IOException {
+		int[] values = new int[num(in)];
+		for(int i = 0; i < values.length; i++) {
+			values[i] = num(in);
+		}
+		return values;
+	}
+	private static String string(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[num(in)];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	/**
+	 * Replays a journal and prints the rendering statistics.
+	 * @param args <code>[--realtime] [--size WIDTHxHEIGHT] journal</code>
+	 * @throws IOException if the journal cannot be read
+	 * @throws InterruptedException if the replay is interrupted
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		boolean realTime = false;
+		int width = 800;
+		int height = 600;
+		String file = null;
+		for(int i = 0; i < args.length; i++) {
+			if (args[i].equals("--realtime")) {
+				realTime = true;
+			} else if (args[i].equals("--size") && i + 1 < args.length) {
+				String[] size = args[++i].split("x");
+				width = Integer.parseInt(size[0]);
+				height = Integer.parseInt(size[1]);
+			} else {
+				file = args[i];
+			}
+		}
+		if (file == null) {
+			System.err.println("Usage: java " + JournalReplay.class.getName() + " [--realtime] [--size WIDTHxHEIGHT] journal");
+			System.exit(1);
+		}
+		FCanvasPanel panel = new FCanvasPanel();
+		panel.setSize(width, height);
+		JournalReplay replay = new JournalReplay(panel, realTime);
+		long start = System.nanoTime();
+		long records = replay.replay(Paths.get(file));
+		long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		FCanvasMetrics m = panel.getMetrics();
+		System.out.printf("%d records in %d ms%n", records, millis);
+		System.out.printf("frames: %d, dropped: %d, components: %d%n", m.getFramesPainted(), m.getDroppedFrames(), m.getComponentCount());
+		System.out.printf("paint time: mean %.3f ms, p50 %.3f ms, p99 %.3f ms, max %.3f ms%n",
+			m.getMeanPaintTimeNanos() / 1e6, m.getPaintTimePercentileNanos(50) / 1e6,
+			m.getPaintTimePercentileNanos(99) / 1e6, m.getMaxPaintTimeNanos() / 1e6);
+		System.out.printf("commands: %d applied, %d stale%n", m.getCommandsApplied(), m.getStaleCommands());
+		System.out.printf("gc: %d collections, %d ms%n", m.getGcCount(), m.getGcTimeMillis());
+		panel.dispose();
+		System.exit(0);
+	}
+}
@@ -0,0 +1,300 @@
+package de.thm.mni.oop.fcanvas;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+
+/**
+ * <p>A group of components of a {@link FCanvasPanel} that share the same position on the z-axis.</p>
+ *
+ * <p>Within a layer, components are ordered by their z-index and, for equal z-indices,
+ * by the order in which they have been added or brought to the front. Each component
+ * is stored with a key that combines z-index (upper 32 bit) and a sequence number
+ * (lower 32 bit) in a {@link ZOrderTree}, so that reordering takes O(log n) and painting
+ * can iterate the members in order without sorting. Components are identified by
+ * their slot in the {@link ComponentStore}.</p>
+ *
+ * <p>A frozen layer is rendered into a cached image that is only redrawn after one of
+ * its members has changed. This class is not thread-safe and must only be used
+ * on the event dispatch thread.</p>
+ *
+ * @author Christopher Schölzel
+ */
+class Layer {
+	/** Sequence number of the first component, leaves room for {@link #sendToBack(int)} */
+	private static final long FIRST_SEQUENCE = 1L << 31;
+	private static final long MAX_SEQUENCE = (1L << 32) - 1;
+	private final ZOrderTree tree;
+	private final int number;
+	private int root = ZOrderTree.NIL;
+	private long frontSequence = FIRST_SEQUENCE;
+	private long backSequence = FIRST_SEQUENCE - 1;
+	private boolean frozen = false;
+	/** set when the keys of all members have changed, see {@link #takeRenumbered()} */
+	private boolean renumbered = false;
+	private boolean dirty = true;
+	private BufferedImage cache = null;
+	/** number of members drawn into and culled from the cached image, see {@link #setRenderedCounts(int, int)} */
+	private int cacheDrawn = 0;
+	private int cacheCulled = 0;
+
+	/**
+	 * Creates an empty layer.
+	 * @param tree the tree holding the order of the components of all layers
+	 * @param number the number of the layer, layers with higher numbers are drawn on top
+	 */
+	Layer(ZOrderTree tree, int number) {
+		this.tree = tree;
+		this.number = number;
+	}
+	/**
+	 * Returns the number of this layer.
+	 * @return the number given when the layer was created
+	 */
+	int getNumber() {
+		return number;
+	}
+	/**
+	 * Returns the bottommost component of this layer.
+	 * @return slot of the first component in drawing order or {@link ZOrderTree#NIL} if the layer is empty
+	 */
+	int first() {
+		return tree.first(root);
+	}
+	/**
+	 * Returns the component that is drawn directly after the given component.
+	 * @param slot slot of a component in this layer
+	 * @return slot of the next component in drawing order or {@link ZOrderTree#NIL} if there is none
+	 */
+	int next(int slot) {
+		return tree.next(slot);
+	}
+	/**
+	 * Adds a component on top of all other components with the same z-index.
+	 * @param slot slot of the component
+	 * @param z the z-index of the component
+	 */
+	void add(int slot, int z) {
+		if (frontSequence > MAX_SEQUENCE) renumber();
+		put(slot, key(z, frontSequence++));
+	}
+	/**
+	 * Adds several components at once, each on top of the previous ones.
+	 * 
+	 * If the layer is empty and the z-indices are ascending, the tree is built in O(n).
+	 * @param slots slots of the components
+	 * @param zs z-indices of the components
+	 * @param from index of the first component in the arrays
+	 * @param to index after the last component in the arrays
+	 */
+	void addAll(int[] slots, int[] zs, int from, int to) {
+		boolean sorted = root == ZOrderTree.NIL && frontSequence + (to - from) <= MAX_SEQUENCE;
+		for(int i = from + 1; sorted && i < to; i++) {
+			sorted = zs[i - 1] <= zs[i];
+		}
+		if (!sorted) {
+			for(int i = from; i < to; i++) {
+				add(slots[i], zs[i]);
+			}
+			return;
+		}
+		long[] keys = new long[to];
+		for(int i = from; i < to; i++) {
+			keys[i] = key(zs[i], frontSequence++);
+		}
+		root = tree.build(slots, keys, from, to);
+		dirty = true;
+	}
+	/**
+	 * Removes a component from this layer.
+	 * @param slot slot of a component in this layer
+	 */
+	void remove(int slot) {
+		root = tree.remove(root, slot);
+		dirty = true;
+	}
+	/**
+	 * Removes all components from this layer.
+	 */
+	void clear() {
+		root = ZOrderTree.NIL;
+		frontSequence = FIRST_SEQUENCE;
+		backSequence = FIRST_SEQUENCE - 1;
+		dirty = true;
+	}
+	/**
+	 * Returns the position of a component in the drawing order of this layer.
+	 * @param slot slot of a component in this layer
+	 * @return a key that is greater for components that are drawn later
+	 */
+	long getOrder(int slot) {
+		return tree.getKey(slot);
+	}
+	/**
+	 * Indicates whether the keys returned by {@link #getOrder(int)} have changed for all
+	 * members since the last call, and clears this indication.
+	 * @return <code>true</code> if the members have been renumbered
+	 */
+	boolean takeRenumbered() {
+		boolean r = renumbered;
+		renumbered = false;
+		return r;
+	}
+	/**
+	 * Returns the z-index of a component.
+	 * @param slot slot of a component in this layer
+	 * @return the z-index of the component
+	 */
+	int getZIndex(int slot) {
+		return zIndex(tree.getKey(slot));
+	}
+	/**
+	 * Changes the z-index of a component. The component is placed on top of all
+	 * other components with the same z-index.
+	 * @param slot slot of a component in this layer
+	 * @param z the new z-index
+	 */
+	void setZIndex(int slot, int z) {
+		remove(slot);
+		add(slot, z);
+	}
+	/**
+	 * Places a component on top of all other components of this layer.
+	 * If necessary, the z-index of the component is raised to the highest z-index in this layer.
+	 * @param slot slot of a component in this layer
+	 */
+	void bringToFront(int slot) {
+		remove(slot);
+		int last = tree.last(root);
+		add(slot, last == ZOrderTree.NIL ? 0 : zIndex(tree.getKey(last)));
+	}
+	/**
+	 * Places a component below all other components of this layer.
+	 * If necessary, the z-index of the component is lowered to the lowest z-index in this layer.
+	 * @param slot slot of a component in this layer
+	 */
+	void sendToBack(int slot) {
+		remove(slot);
+		if (backSequence < 0) renumber();
+		int first = tree.first(root);
+		put(slot, key(first == ZOrderTree.NIL ? 0 : zIndex(tree.getKey(first)), backSequence--));
+	}
+	private void put(int slot, long key) {
+		root = tree.insert(root, slot, key);
+		dirty = true;
+	}
+	/**
+	 * Assigns new sequence numbers to all members without changing their order.
+	 * Only required after more than 2^31 reorderings in the same direction.
+	 */
+	private void renumber() {
+		renumbered = true;
+		frontSequence = FIRST_SEQUENCE;
+		backSequence = FIRST_SEQUENCE - 1;
+		// keys stay strictly ascending in drawing order, so the tree remains valid
+		for(int n = tree.first(root); n != ZOrderTree.NIL; n = tree.next(n)) {
+			tree.setKeyInPlace(n, key(zIndex(tree.getKey(n)), frontSequence++));
+		}
+	}
+	private static long key(int z, long sequence) {
+		return ((long) z << 32) | sequence;
+	}
+	private static int zIndex(long key) {
+		return (int) (key >> 32);
+	}
+	/**
+	 * Marks the cached image as outdated.
+	 */
+	void invalidate() {
+		dirty = true;
+	}
+	/**
+	 * Indicates whether this layer is drawn from a cached image.
+	 * @return <code>true</code> if the layer is frozen
+	 */
+	boolean isFrozen() {
+		return frozen;
+	}
+	/**
+	 * Enables or disables caching for this layer. Disabling releases the cached image.
+	 * @param frozen if <code>true</code> the layer will be drawn from a cached image
+	 */
+	void setFrozen(boolean frozen) {
+		this.frozen = frozen;
+		dirty = true;
+		if (!frozen) cache = null;
+	}
+	/**
+	 * Indicates whether this layer neither has members nor special settings and can be discarded.
+	 * @return <code>true</code> if the layer is empty and not frozen
+	 */
+	boolean isDisposable() {
+		return root == ZOrderTree.NIL && !frozen;
+	}
+	/**
+	 * Indicates whether the cached image must be rendered again before it can be used.
+	 * @param width current width of the panel
+	 * @param height current height of the panel
+	 * @return <code>true</code> if the cache is missing, outdated or has the wrong size
+	 */
+	boolean needsRendering(int width, int height) {
+		return dirty || cache == null || cache.getWidth() != width || cache.getHeight() != height;
+	}
+	/**
+	 * Prepares the cached image for rendering and returns a Graphics object for it.
+	 *
+	 * The image is created compatible to the given configuration, so that it can
+	 * be drawn to the screen without conversion.
+	 * @param gc the configuration of the panel or <code>null</code> if the panel is not displayable
+	 * @param width current width of the panel
+	 * @param height current height of the panel
+	 * @return Graphics object drawing to the cleared cache image
+	 */
+	Graphics2D beginRendering(GraphicsConfiguration gc, int width, int height) {
+		if (cache == null || cache.getWidth() != width || cache.getHeight() != height) {
+			cache = gc == null
+				? new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB)
+				: gc.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+		}
+		Graphics2D g = cache.createGraphics();
+		g.setComposite(AlphaComposite.Clear);
+		g.fillRect(0, 0, width, height);
+		g.setComposite(AlphaComposite.SrcOver);
+		dirty = false;
+		return g;
+	}
+	/**
+	 * Returns the cached image of this layer.
+	 * @return the cached image or <code>null</code> if the layer has not been rendered yet
+	 */
+	BufferedImage getCache() {
+		return cache;
+	}
+	/**
+	 * Remembers how many members have been drawn into the cached image and how many have been
+	 * skipped, because they did not intersect the visible area, so that frames that only draw
+	 * the cached image can report the same numbers.
+	 * @param drawn number of members drawn into the cache
+	 * @param culled number of members skipped while rendering the cache
+	 */
+	void setRenderedCounts(int drawn, int culled) {
+		cacheDrawn = drawn;
+		cacheCulled = culled;
+	}
+	/**
+	 * Returns the number of members drawn into the cached image.
+	 * @return the number given to {@link #setRenderedCounts(int, int)}
+	 */
+	int getCacheDrawn() {
+		return cacheDrawn;
+	}
+	/**
+	 * Returns the number of members skipped while rendering the cached image.
+	 * @return the number given to {@link #setRenderedCounts(int, int)}
+	 */
+	int getCacheCulled() {
+		return cacheCulled;
+	}
+}
@@ -0,0 +1,223 @@
+package de.thm.mni.oop.fcanvas;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+import de.thm.mni.oop.fcanvas.components.FCanvasComponent;
+import de.thm.mni.oop.fcanvas.components.Sprite;
+import de.thm.mni.oop.fcanvas.components.Text;
+import de.thm.mni.oop.fcanvas.components.Tilemap;
+
+/**
+ * <p>Simplifies components of a {@link FCanvasPanel} that are too small on the screen
+ * to be drawn in full detail.</p>
+ *
+ * <p>The decision is based on the projected size of a component, i.e. its size in
+ * world coordinates multiplied by the zoom factor of the viewport:</p>
+ *
+ * <ul>
+ * <li>Shapes that are smaller than the point size are written as a single pixel into
+ * a raster, without setting up stroke, paint and transform.</li>
+ * <li>Texts with a projected font size below the text size are drawn as a bar in the
+ * size of their lowercase letters instead of rendering glyphs.</li>
+ * <li>The screen is divided into cells of {@value #CELL_SIZE}x{@value #CELL_SIZE} pixels.
+ * Once a cell has received more shapes that fit into it than the cluster size,
+ * further shapes in that cell are aggregated: the cell is filled with their color in
+ * the raster instead of drawing them.</li>
+ * </ul>
+ *
+ * <p>The raster is drawn on top of each layer after its other components, so within a
+ * layer simplified components may appear above larger components that would otherwise
+ * cover them. This is hardly noticeable at the size at which simplification applies.</p>
+ *
+ * <p>This class is not thread-safe and must only be used on the event dispatch thread.</p>
+ *
+ * @author Christopher Schölzel
+ */
+class LevelOfDetail {
+	/** Default projected size (in pixels) below which shapes are drawn as single pixel */
+	static final double DEFAULT_POINT_SIZE = 1.5;
+	/** Default projected font size (in pixels) below which texts are drawn as bar */
+	static final double DEFAULT_TEXT_SIZE = 3;
+	/** Default number of small shapes per cell above which further shapes are aggregated */
+	static final int DEFAULT_CLUSTER_SIZE = 16;
+	/** Width and height of the cells used for clustering in pixels */
+	static final int CELL_SIZE = 4;
+	private static final int CELL_SHIFT = 2;
+	private double pointSize = DEFAULT_POINT_SIZE;
+	private double textSize = DEFAULT_TEXT_SIZE;
+	private int clusterSize = DEFAULT_CLUSTER_SIZE;
+	private boolean reduced = false;
+	// state of the current layer
+	private AffineTransform view;
+	private double zoom;
+	private int width;
+	private int height;
+	private BufferedImage raster;
+	private int[] argb;
+	private int[] cells = new int[0];
+	private int columns;
+	/** rows of the raster that have been written, empty if top > bottom */
+	private int dirtyTop = Integer.MAX_VALUE;
+	private int dirtyBottom = -1;
+	private boolean cellsUsed;
+	private int simplified;
+
+	/**
+	 * Changes the thresholds. A value of 0 disables the respective simplification.
+	 * @param pointSize projected size (in pixels) below which shapes are drawn as single pixel
+	 * @param textSize projected font size (in pixels) below which texts are drawn as bar
+	 * @param clusterSize number of small shapes per cell above which further shapes are aggregated
+	 */
+	void setThresholds(double pointSize, double textSize, int clusterSize) {
+		this.pointSize = pointSize;
+		this.textSize = textSize;
+		this.clusterSize = clusterSize;
+	}
+	/**
+	 * Raises the thresholds temporarily: point and text size are doubled and the cluster size is halved.
+	 * @param reduced if <code>true</code> more components are simplified
+	 */
+	void setReduced(boolean reduced) {
+		this.reduced = reduced;
+	}
+	/**
+	 * Prepares painting a layer.
+	 * @param view the transformation from world to panel coordinates
+	 * @param width width of the panel
+	 * @param height height of the panel
+	 */
+	void begin(AffineTransform view, int width, int height) {
+		this.view = view;
+		this.zoom = view.getScaleX();
+		if (raster == null || raster.getWidth() != width || raster.getHeight() != height) {
+			raster = new BufferedImage(Math.max(1, width), Math.max(1, height), BufferedImage.TYPE_INT_ARGB);
+			argb = ((DataBufferInt) raster.getRaster().getDataBuffer()).getData();
+			columns = (width + CELL_SIZE - 1) >> CELL_SHIFT;
+			cells = new int[columns * ((height + CELL_SIZE - 1) >> CELL_SHIFT)];
+			dirtyTop = Integer.MAX_VALUE;
+			dirtyBottom = -1;
+			cellsUsed = false;
+		}
+		this.width = width;
+		this.height = height;
+	}
+	/**
+	 * Draws a component in reduced detail if it is small enough.
+	 * @param g2 the Graphics object of the layer, transformed to world coordinates
+	 * @param c a visible component
+	 * @return <code>true</code> if the component has been drawn, <code>false</code> if it has to be drawn in full detail
+	 */
+	boolean paint(Graphics2D g2, FCanvasComponent c) {
+		if (c instanceof Text) return paintText(g2, (Text) c);
+		Rectangle2D b = c.getBounds();
+		float lineWidth = ((BasicStroke) c.getStroke()).getLineWidth();
+		// the bounds contain a margin of line width + 1 on each side
+		double extent = (Math.max(b.getWidth(), b.getHeight()) - lineWidth - 2) * zoom;
+		int clusterSize = reduced ? (this.clusterSize + 1) / 2 : this.clusterSize;
+		boolean point = extent < (reduced ? 2 * pointSize : pointSize);
+		if (!point && (extent >= CELL_SIZE || clusterSize <= 0)) return false;
+		int x = (int) Math.floor(view.getScaleX() * b.getCenterX() + view.getTranslateX());
+		int y = (int) Math.floor(view.getScaleY() * b.getCenterY() + view.getTranslateY());
+		if (x < 0 || y < 0 || x >= width || y >= height) {
+			// partially visible, the raster cannot hold it
+			return false;
+		}
+		int color = colorOf(c);
+		if (point) {
+			point(x, y, color);
+			simplified++;
+			return true;
+		}
+		int cell = (y >> CELL_SHIFT) * columns + (x >> CELL_SHIFT);
+		cellsUsed = true;
+		if (++cells[cell] <= clusterSize) return false;
+		// the cell is crowded: fill it instead of drawing more shapes into it
+		int cx = x & ~(CELL_SIZE - 1);
+		int cy = y & ~(CELL_SIZE - 1);
+		for(int py = cy; py < Math.min(cy + CELL_SIZE, height); py++) {
+			for(int px = cx; px < Math.min(cx + CELL_SIZE, width); px++) {
+				point(px, py, color);
+			}
+		}
+		simplified++;
+		return true;
+	}
+	private boolean paintText(Graphics2D g2, Text t) {
+		float size = t.getFont().getSize2D();
+		if (size * zoom >= (reduced ? 2 * textSize : textSize)) return false;
+		AffineTransform old = null;
+		if (t.getRotation() != 0) {
+			old = g2.getTransform();
+			g2.transform(t.getTransform());
+		}
+		// the bounds contain a margin of line width + 1 on each side
+		Rectangle2D b = t.getBounds();
+		double margin = ((BasicStroke) t.getStroke()).getLineWidth() + 1;
+		double textWidth = t.getRotation() == 0 ? b.getWidth() - 2 * margin : t.getFont().getStringBounds(t.getText(), g2.getFontRenderContext()).getWidth();
+		g2.setPaint(t.getStrokeColor());
+		// approximately the area of the lowercase letters
+		g2.fill(new Rectangle2D.Double(t.getLeft(), t.getBaseline() - size / 2, textWidth, size / 2));
+		if (old != null) g2.setTransform(old);
+		simplified++;
+		return true;
+	}
+	/**
+	 * Returns the color in which a shape is shown if it is reduced to a point.
+	 * At this size, the outline covers the filled area, unless it is transparent.
+	 * Images are represented by their center pixel and tilemaps by the center pixel of their center chunk.
+	 */
+	private static int colorOf(FCanvasComponent c) {
+		if (c instanceof Sprite) {
+			BufferedImage image = ((Sprite) c).getImage();
+			return image.getRGB(image.getWidth() / 2, image.getHeight() / 2);
+		}
+		if (c instanceof Tilemap) {
+			Tilemap tm = (Tilemap) c;
+			BufferedImage chunk = tm.getChunk(tm.getChunkColumns() / 2, tm.getChunkRows() / 2);
+			return chunk.getRGB(chunk.getWidth() / 2, chunk.getHeight() / 2);
+		}
+		Color stroke = c.getStrokeColor();
+		return stroke.getAlpha() != 0 ? stroke.getRGB() : ((Color) c.getFillColor()).getRGB();
+	}
+	private void point(int x, int y, int color) {
+		argb[y * width + x] = color;
+		if (y < dirtyTop) dirtyTop = y;
+		if (y > dirtyBottom) dirtyBottom = y;
+	}
+	/**
+	 * Finishes painting a layer by drawing the raster, if it has been used.
+	 * @param g2 the Graphics object of the layer, transformed to world coordinates
+	 */
+	void end(Graphics2D g2) {
+		if (cellsUsed) {
+			Arrays.fill(cells, 0);
+			cellsUsed = false;
+		}
+		if (dirtyTop > dirtyBottom) return;
+		AffineTransform t = g2.getTransform();
+		// undo the view transform, since the raster is in panel coordinates
+		g2.scale(1 / zoom, 1 / zoom);
+		g2.translate(-view.getTranslateX(), -view.getTranslateY());
+		g2.drawImage(raster, 0, 0, null);
+		g2.setTransform(t);
+		Arrays.fill(argb, dirtyTop * width, (dirtyBottom + 1) * width, 0);
+		dirtyTop = Integer.MAX_VALUE;
+		dirtyBottom = -1;
+	}
+	/**
+	 * Returns the number of components drawn in reduced detail since the last call and resets the counter.
+	 * @return number of simplified components
+	 */
+	int takeSimplified() {
+		int n = simplified;
+		simplified = 0;
+		return n;
+	}
+}
@@ -0,0 +1,134 @@
+package de.thm.mni.oop.fcanvas;
+
+/**
+ * <p>Records the positions of the mouse between two polls of a program in a ring buffer,
+ * so that the path of the mouse can be drawn completely even if the program only asks
+ * for the mouse position a few times per second.</p>
+ *
+ * <p>Each sample consists of the coordinates of a motion event in the coordinate system of the
+ * panel, i.e. window coordinates that do not depend on the viewport, and the time of the event
+ * in nanoseconds (see {@link System#nanoTime()}). The samples are stored in preallocated arrays, so neither
+ * recording nor reading a sample allocates memory. If the buffer is full, the oldest samples
+ * are overwritten.</p>
+ *
+ * <p>To bound the number of samples, consecutive samples can be coalesced: a sample that is
+ * closer to the last kept sample than a minimum distance, or that follows it within a minimum
+ * interval, replaces the previous sample if that one has been coalesced as well. This way the
+ * newest position is always available, but slow or tiny movements produce few samples.</p>
+ *
+ * <p>All methods are thread-safe.</p>
+ *
+ * @author Christopher Schölzel
+ */
+class MouseTrail {
+	/** Default number of samples that can be stored */
+	static final int DEFAULT_CAPACITY = 4096;
+	private final int[] xs;
+	private final int[] ys;
+	private final long[] ts;
+	/** index of the oldest sample */
+	private int head = 0;
+	private int size = 0;
+	/** whether the newest sample may be replaced by the next one */
+	private boolean provisional = false;
+	// the last sample that has not been coalesced
+	private int anchorX;
+	private int anchorY;
+	private long anchorTime;
+	private boolean anchored = false;
+	private long minDistanceSquared = 0;
+	private long minIntervalNanos = 0;
+	private long dropped = 0;
+
+	/**
+	 * Creates an empty trail without coalescing.
+	 * @param capacity maximum number of samples
+	 */
+	MouseTrail(int capacity) {
+		xs = new int[capacity];
+		ys = new int[capacity];
+		ts = new long[capacity];
+	}
+	/**
+	 * Records a sample.
+	 * @param x x-coordinate of the mouse in window coordinates
+	 * @param y y-coordinate of the mouse in window coordinates
+	 * @param nanos time of the sample
+	 */
+	synchronized void add(int x, int y, long nanos) {
+		int i;
+		if (provisional) {
+			i = (head + size - 1) % xs.length;
+		} else {
+			if (size == xs.length) {
+				head = (head + 1) % xs.length;
+				size--;
+				dropped++;
+			}
+			i = (head + size) % xs.length;
+			size++;
+		}
+		xs[i] = x;
+		ys[i] = y;
+		ts[i] = nanos;
+		long dx = x - anchorX;
+		long dy = y - anchorY;
+		provisional = anchored && (dx * dx + dy * dy < minDistanceSquared || nanos - anchorTime < minIntervalNanos);
+		if (provisional) return;
+		anchorX = x;
+		anchorY = y;
+		anchorTime = nanos;
+		anchored = true;
+	}
+	/**
+	 * Removes the oldest samples and copies them into arrays.
+	 * @param x receives the x-coordinates
+	 * @param y receives the y-coordinates
+	 * @param t receives the times or <code>null</code>
+	 * @return the number of copied samples, at most the length of the shortest array
+	 */
+	synchronized int drain(int[] x, int[] y, long[] t) {
+		int n = Math.min(size, Math.min(x.length, y.length));
+		if (t != null) n = Math.min(n, t.length);
+		for(int k = 0; k < n; k++) {
+			int i = (head + k) % xs.length;
+			x[k] = xs[i];
+			y[k] = ys[i];
+			if (t != null) t[k] = ts[i];
+		}
+		head = (head + n) % xs.length;
+		size -= n;
+		// a sample that has been read must not be replaced
+		if (size == 0) provisional = false;
+		return n;
+	}
+	/**
+	 * Changes the coalescing of samples. A value of 0 disables the respective criterion.
+	 * @param minDistance minimum distance between two kept samples in pixels
+	 * @param minIntervalNanos minimum time between two kept samples in nanoseconds
+	 */
+	synchronized void setCoalescing(int minDistance, long minIntervalNanos) {
+		if (minDistance < 0 || minIntervalNanos < 0) throw new IllegalArgumentException("Coalescing thresholds must not be negative");
+		this.minDistanceSquared = (long) minDistance * minDistance;
+		this.minIntervalNanos = minIntervalNanos;
+	}
+	/**
+	 * Returns the number of samples that have been overwritten because the buffer was full.
+	 * @return number of lost samples since the trail was created or cleared
+	 */
+	synchronized long getDropped() {
+		return dropped;
+	}
+	/**
+	 * Removes all samples and disables coalescing.
+	 */
+	synchronized void clear() {
+		head = 0;
+		size = 0;
+		provisional = false;
+		anchored = false;
+		minDistanceSquared = 0;
+		minIntervalNanos = 0;
+		dropped = 0;
+	}
+}
@@ -0,0 +1,255 @@
+package de.thm.mni.oop.fcanvas;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+/**
+ * <p>An overlay in the upper left corner of a panel that shows the frame rate, paint time
+ * percentiles, drawn and culled components, pending commands, heap usage and garbage
+ * collections.</p>
+ *
+ * <p>The overlay must not distort the numbers it reports, so it does not allocate memory
+ * while painting: the values are formatted into preallocated character arrays twice per
+ * second, and the characters are copied from an image that contains all printable ASCII
+ * characters (a glyph atlas) instead of laying out strings. Glyphs and the visible part of
+ * the overlay are copied by their source rectangles, so no views of the images are
+ * created. The time for painting the overlay is not included in the paint times of the
+ * {@link FCanvasMetrics}.</p>
+ *
+ * <p>The values are updated when frames are painted, so they do not change while the panel
+ * is not repainted. This class is not thread-safe and must only be used on the event
+ * dispatch thread.</p>
+ *
+ * @author Christopher Schölzel
+ */
+class PerformanceHud {
+	/** Interval in which the shown values are updated */
+	private static final long REFRESH_NANOS = 500_000_000L;
+	private static final int LINES = 5;
+	private static final int COLUMNS = 48;
+	private static final char FIRST_CHAR = ' ';
+	private static final char LAST_CHAR = '~';
+	private static final int PADDING = 4;
+	private static final Color BACKGROUND = new Color(0, 0, 0, 160);
+	private final FCanvasMetrics metrics;
+	private final GarbageCollectorMXBean[] collectors;
+	private final char[][] lines = new char[LINES][COLUMNS];
+	private final int[] lengths = new int[LINES];
+	/** printable ASCII characters side by side, created when the overlay is painted for the first time */
+	private BufferedImage atlas = null;
+	private int cellWidth;
+	private int cellHeight;
+	/** the overlay as it is shown, composed from the glyphs when the values are updated */
+	private BufferedImage panel = null;
+	private Graphics2D panelGraphics = null;
+	/** width of the part of {@link #panel} that contains the current lines */
+	private int shownWidth = 0;
+	// start of the current refresh interval
+	private long windowStart = 0;
+	private long windowFrames = 0;
+	private long gcCountStart;
+	private long gcTimeStart;
+
+	/**
+	 * Creates an overlay for the metrics of a panel.
+	 * @param metrics the metrics of the panel
+	 */
+	PerformanceHud(FCanvasMetrics metrics) {
+		this.metrics = metrics;
+		collectors = ManagementFactory.getGarbageCollectorMXBeans().toArray(new GarbageCollectorMXBean[0]);
+	}
+	/**
+	 * Paints the overlay in screen coordinates and counts the frame.
+	 * @param g2 the Graphics object of the panel, without view transform
+	 * @param gc the configuration of the screen, <code>null</code> if unknown
+	 */
+	void paint(Graphics2D g2, GraphicsConfiguration gc) {
+		if (atlas == null) createAtlas(gc);
+		long now = System.nanoTime();
+		windowFrames++;
+		if (windowStart == 0) {
+			windowStart = now;
+			gcCountStart = gcCount();
+			gcTimeStart = gcTime();
+			update(0, 0, 0);
+		} else if (now - windowStart >= REFRESH_NANOS) {
+			long count = gcCount();
+			long time = gcTime();
+			update(windowFrames * 10_000_000_000L / (now - windowStart), count - gcCountStart, time - gcTimeStart);
+			windowStart = now;
+			windowFrames = 0;
+			gcCountStart = count;
+			gcTimeStart = time;
+		}
+		int h = panel.getHeight();
+		g2.drawImage(panel, 0, 0, shownWidth, h, 0, 0, shownWidth, h, null);
+	}
+	/**
+	 * Formats the values into the lines of the overlay.
+	 * @param fpsTenths frames per second times 10
+	 * @param collections number of garbage collections in the last interval
+	 * @param gcMillis time spent on garbage collections in the last interval
+	 */
+	private void update(long fpsTenths, long collections, long gcMillis) {
+		char[] line = lines[0];
+		int p = put(line, 0, "fps   ");
+		p = putTenths(line, p, fpsTenths);
+		lengths[0] = p;
+
+		line = lines[1];
+		p = put(line, 0, "paint p50 ");
+		p = putTenths(line, p, metrics.getPaintTimePercentileNanos(50) / 100_000);
+		p = put(line, p, " p95 ");
+		p = putTenths(line, p, metrics.getPaintTimePercentileNanos(95) / 100_000);
+		p = put(line, p, " p99 ");
+		p = putTenths(line, p, metrics.getPaintTimePercentileNanos(99) / 100_000);
+		p = put(line, p, " ms");
+		lengths[1] = p;
+
+		line = lines[2];
+		p = put(line, 0, "drawn ");
+		p = putLong(line, p, metrics.getComponentsDrawn());
+		p = put(line, p, " culled ");
+		p = putLong(line, p, metrics.getComponentsCulled());
+		p = put(line, p, " lod ");
+		p = putLong(line, p, metrics.getComponentsSimplified());
+		lengths[2] = p;
+
+		line = lines[3];
+		p = put(line, 0, "queue ");
+		p = putLong(line, p, metrics.getPendingCommands());
+		p = put(line, p, " stale ");
+		p = putLong(line, p, metrics.getStaleCommands());
+		lengths[3] = p;
+
+		Runtime rt = Runtime.getRuntime();
+		line = lines[4];
+		p = put(line, 0, "heap  ");
+		p = putLong(line, p, (rt.totalMemory() - rt.freeMemory()) >> 20);
+		p = put(line, p, "/");
+		p = putLong(line, p, rt.maxMemory() >> 20);
+		p = put(line, p, " MB gc ");
+		p = putLong(line, p, collections);
+		p = put(line, p, " ");
+		p = putLong(line, p, gcMillis);
+		p = put(line, p, " ms");
+		lengths[4] = p;
+
+		compose();
+	}
+	/**
+	 * Draws the lines into the image of the overlay.
+	 */
+	private void compose() {
+		Graphics2D pg = panelGraphics;
+		int columns = 0;
+		for(int l = 0; l < LINES; l++) {
+			columns = Math.max(columns, lengths[l]);
+		}
+		pg.setComposite(AlphaComposite.Src);
+		pg.setColor(BACKGROUND);
+		pg.fillRect(0, 0, panel.getWidth(), panel.getHeight());
+		pg.setComposite(AlphaComposite.SrcOver);
+		shownWidth = columns * cellWidth + 2 * PADDING;
+		for(int l = 0; l < LINES; l++) {
+			int y = PADDING + l * cellHeight;
+			for(int i = 0; i < lengths[l]; i++) {
+				char c = lines[l][i];
+				if (c <= FIRST_CHAR || c > LAST_CHAR) continue;
+				int x = PADDING + i * cellWidth;
+				int sx = (c - FIRST_CHAR) * cellWidth;
+				pg.drawImage(atlas, x, y, x + cellWidth, y + cellHeight, sx, 0, sx + cellWidth, cellHeight, null);
+			}
+		}
+	}
+	/**
+	 * Returns a line of the overlay as it is currently shown. Used by tests.
+	 * @param l number of the line, starting with 0
+	 * @return the text of the line
+	 */
+	String getLine(int l) {
+		return new String(lines[l], 0, lengths[l]);
+	}
+	private long gcCount() {
+		long sum = 0;
+		for(GarbageCollectorMXBean b : collectors) sum += Math.max(0, b.getCollectionCount());
+		return sum;
+	}
+	private long gcTime() {
+		long sum = 0;
+		for(GarbageCollectorMXBean b : collectors) sum += Math.max(0, b.getCollectionTime());
+		return sum;
+	}
+	/**
+	 * Copies a string into a line, truncated at the end of the line.
+	 * @return the position after the string
+	 */
+	private static int put(char[] line, int pos, String s) {
+		int n = Math.min(s.length(), line.length - pos);
+		s.getChars(0, n, line, pos);
+		return pos + n;
+	}
+	/**
+	 * Writes the decimal digits of a non-negative number into a line, truncated at the end of the line.
+	 * @return the position after the number
+	 */
+	private static int putLong(char[] line, int pos, long value) {
+		int digits = 1;
+		for(long v = value; v >= 10; v /= 10) digits++;
+		if (pos + digits > line.length) return pos;
+		for(int i = pos + digits - 1; i >= pos; i--) {
+			line[i] = (char) ('0' + value % 10);
+			value /= 10;
+		}
+		return pos + digits;
+	}
+	/**
+	 * Writes a number of tenths with one decimal place into a line.
+	 * @return the position after the number
+	 */
+	private static int putTenths(char[] line, int pos, long tenths) {
+		pos = putLong(line, pos, tenths / 10);
+		if (pos + 2 > line.length) return pos;
+		line[pos] = '.';
+		line[pos + 1] = (char) ('0' + tenths % 10);
+		return pos + 2;
+	}
+	private void createAtlas(GraphicsConfiguration gc) {
+		Font font = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+		BufferedImage probe = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D pg = probe.createGraphics();
+		FontMetrics fm = pg.getFontMetrics(font);
+		pg.dispose();
+		cellWidth = fm.charWidth('0');
+		cellHeight = fm.getHeight();
+		int width = (LAST_CHAR - FIRST_CHAR + 1) * cellWidth;
+		atlas = gc == null
+				? new BufferedImage(width, cellHeight, BufferedImage.TYPE_INT_ARGB)
+				: gc.createCompatibleImage(width, cellHeight, Transparency.TRANSLUCENT);
+		Graphics2D ag = atlas.createGraphics();
+		ag.setFont(font);
+		ag.setColor(Color.WHITE);
+		ag.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+		char[] c = new char[1];
+		for(char ch = FIRST_CHAR; ch <= LAST_CHAR; ch++) {
+			c[0] = ch;
+			ag.drawChars(c, 0, 1, (ch - FIRST_CHAR) * cellWidth, fm.getAscent());
+		}
+		ag.dispose();
+		int w = COLUMNS * cellWidth + 2 * PADDING;
+		int h = LINES * cellHeight + 2 * PADDING;
+		panel = gc == null
+				? new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB)
+				: gc.createCompatibleImage(w, h, Transparency.TRANSLUCENT);
+		panelGraphics = panel.createGraphics();
+	}
+}
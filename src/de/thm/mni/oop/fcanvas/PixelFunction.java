@@ -0,0 +1,27 @@
+package de.thm.mni.oop.fcanvas;
+
+/**
+ * <p>A function that computes the color of a pixel from its coordinates, used by
+ * {@link FCanvas#computePixels(int, int, int, int, PixelFunction)}.</p>
+ *
+ * <p>The function is called for many pixels at the same time on different threads.
+ * It should therefore only depend on its arguments and must not change variables
+ * that are shared between calls.</p>
+ *
+ * <p><b>Example:</b> a color gradient</p>
+ *
+ * <pre>
+ * computePixels(0, 0, 256, 256, (x, y) -&gt; x &lt;&lt; 16 | y &lt;&lt; 8);
+ * </pre>
+ *
+ * @author Christopher Schölzel
+ */
+public interface PixelFunction {
+	/**
+	 * Computes the color of a pixel.
+	 * @param x the x-coordinate of the pixel
+	 * @param y the y-coordinate of the pixel
+	 * @return the color as RGB value <code>0xRRGGBB</code>, i.e. <code>red &lt;&lt; 16 | green &lt;&lt; 8 | blue</code>
+	 */
+	int rgb(int x, int y);
+}
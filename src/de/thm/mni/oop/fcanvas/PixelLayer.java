@@ -0,0 +1,167 @@
+package de.thm.mni.oop.fcanvas;
+
+import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>The pixels of a {@link FCanvasPanel} that have been set individually.</p>
+ *
+ * <p>The unbounded world coordinate space is divided into square tiles of
+ * {@value #TILE_SIZE}x{@value #TILE_SIZE} pixels. A tile is only allocated when
+ * the first pixel inside of it is set, so that pixels far away from the origin or
+ * at negative coordinates do not require a raster covering the whole area in between.
+ * Painting only draws the tiles that intersect the visible area.</p>
+ *
+ * <p>This class is not thread-safe and must only be used on the event dispatch thread.</p>
+ *
+ * @author Christopher Schölzel
+ */
+class PixelLayer {
+	/** Width and height of a tile as power of two */
+	static final int TILE_SHIFT = 8;
+	/** Width and height of a tile */
+	static final int TILE_SIZE = 1 << TILE_SHIFT;
+	private static final int TILE_MASK = TILE_SIZE - 1;
+	private final Map<Long,Tile> tiles = new HashMap<Long,Tile>();
+
+	/**
+	 * A tile of the pixel layer. Pixels that have never been set are transparent.
+	 */
+	static final class Tile {
+		/** world coordinates of the upper left pixel */
+		final int x;
+		final int y;
+		final BufferedImage image = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
+		Tile(int x, int y) {
+			this.x = x;
+			this.y = y;
+		}
+	}
+
+	private static long key(int tx, int ty) {
+		return ((long) tx << 32) | (ty & 0xFFFFFFFFL);
+	}
+	/**
+	 * Sets a single pixel, allocating its tile if necessary.
+	 * @param x x-coordinate in world coordinates
+	 * @param y y-coordinate in world coordinates
+	 * @param argb the color as ARGB value
+	 */
+	void set(int x, int y, int argb) {
+		int tx = x >> TILE_SHIFT;
+		int ty = y >> TILE_SHIFT;
+		Long key = key(tx, ty);
+		Tile tile = tiles.get(key);
+		if (tile == null) {
+			tile = new Tile(tx << TILE_SHIFT, ty << TILE_SHIFT);
+			tiles.put(key, tile);
+		}
+		tile.image.setRGB(x & TILE_MASK, y & TILE_MASK, argb);
+	}
+	/**
+	 * Replaces all pixels of a tile.
+	 * @param x world x-coordinate of the upper left corner of the tile, a multiple of {@link #TILE_SIZE}
+	 * @param y world y-coordinate of the upper left corner of the tile, a multiple of {@link #TILE_SIZE}
+	 * @param argb {@link #TILE_SIZE} * {@link #TILE_SIZE} ARGB values in row-major order
+	 */
+	void setTile(int x, int y, int[] argb) {
+		Tile tile = new Tile(x & ~TILE_MASK, y & ~TILE_MASK);
+		tile.image.setRGB(0, 0, TILE_SIZE, TILE_SIZE, argb, 0, TILE_SIZE);
+		tiles.put(key(x >> TILE_SHIFT, y >> TILE_SHIFT), tile);
+	}
+	/**
+	 * Sets the pixels of a rectangular area, allocating tiles as necessary. Each tile is
+	 * written with a single call to its raster.
+	 * @param x world x-coordinate of the upper left corner of the area
+	 * @param y world y-coordinate of the upper left corner of the area
+	 * @param width width of the area
+	 * @param height height of the area
+	 * @param argb <code>width * height</code> ARGB values in row-major order
+	 */
+	void setPixels(int x, int y, int width, int height, int[] argb) {
+		int[] block = new int[TILE_SIZE * TILE_SIZE];
+		for(int ty = y >> TILE_SHIFT; ty <= (y + height - 1) >> TILE_SHIFT; ty++) {
+			int y0 = Math.max(y, ty << TILE_SHIFT);
+			int y1 = Math.min(y + height, (ty + 1) << TILE_SHIFT);
+			for(int tx = x >> TILE_SHIFT; tx <= (x + width - 1) >> TILE_SHIFT; tx++) {
+				int x0 = Math.max(x, tx << TILE_SHIFT);
+				int x1 = Math.min(x + width, (tx + 1) << TILE_SHIFT);
+				Long key = key(tx, ty);
+				Tile tile = tiles.get(key);
+				if (tile == null) {
+					tile = new Tile(tx << TILE_SHIFT, ty << TILE_SHIFT);
+					tiles.put(key, tile);
+				}
+				int w = x1 - x0;
+				for(int row = y0; row < y1; row++) {
+					System.arraycopy(argb, (row - y) * width + x0 - x, block, (row - y0) * w, w);
+				}
+				tile.image.getRaster().setDataElements(x0 & TILE_MASK, y0 & TILE_MASK, w, y1 - y0, block);
+			}
+		}
+	}
+	/**
+	 * Returns the color of a single pixel.
+	 * @param x x-coordinate in world coordinates
+	 * @param y y-coordinate in world coordinates
+	 * @return the color as ARGB value, 0 if the pixel has not been set
+	 */
+	int get(int x, int y) {
+		Tile tile = tiles.get(key(x >> TILE_SHIFT, y >> TILE_SHIFT));
+		return tile == null ? 0 : tile.image.getRGB(x & TILE_MASK, y & TILE_MASK);
+	}
+	/**
+	 * Returns all allocated tiles in no particular order.
+	 * @return the tiles
+	 */
+	Collection<Tile> getTiles() {
+		return tiles.values();
+	}
+	/**
+	 * Returns the memory occupied by the rasters of the tiles.
+	 * @return size of all tiles in bytes
+	 */
+	long getBytes() {
+		return 4L * TILE_SIZE * TILE_SIZE * tiles.size();
+	}
+	/**
+	 * Removes all pixels and releases the tiles.
+	 */
+	void clear() {
+		tiles.clear();
+	}
+	/**
+	 * Paints all tiles that intersect an area.
+	 * @param g the Graphics object to paint on, transformed to world coordinates
+	 * @param area the visible area in world coordinates
+	 */
+	void paint(Graphics2D g, Rectangle2D area) {
+		if (tiles.isEmpty()) return;
+		long tx0 = (long) Math.floor(area.getMinX()) >> TILE_SHIFT;
+		long ty0 = (long) Math.floor(area.getMinY()) >> TILE_SHIFT;
+		long tx1 = (long) Math.floor(area.getMaxX()) >> TILE_SHIFT;
+		long ty1 = (long) Math.floor(area.getMaxY()) >> TILE_SHIFT;
+		long columns = tx1 - tx0 + 1;
+		long rows = ty1 - ty0 + 1;
+		if (columns > tiles.size() || rows > tiles.size() || columns * rows > tiles.size()) {
+			// zoomed out: fewer tiles than tile positions in the area
+			for(Tile tile : tiles.values()) {
+				if (tile.x >> TILE_SHIFT < tx0 || tile.x >> TILE_SHIFT > tx1) continue;
+				if (tile.y >> TILE_SHIFT < ty0 || tile.y >> TILE_SHIFT > ty1) continue;
+				g.drawImage(tile.image, tile.x, tile.y, null);
+			}
+			return;
+		}
+		for(long ty = ty0; ty <= ty1; ty++) {
+			for(long tx = tx0; tx <= tx1; tx++) {
+				Tile tile = tiles.get(key((int) tx, (int) ty));
+				if (tile == null) continue;
+				g.drawImage(tile.image, tile.x, tile.y, null);
+			}
+		}
+	}
+}
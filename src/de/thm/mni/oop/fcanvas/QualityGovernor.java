@@ -0,0 +1,90 @@
+package de.thm.mni.oop.fcanvas;
+
+/**
+ * <p>Adapts the rendering quality of a {@link FCanvasPanel} to the time it takes to paint a frame.</p>
+ *
+ * <p>The governor keeps an exponential moving average of the paint times. If the average
+ * exceeds {@value #PRESSURE_PERCENT}% of the frame budget for {@value #DOWN_FRAMES} consecutive
+ * frames, the quality is lowered by one level. If it stays below {@value #HEADROOM_PERCENT}% of
+ * the budget for {@value #UP_FRAMES} consecutive frames, the quality is raised by one level.
+ * The gap between both thresholds and the longer period required for raising the quality
+ * keep the level from flapping between two levels, and the average is restarted after each
+ * change, so that the effect of the new level is measured before the next change.</p>
+ *
+ * <p>This class is not thread-safe and must only be used on the event dispatch thread.</p>
+ *
+ * @author Christopher Schölzel
+ */
+class QualityGovernor {
+	/** Percentage of the frame budget above which the quality is lowered */
+	static final int PRESSURE_PERCENT = 90;
+	/** Percentage of the frame budget below which the quality is raised */
+	static final int HEADROOM_PERCENT = 50;
+	/** Number of consecutive frames under pressure before the quality is lowered */
+	static final int DOWN_FRAMES = 3;
+	/** Number of consecutive frames with headroom before the quality is raised */
+	static final int UP_FRAMES = 60;
+	/** Weight of the newest paint time in the moving average in percent */
+	private static final int WEIGHT_PERCENT = 25;
+	private boolean enabled = false;
+	private int level = FCanvasPanel.QUALITY_FULL;
+	private long average = -1;
+	private int pressureFrames = 0;
+	private int headroomFrames = 0;
+
+	/**
+	 * Turns the governor on or off. Turning it off restores full quality.
+	 * @param enabled if <code>true</code> the quality is adapted to the paint times
+	 */
+	void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+		if (!enabled) setLevel(FCanvasPanel.QUALITY_FULL);
+	}
+	/**
+	 * Indicates whether the governor adapts the quality.
+	 * @return <code>true</code> if the governor is enabled
+	 */
+	boolean isEnabled() {
+		return enabled;
+	}
+	/**
+	 * Returns the current quality level.
+	 * @return a level between {@link FCanvasPanel#QUALITY_LOW} and {@link FCanvasPanel#QUALITY_FULL}
+	 */
+	int getLevel() {
+		return level;
+	}
+	/**
+	 * Records the paint time of a frame and adapts the quality level.
+	 * @param nanos the time it took to paint the frame
+	 * @param budgetNanos the time that should not be exceeded
+	 * @return <code>true</code> if the quality level has changed
+	 */
+	boolean framePainted(long nanos, long budgetNanos) {
+		if (!enabled) return false;
+		average = average < 0 ? nanos : (WEIGHT_PERCENT * nanos + (100 - WEIGHT_PERCENT) * average) / 100;
+		if (average * 100 > budgetNanos * PRESSURE_PERCENT) {
+			headroomFrames = 0;
+			if (++pressureFrames >= DOWN_FRAMES && level > FCanvasPanel.QUALITY_LOW) {
+				return setLevel(level - 1);
+			}
+		} else if (average * 100 < budgetNanos * HEADROOM_PERCENT) {
+			pressureFrames = 0;
+			if (++headroomFrames >= UP_FRAMES && level < FCanvasPanel.QUALITY_FULL) {
+				return setLevel(level + 1);
+			}
+		} else {
+			pressureFrames = 0;
+			headroomFrames = 0;
+		}
+		return false;
+	}
+	private boolean setLevel(int newLevel) {
+		boolean changed = newLevel != level;
+		level = newLevel;
+		average = -1;
+		pressureFrames = 0;
+		headroomFrames = 0;
+		return changed;
+	}
+}
@@ -0,0 +1,410 @@
+package de.thm.mni.oop.fcanvas;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+import de.thm.mni.oop.fcanvas.components.AbstractComponent;
+import de.thm.mni.oop.fcanvas.components.FCanvasComponent;
+import de.thm.mni.oop.fcanvas.components.Line;
+import de.thm.mni.oop.fcanvas.components.Oval;
+import de.thm.mni.oop.fcanvas.components.Polygon;
+import de.thm.mni.oop.fcanvas.components.Rectangle;
+import de.thm.mni.oop.fcanvas.components.Sprite;
+import de.thm.mni.oop.fcanvas.components.Text;
+import de.thm.mni.oop.fcanvas.components.Tilemap;
+
+/**
+ * <p>Reads and writes the binary scene format of {@link FCanvasPanel#saveScene(java.nio.file.Path)}
+ * and {@link FCanvasPanel#loadScene(java.nio.file.Path)}.</p>
+ *
+ * <p>All values are stored in big-endian byte order. A file consists of</p>
+ *
+ * <ul>
+ * <li>a header: magic number <code>"FCSC"</code> (int), format version (short), flags (short,
+ * bit 0 = antialiasing), width and height of the panel (int), background color (ARGB int),
+ * the number of components (int) and the viewport: x, y and zoom (double),</li>
+ * <li>one record per component in drawing order: type (byte), layer (int), z-index (int),
+ * flags (byte, bit 0 = visible), fill color and stroke color (ARGB int), stroke width (int),
+ * rotation (float) and the geometry of the component (see below),</li>
+ * <li>the number of frozen layers (int) followed by their numbers (int),</li>
+ * <li>the pixel layer: the number of tiles (int) followed by the world coordinates of the
+ * upper left corner of each tile (int) and its {@value PixelLayer#TILE_SIZE}x{@value PixelLayer#TILE_SIZE}
+ * ARGB values (int) in row-major order.</li>
+ * </ul>
+ *
+ * <p>Version 1 of the format did not contain the viewport and stored the pixel layer as width and
+ * height (int) of an area starting at the origin followed by width * height ARGB values (int).
+ * Files of version 1 can still be read.</p>
+ *
+ * <p>The geometry of rectangles and ovals is stored as left, top, width and height, the geometry
+ * of lines as x1, y1, x2 and y2. Polygons store the number of points followed by all
+ * x-coordinates and all y-coordinates. Texts store left, baseline, the font size and the text
+ * as length-prefixed UTF-8 bytes. Images store left, top, width and height followed by the path
+ * of the image file as length-prefixed UTF-8 bytes; the file is decoded again when the scene is
+ * read. Tilemaps store left, top, the number of columns and rows, the width and height of a tile,
+ * the path of the atlas as length-prefixed UTF-8 bytes and the tile numbers of all cells row by row.</p>
+ *
+ * @author Christopher Schölzel
+ */
+class SceneFile {
+	/** The characters "FCSC" */
+	static final int MAGIC = 0x46435343;
+	/** The version of the format written by this class */
+	static final short VERSION = 2;
+	static final byte RECTANGLE = 1;
+	static final byte OVAL = 2;
+	static final byte LINE = 3;
+	static final byte POLYGON = 4;
+	static final byte TEXT = 5;
+	static final byte SPRITE = 6;
+	static final byte TILEMAP = 7;
+	private static final int FLAG_ANTIALIASING = 1;
+	private static final int FLAG_VISIBLE = 1;
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/** Private constructor to prohibit instantiation */
+	private SceneFile() {}
+
+	/**
+	 * The decoded content of a scene file.
+	 */
+	static class Content {
+		int width;
+		int height;
+		int background;
+		boolean antialiasing;
+		/** components in drawing order */
+		FCanvasComponent[] components;
+		/** layer of each component, components of the same layer are stored consecutively */
+		int[] layers;
+		/** z-index of each component */
+		int[] zs;
+		int[] frozenLayers;
+		double viewX;
+		double viewY;
+		double zoom = 1;
+		PixelLayer pixels = new PixelLayer();
+	}
+
+	/**
+	 * Writes a scene to a channel through a buffer of fixed size, so that the
+	 * size of the scene does not affect the memory required for writing.
+	 */
+	static class Writer {
+		private final WritableByteChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+		/**
+		 * Creates a writer for the given channel.
+		 * @param channel the channel to write to
+		 */
+		Writer(WritableByteChannel channel) {
+			this.channel = channel;
+		}
+		/**
+		 * Writes the header of the file.
+		 * @param width width of the panel
+		 * @param height height of the panel
+		 * @param background background color as ARGB value
+		 * @param antialiasing antialiasing setting of the panel
+		 * @param count number of components that will follow
+		 * @param viewX x-coordinate of the viewport
+		 * @param viewY y-coordinate of the viewport
+		 * @param zoom zoom factor of the viewport
+		 * @throws IOException if the channel cannot be written
+		 */
+		void header(int width, int height, int background, boolean antialiasing, int count, double viewX, double viewY, double zoom) throws IOException {
+			ensure(50);
+			buffer.putInt(MAGIC);
+			buffer.putShort(VERSION);
+			buffer.putShort((short) (antialiasing ? FLAG_ANTIALIASING : 0));
+			buffer.putInt(width);
+			buffer.putInt(height);
+			buffer.putInt(background);
+			buffer.putInt(count);
+			buffer.putDouble(viewX);
+			buffer.putDouble(viewY);
+			buffer.putDouble(zoom);
+		}
+		/**
+		 * Writes a single component.
+		 * @param c the component
+		 * @param layer the layer of the component
+		 * @param z the z-index of the component
+		 * @throws IOException if the channel cannot be written
+		 */
+		void component(FCanvasComponent c, int layer, int z) throws IOException {
+			ensure(30);
+			buffer.put(typeOf(c));
+			buffer.putInt(layer);
+			buffer.putInt(z);
+			buffer.put((byte) (c.isVisible() ? FLAG_VISIBLE : 0));
+			buffer.putInt(((Color) c.getFillColor()).getRGB());
+			buffer.putInt(c.getStrokeColor().getRGB());
+			buffer.putInt(Math.round(((BasicStroke) c.getStroke()).getLineWidth()));
+			buffer.putFloat(c.getRotation());
+			if (c instanceof Rectangle) {
+				Rectangle r = (Rectangle) c;
+				putInts(r.getLeft(), r.getTop(), r.getWidth(), r.getHeight());
+			} else if (c instanceof Oval) {
+				Oval o = (Oval) c;
+				putInts(o.getLeft(), o.getTop(), o.getWidth(), o.getHeight());
+			} else if (c instanceof Line) {
+				Line l = (Line) c;
+				putInts(l.getX1(), l.getY1(), l.getX2(), l.getY2());
+			} else if (c instanceof Polygon) {
+				Polygon p = (Polygon) c;
+				int[] xs = p.getXCoords();
+				ensure(4);
+				buffer.putInt(xs.length);
+				putInts(xs, 0, xs.length);
+				putInts(p.getYCoords(), 0, xs.length);
+			} else if (c instanceof Sprite) {
+				Sprite s = (Sprite) c;
+				byte[] path = s.getPath().getBytes(StandardCharsets.UTF_8);
+				putInts(s.getLeft(), s.getTop(), s.getWidth(), s.getHeight(), path.length);
+				put(path);
+			} else if (c instanceof Tilemap) {
+				Tilemap tm = (Tilemap) c;
+				byte[] path = tm.getPath().getBytes(StandardCharsets.UTF_8);
+				putInts(tm.getLeft(), tm.getTop(), tm.getColumns(), tm.getRows(), tm.getTileWidth(), tm.getTileHeight(), path.length);
+				put(path);
+				putInts(tm.getTiles(), 0, tm.getTiles().length);
+			} else {
+				Text t = (Text) c;
+				byte[] text = t.getText().getBytes(StandardCharsets.UTF_8);
+				putInts(t.getLeft(), t.getBaseline(), t.getFont().getSize(), text.length);
+				put(text);
+			}
+		}
+		/**
+		 * Writes the numbers of the frozen layers.
+		 * @param frozen numbers of the frozen layers
+		 * @param count number of valid entries in <code>frozen</code>
+		 * @throws IOException if the channel cannot be written
+		 */
+		void frozenLayers(int[] frozen, int count) throws IOException {
+			ensure(4);
+			buffer.putInt(count);
+			putInts(frozen, 0, count);
+		}
+		/**
+		 * Writes the tiles of the pixel layer.
+		 * @param pixels the pixel layer
+		 * @throws IOException if the channel cannot be written
+		 */
+		void pixels(PixelLayer pixels) throws IOException {
+			ensure(4);
+			buffer.putInt(pixels.getTiles().size());
+			int[] argb = new int[PixelLayer.TILE_SIZE * PixelLayer.TILE_SIZE];
+			for(PixelLayer.Tile tile : pixels.getTiles()) {
+				putInts(tile.x, tile.y);
+				tile.image.getRGB(0, 0, PixelLayer.TILE_SIZE, PixelLayer.TILE_SIZE, argb, 0, PixelLayer.TILE_SIZE);
+				putInts(argb, 0, argb.length);
+			}
+		}
+		/**
+		 * Writes all remaining buffered data to the channel. The channel is not closed.
+		 * @throws IOException if the channel cannot be written
+		 */
+		void finish() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			buffer.clear();
+		}
+		/**
+		 * Makes sure that the buffer has room for at least n bytes (n must not exceed the buffer size).
+		 */
+		private void ensure(int n) throws IOException {
+			if (buffer.remaining() < n) finish();
+		}
+		private void putInts(int... values) throws IOException {
+			putInts(values, 0, values.length);
+		}
+		private void putInts(int[] values, int from, int length) throws IOException {
+			int i = from;
+			int end = from + length;
+			while (i < end) {
+				ensure(4);
+				int n = Math.min(end - i, buffer.remaining() / 4);
+				buffer.asIntBuffer().put(values, i, n);
+				buffer.position(buffer.position() + 4 * n);
+				i += n;
+			}
+		}
+		private void put(byte[] bytes) throws IOException {
+			if (bytes.length > buffer.remaining()) {
+				finish();
+				if (bytes.length > buffer.capacity()) {
+					ByteBuffer wrapped = ByteBuffer.wrap(bytes);
+					while (wrapped.hasRemaining()) {
+						channel.write(wrapped);
+					}
+					return;
+				}
+			}
+			buffer.put(bytes);
+		}
+	}
+
+	private static byte typeOf(FCanvasComponent c) {
+		if (c instanceof Rectangle) return RECTANGLE;
+		if (c instanceof Oval) return OVAL;
+		if (c instanceof Line) return LINE;
+		if (c instanceof Polygon) return POLYGON;
+		if (c instanceof Text) return TEXT;
+		if (c instanceof Sprite) return SPRITE;
+		if (c instanceof Tilemap) return TILEMAP;
+		throw new IllegalArgumentException("Unsupported component type " + c.getClass().getName());
+	}
+
+	/**
+	 * Decodes a scene. The buffer is typically a memory-mapped file.
+	 * @param buf the buffer positioned at the start of the scene
+	 * @return the decoded scene
+	 * @throws IOException if the buffer does not contain a valid scene of a supported version
+	 */
+	static Content read(ByteBuffer buf) throws IOException {
+		try {
+			if (buf.getInt() != MAGIC) throw new IOException("Not a FCanvas scene file");
+			short version = buf.getShort();
+			if (version != VERSION && version != 1) throw new IOException("Unsupported scene file version " + version);
+			Content scene = new Content();
+			scene.antialiasing = (buf.getShort() & FLAG_ANTIALIASING) != 0;
+			scene.width = buf.getInt();
+			scene.height = buf.getInt();
+			scene.background = buf.getInt();
+			int count = buf.getInt();
+			if (version > 1) {
+				scene.viewX = buf.getDouble();
+				scene.viewY = buf.getDouble();
+				scene.zoom = buf.getDouble();
+			}
+			scene.components = new FCanvasComponent[count];
+			scene.layers = new int[count];
+			scene.zs = new int[count];
+			for(int i = 0; i < count; i++) {
+				byte type = buf.get();
+				scene.layers[i] = buf.getInt();
+				scene.zs[i] = buf.getInt();
+				scene.components[i] = readComponent(type, buf);
+			}
+			scene.frozenLayers = readInts(buf, buf.getInt());
+			if (version > 1) {
+				readTiles(buf, scene.pixels);
+			} else {
+				readPixels(buf, scene.pixels);
+			}
+			return scene;
+		} catch (BufferUnderflowException | NegativeArraySizeException e) {
+			throw new IOException("Truncated or corrupt scene file", e);
+		}
+	}
+	private static AbstractComponent readComponent(byte type, ByteBuffer buf) throws IOException {
+		int flags = buf.get();
+		int fill = buf.getInt();
+		int stroke = buf.getInt();
+		int strokeWidth = buf.getInt();
+		float rotation = buf.getFloat();
+		AbstractComponent c;
+		switch (type) {
+		case RECTANGLE:
+			c = new Rectangle(buf.getInt(), buf.getInt(), buf.getInt(), buf.getInt());
+			break;
+		case OVAL:
+			c = new Oval(buf.getInt(), buf.getInt(), buf.getInt(), buf.getInt());
+			break;
+		case LINE:
+			c = new Line(buf.getInt(), buf.getInt(), buf.getInt(), buf.getInt());
+			break;
+		case POLYGON:
+			int n = buf.getInt();
+			int[] xs = readInts(buf, n);
+			int[] ys = readInts(buf, n);
+			c = new Polygon(xs, ys);
+			break;
+		case TEXT:
+			int left = buf.getInt();
+			int baseline = buf.getInt();
+			int size = buf.getInt();
+			byte[] text = new byte[buf.getInt()];
+			buf.get(text);
+			Text t = new Text(new String(text, StandardCharsets.UTF_8), left, baseline);
+			if (t.getFont().getSize() != size) t.setFontSize(size);
+			c = t;
+			break;
+		case SPRITE:
+			int x = buf.getInt();
+			int y = buf.getInt();
+			int width = buf.getInt();
+			int height = buf.getInt();
+			byte[] path = new byte[buf.getInt()];
+			buf.get(path);
+			String p = new String(path, StandardCharsets.UTF_8);
+			c = new Sprite(p, ImageCache.shared().get(p, width, height), x, y, width, height);
+			break;
+		case TILEMAP: {
+			int[] geometry = readInts(buf, 6);
+			byte[] atlas = new byte[buf.getInt()];
+			buf.get(atlas);
+			String atlasPath = new String(atlas, StandardCharsets.UTF_8);
+			Tilemap tm;
+			try {
+				tm = new Tilemap(atlasPath, ImageCache.shared().get(atlasPath), geometry[0], geometry[1], geometry[2], geometry[3], geometry[4], geometry[5]);
+			} catch (IllegalArgumentException e) {
+				throw new IOException("Invalid tilemap", e);
+			}
+			tm.setTiles(0, 0, tm.getColumns(), tm.getRows(), readInts(buf, tm.getColumns() * tm.getRows()));
+			c = tm;
+			break;
+		}
+		default:
+			throw new IOException("Unknown component type " + type);
+		}
+		// defaults are kept, so that components without style share the default objects
+		if (c.getFillColor().getRGB() != fill) c.setFillColor(fill >> 16 & 0xFF, fill >> 8 & 0xFF, fill & 0xFF, fill >>> 24);
+		if (c.getStrokeColor().getRGB() != stroke) c.setStrokeColor(stroke >> 16 & 0xFF, stroke >> 8 & 0xFF, stroke & 0xFF, stroke >>> 24);
+		if (((BasicStroke) c.getStroke()).getLineWidth() != strokeWidth) c.setStrokeWidth(strokeWidth);
+		if (rotation != 0) c.setRotation(rotation);
+		if ((flags & FLAG_VISIBLE) == 0) c.setVisible(false);
+		return c;
+	}
+	private static void readTiles(ByteBuffer buf, PixelLayer pixels) {
+		int count = buf.getInt();
+		int[] argb = new int[PixelLayer.TILE_SIZE * PixelLayer.TILE_SIZE];
+		for(int i = 0; i < count; i++) {
+			int x = buf.getInt();
+			int y = buf.getInt();
+			buf.asIntBuffer().get(argb);
+			buf.position(buf.position() + 4 * argb.length);
+			pixels.setTile(x, y, argb);
+		}
+	}
+	/**
+	 * Reads the pixel layer of version 1, which starts at the origin.
+	 */
+	private static void readPixels(ByteBuffer buf, PixelLayer pixels) {
+		int width = buf.getInt();
+		int height = buf.getInt();
+		int[] argb = readInts(buf, width * height);
+		for(int y = 0; y < height; y++) {
+			for(int x = 0; x < width; x++) {
+				// pixels that have never been set are transparent
+				if (argb[y * width + x] != 0) pixels.set(x, y, argb[y * width + x]);
+			}
+		}
+	}
+	private static int[] readInts(ByteBuffer buf, int n) {
+		int[] values = new int[n];
+		buf.asIntBuffer().get(values);
+		buf.position(buf.position() + 4 * n);
+		return values;
+	}
+}
@@ -0,0 +1,228 @@
+package de.thm.mni.oop.fcanvas;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * <p>A framebuffer of ARGB pixels in a memory-mapped file, through which other processes
+ * can show frames on a canvas (see {@link FCanvas#showFramebuffer(String, int, int)}).</p>
+ *
+ * <p>The file consists of a header of {@value #HEADER_SIZE} bytes followed by two buffers
+ * of <code>width * height</code> pixels each. All numbers are stored in little-endian byte order:</p>
+ *
+ * <table>
+ * <caption>Header of a shared framebuffer</caption>
+ * <tr><th>Offset</th><th>Type</th><th>Content</th></tr>
+ * <tr><td>0</td><td>int</td><td>{@value #MAGIC} (the bytes <code>FCFB</code>)</td></tr>
+ * <tr><td>4</td><td>int</td><td>{@value #VERSION}</td></tr>
+ * <tr><td>8</td><td>int</td><td>width in pixels</td></tr>
+ * <tr><td>12</td><td>int</td><td>height in pixels</td></tr>
+ * <tr><td>16</td><td>long</td><td>number of the last complete frame, 0 if there is none</td></tr>
+ * <tr><td>24</td><td>long</td><td>number of the frame that is being written, equal to the number of the last frame if none is written</td></tr>
+ * </table>
+ *
+ * <p>Frame <code>n</code> is stored in buffer <code>n % 2</code>, which starts at offset
+ * <code>HEADER_SIZE + (n % 2) * width * height * 4</code>. Each pixel is an int of the form
+ * <code>alpha &lt;&lt; 24 | red &lt;&lt; 16 | green &lt;&lt; 8 | blue</code>, i.e. the bytes
+ * blue, green, red and alpha in this order. Rows are stored from top to bottom without padding.</p>
+ *
+ * <p>A writer produces frame <code>n</code> by first storing <code>n</code> as the frame that is
+ * being written, then writing the pixels into buffer <code>n % 2</code> and finally storing
+ * <code>n</code> as the last complete frame. The reader copies the buffer of the last complete
+ * frame and discards the copy if the writer has meanwhile started to write into the same buffer,
+ * so a frame is never shown torn even if the writer is faster than the reader. Writers in other
+ * languages must follow this order and use memory fences between the steps.</p>
+ *
+ * <p>Only one process may write to a framebuffer at a time. The methods of a single
+ * instance are not thread-safe.</p>
+ *
+ * @author Christopher Schölzel
+ * @since 1.4
+ */
+public final class SharedFramebuffer implements Closeable {
+	/** The first four bytes of a framebuffer file */
+	public static final int MAGIC = 0x42464346;
+	/** Version of the file format */
+	public static final int VERSION = 1;
+	/** Size of the header in bytes */
+	public static final int HEADER_SIZE = 64;
+	private static final int OFFSET_WIDTH = 8;
+	private static final int OFFSET_HEIGHT = 12;
+	private static final int OFFSET_SEQUENCE = 16;
+	private static final int OFFSET_WRITING = 24;
+	private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+	private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+	private final FileChannel channel;
+	private final MappedByteBuffer map;
+	private final int width;
+	private final int height;
+	/** views of the two buffers */
+	private final IntBuffer[] buffers = new IntBuffer[2];
+	/** number of the frame returned by {@link #beginFrame()}, 0 if no frame is written */
+	private long writing = 0;
+
+	private SharedFramebuffer(FileChannel channel, MappedByteBuffer map, int width, int height) {
+		this.channel = channel;
+		this.map = map;
+		this.width = width;
+		this.height = height;
+		int pixels = width * height;
+		for(int i = 0; i < 2; i++) {
+			map.position(HEADER_SIZE + i * pixels * 4);
+			map.limit(HEADER_SIZE + (i + 1) * pixels * 4);
+			buffers[i] = map.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+			map.clear();
+		}
+	}
+	/**
+	 * Creates a framebuffer file or replaces an existing one. All pixels are transparent
+	 * and the file does not contain a frame yet.
+	 * @param file the path of the file, usually on a memory file system such as <code>/dev/shm</code>
+	 * @param width width of a frame in pixels
+	 * @param height height of a frame in pixels
+	 * @return the framebuffer
+	 * @throws IOException if the file cannot be created
+	 */
+	public static SharedFramebuffer create(Path file, int width, int height) throws IOException {
+		if (width <= 0 || height <= 0) throw new IllegalArgumentException("Size of framebuffer must be positive");
+		if ((long) width * height > (Integer.MAX_VALUE - HEADER_SIZE) / 8) {
+			throw new IllegalArgumentException("Framebuffer too large: " + width + "x" + height);
+		}
+		FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + 8L * width * height);
+			INT.set(map, 4, VERSION);
+			INT.set(map, OFFSET_WIDTH, width);
+			INT.set(map, OFFSET_HEIGHT, height);
+			LONG.set(map, OFFSET_SEQUENCE, 0L);
+			LONG.set(map, OFFSET_WRITING, 0L);
+			// the magic number is written last, so that a reader never sees a partial header
+			VarHandle.fullFence();
+			INT.setVolatile(map, 0, MAGIC);
+			return new SharedFramebuffer(ch, map, width, height);
+		} catch (IOException | RuntimeException e) {
+			ch.close();
+			throw e;
+		}
+	}
+	/**
+	 * Opens an existing framebuffer file, e.g. one that has been created by another process.
+	 * @param file the path of the file
+	 * @return the framebuffer
+	 * @throws IOException if the file cannot be read or is not a framebuffer
+	 */
+	public static SharedFramebuffer open(Path file) throws IOException {
+		FileChannel ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			if (ch.size() < HEADER_SIZE) throw new IOException("Not a framebuffer: " + file);
+			MappedByteBuffer header = ch.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+			if ((int) INT.getVolatile(header, 0) != MAGIC) throw new IOException("Not a framebuffer: " + file);
+			int version = (int) INT.get(header, 4);
+			if (version != VERSION) throw new IOException("Unsupported framebuffer version " + version + ": " + file);
+			int width = (int) INT.get(header, OFFSET_WIDTH);
+			int height = (int) INT.get(header, OFFSET_HEIGHT);
+			long size = HEADER_SIZE + 8L * width * height;
+			if (width <= 0 || height <= 0 || size > Integer.MAX_VALUE || ch.size() < size) {
+				throw new IOException("Invalid framebuffer size " + width + "x" + height + ": " + file);
+			}
+			return new SharedFramebuffer(ch, ch.map(FileChannel.MapMode.READ_WRITE, 0, size), width, height);
+		} catch (IOException | RuntimeException e) {
+			ch.close();
+			throw e;
+		}
+	}
+	/**
+	 * Returns the width of a frame.
+	 * @return width in pixels
+	 */
+	public int getWidth() {
+		return width;
+	}
+	/**
+	 * Returns the height of a frame.
+	 * @return height in pixels
+	 */
+	public int getHeight() {
+		return height;
+	}
+	/**
+	 * Returns the number of the last complete frame.
+	 * @return frame number, 0 if no frame has been written yet
+	 */
+	public long getSequence() {
+		return (long) LONG.getAcquire(map, OFFSET_SEQUENCE);
+	}
+	/**
+	 * <p>Starts writing the next frame and returns the buffer in which its pixels must be stored.</p>
+	 *
+	 * <p>The buffer contains the pixels of the frame before the last one, so only the pixels that
+	 * differ from that frame need to be written. The frame becomes visible with {@link #endFrame()}.</p>
+	 *
+	 * @return the pixels of the next frame row by row, with position 0
+	 * @throws IllegalStateException if {@link #endFrame()} has not been called for the previous frame
+	 */
+	public IntBuffer beginFrame() {
+		if (writing != 0) throw new IllegalStateException("Previous frame has not been ended");
+		writing = getSequence() + 1;
+		LONG.setVolatile(map, OFFSET_WRITING, writing);
+		// readers must see that the buffer is written before any of its pixels change
+		VarHandle.fullFence();
+		IntBuffer buffer = buffers[(int) (writing & 1)];
+		buffer.clear();
+		return buffer;
+	}
+	/**
+	 * Publishes the frame that has been started with {@link #beginFrame()}.
+	 * @throws IllegalStateException if no frame has been started
+	 */
+	public void endFrame() {
+		if (writing == 0) throw new IllegalStateException("No frame has been started");
+		LONG.setRelease(map, OFFSET_SEQUENCE, writing);
+		writing = 0;
+	}
+	/**
+	 * Writes a whole frame and publishes it.
+	 * @param argb <code>width * height</code> ARGB values row by row
+	 */
+	public void writeFrame(int[] argb) {
+		if (argb.length != width * height) {
+			throw new IllegalArgumentException("Expected " + width * height + " pixels, got " + argb.length);
+		}
+		beginFrame().put(argb);
+		endFrame();
+	}
+	/**
+	 * Copies the last complete frame.
+	 * @param argb array of <code>width * height</code> ints that receives the pixels row by row
+	 * @return the number of the copied frame, or 0 if there is no frame or the writer has
+	 * started to overwrite it during the copy, in which case the array contains garbage
+	 */
+	long readFrame(int[] argb) {
+		long sequence = getSequence();
+		if (sequence == 0) return 0;
+		IntBuffer buffer = buffers[(int) (sequence & 1)].duplicate();
+		buffer.clear();
+		buffer.get(argb, 0, width * height);
+		// the pixels must be read before checking that they were not overwritten
+		VarHandle.acquireFence();
+		long w = (long) LONG.getVolatile(map, OFFSET_WRITING);
+		return w > sequence + 1 ? 0 : sequence;
+	}
+	/**
+	 * Closes the file. The memory is unmapped when the framebuffer is garbage collected.
+	 * @throws IOException if the file cannot be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
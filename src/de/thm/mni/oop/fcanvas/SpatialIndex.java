@@ -0,0 +1,538 @@
+package de.thm.mni.oop.fcanvas;
+
+import java.awt.BasicStroke;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.geom.Area;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import de.thm.mni.oop.fcanvas.components.FCanvasComponent;
+import de.thm.mni.oop.fcanvas.components.Line;
+import de.thm.mni.oop.fcanvas.components.Sprite;
+import de.thm.mni.oop.fcanvas.components.Text;
+import de.thm.mni.oop.fcanvas.components.Tilemap;
+
+/**
+ * <p>Answers collision and overlap queries for the components of a {@link FCanvasPanel}
+ * from any thread.</p>
+ *
+ * <p>The index holds a copy of the outline of each visible component, i.e. its shape
+ * including rotation, or the area covered by its stroke for lines, together with its
+ * stroke and its position in the drawing order. The outlines are
+ * sorted into a grid of {@value #CELL_SIZE}x{@value #CELL_SIZE} cells by their bounding
+ * box (broadphase). Components whose bounding boxes overlap are then tested exactly
+ * (narrowphase): axis-aligned rectangles by their bounds, a rectangle and another shape
+ * with {@link Shape#intersects(Rectangle2D)}, and all other pairs by intersecting their
+ * {@link Area}s, which are created once per outline when they are first needed.
+ * Points are tested against the filled area and the stroke of the components in the
+ * cell that contains the point.</p>
+ *
+ * <p>Changes are collected on the event dispatch thread with {@link #mark(int)} and
+ * applied in one batch with {@link #commit(ComponentStore)}. Queries and commits are
+ * synchronized on the index, so queries never wait for the event dispatch thread, but
+ * see the components as of the last commit.</p>
+ *
+ * @author Christopher Schölzel
+ */
+class SpatialIndex {
+	/** Width and height of a grid cell as power of two */
+	private static final int CELL_SHIFT = 5;
+	/** Width and height of a grid cell */
+	static final int CELL_SIZE = 1 << CELL_SHIFT;
+	/** Components that cover more cells are kept in a list that is checked by every query */
+	private static final int MAX_CELLS = 256;
+	// slots that have changed, only accessed on the event dispatch thread
+	private int[] dirty = new int[64];
+	private int dirtyCount = 0;
+	private boolean[] marked = new boolean[0];
+	// outlines, guarded by this
+	/** ids of the indexed components, 0 for slots without an indexed component */
+	private long[] ids = new long[0];
+	private Shape[] shapes = new Shape[0];
+	/** stroke of components whose border is drawn, <code>null</code> for texts, images and tilemaps */
+	private Stroke[] strokes = new Stroke[0];
+	/** area covered by the stroke, created when it is first needed */
+	private Shape[] strokeOutlines = new Shape[0];
+	/** whether the outline is the area covered by the stroke, which is the case for lines */
+	private boolean[] lines = new boolean[0];
+	/** area of the outline, created when it is first needed */
+	private Area[] areas = new Area[0];
+	private boolean[] rectangles = new boolean[0];
+	/** bounding box of the outline */
+	private double[] minX = new double[0];
+	private double[] minY = new double[0];
+	private double[] maxX = new double[0];
+	private double[] maxY = new double[0];
+	/** distance by which the stroke may extend beyond the bounding box of the outline */
+	private double[] margins = new double[0];
+	/** position in the drawing order: number of the layer and order within the layer */
+	private int[] layerNumbers = new int[0];
+	private long[] orders = new long[0];
+	/** range of cells of each component, empty if it is in the list of large components */
+	private int[][] cells = new int[0][];
+	private final Map<Long,Cell> grid = new HashMap<Long,Cell>();
+	private final Cell large = new Cell();
+	/** number of the last query, used to visit each candidate only once */
+	private int query = 0;
+	private int[] visited = new int[0];
+	private Cell found = new Cell();
+
+	/**
+	 * A list of slots.
+	 */
+	private static final class Cell {
+		int[] slots = new int[4];
+		int size = 0;
+		void add(int slot) {
+			if (size == slots.length) slots = Arrays.copyOf(slots, size * 2);
+			slots[size++] = slot;
+		}
+		void remove(int slot) {
+			for(int i = 0; i < size; i++) {
+				if (slots[i] == slot) {
+					slots[i] = slots[--size];
+					return;
+				}
+			}
+		}
+	}
+
+	private static long key(int cx, int cy) {
+		return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+	}
+	/**
+	 * Records that the component in a slot has been added, removed or changed.
+	 * Must only be called on the event dispatch thread.
+	 * @param slot the slot of the component
+	 */
+	void mark(int slot) {
+		if (slot >= marked.length) marked = Arrays.copyOf(marked, Math.max(slot + 1, marked.length * 2));
+		if (marked[slot]) return;
+		marked[slot] = true;
+		if (dirtyCount == dirty.length) dirty = Arrays.copyOf(dirty, dirtyCount * 2);
+		dirty[dirtyCount++] = slot;
+	}
+	/**
+	 * Copies the outlines of all marked slots into the index.
+	 * Must only be called on the event dispatch thread.
+	 * @param store the components of the panel
+	 */
+	void commit(ComponentStore store) {
+		if (dirtyCount == 0) return;
+		synchronized (this) {
+			for(int i = 0; i < dirtyCount; i++) {
+				int slot = dirty[i];
+				marked[slot] = false;
+				FCanvasComponent c = slot < store.capacity() ? store.getAt(slot) : null;
+				long id = c == null ? 0 : store.getId(slot);
+				update(slot, id, c, c == null ? null : store.getLayer(id));
+			}
+		}
+		dirtyCount = 0;
+	}
+	/**
+	 * Replaces the outline of a slot.
+	 */
+	private void update(int slot, long id, FCanvasComponent c, Layer layer) {
+		ensureCapacity(slot + 1);
+		int[] old = ids[slot] == 0 ? null : cells[slot];
+		if (c == null || !c.isVisible()) {
+			if (old != null) unlink(slot, old);
+			ids[slot] = 0;
+			shapes[slot] = null;
+			strokes[slot] = null;
+			strokeOutlines[slot] = null;
+			areas[slot] = null;
+			return;
+		}
+		Shape s = c.getShape();
+		Stroke stroke = c instanceof Text || c instanceof Sprite || c instanceof Tilemap ? null : c.getStroke();
+		boolean line = c instanceof Line;
+		double margin = line || stroke == null ? 0 : 1;
+		if (stroke instanceof BasicStroke) {
+			BasicStroke bs = (BasicStroke) stroke;
+			// caps extend less than the width beyond the ends of a line, but mitered joins
+			// at sharp corners extend up to half the width times the miter limit
+			margin = bs.getLineWidth() * (line || bs.getLineJoin() != BasicStroke.JOIN_MITER ? 1 : Math.max(1, bs.getMiterLimit() / 2));
+		} else if (line) {
+			margin = 1;
+		}
+		Rectangle2D b = s.getBounds2D();
+		ids[slot] = id;
+		shapes[slot] = s;
+		strokes[slot] = stroke;
+		strokeOutlines[slot] = null;
+		lines[slot] = line;
+		areas[slot] = null;
+		rectangles[slot] = !line && s instanceof Rectangle2D;
+		double pad = line ? margin : 0;
+		minX[slot] = b.getMinX() - pad;
+		minY[slot] = b.getMinY() - pad;
+		maxX[slot] = b.getMaxX() + pad;
+		maxY[slot] = b.getMaxY() + pad;
+		margins[slot] = line ? 0 : margin;
+		layerNumbers[slot] = layer.getNumber();
+		orders[slot] = layer.getOrder(slot);
+		// the cells also cover the stroke, so that points on it are found
+		double m = margins[slot];
+		int[] range = range(minX[slot] - m, minY[slot] - m, maxX[slot] + m, maxY[slot] + m);
+		if (old != null && Arrays.equals(old, range)) return;
+		if (old != null) unlink(slot, old);
+		cells[slot] = range;
+		if (range.length == 0) {
+			large.add(slot);
+			return;
+		}
+		for(int cy = range[1]; cy <= range[3]; cy++) {
+			for(int cx = range[0]; cx <= range[2]; cx++) {
+				Long k = key(cx, cy);
+				Cell cell = grid.get(k);
+				if (cell == null) {
+					cell = new Cell();
+					grid.put(k, cell);
+				}
+				cell.add(slot);
+			}
+		}
+	}
+	/**
+	 * Removes a slot from the cells in which it is stored.
+	 */
+	private void unlink(int slot, int[] range) {
+		if (range.length == 0) {
+			large.remove(slot);
+			return;
+		}
+		for(int cy = range[1]; cy <= range[3]; cy++) {
+			for(int cx = range[0]; cx <= range[2]; cx++) {
+				Long k = key(cx, cy);
+				Cell cell = grid.get(k);
+				cell.remove(slot);
+				if (cell.size == 0) grid.remove(k);
+			}
+		}
+	}
+	/**
+	 * Returns the cells covered by a bounding box as <code>{cx0, cy0, cx1, cy1}</code>,
+	 * or an empty array if these are more than {@value #MAX_CELLS}.
+	 */
+	private static int[] range(double x0, double y0, double x1, double y1) {
+		long cx0 = (long) Math.floor(x0) >> CELL_SHIFT;
+		long cy0 = (long) Math.floor(y0) >> CELL_SHIFT;
+		long cx1 = (long) Math.floor(x1) >> CELL_SHIFT;
+		long cy1 = (long) Math.floor(y1) >> CELL_SHIFT;
+		if ((cx1 - cx0 + 1) * (cy1 - cy0 + 1) > MAX_CELLS) return new int[0];
+		return new int[]{(int) cx0, (int) cy0, (int) cx1, (int) cy1};
+	}
+	private void ensureCapacity(int n) {
+		if (n <= ids.length) return;
+		n = Math.max(n, Math.max(64, ids.length * 2));
+		ids = Arrays.copyOf(ids, n);
+		shapes = Arrays.copyOf(shapes, n);
+		strokes = Arrays.copyOf(strokes, n);
+		strokeOutlines = Arrays.copyOf(strokeOutlines, n);
+		lines = Arrays.copyOf(lines, n);
+		areas = Arrays.copyOf(areas, n);
+		rectangles = Arrays.copyOf(rectangles, n);
+		minX = Arrays.copyOf(minX, n);
+		minY = Arrays.copyOf(minY, n);
+		maxX = Arrays.copyOf(maxX, n);
+		maxY = Arrays.copyOf(maxY, n);
+		margins = Arrays.copyOf(margins, n);
+		layerNumbers = Arrays.copyOf(layerNumbers, n);
+		orders = Arrays.copyOf(orders, n);
+		cells = Arrays.copyOf(cells, n);
+		visited = Arrays.copyOf(visited, n);
+	}
+	/**
+	 * Returns the slot of an indexed component or -1.
+	 */
+	private int slotOf(long id) {
+		int slot = ComponentStore.slot(id);
+		return slot < ids.length && ids[slot] == id && id != 0 ? slot : -1;
+	}
+	/**
+	 * Returns the exact outline of a slot that is used for collisions.
+	 */
+	private Shape outline(int slot) {
+		return lines[slot] ? strokeOutline(slot) : shapes[slot];
+	}
+	/**
+	 * Returns the area covered by the stroke of a slot that has a stroke.
+	 */
+	private Shape strokeOutline(int slot) {
+		if (strokeOutlines[slot] == null) strokeOutlines[slot] = strokes[slot].createStrokedShape(shapes[slot]);
+		return strokeOutlines[slot];
+	}
+	private boolean boundsOverlap(int a, int b) {
+		return minX[a] < maxX[b] && minX[b] < maxX[a] && minY[a] < maxY[b] && minY[b] < maxY[a];
+	}
+	/**
+	 * Tests two slots with overlapping bounding boxes exactly.
+	 */
+	private boolean narrow(int a, int b) {
+		if (rectangles[a] && rectangles[b]) return true;
+		if (rectangles[a]) return outline(b).intersects((Rectangle2D) shapes[a]);
+		if (rectangles[b]) return outline(a).intersects((Rectangle2D) shapes[b]);
+		if (shapes[a] instanceof Ellipse2D && shapes[b] instanceof Ellipse2D) {
+			Ellipse2D e = (Ellipse2D) shapes[a];
+			Ellipse2D f = (Ellipse2D) shapes[b];
+			if (e.getWidth() > 0 && e.getHeight() > 0 && f.getWidth() > 0 && f.getHeight() > 0) return ellipsesOverlap(e, f);
+		}
+		if (areas[a] == null) areas[a] = new Area(outline(a));
+		if (areas[b] == null) areas[b] = new Area(outline(b));
+		Area intersection = new Area(areas[a]);
+		intersection.intersect(areas[b]);
+		return !intersection.isEmpty();
+	}
+	/**
+	 * Tests two axis-aligned ellipses for overlap without creating areas. Both are scaled so that the
+	 * first one becomes the unit circle, which the second one overlaps if it contains the center of
+	 * the circle or its distance to the center is less than 1.
+	 */
+	static boolean ellipsesOverlap(Ellipse2D e, Ellipse2D f) {
+		double sx = 2 / e.getWidth();
+		double sy = 2 / e.getHeight();
+		// center of the circle relative to the center of the scaled second ellipse, mirrored into the first quadrant
+		double y0 = Math.abs(e.getCenterX() - f.getCenterX()) * sx;
+		double y1 = Math.abs(e.getCenterY() - f.getCenterY()) * sy;
+		double e0 = f.getWidth() / 2 * sx;
+		double e1 = f.getHeight() / 2 * sy;
+		if (y0 * y0 / (e0 * e0) + y1 * y1 / (e1 * e1) <= 1) return true;
+		return distanceToEllipse(e0, e1, y0, y1) < 1;
+	}
+	/**
+	 * Returns the distance of a point outside of an axis-aligned ellipse to the ellipse, using the
+	 * bisection method by David Eberly (Distance from a Point to an Ellipse, an Ellipsoid, or a Hyperellipsoid).
+	 * @param e0 semi-axis in x-direction
+	 * @param e1 semi-axis in y-direction
+	 * @param y0 x-coordinate of the point relative to the center, not negative
+	 * @param y1 y-coordinate of the point relative to the center, not negative
+	 */
+	private static double distanceToEllipse(double e0, double e1, double y0, double y1) {
+		if (e0 < e1) return distanceToEllipse(e1, e0, y1, y0);
+		if (y1 == 0) {
+			double numer = e0 * y0;
+			double denom = e0 * e0 - e1 * e1;
+			if (numer >= denom) return y0 - e0;
+			double xde = numer / denom;
+			double x0 = e0 * xde;
+			double x1 = e1 * Math.sqrt(1 - xde * xde);
+			return Math.hypot(x0 - y0, x1);
+		}
+		if (y0 == 0) return y1 - e1;
+		double z0 = y0 / e0;
+		double z1 = y1 / e1;
+		double r0 = (e0 / e1) * (e0 / e1);
+		double n0 = r0 * z0;
+		// the root lies between these bounds, since the point is outside
+		double s0 = z1 - 1;
+		double s1 = Math.hypot(n0, z1) - 1;
+		double s = 0;
+		for(int i = 0; i < 200; i++) {
+			s = (s0 + s1) / 2;
+			if (s == s0 || s == s1) break;
+			double ratio0 = n0 / (s + r0);
+			double ratio1 = z1 / (s + 1);
+			double g = ratio0 * ratio0 + ratio1 * ratio1 - 1;
+			if (g > 0) {
+				s0 = s;
+			} else if (g < 0) {
+				s1 = s;
+			} else {
+				break;
+			}
+		}
+		return Math.hypot(r0 * y0 / (s + r0) - y0, y1 / (s + 1) - y1);
+	}
+	/**
+	 * Indicates whether the outlines of two components overlap.
+	 * @param id1 the id of the first component
+	 * @param id2 the id of the second component
+	 * @return <code>true</code> if both components are visible, different and overlap
+	 */
+	synchronized boolean intersects(long id1, long id2) {
+		int a = slotOf(id1);
+		int b = slotOf(id2);
+		if (a < 0 || b < 0 || a == b) return false;
+		return boundsOverlap(a, b) && narrow(a, b);
+	}
+	/**
+	 * Returns all components whose outlines overlap the outline of a component.
+	 * @param id the id of the component
+	 * @return the ids of the other components in the order of their slots, empty if the component is not visible
+	 */
+	synchronized long[] collisions(long id) {
+		int a = slotOf(id);
+		if (a < 0) return new long[0];
+		found.size = 0;
+		query++;
+		visited[a] = query;
+		int[] range = cells[a];
+		if (range.length == 0) {
+			for(int b = 0; b < ids.length; b++) {
+				if (ids[b] != 0 && b != a && boundsOverlap(a, b) && narrow(a, b)) found.add(b);
+			}
+		} else {
+			for(int cy = range[1]; cy <= range[3]; cy++) {
+				for(int cx = range[0]; cx <= range[2]; cx++) {
+					Cell cell = grid.get(key(cx, cy));
+					if (cell != null) collide(a, cell);
+				}
+			}
+			collide(a, large);
+		}
+		return foundIds();
+	}
+	/**
+	 * Adds all slots of a cell that collide with a slot and have not been visited by the current query.
+	 */
+	private void collide(int a, Cell cell) {
+		for(int i = 0; i < cell.size; i++) {
+			int b = cell.slots[i];
+			if (visited[b] == query) continue;
+			visited[b] = query;
+			if (boundsOverlap(a, b) && narrow(a, b)) found.add(b);
+		}
+	}
+	/**
+	 * Returns all components whose outlines overlap a rectangle.
+	 * @param x x-coordinate of the upper left corner of the rectangle
+	 * @param y y-coordinate of the upper left corner of the rectangle
+	 * @param width width of the rectangle
+	 * @param height height of the rectangle
+	 * @return the ids of the components in the order of their slots
+	 */
+	synchronized long[] componentsIn(double x, double y, double width, double height) {
+		found.size = 0;
+		if (width <= 0 || height <= 0) return new long[0];
+		Rectangle2D r = new Rectangle2D.Double(x, y, width, height);
+		int[] range = range(x, y, x + width, y + height);
+		if (range.length == 0) {
+			for(int b = 0; b < ids.length; b++) {
+				if (ids[b] != 0 && overlaps(b, r)) found.add(b);
+			}
+			return foundIds();
+		}
+		query++;
+		for(int cy = range[1]; cy <= range[3]; cy++) {
+			for(int cx = range[0]; cx <= range[2]; cx++) {
+				Cell cell = grid.get(key(cx, cy));
+				if (cell != null) overlapping(cell, r);
+			}
+		}
+		overlapping(large, r);
+		return foundIds();
+	}
+	/**
+	 * Adds all slots of a cell that overlap a rectangle and have not been visited by the current query.
+	 */
+	private void overlapping(Cell cell, Rectangle2D r) {
+		for(int i = 0; i < cell.size; i++) {
+			int b = cell.slots[i];
+			if (visited[b] == query) continue;
+			visited[b] = query;
+			if (overlaps(b, r)) found.add(b);
+		}
+	}
+	private boolean overlaps(int slot, Rectangle2D r) {
+		if (minX[slot] >= r.getMaxX() || r.getMinX() >= maxX[slot] || minY[slot] >= r.getMaxY() || r.getMinY() >= maxY[slot]) return false;
+		return rectangles[slot] || outline(slot).intersects(r);
+	}
+	/**
+	 * Returns the topmost component that contains a point in its filled area or its stroke.
+	 * @param x x-coordinate of the point
+	 * @param y y-coordinate of the point
+	 * @return the id of the component or 0 if there is none
+	 */
+	synchronized long componentAt(double x, double y) {
+		int best = -1;
+		Cell cell = grid.get(key(cellOf(x), cellOf(y)));
+		for(int i = 0; cell != null && i < cell.size; i++) {
+			int b = cell.slots[i];
+			// components below the best one need not be tested
+			if ((best < 0 || above(b, best)) && contains(b, x, y)) best = b;
+		}
+		for(int i = 0; i < large.size; i++) {
+			int b = large.slots[i];
+			if ((best < 0 || above(b, best)) && contains(b, x, y)) best = b;
+		}
+		return best < 0 ? 0 : ids[best];
+	}
+	/**
+	 * Returns all components that contain a point in their filled area or their stroke.
+	 * @param x x-coordinate of the point
+	 * @param y y-coordinate of the point
+	 * @return the ids of the components, the topmost first
+	 */
+	synchronized long[] componentsAt(double x, double y) {
+		found.size = 0;
+		Cell cell = grid.get(key(cellOf(x), cellOf(y)));
+		for(int i = 0; cell != null && i < cell.size; i++) {
+			if (contains(cell.slots[i], x, y)) found.add(cell.slots[i]);
+		}
+		for(int i = 0; i < large.size; i++) {
+			if (contains(large.slots[i], x, y)) found.add(large.slots[i]);
+		}
+		// usually only a few components, so insertion sort is sufficient
+		int[] slots = found.slots;
+		for(int i = 1; i < found.size; i++) {
+			int v = slots[i];
+			int j = i - 1;
+			for(; j >= 0 && above(v, slots[j]); j--) {
+				slots[j + 1] = slots[j];
+			}
+			slots[j + 1] = v;
+		}
+		long[] result = new long[found.size];
+		for(int i = 0; i < result.length; i++) {
+			result[i] = ids[slots[i]];
+		}
+		return result;
+	}
+	private static int cellOf(double c) {
+		return (int) ((long) Math.floor(c) >> CELL_SHIFT);
+	}
+	/**
+	 * Indicates whether a slot is drawn after another one.
+	 */
+	private boolean above(int a, int b) {
+		if (layerNumbers[a] != layerNumbers[b]) return layerNumbers[a] > layerNumbers[b];
+		return orders[a] > orders[b];
+	}
+	/**
+	 * Indicates whether a point lies in the filled area or the stroke of a slot.
+	 */
+	private boolean contains(int slot, double x, double y) {
+		double m = margins[slot];
+		if (x < minX[slot] - m || x >= maxX[slot] + m || y < minY[slot] - m || y >= maxY[slot] + m) return false;
+		Stroke stroke = strokes[slot];
+		if (rectangles[slot] && stroke == null) return true;
+		if (rectangles[slot] && stroke instanceof BasicStroke && ((BasicStroke) stroke).getLineJoin() == BasicStroke.JOIN_MITER) {
+			// a mitered border covers half of its width on both sides of the edges, including the corners
+			return inRectangle((Rectangle2D) shapes[slot], ((BasicStroke) stroke).getLineWidth() / 2, x, y);
+		}
+		if (!lines[slot] && shapes[slot].contains(x, y)) return true;
+		return stroke != null && strokeOutline(slot).contains(x, y);
+	}
+	private static boolean inRectangle(Rectangle2D r, double margin, double x, double y) {
+		return x >= r.getMinX() - margin && x < r.getMaxX() + margin && y >= r.getMinY() - margin && y < r.getMaxY() + margin;
+	}
+	/**
+	 * Returns the ids of the slots found by the current query, sorted by slot.
+	 */
+	private long[] foundIds() {
+		Arrays.sort(found.slots, 0, found.size);
+		long[] result = new long[found.size];
+		for(int i = 0; i < result.length; i++) {
+			result[i] = ids[found.slots[i]];
+		}
+		// a single large result should not be kept alive by the index
+		if (found.slots.length > 1024) found = new Cell();
+		return result;
+	}
+}
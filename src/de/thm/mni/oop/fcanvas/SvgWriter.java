@@ -0,0 +1,420 @@
+package de.thm.mni.oop.fcanvas;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import de.thm.mni.oop.fcanvas.components.AbstractComponent;
+import de.thm.mni.oop.fcanvas.components.FCanvasComponent;
+import de.thm.mni.oop.fcanvas.components.Line;
+import de.thm.mni.oop.fcanvas.components.Oval;
+import de.thm.mni.oop.fcanvas.components.Polygon;
+import de.thm.mni.oop.fcanvas.components.Rectangle;
+import de.thm.mni.oop.fcanvas.components.Sprite;
+import de.thm.mni.oop.fcanvas.components.Text;
+import de.thm.mni.oop.fcanvas.components.Tilemap;
+
+/**
+ * <p>Writes the content of a {@link FCanvasPanel} as SVG document.</p>
+ *
+ * <p>The elements are written directly to the given writer in drawing order without
+ * building a document tree. The pixel layer is embedded as a set of PNG tiles. Images are
+ * referenced by the URI of their file instead of embedding them, since the same file is
+ * often shown many times.</p>
+ *
+ * <p>A {@link Document} takes a snapshot of the content on the event dispatch thread,
+ * which is then streamed to the writer on another thread.</p>
+ *
+ * @author Christopher Schölzel
+ */
+class SvgWriter {
+	private final Writer out;
+
+	/**
+	 * Creates a new SVG writer.
+	 * @param out the writer to write to, should be buffered
+	 */
+	SvgWriter(Writer out) {
+		this.out = out;
+	}
+	/**
+	 * Writes the start of the document and the background.
+	 * @param width width of the panel
+	 * @param height height of the panel
+	 * @param viewX world x-coordinate of the upper left corner of the panel
+	 * @param viewY world y-coordinate of the upper left corner of the panel
+	 * @param zoom scale factor from world to panel coordinates
+	 * @param background background color of the panel
+	 * @param antialiasing if <code>false</code> the document asks viewers not to antialias shapes
+	 * @throws IOException if the writer fails
+	 */
+	void begin(int width, int height, double viewX, double viewY, double zoom, Color background, boolean antialiasing) throws IOException {
+		out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		out.write("<svg xmlns=\"http://www.w3.org/2000/svg\" xmlns:xlink=\"http://www.w3.org/1999/xlink\" version=\"1.1\"");
+		attr("width", width);
+		attr("height", height);
+		// the view box maps the world coordinates of the components to the viewport
+		out.write(" viewBox=\"");
+		number(viewX);
+		out.write(' ');
+		number(viewY);
+		out.write(' ');
+		number(width / zoom);
+		out.write(' ');
+		number(height / zoom);
+		out.write('"');
+		if (!antialiasing) out.write(" shape-rendering=\"crispEdges\" text-rendering=\"optimizeSpeed\"");
+		out.write(">\n<rect");
+		attr("x", viewX);
+		attr("y", viewY);
+		attr("width", width / zoom);
+		attr("height", height / zoom);
+		paint("fill", background);
+		out.write("/>\n");
+		// defaults of java.awt.BasicStroke
+		out.write("<g stroke-linecap=\"square\" stroke-linejoin=\"miter\" stroke-miterlimit=\"10\" font-family=\"SansSerif\">\n");
+	}
+	/**
+	 * Writes a tile of the pixel layer as PNG image.
+	 * @param x world x-coordinate of the upper left corner of the tile
+	 * @param y world y-coordinate of the upper left corner of the tile
+	 * @param image the pixels of the tile
+	 * @throws IOException if the writer fails
+	 */
+	void tile(int x, int y, BufferedImage image) throws IOException {
+		ByteArrayOutputStream png = new ByteArrayOutputStream();
+		ImageIO.write(image, "png", png);
+		out.write("<image");
+		attr("x", x);
+		attr("y", y);
+		attr("width", image.getWidth());
+		attr("height", image.getHeight());
+		out.write(" style=\"image-rendering:pixelated\" xlink:href=\"data:image/png;base64,");
+		out.write(Base64.getEncoder().encodeToString(png.toByteArray()));
+		out.write("\"/>\n");
+	}
+	/**
+	 * Writes a single component.
+	 * @param c the component
+	 * @throws IOException if the writer fails
+	 */
+	void component(FCanvasComponent c) throws IOException {
+		if (c instanceof Rectangle) {
+			Rectangle r = (Rectangle) c;
+			out.write("<rect");
+			attr("x", r.getLeft());
+			attr("y", r.getTop());
+			attr("width", r.getWidth());
+			attr("height", r.getHeight());
+		} else if (c instanceof Oval) {
+			Oval o = (Oval) c;
+			out.write("<ellipse");
+			attr("cx", o.getLeft() + o.getWidth() / 2.0);
+			attr("cy", o.getTop() + o.getHeight() / 2.0);
+			attr("rx", o.getWidth() / 2.0);
+			attr("ry", o.getHeight() / 2.0);
+		} else if (c instanceof Line) {
+			Line l = (Line) c;
+			out.write("<line");
+			attr("x1", l.getX1());
+			attr("y1", l.getY1());
+			attr("x2", l.getX2());
+			attr("y2", l.getY2());
+		} else if (c instanceof Polygon) {
+			Polygon p = (Polygon) c;
+			int[] xs = p.getXCoords();
+			int[] ys = p.getYCoords();
+			out.write("<polygon fill-rule=\"evenodd\" points=\"");
+			for(int i = 0; i < xs.length; i++) {
+				if (i > 0) out.write(' ');
+				out.write(Integer.toString(xs[i]));
+				out.write(',');
+				out.write(Integer.toString(ys[i]));
+			}
+			out.write('"');
+		} else if (c instanceof Sprite) {
+			sprite((Sprite) c);
+			return;
+		} else if (c instanceof Tilemap) {
+			tilemap((Tilemap) c);
+			return;
+		} else {
+			text((Text) c);
+			return;
+		}
+		rotation(c);
+		if (!(c instanceof Line)) paint("fill", (Color) c.getFillColor());
+		paint("stroke", c.getStrokeColor());
+		float w = ((BasicStroke) c.getStroke()).getLineWidth();
+		if (w != 1) attr("stroke-width", w);
+		out.write("/>\n");
+	}
+	private void text(Text t) throws IOException {
+		out.write("<text xml:space=\"preserve\"");
+		attr("x", t.getLeft());
+		attr("y", t.getBaseline());
+		attr("font-size", t.getFont().getSize());
+		rotation(t);
+		// text is painted with the stroke color
+		paint("fill", t.getStrokeColor());
+		out.write('>');
+		escape(t.getText());
+		out.write("</text>\n");
+	}
+	private void sprite(Sprite s) throws IOException {
+		out.write("<image");
+		attr("x", s.getLeft());
+		attr("y", s.getTop());
+		attr("width", s.getWidth());
+		attr("height", s.getHeight());
+		rotation(s);
+		out.write(" preserveAspectRatio=\"none\" xlink:href=\"");
+		escape(Paths.get(s.getPath()).toAbsolutePath().toUri().toString());
+		out.write("\"/>\n");
+	}
+	/**
+	 * Writes a tilemap as group of nested viewports that each show a part of the atlas.
+	 */
+	private void tilemap(Tilemap tm) throws IOException {
+		String href = Paths.get(tm.getPath()).toAbsolutePath().toUri().toString();
+		BufferedImage atlas = tm.getAtlas();
+		int atlasColumns = atlas.getWidth() / tm.getTileWidth();
+		int atlasTiles = atlasColumns * (atlas.getHeight() / tm.getTileHeight());
+		out.write("<g");
+		rotation(tm);
+		out.write(">\n");
+		int[] tiles = tm.getTiles();
+		for(int i = 0; i < tiles.length; i++) {
+			int tile = tiles[i];
+			if (tile < 0 || tile >= atlasTiles) continue;
+			out.write("<svg");
+			attr("x", tm.getLeft() + (i % tm.getColumns()) * tm.getTileWidth());
+			attr("y", tm.getTop() + (i / tm.getColumns()) * tm.getTileHeight());
+			attr("width", tm.getTileWidth());
+			attr("height", tm.getTileHeight());
+			out.write(" viewBox=\"");
+			out.write(Integer.toString((tile % atlasColumns) * tm.getTileWidth()));
+			out.write(' ');
+			out.write(Integer.toString((tile / atlasColumns) * tm.getTileHeight()));
+			out.write(' ');
+			out.write(Integer.toString(tm.getTileWidth()));
+			out.write(' ');
+			out.write(Integer.toString(tm.getTileHeight()));
+			out.write("\"><image");
+			attr("width", atlas.getWidth());
+			attr("height", atlas.getHeight());
+			out.write(" xlink:href=\"");
+			escape(href);
+			out.write("\"/></svg>\n");
+		}
+		out.write("</g>\n");
+	}
+	/**
+	 * Writes the rotation of a component around the center of its transform.
+	 */
+	private void rotation(FCanvasComponent c) throws IOException {
+		if (c.getRotation() == 0) return;
+		// the cached transform rotates around the same point as the panel
+		AffineTransform t = c.getTransform();
+		out.write(" transform=\"matrix(");
+		out.write(Double.toString(t.getScaleX()));
+		out.write(' ');
+		out.write(Double.toString(t.getShearY()));
+		out.write(' ');
+		out.write(Double.toString(t.getShearX()));
+		out.write(' ');
+		out.write(Double.toString(t.getScaleY()));
+		out.write(' ');
+		out.write(Double.toString(t.getTranslateX()));
+		out.write(' ');
+		out.write(Double.toString(t.getTranslateY()));
+		out.write(")\"");
+	}
+	/**
+	 * Writes a fill or stroke color, using <code>none</code> for fully transparent colors.
+	 */
+	private void paint(String name, Color c) throws IOException {
+		out.write(' ');
+		out.write(name);
+		if (c.getAlpha() == 0) {
+			out.write("=\"none\"");
+			return;
+		}
+		out.write("=\"#");
+		String hex = Integer.toHexString(c.getRGB() & 0xFFFFFF);
+		for(int i = hex.length(); i < 6; i++) out.write('0');
+		out.write(hex);
+		out.write('"');
+		if (c.getAlpha() < 255) attr(name + "-opacity", c.getAlpha() / 255.0);
+	}
+	private void attr(String name, int value) throws IOException {
+		out.write(' ');
+		out.write(name);
+		out.write("=\"");
+		out.write(Integer.toString(value));
+		out.write('"');
+	}
+	private void attr(String name, double value) throws IOException {
+		out.write(' ');
+		out.write(name);
+		out.write("=\"");
+		number(value);
+		out.write('"');
+	}
+	private void number(double value) throws IOException {
+		if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+			out.write(Long.toString((long) value));
+		} else {
+			out.write(Double.toString(value));
+		}
+	}
+	private void escape(String s) throws IOException {
+		for(int i = 0; i < s.length(); i++) {
+			char ch = s.charAt(i);
+			switch (ch) {
+			case '&': out.write("&amp;"); break;
+			case '<': out.write("&lt;"); break;
+			case '>': out.write("&gt;"); break;
+			default:
+				// control characters are not allowed in XML 1.0
+				if (ch < 0x20 && ch != '\t' && ch != '\n' && ch != '\r') {
+					out.write(' ');
+				} else {
+					out.write(ch);
+				}
+			}
+		}
+	}
+	/**
+	 * Writes the end of the document. The writer is flushed, but not closed.
+	 * @throws IOException if the writer fails
+	 */
+	void end() throws IOException {
+		out.write("</g>\n</svg>\n");
+		out.flush();
+	}
+
+	/**
+	 * <p>A snapshot of the content of a panel for an SVG document. It keeps the settings of the
+	 * panel, copies of the tiles of the pixel layer and copies of the components, which
+	 * are only written as markup and encoded as PNG images when the document is written.</p>
+	 */
+	static class Document {
+		private int width;
+		private int height;
+		private double viewX;
+		private double viewY;
+		private double zoom;
+		private Color background;
+		private boolean antialiasing;
+		private final List<PixelLayer.Tile> tiles = new ArrayList<PixelLayer.Tile>();
+		private final List<FCanvasComponent> components = new ArrayList<FCanvasComponent>();
+
+		/**
+		 * Takes the settings for the start of the document (see {@link SvgWriter#begin(int, int, double, double, double, Color, boolean)}).
+		 * @param width width of the panel
+		 * @param height height of the panel
+		 * @param viewX world x-coordinate of the upper left corner of the panel
+		 * @param viewY world y-coordinate of the upper left corner of the panel
+		 * @param zoom scale factor from world to panel coordinates
+		 * @param background background color of the panel
+		 * @param antialiasing if <code>false</code> the document asks viewers not to antialias shapes
+		 */
+		void begin(int width, int height, double viewX, double viewY, double zoom, Color background, boolean antialiasing) {
+			this.width = width;
+			this.height = height;
+			this.viewX = viewX;
+			this.viewY = viewY;
+			this.zoom = zoom;
+			this.background = background;
+			this.antialiasing = antialiasing;
+		}
+		/**
+		 * Takes a copy of a tile of the pixel layer.
+		 * @param tile the tile
+		 */
+		void tile(PixelLayer.Tile tile) {
+			PixelLayer.Tile copy = new PixelLayer.Tile(tile.x, tile.y);
+			tile.image.copyData(copy.image.getRaster());
+			tiles.add(copy);
+		}
+		/**
+		 * Takes a copy of a single component. Components are written after all tiles in the
+		 * order in which they have been taken.
+		 * @param c the component
+		 */
+		void component(FCanvasComponent c) {
+			components.add(copy(c));
+		}
+		/**
+		 * Streams the complete document to a writer and encodes the tiles.
+		 * The writer is flushed, but not closed.
+		 * @param out the writer to write to, should be buffered
+		 * @throws IOException if the writer fails
+		 */
+		void write(Writer out) throws IOException {
+			SvgWriter w = new SvgWriter(out);
+			w.begin(width, height, viewX, viewY, zoom, background, antialiasing);
+			for(PixelLayer.Tile tile : tiles) {
+				w.tile(tile.x, tile.y, tile.image);
+			}
+			for(FCanvasComponent c : components) {
+				w.component(c);
+			}
+			w.end();
+		}
+		/**
+		 * Copies the properties of a component that are written to the document. Images are
+		 * shared, since they are never modified.
+		 */
+		private static FCanvasComponent copy(FCanvasComponent c) {
+			AbstractComponent copy;
+			if (c instanceof Rectangle) {
+				Rectangle r = (Rectangle) c;
+				copy = new Rectangle(r.getLeft(), r.getTop(), r.getWidth(), r.getHeight());
+			} else if (c instanceof Oval) {
+				Oval o = (Oval) c;
+				copy = new Oval(o.getLeft(), o.getTop(), o.getWidth(), o.getHeight());
+			} else if (c instanceof Line) {
+				Line l = (Line) c;
+				copy = new Line(l.getX1(), l.getY1(), l.getX2(), l.getY2());
+			} else if (c instanceof Polygon) {
+				Polygon p = (Polygon) c;
+				// the polygon copies the arrays
+				copy = new Polygon(p.getXCoords(), p.getYCoords());
+			} else if (c instanceof Sprite) {
+				Sprite s = (Sprite) c;
+				copy = new Sprite(s.getPath(), s.getImage(), s.getLeft(), s.getTop(), s.getWidth(), s.getHeight());
+			} else if (c instanceof Tilemap) {
+				Tilemap tm = (Tilemap) c;
+				Tilemap t = new Tilemap(tm.getPath(), tm.getAtlas(), tm.getLeft(), tm.getTop(), tm.getColumns(), tm.getRows(), tm.getTileWidth(), tm.getTileHeight());
+				t.setTiles(0, 0, tm.getColumns(), tm.getRows(), tm.getTiles());
+				copy = t;
+			} else {
+				Text t = (Text) c;
+				Text text = new Text(t.getText(), t.getLeft(), t.getBaseline());
+				if (text.getFont().getSize() != t.getFont().getSize()) text.setFontSize(t.getFont().getSize());
+				copy = text;
+			}
+			// defaults are kept, so that components without style share the default objects
+			Color fill = (Color) c.getFillColor();
+			if (!copy.getFillColor().equals(fill)) copy.setFillColor(fill.getRed(), fill.getGreen(), fill.getBlue(), fill.getAlpha());
+			Color stroke = c.getStrokeColor();
+			if (!copy.getStrokeColor().equals(stroke)) copy.setStrokeColor(stroke.getRed(), stroke.getGreen(), stroke.getBlue(), stroke.getAlpha());
+			int strokeWidth = Math.round(((BasicStroke) c.getStroke()).getLineWidth());
+			if (((BasicStroke) copy.getStroke()).getLineWidth() != strokeWidth) copy.setStrokeWidth(strokeWidth);
+			if (c.getRotation() != 0) copy.setRotation(c.getRotation());
+			return copy;
+		}
+	}
+}
@@ -0,0 +1,131 @@
+package de.thm.mni.oop.fcanvas;
+
+import java.awt.Font;
+import java.awt.font.FontRenderContext;
+import java.awt.font.LineMetrics;
+import java.awt.geom.Rectangle2D;
+import java.util.concurrent.ConcurrentHashMap;
+
+import de.thm.mni.oop.fcanvas.components.Text;
+
+/**
+ * <p>Measures texts without a Graphics object, so that the size of a text can be determined
+ * on any thread and before it is drawn.</p>
+ *
+ * <p>The results are the same as the logical bounds of {@link Text} components. For each font,
+ * the advances of the first 256 characters and the height of a line are computed once. The width
+ * of a string that only consists of these characters is the sum of their advances, so measuring
+ * does neither allocate memory nor lay out the string. Other strings may need a complete layout,
+ * whose results are cached per font.</p>
+ *
+ * <p>All methods are thread-safe.</p>
+ *
+ * @author Christopher Schölzel
+ */
+class TextMetrics {
+	/** Render context of {@link Text}, i.e. without transform, antialiasing and fractional metrics */
+	private static final FontRenderContext FRC = new FontRenderContext(null, false, false);
+	/** Maximum number of strings whose bounds are cached per font */
+	private static final int MAX_STRINGS = 4096;
+	private static final TextMetrics SHARED = new TextMetrics();
+	private final ConcurrentHashMap<Integer,Table> tables = new ConcurrentHashMap<Integer,Table>();
+
+	/**
+	 * Metrics of a single font.
+	 */
+	private static final class Table {
+		final Font font;
+		/** advances of the characters 0 to 255 */
+		final float[] advances = new float[256];
+		final float height;
+		/** bounds of strings that contain other characters */
+		final ConcurrentHashMap<String,Rectangle2D> strings = new ConcurrentHashMap<String,Rectangle2D>();
+		Table(Font font) {
+			this.font = font;
+			char[] c = new char[1];
+			for(int i = 0; i < advances.length; i++) {
+				c[0] = (char) i;
+				advances[i] = (float) font.getStringBounds(c, 0, 1, FRC).getWidth();
+			}
+			LineMetrics lm = font.getLineMetrics("", FRC);
+			height = lm.getAscent() + lm.getDescent() + lm.getLeading();
+		}
+		Rectangle2D layout(String text) {
+			Rectangle2D b = strings.get(text);
+			if (b != null) return b;
+			// the cache is bounded by dropping it completely, repeated strings are soon cached again
+			if (strings.size() >= MAX_STRINGS) strings.clear();
+			b = font.getStringBounds(text, FRC);
+			strings.put(text, b);
+			return b;
+		}
+	}
+
+	/**
+	 * Returns the metrics that are shared by all panels.
+	 * @return the shared metrics
+	 */
+	static TextMetrics shared() {
+		return SHARED;
+	}
+	private Table table(int size) {
+		Table t = tables.get(size);
+		if (t != null) return t;
+		return tables.computeIfAbsent(size, s -> new Table(Text.getDefaultFont(s)));
+	}
+	/**
+	 * Returns the width of the logical bounds of a text.
+	 * @param text the text
+	 * @param size the font size in pt
+	 * @return the width in pixels
+	 */
+	double width(String text, int size) {
+		Table t = table(size);
+		// summed in the same order and precision as the simple layout of Font
+		float w = 0;
+		for(int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c >= t.advances.length) return t.layout(text).getWidth();
+			w += t.advances[c];
+		}
+		return w;
+	}
+	/**
+	 * Returns the height of the logical bounds of a text.
+	 * @param text the text
+	 * @param size the font size in pt
+	 * @return the height in pixels
+	 */
+	double height(String text, int size) {
+		Table t = table(size);
+		for(int i = 0; i < text.length(); i++) {
+			if (text.charAt(i) >= t.advances.length) return t.layout(text).getHeight();
+		}
+		return t.height;
+	}
+
+	/**
+	 * Text and font size of a text component as seen by the threads that change it.
+	 */
+	static final class Label {
+		final String text;
+		final int size;
+		/** cached width, negative if not measured yet */
+		private volatile double width = -1;
+		Label(String text, int size) {
+			this.text = text;
+			this.size = size;
+		}
+		double width() {
+			double w = width;
+			if (w < 0) {
+				w = SHARED.width(text, size);
+				width = w;
+			}
+			return w;
+		}
+		double height() {
+			return SHARED.height(text, size);
+		}
+	}
+}
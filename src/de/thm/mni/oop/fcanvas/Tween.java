@@ -0,0 +1,74 @@
+package de.thm.mni.oop.fcanvas;
+
+/**
+ * <p>Properties and easing functions for animations (see {@link FCanvas#animate(long, int, double, int, int)}).</p>
+ *
+ * <p>An animation changes a single property of a component from its value at the start of the
+ * animation to a target value. The easing function determines how the progress in time maps to
+ * the progress of the value: with {@link #LINEAR} the value changes at a constant speed, the other
+ * functions let the change accelerate, decelerate or both, which looks more natural.</p>
+ *
+ * @author Christopher Schölzel
+ * @since 1.4
+ */
+public final class Tween {
+	/** Property: x-coordinate of the origin as in {@link FCanvas#move(long, int, int)} */
+	public static final int X = 0;
+	/** Property: y-coordinate of the origin as in {@link FCanvas#move(long, int, int)} */
+	public static final int Y = 1;
+	/** Property: rotation angle in degrees */
+	public static final int ROTATION = 2;
+	/** Property: width of a rectangle, oval or image */
+	public static final int WIDTH = 3;
+	/** Property: height of a rectangle, oval or image */
+	public static final int HEIGHT = 4;
+	/** Property: stroke width in pixels */
+	public static final int STROKE_WIDTH = 5;
+	/** Property: red channel of the fill color (0 to 255) */
+	public static final int FILL_RED = 6;
+	/** Property: green channel of the fill color (0 to 255) */
+	public static final int FILL_GREEN = 7;
+	/** Property: blue channel of the fill color (0 to 255) */
+	public static final int FILL_BLUE = 8;
+	/** Property: alpha channel of the fill color (0 to 255) */
+	public static final int FILL_ALPHA = 9;
+	/** Number of properties */
+	static final int PROPERTIES = 10;
+
+	/** Easing: constant speed */
+	public static final int LINEAR = 0;
+	/** Easing: starts slowly and accelerates */
+	public static final int EASE_IN = 1;
+	/** Easing: starts fast and decelerates */
+	public static final int EASE_OUT = 2;
+	/** Easing: accelerates in the first half and decelerates in the second half */
+	public static final int EASE_IN_OUT = 3;
+	/** Number of easing functions */
+	static final int EASINGS = 4;
+
+	/** Private constructor to prohibit instantiation */
+	private Tween() {}
+	/**
+	 * Applies an easing function.
+	 * @param easing one of the easing constants
+	 * @param t progress in time between 0 and 1
+	 * @return progress of the value, 0 for <code>t == 0</code> and 1 for <code>t == 1</code>
+	 */
+	static double ease(int easing, double t) {
+		switch (easing) {
+			case EASE_IN:
+				return t * t * t;
+			case EASE_OUT: {
+				double u = 1 - t;
+				return 1 - u * u * u;
+			}
+			case EASE_IN_OUT: {
+				if (t < 0.5) return 4 * t * t * t;
+				double u = 2 - 2 * t;
+				return 1 - u * u * u / 2;
+			}
+			default:
+				return t;
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package de.thm.mni.oop.fcanvas;
+
+import java.awt.AWTError;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.RenderingHints;
+import java.awt.Toolkit;
+import java.awt.Transparency;
+import java.awt.geom.Ellipse2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.UIManager;
+
+import de.thm.mni.oop.fcanvas.components.Text;
+
+/**
+ * <p>Initializes the parts of AWT, Swing and Java2D that are needed for the first frame on a
+ * background thread, so that their initialization overlaps with the setup code of a program
+ * instead of delaying the first frame.</p>
+ *
+ * <p>The warm-up loads the toolkit and the graphics configuration of the screen, the default
+ * font and its metrics, the rendering loops for shapes and text with and without antialiasing
+ * and the defaults of the look and feel. All of these are initialized thread-safely by AWT and
+ * Swing, so the program may use them at the same time and only waits for the parts that are
+ * still being initialized.</p>
+ *
+ * <p>The warm-up is started when {@link FCanvas} is loaded. It can be disabled by setting the
+ * system property <code>fcanvas.warmup</code> to <code>false</code>.</p>
+ *
+ * @author Christopher Schölzel
+ */
+class Warmup {
+	private static final String SAMPLE = "FCanvas 0123456789";
+	private static final AtomicBoolean started = new AtomicBoolean(false);
+	private static final CountDownLatch done = new CountDownLatch(1);
+
+	/** Private constructor to prohibit instantiation */
+	private Warmup() {}
+	/**
+	 * Starts the warm-up unless it has already been started or is disabled.
+	 */
+	static void start() {
+		if ("false".equals(System.getProperty("fcanvas.warmup"))) return;
+		if (!started.compareAndSet(false, true)) return;
+		Thread t = new Thread(Warmup::run, "FCanvas warm-up");
+		t.setDaemon(true);
+		t.start();
+	}
+	/**
+	 * Waits until the warm-up has finished.
+	 * @param timeoutMillis maximum time to wait in milliseconds
+	 * @return <code>true</code> if the warm-up has finished, <code>false</code> if it has
+	 * not been started or the timeout has elapsed
+	 * @throws InterruptedException if the calling thread is interrupted while waiting
+	 */
+	static boolean await(long timeoutMillis) throws InterruptedException {
+		if (!started.get()) return false;
+		return done.await(timeoutMillis, TimeUnit.MILLISECONDS);
+	}
+	private static void run() {
+		try {
+			Toolkit.getDefaultToolkit();
+			boolean headless = GraphicsEnvironment.isHeadless();
+			BufferedImage img;
+			if (headless) {
+				img = new BufferedImage(64, 64, BufferedImage.TYPE_INT_ARGB);
+			} else {
+				// an image in the format of the screen uses the same pipeline as the panel
+				img = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+						.getDefaultConfiguration().createCompatibleImage(64, 64, Transparency.TRANSLUCENT);
+			}
+			TextMetrics.shared().width(SAMPLE, Text.DEFAULT_FONT_SIZE);
+			Graphics2D g2 = img.createGraphics();
+			try {
+				g2.setFont(Text.getDefaultFont(Text.DEFAULT_FONT_SIZE));
+				g2.setStroke(new BasicStroke(2));
+				for(int pass = 0; pass < 2; pass++) {
+					boolean aa = pass == 1;
+					g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, aa ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF);
+					g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, aa ? RenderingHints.VALUE_TEXT_ANTIALIAS_ON : RenderingHints.VALUE_TEXT_ANTIALIAS_OFF);
+					g2.setColor(Color.WHITE);
+					g2.fillRect(0, 0, 64, 64);
+					g2.setColor(Color.BLACK);
+					g2.fill(new Ellipse2D.Double(4, 4, 40, 30));
+					g2.drawPolygon(new int[]{2, 60, 30}, new int[]{2, 10, 60}, 3);
+					g2.drawLine(0, 63, 63, 0);
+					g2.drawString(SAMPLE, 0, 40);
+				}
+			} finally {
+				g2.dispose();
+			}
+			if (!headless) UIManager.getLookAndFeelDefaults();
+		} catch (RuntimeException | AWTError e) {
+			// the warm-up is only an optimization, the program reports the error when it uses the screen
+		} finally {
+			done.countDown();
+		}
+	}
+}
@@ -0,0 +1,222 @@
+package de.thm.mni.oop.fcanvas;
+
+import java.util.Arrays;
+
+/**
+ * <p>A forest of treaps (randomized binary search trees) whose nodes are
+ * identified by int indices.</p>
+ *
+ * <p>The node index of a component is its slot in the {@link ComponentStore}, so all
+ * tree data is held in parallel arrays and inserting or removing a node does not
+ * allocate any objects. Since a component belongs to at most one {@link Layer} at a
+ * time, all layers share the same arrays and only differ in their root node.</p>
+ *
+ * <p>Insertion and removal take O(log n) expected time, in-order iteration
+ * via {@link #first(int)} and {@link #next(int)} takes O(1) amortized time per node.
+ * This class is not thread-safe and must only be used on the event dispatch thread.</p>
+ *
+ * @author Christopher Schölzel
+ */
+class ZOrderTree {
+	/** Index used to denote the absence of a node */
+	static final int NIL = -1;
+	private long[] keys = new long[0];
+	private int[] priorities = new int[0];
+	private int[] left = new int[0];
+	private int[] right = new int[0];
+	private int[] parent = new int[0];
+	private int seed = 0x2545F491;
+	private int splitLeft;
+	private int splitRight;
+
+	/**
+	 * Makes sure that nodes with indices smaller than <code>capacity</code> can be used.
+	 * @param capacity the required number of nodes
+	 */
+	void ensureCapacity(int capacity) {
+		if (capacity <= keys.length) return;
+		int n = Math.max(capacity, keys.length * 2);
+		keys = Arrays.copyOf(keys, n);
+		priorities = Arrays.copyOf(priorities, n);
+		left = Arrays.copyOf(left, n);
+		right = Arrays.copyOf(right, n);
+		parent = Arrays.copyOf(parent, n);
+	}
+	/**
+	 * Returns the sort key of a node.
+	 * @param node index of the node
+	 * @return the key of the node
+	 */
+	long getKey(int node) {
+		return keys[node];
+	}
+	/**
+	 * Changes the key of a node without restructuring the tree.
+	 * Only allowed if the in-order sequence of keys stays strictly ascending.
+	 * @param node index of the node
+	 * @param key the new key
+	 */
+	void setKeyInPlace(int node, long key) {
+		keys[node] = key;
+	}
+	/**
+	 * Inserts a node into a tree.
+	 * @param root the root of the tree or {@link #NIL} for an empty tree
+	 * @param node index of the new node
+	 * @param key sort key of the new node, must not yet be used in this tree
+	 * @return the new root of the tree
+	 */
+	int insert(int root, int node, long key) {
+		keys[node] = key;
+		priorities[node] = nextPriority();
+		left[node] = NIL;
+		right[node] = NIL;
+		split(root, key);
+		int l = splitLeft;
+		int r = splitRight;
+		int merged = merge(merge(l, node), r);
+		parent[merged] = NIL;
+		return merged;
+	}
+	/**
+	 * Builds a new tree from nodes whose keys are given in strictly ascending order.
+	 * 
+	 * The tree is built bottom-up in O(n) using a stack of the nodes on the right spine,
+	 * which is considerably faster than n insertions.
+	 * @param nodes indices of the nodes
+	 * @param sortedKeys sort keys of the nodes, must be strictly ascending
+	 * @param from index of the first node in the arrays
+	 * @param to index after the last node in the arrays
+	 * @return the root of the new tree
+	 */
+	int build(int[] nodes, long[] sortedKeys, int from, int to) {
+		int[] spine = new int[to - from];
+		int top = -1;
+		for(int i = from; i < to; i++) {
+			int node = nodes[i];
+			keys[node] = sortedKeys[i];
+			priorities[node] = nextPriority();
+			right[node] = NIL;
+			// nodes with a lower priority become the left subtree of the new node
+			int last = NIL;
+			while (top >= 0 && priorities[spine[top]] < priorities[node]) {
+				last = spine[top--];
+			}
+			left[node] = last;
+			if (last != NIL) parent[last] = node;
+			if (top >= 0) {
+				right[spine[top]] = node;
+				parent[node] = spine[top];
+			} else {
+				parent[node] = NIL;
+			}
+			spine[++top] = node;
+		}
+		return top >= 0 ? spine[0] : NIL;
+	}
+	/**
+	 * Removes a node from a tree.
+	 * @param root the root of the tree that contains the node
+	 * @param node index of the node to remove
+	 * @return the new root of the tree
+	 */
+	int remove(int root, int node) {
+		int m = merge(left[node], right[node]);
+		int p = parent[node];
+		if (m != NIL) parent[m] = p;
+		if (p == NIL) return m;
+		if (left[p] == node) {
+			left[p] = m;
+		} else {
+			right[p] = m;
+		}
+		return root;
+	}
+	/**
+	 * Returns the node with the smallest key.
+	 * @param root the root of the tree
+	 * @return the first node or {@link #NIL} if the tree is empty
+	 */
+	int first(int root) {
+		if (root == NIL) return NIL;
+		int n = root;
+		while (left[n] != NIL) n = left[n];
+		return n;
+	}
+	/**
+	 * Returns the node with the largest key.
+	 * @param root the root of the tree
+	 * @return the last node or {@link #NIL} if the tree is empty
+	 */
+	int last(int root) {
+		if (root == NIL) return NIL;
+		int n = root;
+		while (right[n] != NIL) n = right[n];
+		return n;
+	}
+	/**
+	 * Returns the in-order successor of a node.
+	 * @param node index of the node
+	 * @return the node with the next larger key or {@link #NIL} if there is none
+	 */
+	int next(int node) {
+		if (right[node] != NIL) {
+			int n = right[node];
+			while (left[n] != NIL) n = left[n];
+			return n;
+		}
+		int n = node;
+		int p = parent[n];
+		while (p != NIL && right[p] == n) {
+			n = p;
+			p = parent[p];
+		}
+		return p;
+	}
+	/**
+	 * Splits a tree into the nodes with keys smaller than <code>key</code>
+	 * ({@link #splitLeft}) and the remaining nodes ({@link #splitRight}).
+	 */
+	private void split(int t, long key) {
+		if (t == NIL) {
+			splitLeft = NIL;
+			splitRight = NIL;
+			return;
+		}
+		if (keys[t] < key) {
+			split(right[t], key);
+			right[t] = splitLeft;
+			if (splitLeft != NIL) parent[splitLeft] = t;
+			splitLeft = t;
+		} else {
+			split(left[t], key);
+			left[t] = splitRight;
+			if (splitRight != NIL) parent[splitRight] = t;
+			splitRight = t;
+		}
+	}
+	/**
+	 * Merges two trees where all keys in <code>a</code> are smaller than all keys in <code>b</code>.
+	 */
+	private int merge(int a, int b) {
+		if (a == NIL) return b;
+		if (b == NIL) return a;
+		if (priorities[a] > priorities[b]) {
+			int m = merge(right[a], b);
+			right[a] = m;
+			parent[m] = a;
+			return a;
+		}
+		int m = merge(a, left[b]);
+		left[b] = m;
+		parent[m] = b;
+		return b;
+	}
+	/** xorshift random numbers, which do not require any allocation */
+	private int nextPriority() {
+		seed ^= seed << 13;
+		seed ^= seed >>> 17;
+		seed ^= seed << 5;
+		return seed;
+	}
+}
@@ -2,10 +2,17 @@ package de.thm.mni.oop.fcanvas.components;
 
 import java.awt.BasicStroke;
 import java.awt.Color;
+import java.awt.Shape;
 import java.awt.Stroke;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
 
 /**
- * Abstract base class for all classes that implement the {@link FCanvasComponent} interface.
+ * <p>Abstract base class for all classes that implement the {@link FCanvasComponent} interface.</p>
+ * 
+ * <p>The rotation transform, the rotated shape and the bounding box are computed lazily
+ * and cached until {@link #invalidate()} is called. Subclasses must therefore call
+ * {@link #invalidate()} whenever their geometry changes.</p>
  * 
  * @author Christopher Schölzel
  * @see FCanvasComponent
@@ -16,14 +23,21 @@ import java.awt.Stroke;
  * @see Text
  */
 public abstract class AbstractComponent implements FCanvasComponent {
-	protected Color cfill = new Color(255,255,255,0);
+	private static final Color DEFAULT_FILL = new Color(255,255,255,0);
+	private static final BasicStroke DEFAULT_STROKE = new BasicStroke(1);
+	protected Color cfill = DEFAULT_FILL;
 	protected Color cstroke = Color.BLACK;
-	protected BasicStroke stroke = new BasicStroke(1);
+	protected BasicStroke stroke = DEFAULT_STROKE;
 	protected float rotation = 0.0f;
+	protected boolean visible = true;
+	private AffineTransform transform = null;
+	private Shape shape = null;
+	private Rectangle2D bounds = null;
 	
 	@Override
 	public void setRotation(float degree) {
 		rotation = degree;
+		invalidate();
 	}
 
 	@Override
@@ -39,6 +53,17 @@ public abstract class AbstractComponent implements FCanvasComponent {
 	@Override
 	public void setStrokeWidth(int w) {
 		stroke = withDifferentWidth(stroke,w);
+		invalidate();
+	}
+
+	@Override
+	public void setVisible(boolean visible) {
+		this.visible = visible;
+	}
+
+	@Override
+	public boolean isVisible() {
+		return visible;
 	}
 
 	@Override
@@ -60,6 +85,75 @@ public abstract class AbstractComponent implements FCanvasComponent {
 	public Color getStrokeColor() {
 		return cstroke;
 	}
+	@Override
+	public AffineTransform getTransform() {
+		if (transform == null) {
+			transform = rotation == 0 ? new AffineTransform() : AffineTransform.getRotateInstance(Math.toRadians(rotation), getCenterX(), getCenterY());
+		}
+		return transform;
+	}
+
+	@Override
+	public Shape getShape() {
+		if (shape == null) {
+			Shape s = createShape();
+			shape = rotation == 0 ? s : getTransform().createTransformedShape(s);
+		}
+		return shape;
+	}
+
+	@Override
+	public Rectangle2D getBounds() {
+		if (bounds == null) {
+			Rectangle2D b = getShape().getBounds2D();
+			// the stroke may extend up to its full width beyond the outline at miter joins
+			double margin = stroke.getLineWidth() + 1;
+			bounds = new Rectangle2D.Double(b.getX() - margin, b.getY() - margin, b.getWidth() + 2 * margin, b.getHeight() + 2 * margin);
+		}
+		return bounds;
+	}
+
+	/**
+	 * Restores the default colors, stroke, rotation and visibility.
+	 * Used by subclasses to reinitialize recycled components.
+	 */
+	protected void resetStyle() {
+		cfill = DEFAULT_FILL;
+		cstroke = Color.BLACK;
+		stroke = DEFAULT_STROKE;
+		rotation = 0.0f;
+		visible = true;
+		invalidate();
+	}
+
+	/**
+	 * Discards the cached transform, shape and bounding box.
+	 * Must be called by subclasses whenever the geometry of the component changes.
+	 */
+	protected void invalidate() {
+		transform = null;
+		shape = null;
+		bounds = null;
+	}
+
+	/**
+	 * Creates the outline of the component without rotation.
+	 * @return the unrotated outline of the component
+	 */
+	protected abstract Shape createShape();
+
+	/**
+	 * Returns the x-coordinate of the point around which the component is rotated.
+	 * @return x-coordinate of the rotation center
+	 */
+	protected abstract double getCenterX();
+
+	/**
+	 * Returns the y-coordinate of the point around which the component is rotated.
+	 * @return y-coordinate of the rotation center
+	 */
+	protected abstract double getCenterY();
+
 	/**
 	 * Helper function that creates a Stroke object that is a copy of the supplied Stroke with a different width.
 	 * @param s the old Stroke object
@@ -2,7 +2,10 @@ package de.thm.mni.oop.fcanvas.components;
 
 import java.awt.Color;
 import java.awt.Paint;
+import java.awt.Shape;
 import java.awt.Stroke;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
 
 /**
  * <p>A component used in a {@link de.thm.mni.oop.fcanvas.FCanvasPanel}.</p>
@@ -79,4 +82,38 @@ public interface FCanvasComponent {
 	 * @param y the y coordinate of the new origin point
 	 */
 	public void move(int x, int y);
+	/**
+	 * Shows or hides the component. Hidden components keep all their properties,
+	 * but are not drawn.
+	 * @param visible if <code>true</code> the component is drawn
+	 */
+	public void setVisible(boolean visible);
+	/**
+	 * Indicates whether the component is drawn.
+	 * @return <code>true</code> if the component is visible
+	 */
+	public boolean isVisible();
+	/**
+	 * Returns the transformation that rotates the component around its center
+	 * (or its origin in the case of text).
+	 *
+	 * The returned object is cached and must not be modified.
+	 * @return the rotation transform of the component
+	 */
+	public AffineTransform getTransform();
+	/**
+	 * Returns the outline of the component with the rotation already applied.
+	 *
+	 * The returned object is cached until the geometry, rotation or stroke
+	 * of the component changes and must not be modified.
+	 * @return the rotated outline of the component
+	 */
+	public Shape getShape();
+	/**
+	 * Returns the axis-aligned bounding box of the rotated component including its stroke.
+	 *
+	 * The returned object is cached and must not be modified.
+	 * @return the bounding box of the component
+	 */
+	public Rectangle2D getBounds();
 }
@@ -1,5 +1,8 @@
 package de.thm.mni.oop.fcanvas.components;
 
+import java.awt.Shape;
+import java.awt.geom.Line2D;
+
 /**
  * Represents a line between two points.
  * @author Christopher Schölzel
@@ -22,6 +25,21 @@ public class Line extends AbstractComponent {
 		this.x2 = x2;
 		this.y2 = y2;
 	}
+	/**
+	 * Reinitializes this line as if it had just been created.
+	 * Allows to recycle line objects instead of allocating new ones.
+	 * @param x1 x-coordinate of the first point
+	 * @param y1 y coordinate of the first point
+	 * @param x2 x-coordinate of the second point
+	 * @param y2 y coordinate of the second point
+	 */
+	public void reset(int x1, int y1, int x2, int y2) {
+		this.x1 = x1;
+		this.y1 = y1;
+		this.x2 = x2;
+		this.y2 = y2;
+		resetStyle();
+	}
 	/**
 	 * Returns the x coordinate of the first point.
 	 * @return x-coordinate of the first point
@@ -35,6 +53,7 @@ public class Line extends AbstractComponent {
 	 */
 	public void setX1(int x1) {
 		this.x1 = x1;
+		invalidate();
 	}
 	/**
 	 * Returns the y coordinate of the first point.
@@ -49,6 +68,7 @@ public class Line extends AbstractComponent {
 	 */
 	public void setY1(int y1) {
 		this.y1 = y1;
+		invalidate();
 	}
 	/**
 	 * Returns the x coordinate of the second point.
@@ -63,6 +83,7 @@ public class Line extends AbstractComponent {
 	 */
 	public void setX2(int x2) {
 		this.x2 = x2;
+		invalidate();
 	}
 	/**
 	 * Returns the y coordinate of the second point.
@@ -77,6 +98,7 @@ public class Line extends AbstractComponent {
 	 */
 	public void setY2(int y2) {
 		this.y2 = y2;
+		invalidate();
 	}
 	@Override
 	public void move(int x, int y) {
@@ -86,5 +108,18 @@ public class Line extends AbstractComponent {
 		this.y1 = y1 + shifty;
 		this.x2 = x2 + shiftx;
 		this.y2 = y2 + shifty;
+		invalidate();
+	}
+	@Override
+	protected Shape createShape() {
+		return new Line2D.Float(x1, y1, x2, y2);
+	}
+	@Override
+	protected double getCenterX() {
+		return x1 + (x2 - x1) / 2.0;
+	}
+	@Override
+	protected double getCenterY() {
+		return y1 + (y2 - y1) / 2.0;
 	}
 }
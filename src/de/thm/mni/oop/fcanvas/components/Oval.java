@@ -1,5 +1,8 @@
 package de.thm.mni.oop.fcanvas.components;
 
+import java.awt.Shape;
+import java.awt.geom.Ellipse2D;
+
 /**
  * Represents an oval.
  * 
@@ -23,6 +26,21 @@ public class Oval extends AbstractComponent {
 		this.width = width;
 		this.height = height;
 	}
+	/**
+	 * Reinitializes this oval as if it had just been created.
+	 * Allows to recycle oval objects instead of allocating new ones.
+	 * @param left x-coordinate of the upper left point of the enclosing rectangle (bounding box)
+	 * @param top y coordinate of the upper left point of the enclosing rectangle (bounding box)
+	 * @param width Width of the oval
+	 * @param height Height of the oval
+	 */
+	public void reset(int left, int top, int width, int height) {
+		this.left = left;
+		this.top = top;
+		this.width = width;
+		this.height = height;
+		resetStyle();
+	}
 	/**
 	 * Returns the x coordinate of the upper left point of the enclosing rectangle (bounding box).
 	 * @return x-coordinate of the upper left point of the bounding box
@@ -36,6 +54,7 @@ public class Oval extends AbstractComponent {
 	 */
 	public void setLeft(int left) {
 		this.left = left;
+		invalidate();
 	}
 	/**
 	 * Returns the y-coordinate of the upper left point of the enclosing rectangle (bounding box).
@@ -50,6 +69,7 @@ public class Oval extends AbstractComponent {
 	 */
 	public void setTop(int top) {
 		this.top = top;
+		invalidate();
 	}
 	/**
 	 * Returns the width of the oval
@@ -64,6 +84,7 @@ public class Oval extends AbstractComponent {
 	 */
 	public void setWidth(int width) {
 		this.width = width;
+		invalidate();
 	}
 	/**
 	 * Returns the width of the oval
@@ -78,10 +99,24 @@ public class Oval extends AbstractComponent {
 	 */
 	public void setHeight(int height) {
 		this.height = height;
+		invalidate();
 	}
 	@Override
 	public void move(int x, int y) {
 		left = x;
 		top = y;
+		invalidate();
+	}
+	@Override
+	protected Shape createShape() {
+		return new Ellipse2D.Float(left, top, width, height);
+	}
+	@Override
+	protected double getCenterX() {
+		return left + width / 2.0;
+	}
+	@Override
+	protected double getCenterY() {
+		return top + height / 2.0;
 	}
 }
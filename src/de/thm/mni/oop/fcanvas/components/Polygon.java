@@ -1,5 +1,8 @@
 package de.thm.mni.oop.fcanvas.components;
 
+import java.awt.Shape;
+import java.awt.geom.Path2D;
+
 /**
  * Represents a polygon.
  * @author Christopher Schölzel
@@ -11,14 +14,46 @@ public class Polygon extends AbstractComponent {
 	private float centroidX;
 	private float centroidY;
 	/**
-	 * Creates a new polygon
+	 * Creates a new polygon.
+	 * 
+	 * The coordinate arrays are copied, since the outline of the polygon is cached.
 	 * @param xar x-coordinates of the polygon points
 	 * @param yar y-coordinates of the polygon points
 	 */
 	public Polygon(int[] xar, int[] yar) {
-		this.xar = xar;
-		this.yar = yar;
+		this.xar = xar.clone();
+		this.yar = yar.clone();
+		calcCentroid();
+	}
+	/**
+	 * Reinitializes this polygon as if it had just been created.
+	 * Allows to recycle polygon objects instead of allocating new ones.
+	 * 
+	 * The coordinates are copied into the existing arrays if the number of points does not change.
+	 * @param xar x-coordinates of the polygon points
+	 * @param yar y-coordinates of the polygon points
+	 */
+	public void reset(int[] xar, int[] yar) {
+		setPoints(xar, yar);
+		resetStyle();
+	}
+	/**
+	 * Changes the points of this polygon.
+	 * 
+	 * The coordinates are copied into the existing arrays if the number of points does not change.
+	 * @param xar new x-coordinates of the polygon points
+	 * @param yar new y-coordinates of the polygon points
+	 */
+	public void setPoints(int[] xar, int[] yar) {
+		if (this.xar.length == xar.length && this.yar.length == yar.length) {
+			System.arraycopy(xar, 0, this.xar, 0, xar.length);
+			System.arraycopy(yar, 0, this.yar, 0, yar.length);
+		} else {
+			this.xar = xar.clone();
+			this.yar = yar.clone();
+		}
 		calcCentroid();
+		invalidate();
 	}
 	private void calcCentroid() {
 		centroidX = 0;
@@ -40,6 +75,26 @@ public class Polygon extends AbstractComponent {
 			yar[i] += shifty;
 		}
 		calcCentroid();
+		invalidate();
+	}
+	@Override
+	protected Shape createShape() {
+		Path2D.Float path = new Path2D.Float(Path2D.WIND_EVEN_ODD, xar.length);
+		if (xar.length == 0) return path;
+		path.moveTo(xar[0], yar[0]);
+		for(int i = 1; i < xar.length; i++) {
+			path.lineTo(xar[i], yar[i]);
+		}
+		path.closePath();
+		return path;
+	}
+	@Override
+	protected double getCenterX() {
+		return centroidX;
+	}
+	@Override
+	protected double getCenterY() {
+		return centroidY;
 	}
 	/**
 	 * Returns the x-coordinate of the polygon's geometric center.
@@ -56,14 +111,18 @@ public class Polygon extends AbstractComponent {
 		return centroidY;
 	}
 	/**
-	 * Returns the x-coordinates of the polygon points
+	 * Returns the x-coordinates of the polygon points.
+	 * 
+	 * The returned array must not be modified.
 	 * @return x-coordinates of the polygon points
 	 */
 	public int[] getXCoords() {
 		return xar;
 	}
 	/**
-	 * Returns the y coordinates of the polygon points
+	 * Returns the y coordinates of the polygon points.
+	 * 
+	 * The returned array must not be modified.
 	 * @return y-coordinates of the polygon points
 	 */
 	public int[] getYCoords() {
@@ -1,5 +1,8 @@
 package de.thm.mni.oop.fcanvas.components;
 
+import java.awt.Shape;
+import java.awt.geom.Rectangle2D;
+
 /**
  * Represents a rectangle.
  * @author Christopher Schölzel
@@ -23,6 +26,21 @@ public class Rectangle extends AbstractComponent {
 		this.height = height;
 		this.rotation = 0;
 	}
+	/**
+	 * Reinitializes this rectangle as if it had just been created.
+	 * Allows to recycle rectangle objects instead of allocating new ones.
+	 * @param left x-coordinate of the top left point
+	 * @param top Y coordinate of the top left point
+	 * @param width Width of the rectangle
+	 * @param height Height of the rectangle
+	 */
+	public void reset(int left, int top, int width, int height) {
+		this.left = left;
+		this.top = top;
+		this.width = width;
+		this.height = height;
+		resetStyle();
+	}
 	/**
 	 * Returns the y-coordinate of the upper-left corner
 	 * @return y-coordinate of the upper-left corner
@@ -36,6 +54,7 @@ public class Rectangle extends AbstractComponent {
 	 */
 	public void setTop(int top) {
 		this.top = top;
+		invalidate();
 	}
 	/**
 	 * Returns the x-coordinate of the upper-left corner
@@ -50,6 +69,7 @@ public class Rectangle extends AbstractComponent {
 	 */
 	public void setLeft(int left) {
 		this.left = left;
+		invalidate();
 	}
 	/**
 	 * Returns the width of the rectangle.
@@ -64,6 +84,7 @@ public class Rectangle extends AbstractComponent {
 	 */
 	public void setWidth(int width) {
 		this.width = width;
+		invalidate();
 	}
 	/**
 	 * Returns the height of the rectangle.
@@ -78,10 +99,24 @@ public class Rectangle extends AbstractComponent {
 	 */
 	public void setHeight(int height) {
 		this.height = height;
+		invalidate();
 	}
 	@Override
 	public void move(int x, int y) {
 		left = x;
 		top = y;
+		invalidate();
+	}
+	@Override
+	protected Shape createShape() {
+		return new Rectangle2D.Float(left, top, width, height);
+	}
+	@Override
+	protected double getCenterX() {
+		return left + width / 2.0;
+	}
+	@Override
+	protected double getCenterY() {
+		return top + height / 2.0;
 	}
 }
@@ -0,0 +1,135 @@
+package de.thm.mni.oop.fcanvas.components;
+
+import java.awt.Shape;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * <p>Represents an image that is loaded from a file.</p>
+ *
+ * <p>The decoded image is usually shared by all sprites that show the same file in the
+ * same size and must therefore not be modified. Fill color, stroke color and stroke
+ * width have no effect on sprites.</p>
+ *
+ * @author Christopher Schölzel
+ */
+public class Sprite extends AbstractComponent {
+	private String path;
+	private BufferedImage image;
+	private int top;
+	private int left;
+	private int width;
+	private int height;
+	/**
+	 * Creates a new sprite
+	 * @param path the path of the image file
+	 * @param image the decoded image
+	 * @param left x-coordinate of the top left point
+	 * @param top Y coordinate of the top left point
+	 * @param width Width on the canvas, the image is scaled if it differs from the width of the image
+	 * @param height Height on the canvas, the image is scaled if it differs from the height of the image
+	 */
+	public Sprite(String path, BufferedImage image, int left, int top, int width, int height) {
+		this.path = path;
+		this.image = image;
+		this.left = left;
+		this.top = top;
+		this.width = width;
+		this.height = height;
+	}
+	/**
+	 * Reinitializes this sprite as if it had just been created.
+	 * Allows to recycle sprite objects instead of allocating new ones.
+	 * @param path the path of the image file
+	 * @param image the decoded image
+	 * @param left x-coordinate of the top left point
+	 * @param top Y coordinate of the top left point
+	 * @param width Width on the canvas
+	 * @param height Height on the canvas
+	 */
+	public void reset(String path, BufferedImage image, int left, int top, int width, int height) {
+		this.path = path;
+		this.image = image;
+		this.left = left;
+		this.top = top;
+		this.width = width;
+		this.height = height;
+		resetStyle();
+	}
+	/**
+	 * Returns the path of the image file.
+	 * @return the path as given when the sprite was created
+	 */
+	public String getPath() {
+		return path;
+	}
+	/**
+	 * Returns the decoded image. The image is shared and must not be modified.
+	 * @return the image
+	 */
+	public BufferedImage getImage() {
+		return image;
+	}
+	/**
+	 * Returns the y-coordinate of the upper-left corner
+	 * @return y-coordinate of the upper-left corner
+	 */
+	public int getTop() {
+		return top;
+	}
+	/**
+	 * Returns the x-coordinate of the upper-left corner
+	 * @return x-coordinate of the upper left corner
+	 */
+	public int getLeft() {
+		return left;
+	}
+	/**
+	 * Returns the width on the canvas.
+	 * @return width of the sprite
+	 */
+	public int getWidth() {
+		return width;
+	}
+	/**
+	 * Changes the width on the canvas. The image is scaled when it is drawn.
+	 * @param width new width
+	 */
+	public void setWidth(int width) {
+		this.width = width;
+		invalidate();
+	}
+	/**
+	 * Returns the height on the canvas.
+	 * @return height of the sprite
+	 */
+	public int getHeight() {
+		return height;
+	}
+	/**
+	 * Changes the height on the canvas. The image is scaled when it is drawn.
+	 * @param height new height
+	 */
+	public void setHeight(int height) {
+		this.height = height;
+		invalidate();
+	}
+	@Override
+	public void move(int x, int y) {
+		left = x;
+		top = y;
+		invalidate();
+	}
+	@Override
+	protected Shape createShape() {
+		return new Rectangle2D.Float(left, top, width, height);
+	}
+	@Override
+	protected double getCenterX() {
+		return left + width / 2.0;
+	}
+	@Override
+	protected double getCenterY() {
+		return top + height / 2.0;
+	}
+}
@@ -1,6 +1,9 @@
 package de.thm.mni.oop.fcanvas.components;
 
 import java.awt.Font;
+import java.awt.Shape;
+import java.awt.font.FontRenderContext;
+import java.awt.geom.Rectangle2D;
 
 /**
  * Represents a piece of text.
@@ -8,6 +11,11 @@ import java.awt.Font;
  * @author Christopher Schölzel
  */
 public class Text extends AbstractComponent {
+	/** Render context used to determine the outline of the text without a Graphics object */
+	private static final FontRenderContext FRC = new FontRenderContext(null, false, false);
+	/** Font size of new texts in pt */
+	public static final int DEFAULT_FONT_SIZE = 12;
+	private static final Font DEFAULT_FONT = getDefaultFont(DEFAULT_FONT_SIZE);
 	private String text;
 	private int left;
 	private int baseline;
@@ -22,7 +30,21 @@ public class Text extends AbstractComponent {
 		this.text = text;
 		this.left = left;
 		this.baseline = baseline;
-		this.font = new Font("SansSerif", Font.PLAIN, 12);
+		this.font = DEFAULT_FONT;
+	}
+	/**
+	 * Reinitializes this text as if it had just been created.
+	 * Allows to recycle text objects instead of allocating new ones.
+	 * @param text the text to be displayed
+	 * @param left the x-coordinate of the first character
+	 * @param baseline the y-coordinate of the baseline of the first character
+	 */
+	public void reset(String text, int left, int baseline) {
+		this.text = text;
+		this.left = left;
+		this.baseline = baseline;
+		this.font = DEFAULT_FONT;
+		resetStyle();
 	}
 	/**
 	 * Changes the font size of the text.
@@ -30,6 +52,7 @@ public class Text extends AbstractComponent {
 	 */
 	public void setFontSize(int size) {
 		this.font = new Font(font.getFontName(),font.getStyle(),size);
+		invalidate();
 	}
 	/**
 	 * Returns the text to be displayed.
@@ -44,6 +67,7 @@ public class Text extends AbstractComponent {
 	 */
 	public void setText(String text) {
 		this.text = text;
+		invalidate();
 	}
 	/**
 	 * Returns the x-coordinate of the first character.
@@ -58,6 +82,7 @@ public class Text extends AbstractComponent {
 	 */
 	public void setLeft(int left) {
 		this.left = left;
+		invalidate();
 	}
 	/**
 	 * Returns the y-coordinate of the baseline of the first character
@@ -72,6 +97,7 @@ public class Text extends AbstractComponent {
 	 */
 	public void setBaseline(int baseline) {
 		this.baseline = baseline;
+		invalidate();
 	}
 	/**
 	 * Returns the Font object to use to surround the text with a
@@ -81,9 +107,37 @@ public class Text extends AbstractComponent {
 	public Font getFont() {
 		return font;
 	}
+	/**
+	 * Returns the font of new texts in another size. A text whose font size has been
+	 * changed to <code>size</code> has the same metrics as this font.
+	 * @param size font size in pt
+	 * @return font
+	 */
+	public static Font getDefaultFont(int size) {
+		return new Font("SansSerif", Font.PLAIN, size);
+	}
 	@Override
 	public void move(int x, int y) {
 		left = x;
 		baseline = y;
+		invalidate();
+	}
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * For text, this is the logical bounding box of the string.
+	 */
+	@Override
+	protected Shape createShape() {
+		Rectangle2D b = font.getStringBounds(text, FRC);
+		return new Rectangle2D.Double(left + b.getX(), baseline + b.getY(), b.getWidth(), b.getHeight());
+	}
+	@Override
+	protected double getCenterX() {
+		return left;
+	}
+	@Override
+	protected double getCenterY() {
+		return baseline;
 	}
 }
@@ -0,0 +1,258 @@
+package de.thm.mni.oop.fcanvas.components;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Shape;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * <p>Represents a rectangular grid of tiles that are cut from a single image, the atlas.</p>
+ *
+ * <p>The atlas is divided into tiles of the same size as the cells of the grid. Tiles are
+ * numbered row by row, starting with 0 in the upper left corner of the atlas. Each cell of
+ * the grid stores the number of its tile in a single <code>int</code> array, or {@link #EMPTY}
+ * if the cell is transparent.</p>
+ *
+ * <p>The grid is divided into square chunks of {@value #CHUNK_SIZE}x{@value #CHUNK_SIZE} cells.
+ * The tiles of a chunk are copied into an image of their own when the chunk is drawn for the
+ * first time, and this image is only drawn again when one of the tiles of the chunk changes.
+ * Drawing the tilemap therefore only requires one image per visible chunk, regardless of the
+ * number of cells. Fill color, stroke color and stroke width have no effect on tilemaps.</p>
+ *
+ * @author Christopher Schölzel
+ */
+public class Tilemap extends AbstractComponent {
+	/** Number of cells in each direction that are cached in one image */
+	public static final int CHUNK_SIZE = 16;
+	/** Tile number of cells that are transparent */
+	public static final int EMPTY = -1;
+	private final String path;
+	private final BufferedImage atlas;
+	private final int atlasColumns;
+	private final int atlasTiles;
+	private final int tileWidth;
+	private final int tileHeight;
+	private final int columns;
+	private final int rows;
+	private final int[] tiles;
+	private final int chunkColumns;
+	private final int chunkRows;
+	/** cached images of the chunks, <code>null</code> if a chunk has not been drawn yet */
+	private final BufferedImage[] chunks;
+	private final boolean[] dirty;
+	private int left;
+	private int top;
+	/**
+	 * Creates a new tilemap in which all cells are empty.
+	 * @param path the path of the atlas image file
+	 * @param atlas the decoded atlas image
+	 * @param left x-coordinate of the top left point
+	 * @param top Y coordinate of the top left point
+	 * @param columns number of cells in each row
+	 * @param rows number of cells in each column
+	 * @param tileWidth width of a tile in the atlas and of a cell on the canvas
+	 * @param tileHeight height of a tile in the atlas and of a cell on the canvas
+	 */
+	public Tilemap(String path, BufferedImage atlas, int left, int top, int columns, int rows, int tileWidth, int tileHeight) {
+		if (columns <= 0 || rows <= 0 || tileWidth <= 0 || tileHeight <= 0) {
+			throw new IllegalArgumentException("Size of tilemap and tiles must be positive");
+		}
+		if ((long) columns * rows > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("Tilemap too large: " + columns + "x" + rows);
+		}
+		this.path = path;
+		this.atlas = atlas;
+		this.atlasColumns = atlas.getWidth() / tileWidth;
+		this.atlasTiles = atlasColumns * (atlas.getHeight() / tileHeight);
+		this.left = left;
+		this.top = top;
+		this.columns = columns;
+		this.rows = rows;
+		this.tileWidth = tileWidth;
+		this.tileHeight = tileHeight;
+		this.tiles = new int[columns * rows];
+		Arrays.fill(tiles, EMPTY);
+		this.chunkColumns = (columns + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		this.chunkRows = (rows + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		this.chunks = new BufferedImage[chunkColumns * chunkRows];
+		this.dirty = new boolean[chunks.length];
+	}
+	/**
+	 * Returns the path of the atlas image file.
+	 * @return the path as given when the tilemap was created
+	 */
+	public String getPath() {
+		return path;
+	}
+	/**
+	 * Returns the atlas image. The image is shared and must not be modified.
+	 * @return the atlas
+	 */
+	public BufferedImage getAtlas() {
+		return atlas;
+	}
+	/**
+	 * Returns the x-coordinate of the upper-left corner
+	 * @return x-coordinate of the upper left corner
+	 */
+	public int getLeft() {
+		return left;
+	}
+	/**
+	 * Returns the y-coordinate of the upper-left corner
+	 * @return y-coordinate of the upper-left corner
+	 */
+	public int getTop() {
+		return top;
+	}
+	/**
+	 * Returns the number of cells in each row.
+	 * @return number of columns
+	 */
+	public int getColumns() {
+		return columns;
+	}
+	/**
+	 * Returns the number of cells in each column.
+	 * @return number of rows
+	 */
+	public int getRows() {
+		return rows;
+	}
+	/**
+	 * Returns the width of a cell.
+	 * @return width of a tile in pixels
+	 */
+	public int getTileWidth() {
+		return tileWidth;
+	}
+	/**
+	 * Returns the height of a cell.
+	 * @return height of a tile in pixels
+	 */
+	public int getTileHeight() {
+		return tileHeight;
+	}
+	/**
+	 * Returns the tile number of a cell.
+	 * @param column the column of the cell
+	 * @param row the row of the cell
+	 * @return the tile number or {@link #EMPTY}
+	 */
+	public int getTile(int column, int row) {
+		return tiles[row * columns + column];
+	}
+	/**
+	 * Returns the tile numbers of all cells row by row. The array must not be modified.
+	 * @return the tile numbers
+	 */
+	public int[] getTiles() {
+		return tiles;
+	}
+	/**
+	 * Changes the tile of a cell. Cells outside of the grid are ignored.
+	 * @param column the column of the cell
+	 * @param row the row of the cell
+	 * @param tile the number of the tile in the atlas or {@link #EMPTY}
+	 */
+	public void setTile(int column, int row, int tile) {
+		if (column < 0 || row < 0 || column >= columns || row >= rows) return;
+		int i = row * columns + column;
+		if (tiles[i] == tile) return;
+		tiles[i] = tile;
+		dirty[(row / CHUNK_SIZE) * chunkColumns + column / CHUNK_SIZE] = true;
+	}
+	/**
+	 * Changes the tiles of a rectangular area of cells. Cells outside of the grid are ignored.
+	 * @param column the column of the upper left cell
+	 * @param row the row of the upper left cell
+	 * @param width number of columns of the area
+	 * @param height number of rows of the area
+	 * @param tiles <code>width * height</code> tile numbers row by row
+	 */
+	public void setTiles(int column, int row, int width, int height, int[] tiles) {
+		int c0 = Math.max(column, 0);
+		int r0 = Math.max(row, 0);
+		int c1 = Math.min(column + width, columns);
+		int r1 = Math.min(row + height, rows);
+		for(int r = r0; r < r1; r++) {
+			for(int c = c0; c < c1; c++) {
+				setTile(c, r, tiles[(r - row) * width + c - column]);
+			}
+		}
+	}
+	/**
+	 * Returns the number of chunks in each row.
+	 * @return number of chunk columns
+	 */
+	public int getChunkColumns() {
+		return chunkColumns;
+	}
+	/**
+	 * Returns the number of chunks in each column.
+	 * @return number of chunk rows
+	 */
+	public int getChunkRows() {
+		return chunkRows;
+	}
+	/**
+	 * Returns the image of a chunk, drawing its tiles if the chunk has not been drawn
+	 * yet or one of its tiles has changed since. The upper left corner of the chunk
+	 * is at <code>(left + cx * CHUNK_SIZE * tileWidth, top + cy * CHUNK_SIZE * tileHeight)</code>.
+	 * @param cx the column of the chunk
+	 * @param cy the row of the chunk
+	 * @return the cached image of the chunk
+	 */
+	public BufferedImage getChunk(int cx, int cy) {
+		int i = cy * chunkColumns + cx;
+		BufferedImage chunk = chunks[i];
+		if (chunk != null && !dirty[i]) return chunk;
+		int c0 = cx * CHUNK_SIZE;
+		int r0 = cy * CHUNK_SIZE;
+		int c1 = Math.min(c0 + CHUNK_SIZE, columns);
+		int r1 = Math.min(r0 + CHUNK_SIZE, rows);
+		if (chunk == null) {
+			chunk = new BufferedImage((c1 - c0) * tileWidth, (r1 - r0) * tileHeight, BufferedImage.TYPE_INT_ARGB_PRE);
+			chunks[i] = chunk;
+		}
+		Graphics2D g = chunk.createGraphics();
+		g.setComposite(AlphaComposite.Clear);
+		g.fillRect(0, 0, chunk.getWidth(), chunk.getHeight());
+		g.setComposite(AlphaComposite.Src);
+		for(int r = r0; r < r1; r++) {
+			for(int c = c0; c < c1; c++) {
+				int tile = tiles[r * columns + c];
+				// unknown tile numbers are drawn as empty cells
+				if (tile < 0 || tile >= atlasTiles) continue;
+				int sx = (tile % atlasColumns) * tileWidth;
+				int sy = (tile / atlasColumns) * tileHeight;
+				int dx = (c - c0) * tileWidth;
+				int dy = (r - r0) * tileHeight;
+				g.drawImage(atlas, dx, dy, dx + tileWidth, dy + tileHeight, sx, sy, sx + tileWidth, sy + tileHeight, null);
+			}
+		}
+		g.dispose();
+		dirty[i] = false;
+		return chunk;
+	}
+	@Override
+	public void move(int x, int y) {
+		left = x;
+		top = y;
+		invalidate();
+	}
+	@Override
+	protected Shape createShape() {
+		return new Rectangle2D.Float(left, top, columns * tileWidth, rows * tileHeight);
+	}
+	@Override
+	protected double getCenterX() {
+		return left + columns * tileWidth / 2.0;
+	}
+	@Override
+	protected double getCenterY() {
+		return top + rows * tileHeight / 2.0;
+	}
+}
@@ -0,0 +1,130 @@
+package de.thm.mni.oop.fcanvas;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+public class AnimationTableTest {
+    private static final long MS = 1_000_000L;
+
+    /**
+     * Components with a single value per property, stored by id and property.
+     */
+    private static class Values implements AnimationTable.Target {
+        final Map<Long, Double> values = new HashMap<Long, Double>();
+
+        @Override
+        public double get(long id, int property) {
+            Double v = values.get(id * Tween.PROPERTIES + property);
+            return v == null ? Double.NaN : v;
+        }
+
+        @Override
+        public boolean set(long id, int property, double value) {
+            long key = id * Tween.PROPERTIES + property;
+            if (!values.containsKey(key)) return false;
+            values.put(key, value);
+            return true;
+        }
+
+        double x(long id) {
+            return get(id, Tween.X);
+        }
+    }
+
+    /**
+     * Test hypothesis: removing finished animations from the middle of the table might
+     * corrupt the state of the animation that is moved into their place, or the values
+     * might not follow the easing functions.
+     */
+    @Test
+    public void testSweep() {
+        Values v = new Values();
+        AnimationTable table = new AnimationTable(v);
+        for (long id = 1; id <= 100; id++) {
+            v.values.put(id * Tween.PROPERTIES + Tween.X, 0.0);
+            // every other animation finishes after 100 ms
+            table.start(id, id, Tween.X, 100, id % 2 == 0 ? 100 * MS : 1000 * MS, Tween.LINEAR, 0);
+        }
+        table.sweep(50 * MS);
+        assertEquals(50, v.x(2), 1e-9);
+        assertEquals(5, v.x(3), 1e-9);
+        table.sweep(100 * MS);
+        assertEquals(50, table.size());
+        assertEquals(100, v.x(2), 0);
+        table.sweep(500 * MS);
+        for (long id = 1; id <= 100; id += 2) {
+            assertEquals(50, v.x(id), 1e-9);
+        }
+        assertEquals(0.5, Tween.ease(Tween.EASE_IN_OUT, 0.5), 1e-9);
+        assertEquals(0.125, Tween.ease(Tween.EASE_IN, 0.5), 1e-9);
+        assertEquals(0.875, Tween.ease(Tween.EASE_OUT, 0.5), 1e-9);
+        table.sweep(1000 * MS);
+        assertEquals(0, table.size());
+    }
+
+    /**
+     * Test hypothesis: animations in a sequence might start before their predecessor has
+     * finished or from a stale value, replaced or cancelled animations might never count as
+     * finished, so that waiting threads would hang, and animations of removed components
+     * might keep running.
+     * @throws InterruptedException when test is interrupted
+     */
+    @Test
+    public void testSequencesAndCompletion() throws InterruptedException {
+        Values v = new Values();
+        v.values.put(1L * Tween.PROPERTIES + Tween.X, 0.0);
+        v.values.put(1L * Tween.PROPERTIES + Tween.Y, 0.0);
+        AnimationTable table = new AnimationTable(v);
+        table.start(1, 1, Tween.X, 100, 100 * MS, Tween.LINEAR, 0);
+        table.startAfter(1, 2, 1, Tween.X, 0, 100 * MS, Tween.LINEAR, 0);
+        table.startAfter(2, 3, 1, Tween.Y, 10, 0, Tween.LINEAR, 0);
+        CountDownLatch first = new CountDownLatch(1);
+        CountDownLatch last = new CountDownLatch(1);
+        table.await(1, first);
+        table.await(3, last);
+        table.sweep(50 * MS);
+        assertEquals(50, v.x(1), 1e-9);
+        assertEquals(1, first.getCount());
+        table.sweep(100 * MS);
+        assertEquals(0, first.getCount());
+        // the second animation starts at the end of the first one
+        assertEquals(100, v.x(1), 1e-9);
+        table.sweep(150 * MS);
+        assertEquals(50, v.x(1), 1e-9);
+        table.sweep(200 * MS);
+        assertEquals(0, last.getCount());
+        assertEquals(10, v.get(1, Tween.Y), 0);
+        assertFalse(table.isActive(3));
+        // an animation that has already finished is awaited immediately
+        CountDownLatch done = new CountDownLatch(1);
+        table.await(3, done);
+        assertEquals(0, done.getCount());
+
+        // replacing an animation finishes it
+        table.start(4, 1, Tween.X, 100, 100 * MS, Tween.LINEAR, 300 * MS);
+        CountDownLatch replaced = new CountDownLatch(1);
+        table.await(4, replaced);
+        table.start(5, 1, Tween.X, -100, 100 * MS, Tween.LINEAR, 300 * MS);
+        assertEquals(0, replaced.getCount());
+        assertEquals(1, table.size());
+        // a cancelled animation keeps its value
+        table.sweep(350 * MS);
+        table.cancel(5, 350 * MS);
+        table.sweep(400 * MS);
+        assertEquals(0, table.size());
+        assertEquals(-50, v.x(1), 1e-9);
+
+        // animations of removed components end
+        table.start(6, 1, Tween.X, 0, 100 * MS, Tween.LINEAR, 500 * MS);
+        table.startAfter(6, 7, 2, Tween.X, 0, 100 * MS, Tween.LINEAR, 500 * MS);
+        CountDownLatch removed = new CountDownLatch(1);
+        table.await(7, removed);
+        v.values.clear();
+        table.sweep(510 * MS);
+        assertEquals(0, removed.getCount());
+        assertEquals(0, table.size());
+    }
+}
@@ -0,0 +1,84 @@
+package de.thm.mni.oop.fcanvas;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import de.thm.mni.oop.fcanvas.components.Rectangle;
+
+public class ComponentStoreTest {
+
+    /**
+     * Test hypothesis: a released slot might not be reused, or might be reused with the
+     * same generation, so that the id of the removed component refers to the new one.
+     */
+    @Test
+    public void testSlotReuseWithNewGeneration() {
+        ComponentStore store = new ComponentStore();
+        Rectangle r = new Rectangle(0, 0, 1, 1);
+        long a = store.allocate();
+        long b = store.allocate();
+        store.put(a, r, null);
+        store.put(b, r, null);
+        store.remove(a);
+        assertFalse(store.contains(a));
+        long c = store.allocate();
+        assertEquals(ComponentStore.slot(a), ComponentStore.slot(c));
+        assertNotEquals(a, c);
+        store.put(c, r, null);
+        assertTrue(store.contains(c));
+        assertFalse(store.contains(a));
+        assertNull(store.get(a));
+        assertEquals(2, store.size());
+    }
+
+    /**
+     * Test hypothesis: threads that allocate ids while the event dispatch thread releases
+     * slots might receive the same id twice, e.g. if a slot is popped from the stack of
+     * released slots after it has been reused and released again (ABA problem).
+     * @throws InterruptedException when test is interrupted
+     */
+    @Test
+    public void testConcurrentAllocation() throws InterruptedException {
+        final ComponentStore store = new ComponentStore();
+        final Set<Long> seen = ConcurrentHashMap.newKeySet();
+        final BlockingQueue<Long> allocated = new LinkedBlockingQueue<>();
+        final int perThread = 50_000;
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    long id = store.allocate();
+                    assertTrue(seen.add(id));
+                    allocated.add(id);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        // this thread plays the event dispatch thread, which adds and removes the components
+        Rectangle r = new Rectangle(0, 0, 1, 1);
+        ArrayDeque<Long> live = new ArrayDeque<>();
+        int added = 0;
+        while (added < 4 * perThread) {
+            Long id = allocated.poll(5, TimeUnit.SECONDS);
+            assertNotNull(id);
+            store.put(id, r, null);
+            live.add(id);
+            added++;
+            if (live.size() > 10) store.remove(live.poll());
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(4 * perThread, seen.size());
+        assertEquals(live.size(), store.size());
+    }
+}
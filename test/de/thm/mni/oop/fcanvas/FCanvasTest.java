@@ -7,12 +7,14 @@ import org.junit.BeforeClass;
 import org.junit.After;
 import java.awt.image.BufferedImage;
 import javax.imageio.ImageIO;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.Set;
 import java.nio.file.Path;
 import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
 import java.awt.Color;
+import java.lang.management.ManagementFactory;
 import java.awt.Graphics2D;
-import javax.swing.SwingUtilities;
 
 public class FCanvasTest {
 
@@ -45,7 +47,7 @@ public class FCanvasTest {
      */
     @Test
     public void testRectangle() throws IOException, InterruptedException {
-        Thread.sleep(100); // canvas must have finished first draw before we can get dimensions
+        assertTrue(FCanvas.awaitFrame()); // canvas must have finished first draw before we can get dimensions
         ImageSetup setup = createFCanvasImageSetup();
         setup.graphics.drawRect(50, 10, 20, 100);
         FCanvas.drawRectangle(50, 10, 20, 100);
@@ -61,7 +63,7 @@ public class FCanvasTest {
      */
     @Test
     public void testLine() throws IOException, InterruptedException {
-        Thread.sleep(100); // canvas must have finished first draw before we can get dimensions
+        assertTrue(FCanvas.awaitFrame()); // canvas must have finished first draw before we can get dimensions
         ImageSetup setup = createFCanvasImageSetup();
         setup.graphics.drawLine(50, 10, 20, 100);
         FCanvas.drawLine(50, 10, 20, 100);
@@ -77,7 +79,7 @@ public class FCanvasTest {
      */
     @Test
     public void testOval() throws IOException, InterruptedException {
-        Thread.sleep(100); // canvas must have finished first draw before we can get dimensions
+        assertTrue(FCanvas.awaitFrame()); // canvas must have finished first draw before we can get dimensions
         ImageSetup setup = createFCanvasImageSetup();
         setup.graphics.drawOval(50, 10, 20, 100);
         FCanvas.drawOval(50, 10, 20, 100);
@@ -93,7 +95,7 @@ public class FCanvasTest {
      */
     @Test
     public void testPolygon() throws IOException, InterruptedException {
-        Thread.sleep(100); // canvas must have finished first draw before we can get dimensions
+        assertTrue(FCanvas.awaitFrame()); // canvas must have finished first draw before we can get dimensions
         ImageSetup setup = createFCanvasImageSetup();
         int[] x = {100,110,150,110,100, 90, 50,90};
         int[] y = { 50, 90,100,110,150,110,100,90};
@@ -111,7 +113,7 @@ public class FCanvasTest {
      */
     @Test
     public void testText() throws IOException, InterruptedException {
-        Thread.sleep(100); // canvas must have finished first draw before we can get dimensions
+        assertTrue(FCanvas.awaitFrame()); // canvas must have finished first draw before we can get dimensions
         ImageSetup setup = createFCanvasImageSetup();
         setup.graphics.drawString("foo", 50, 100);
         FCanvas.drawText("foo", 50, 100);
@@ -120,19 +122,733 @@ public class FCanvasTest {
     }
 
     /**
-     * Invokes a no-op runnable on the event dispatch thread
-     * to ensure that all previous events have been processed.
-     * @throws InterruptedException
+     * Test hypothesis: {@link FCanvas#setLayer(long, int)} might not change the drawing order,
+     * or a frozen layer might not be redrawn after one of its objects has changed.
+     * @throws IOException when test image cannot be saved
+     * @throws InterruptedException when test is interrupted
      */
-    public void waitForEDT() throws InterruptedException {
-        // waits for execution of empty runnable
-        // => ensure that all events that have been previously
-        // scheduled have already been completed
+    @Test
+    public void testLayers() throws IOException, InterruptedException {
+        assertTrue(FCanvas.awaitFrame()); // canvas must have finished first draw before we can get dimensions
+        ImageSetup setup = createFCanvasImageSetup();
+        setup.graphics.drawRect(50, 50, 100, 100);
+        setup.graphics.setPaint(Color.GREEN);
+        setup.graphics.fillRect(10, 10, 100, 100);
+        setup.graphics.setPaint(Color.BLACK);
+        setup.graphics.drawRect(10, 10, 100, 100);
+        long background = FCanvas.drawRectangle(10, 10, 100, 100);
+        FCanvas.setFillColor(background, 255, 0, 0);
+        FCanvas.setLayer(background, 1);
+        FCanvas.freezeLayer(1);
+        FCanvas.drawRectangle(50, 50, 100, 100);
+        waitForEDT();
+        FCanvas.gui.getPanel().toImage();
+        FCanvas.setFillColor(background, 0, 255, 0);
+        waitForEDT();
+        assertFCanvasEqualsImage(setup.image, "layers");
+    }
+
+    /**
+     * Test hypothesis: {@link FCanvas#bringToFront(long)}, {@link FCanvas#sendToBack(long)} or
+     * {@link FCanvas#setZIndex(long, int)} might not change the drawing order as intended.
+     * @throws IOException when test image cannot be saved
+     * @throws InterruptedException when test is interrupted
+     */
+    @Test
+    public void testZOrder() throws IOException, InterruptedException {
+        assertTrue(FCanvas.awaitFrame()); // canvas must have finished first draw before we can get dimensions
+        ImageSetup setup = createFCanvasImageSetup();
+        setup.graphics.setPaint(Color.RED);
+        setup.graphics.fillRect(10, 10, 50, 50);
+        setup.graphics.setPaint(Color.BLACK);
+        setup.graphics.drawRect(10, 10, 50, 50);
+        long red = FCanvas.drawRectangle(10, 10, 50, 50);
+        long green = FCanvas.drawRectangle(10, 10, 50, 50);
+        long blue = FCanvas.drawRectangle(10, 10, 50, 50);
+        FCanvas.setFillColor(red, 255, 0, 0);
+        FCanvas.setFillColor(green, 0, 255, 0);
+        FCanvas.setFillColor(blue, 0, 0, 255);
+        FCanvas.setZIndex(green, 1);
+        FCanvas.bringToFront(red);
+        FCanvas.sendToBack(blue);
+        waitForEDT();
+        assertFCanvasEqualsImage(setup.image, "zorder");
+    }
+
+    /**
+     * Test hypothesis: the in-place mutators {@link FCanvas#setText(long, String)},
+     * {@link FCanvas#resize(long, int, int)}, {@link FCanvas#setLine(long, int, int, int, int)},
+     * {@link FCanvas#setPolygonPoints(long, int[], int[])} and {@link FCanvas#setVisible(long, boolean)}
+     * might not update the cached geometry of the objects or might affect the wrong object.
+     * @throws IOException when test image cannot be saved
+     * @throws InterruptedException when test is interrupted
+     */
+    @Test
+    public void testInPlaceMutators() throws IOException, InterruptedException {
+        assertTrue(FCanvas.awaitFrame()); // canvas must have finished first draw before we can get dimensions
+        ImageSetup setup = createFCanvasImageSetup();
+        int[] x = {100, 150, 100};
+        int[] y = { 50, 100, 150};
+        setup.graphics.drawString("bar", 50, 100);
+        setup.graphics.drawRect(10, 10, 30, 40);
+        setup.graphics.drawOval(200, 10, 50, 20);
+        setup.graphics.drawLine(10, 200, 100, 250);
+        setup.graphics.drawPolygon(x, y, x.length);
+        long text = FCanvas.drawText("foo", 50, 100);
+        long rect = FCanvas.drawRectangle(10, 10, 100, 100);
+        long oval = FCanvas.drawOval(200, 10, 10, 10);
+        long line = FCanvas.drawLine(0, 0, 10, 10);
+        long poly = FCanvas.drawPolygon(new int[]{0, 10, 20}, new int[]{0, 10, 0});
+        long hidden = FCanvas.drawRectangle(300, 300, 50, 50);
+        waitForEDT();
+        FCanvas.gui.getPanel().toImage();
+        FCanvas.setText(text, "bar");
+        FCanvas.resize(rect, 30, 40);
+        FCanvas.resize(oval, 50, 20);
+        FCanvas.setLine(line, 10, 200, 100, 250);
+        FCanvas.setPolygonPoints(poly, x, y);
+        // must not affect the polygon, since the points are copied
+        x[0] = 0;
+        FCanvas.setVisible(hidden, false);
+        waitForEDT();
+        assertFCanvasEqualsImage(setup.image, "mutators");
+    }
+
+    /**
+     * Test hypothesis: {@link FCanvas#getMetrics()} might not account for issued commands
+     * or painted frames, might count images of the panel as frames, or might not be registered
+     * with the platform MBean server.
+     * @throws InterruptedException when test is interrupted
+     */
+    @Test
+    public void testMetrics() throws InterruptedException {
+        FCanvasMetrics metrics = FCanvas.getMetrics();
+        long applied = metrics.getCommandsApplied();
+        long frames = metrics.getFramesPainted();
+        FCanvas.drawRectangle(50, 10, 20, 100);
+        FCanvas.drawOval(50, 10, 20, 100);
+        // the commands are counted before the frame that contains them is painted
+        assertTrue(FCanvas.awaitFrame());
+        assertEquals(applied + 2, metrics.getCommandsApplied());
+        assertEquals(0, metrics.getPendingCommands());
+        assertEquals(2, metrics.getComponentsDrawn());
+        assertTrue(metrics.getFramesPainted() > frames);
+        assertTrue(metrics.getPaintTimePercentileNanos(99) >= metrics.getPaintTimePercentileNanos(50));
+        assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(metrics.getObjectName()));
+        // a panel that is not shown paints no frames, its images are no frames either
+        FCanvasPanel offscreen = new FCanvasPanel();
+        try {
+            offscreen.setSize(100, 100);
+            offscreen.addRectangle(10, 10, 20, 20);
+            offscreen.toImage();
+            assertEquals(0, offscreen.getMetrics().getFramesPainted());
+            assertEquals(0, offscreen.getMetrics().getComponentsDrawn());
+        } finally {
+            offscreen.dispose();
+        }
+    }
+
+    /**
+     * Test hypothesis: the metrics of disposed panels might stay registered with the MBean
+     * server, a reset requested outside of the event dispatch thread might race with painting,
+     * and garbage collections might not be counted since the last reset.
+     * @throws InterruptedException when test is interrupted
+     */
+    @Test
+    public void testMetricsLifecycle() throws InterruptedException {
+        FCanvasPanel panel = new FCanvasPanel();
+        FCanvasMetrics metrics = panel.getMetrics();
+        javax.management.ObjectName name = metrics.getObjectName();
+        assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+        panel.setSize(100, 100);
+        panel.addRectangle(10, 10, 20, 20);
+        panel.updateCanvas();
+        assertTrue(panel.flush(1000));
+        System.gc();
+        long collections = metrics.getGcCount();
+        assertTrue(collections > 0);
+        assertTrue(metrics.getGcTimeMillis() >= 0);
+        assertEquals(1, metrics.getRepaintRequests());
+        // requested on this thread, performed on the event dispatch thread
+        metrics.reset();
+        assertTrue(panel.flush(1000));
+        assertEquals(0, metrics.getRepaintRequests());
+        assertTrue(metrics.getGcCount() < collections);
+        panel.dispose();
+        assertNull(metrics.getObjectName());
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+
+    /**
+     * Test hypothesis: {@link FCanvas#saveScene(String)} and {@link FCanvas#loadScene(String)}
+     * might lose properties, the drawing order, frozen layers or the pixel layer.
+     * @throws IOException when the scene file or test image cannot be saved
+     * @throws InterruptedException when test is interrupted
+     */
+    @Test
+    public void testSceneRoundTrip() throws IOException, InterruptedException {
+        long rect = FCanvas.drawRectangle(10, 10, 100, 50);
+        FCanvas.setFillColor(rect, 255, 0, 0, 128);
+        FCanvas.setStrokeWidth(rect, 3);
+        FCanvas.setRotation(rect, 30);
+        long oval = FCanvas.drawOval(50, 50, 80, 40);
+        FCanvas.setFillColor(oval, 0, 0, 255);
+        FCanvas.setLayer(oval, 2);
+        FCanvas.freezeLayer(2);
+        long line = FCanvas.drawLine(0, 0, 300, 200);
+        FCanvas.setZIndex(line, -1);
+        FCanvas.drawPolygon(new int[]{200, 250, 220}, new int[]{100, 150, 200});
+        long text = FCanvas.drawText("foo", 100, 250);
+        FCanvas.setFontSize(text, 30);
+        FCanvas.setVisible(FCanvas.drawRectangle(300, 10, 50, 50), false);
+        FCanvas.setBackgroundColor(200, 200, 255);
+        for (int x = 0; x < 20; x++) {
+            FCanvas.setPixel(x + 100, 200, 0, x * 10, 0);
+        }
+        waitForEDT();
+        BufferedImage expected = FCanvas.gui.getPanel().toImage();
+        Path file = Files.createTempFile("fcanvas", ".scene");
+        try {
+            FCanvas.saveScene(file.toString());
+            FCanvas.clear();
+            long[] ids = FCanvas.loadScene(file.toString());
+            assertEquals(6, ids.length);
+            waitForEDT();
+        } finally {
+            Files.delete(file);
+        }
+        assertFCanvasEqualsImage(expected, "scene");
+    }
+
+    /**
+     * Test hypothesis: {@link FCanvasPanel#loadScene(Path)} might keep the state of layers
+     * that are not part of the scene, e.g. a frozen layer, or the measurements of texts that
+     * have been replaced.
+     * @throws IOException when the scene file cannot be written or read
+     * @throws InterruptedException when test is interrupted
+     */
+    @Test
+    public void testLoadSceneReplacesState() throws IOException, InterruptedException {
+        FCanvasPanel panel = new FCanvasPanel();
+        panel.setSize(200, 200);
+        Path saved = Files.createTempFile("fcanvas", ".scene");
+        Path reloaded = Files.createTempFile("fcanvas", ".scene");
+        try {
+            panel.addRectangle(10, 10, 20, 20);
+            panel.saveScene(saved);
+            long old = panel.addText("old", 10, 50);
+            panel.setLayerFrozen(3, true);
+            assertTrue(panel.getTextWidth(old) > 0);
+            long[] ids = panel.loadScene(saved);
+            assertTrue(panel.flush(1000));
+            assertEquals(1, ids.length);
+            assertEquals(0, panel.getTextWidth(old), 0);
+            panel.saveScene(reloaded);
+            assertArrayEquals(Files.readAllBytes(saved), Files.readAllBytes(reloaded));
+        } finally {
+            Files.delete(saved);
+            Files.delete(reloaded);
+            panel.dispose();
+        }
+    }
+
+    /**
+     * Test hypothesis: {@link FCanvas#setViewport(double, double, double)} might apply the
+     * translation and the zoom in the wrong order, cull visible components, or not move
+     * frozen layers and pixels with the view.
+     * @throws IOException when test image cannot be saved
+     * @throws InterruptedException when test is interrupted
+     */
+    @Test
+    public void testViewport() throws IOException, InterruptedException {
+        assertTrue(FCanvas.awaitFrame()); // canvas must have finished first draw before we can get dimensions
+        ImageSetup setup = createFCanvasImageSetup();
+        setup.graphics.scale(2, 2);
+        setup.graphics.translate(-100, -50);
+        setup.graphics.drawRect(120, 60, 20, 30);
+        setup.graphics.drawOval(200, 100, 30, 20);
+        setup.graphics.drawRect(150, 70, 10, 10);
+        setup.graphics.setPaint(Color.RED);
+        setup.graphics.fillRect(130, 55, 1, 1);
+        FCanvas.drawRectangle(120, 60, 20, 30);
+        FCanvas.drawOval(200, 100, 30, 20);
+        long frozen = FCanvas.drawRectangle(150, 70, 10, 10);
+        FCanvas.setLayer(frozen, 1);
+        FCanvas.freezeLayer(1);
+        FCanvas.setPixel(130, 55, 255, 0, 0);
+        // outside of the viewport
+        FCanvas.setPixel(-5000, -7000, 255, 0, 0);
+        FCanvas.drawRectangle(100000, 100000, 10, 10);
+        // hidden components are neither drawn nor culled
+        FCanvas.setVisible(FCanvas.drawRectangle(120, 60, 5, 5), false);
+        FCanvas.setViewport(100, 50, 2);
+        assertTrue(FCanvas.awaitFrame());
+        assertEquals(2, FCanvas.getZoom(), 0);
+        // the rectangle far away is culled, the frozen layer counts as drawn from its cache
+        assertEquals(3, FCanvas.getMetrics().getComponentsDrawn());
+        assertEquals(1, FCanvas.getMetrics().getComponentsCulled());
+        // the next frame draws the frozen layer from its cache
+        FCanvas.drawRectangle(-100000, 100000, 10, 10);
+        assertTrue(FCanvas.awaitFrame());
+        assertEquals(3, FCanvas.getMetrics().getComponentsDrawn());
+        assertEquals(2, FCanvas.getMetrics().getComponentsCulled());
+        assertFCanvasEqualsImage(setup.image, "viewport");
+    }
+
+    /**
+     * Test hypothesis: {@link FCanvas#setLevelOfDetail(double, double, int)} might not simplify
+     * components that are tiny on the screen, simplify large ones, or ignore a threshold of 0.
+     * @throws InterruptedException when test is interrupted
+     */
+    @Test
+    public void testLevelOfDetail() throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            FCanvas.drawOval(i * 20, 0, 5, 5);
+        }
+        FCanvas.drawText("tiny", 0, 500);
+        FCanvas.drawRectangle(0, 1000, 2000, 100);
+        FCanvas.setViewport(0, 0, 0.1);
+        assertTrue(FCanvas.awaitFrame());
+        FCanvasMetrics metrics = FCanvas.getMetrics();
+        // all ovals and the text, but not the large rectangle
+        assertEquals(101, metrics.getComponentsSimplified());
+        assertEquals(102, metrics.getComponentsDrawn());
+        FCanvas.setLevelOfDetail(0, 0, 0);
+        assertTrue(FCanvas.awaitFrame());
+        assertEquals(0, metrics.getComponentsSimplified());
+        assertEquals(102, metrics.getComponentsDrawn());
+    }
+
+    /**
+     * Test hypothesis: {@link FCanvas#drawImage(String, int, int)} might draw images at the
+     * wrong position or size, or decode the same file again for every sprite.
+     * @throws IOException when the test image cannot be written or read
+     * @throws InterruptedException when test is interrupted
+     */
+    @Test
+    public void testDrawImage() throws IOException, InterruptedException {
+        assertTrue(FCanvas.awaitFrame()); // canvas must have finished first draw before we can get dimensions
+        BufferedImage sprite = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = sprite.createGraphics();
+        g.setColor(Color.RED);
+        g.fillRect(0, 0, 10, 10);
+        g.dispose();
+        Path file = Files.createTempFile("fcanvas", ".png");
+        try {
+            ImageIO.write(sprite, "png", file.toFile());
+            int decodes = ImageCache.shared().getDecodes();
+            ImageSetup setup = createFCanvasImageSetup();
+            setup.graphics.setColor(Color.RED);
+            for (int i = 0; i < 200; i++) {
+                FCanvas.drawImage(file.toString(), (i % 20) * 15, (i / 20) * 15);
+                setup.graphics.fillRect((i % 20) * 15, (i / 20) * 15, 10, 10);
+            }
+            FCanvas.drawImage(file.toString(), 320, 0, 2.0);
+            setup.graphics.fillRect(320, 0, 20, 20);
+            FCanvas.drawImage(file.toString(), 320, 30, 30, 5);
+            setup.graphics.fillRect(320, 30, 30, 5);
+            assertEquals(1, ImageCache.shared().getDecodes() - decodes);
+            waitForEDT();
+            assertFCanvasEqualsImage(setup.image, "image");
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Test hypothesis: {@link FCanvas#drawTilemap(String, int, int, int, int, int, int)} might cut
+     * the wrong tiles from the atlas, and a chunk might keep showing its cached image after one
+     * of its tiles has been changed.
+     * @throws IOException when the test image cannot be written or read
+     * @throws InterruptedException when test is interrupted
+     */
+    @Test
+    public void testTilemap() throws IOException, InterruptedException {
+        assertTrue(FCanvas.awaitFrame()); // canvas must have finished first draw before we can get dimensions
+        Color[] colors = {Color.RED, Color.GREEN, Color.BLUE, Color.YELLOW};
+        BufferedImage atlas = new BufferedImage(20, 20, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = atlas.createGraphics();
+        for (int i = 0; i < colors.length; i++) {
+            g.setColor(colors[i]);
+            g.fillRect(i % 2 * 10, i / 2 * 10, 10, 10);
+        }
+        g.dispose();
+        Path file = Files.createTempFile("fcanvas", ".png");
+        try {
+            ImageIO.write(atlas, "png", file.toFile());
+            ImageSetup setup = createFCanvasImageSetup();
+            long map = FCanvas.drawTilemap(file.toString(), 5, 5, 40, 30, 10, 10);
+            int[] tiles = new int[40 * 30];
+            for (int i = 0; i < tiles.length; i++) {
+                tiles[i] = i % 5 - 1;
+                if (tiles[i] < 0) continue;
+                setup.graphics.setColor(colors[tiles[i]]);
+                setup.graphics.fillRect(5 + i % 40 * 10, 5 + i / 40 * 10, 10, 10);
+            }
+            FCanvas.setTiles(map, 0, 0, 40, 30, tiles);
+            waitForEDT();
+            assertFCanvasEqualsImage(setup.image, "tilemap");
+            FCanvas.setTile(map, 17, 20, 3);
+            setup.graphics.setColor(colors[3]);
+            setup.graphics.fillRect(5 + 17 * 10, 5 + 20 * 10, 10, 10);
+            waitForEDT();
+            assertFCanvasEqualsImage(setup.image, "tilemap_changed");
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Test hypothesis: {@link FCanvas#computePixels(int, int, int, int, PixelFunction, boolean)}
+     * might skip or shift rows at the borders of the bands that are computed in parallel, or
+     * leave the coarse pixels of a progressive computation on the canvas.
+     * @throws IOException when test image cannot be saved
+     * @throws InterruptedException when test is interrupted
+     */
+    @Test
+    public void testComputePixels() throws IOException, InterruptedException {
+        assertTrue(FCanvas.awaitFrame()); // canvas must have finished first draw before we can get dimensions
+        ImageSetup setup = createFCanvasImageSetup();
+        for (int y = 0; y < 150; y++) {
+            for (int x = 0; x < 250; x++) {
+                setup.image.setRGB(x + 20, y + 30, (x & 0xFF) << 16 | y << 8 | (x ^ y) & 0xFF);
+            }
+        }
+        FCanvas.computePixels(20, 30, 250, 75, (x, y) -> (x - 20 & 0xFF) << 16 | y - 30 << 8 | (x - 20 ^ y - 30) & 0xFF);
+        FCanvas.computePixels(20, 105, 250, 75, (x, y) -> (x - 20 & 0xFF) << 16 | y - 30 << 8 | (x - 20 ^ y - 30) & 0xFF, true);
+        waitForEDT();
+        assertFCanvasEqualsImage(setup.image, "compute_pixels");
+    }
+
+    /**
+     * Test hypothesis: {@link FCanvas#saveToSVG(String)} might omit components, write hidden
+     * components, escape text incorrectly or embed empty tiles of the pixel layer.
+     * @throws IOException when the SVG file cannot be written
+     */
+    @Test
+    public void testSaveToSVG() throws IOException {
+        long rect = FCanvas.drawRectangle(10, 10, 100, 50);
+        FCanvas.setFillColor(rect, 255, 0, 0, 128);
+        FCanvas.setStrokeWidth(rect, 3);
+        FCanvas.drawOval(50, 50, 80, 40);
+        FCanvas.drawLine(0, 0, 300, 200);
+        FCanvas.drawPolygon(new int[]{200, 250, 220}, new int[]{100, 150, 200});
+        FCanvas.drawText("a < b & c", 100, 250);
+        FCanvas.setVisible(FCanvas.drawRectangle(300, 10, 50, 50), false);
+        FCanvas.setPixel(300, 5, 0, 255, 0);
+        Path file = Files.createTempFile("fcanvas", ".svg");
+        String svg;
         try {
-            SwingUtilities.invokeAndWait(() -> {});
-        } catch (InvocationTargetException e) {
-            /* this can never happen since our runnable is a no-op */
+            FCanvas.saveToSVG(file.toString());
+            svg = new String(Files.readAllBytes(file), "UTF-8");
+        } finally {
+            Files.delete(file);
+        }
+        assertTrue(svg.contains("<rect x=\"10\" y=\"10\" width=\"100\" height=\"50\" fill=\"#ff0000\""));
+        assertTrue(svg.contains("stroke-width=\"3\""));
+        assertTrue(svg.contains("<ellipse cx=\"90\" cy=\"70\" rx=\"40\" ry=\"20\""));
+        assertTrue(svg.contains("<line x1=\"0\" y1=\"0\" x2=\"300\" y2=\"200\""));
+        assertTrue(svg.contains("points=\"200,100 250,150 220,200\""));
+        assertTrue(svg.contains(">a &lt; b &amp; c</text>"));
+        assertFalse(svg.contains("x=\"300\" y=\"10\""));
+        // the pixel at x = 300 lies in the second tile of the first row
+        assertTrue(svg.contains("<image x=\"256\" y=\"0\""));
+        assertFalse(svg.contains("<image x=\"0\""));
+        assertTrue(svg.trim().endsWith("</svg>"));
+    }
+
+    /**
+     * Test hypothesis: a journal recorded with {@link FCanvas#startJournal(String)} might miss
+     * calls or arguments, so that {@link JournalReplay} produces a different picture.
+     * @throws IOException when the journal or test image cannot be saved
+     * @throws InterruptedException when test is interrupted
+     */
+    @Test
+    public void testJournalReplay() throws IOException, InterruptedException {
+        Path file = Files.createTempFile("fcanvas", ".journal");
+        FCanvasPanel replayPanel = new FCanvasPanel();
+        try {
+            FCanvas.startJournal(file.toString());
+            long rect = FCanvas.drawRectangle(10, 10, 100, 50);
+            FCanvas.setFillColor(rect, 255, 0, 0, 128);
+            FCanvas.setRotation(rect, 30.5f);
+            long text = FCanvas.drawText("foo", 100, 250);
+            FCanvas.setText(text, "bar");
+            FCanvas.setFontSize(text, 20);
+            long removed = FCanvas.drawOval(50, 50, 80, 40);
+            FCanvas.drawPolygon(new int[]{200, 250, 220}, new int[]{100, 150, -200});
+            FCanvas.remove(removed);
+            FCanvas.setBackgroundColor(200, 200, 255);
+            FCanvas.stopJournal();
+            waitForEDT();
+            replayPanel.setSize(FCanvas.getCanvasWidth(), FCanvas.getCanvasHeight());
+            // every call is followed by a repaint request, since autoupdate is enabled
+            assertEquals(20, new JournalReplay(replayPanel, false).replay(file));
+        } finally {
+            Files.delete(file);
+        }
+        assertImageEquals(FCanvas.gui.getPanel().toImage(), replayPanel.toImage(), "journal");
+        replayPanel.dispose();
+    }
+
+    /**
+     * Test hypothesis: a journal might miss loaded scenes, the performance overlay or a shown
+     * framebuffer, so that {@link JournalReplay} produces a different state, or the replay might
+     * silently ignore a framebuffer that cannot be shown anymore.
+     * @throws IOException when the journal, scene or framebuffer cannot be written
+     * @throws InterruptedException when test is interrupted
+     */
+    @Test
+    public void testJournalSceneAndOverlays() throws IOException, InterruptedException {
+        Path journal = Files.createTempFile("fcanvas", ".journal");
+        Path scene = Files.createTempFile("fcanvas", ".scene");
+        Path framebuffer = Files.createTempFile("fcanvas", ".fb");
+        FCanvasPanel panel = new FCanvasPanel();
+        FCanvasPanel replayPanel = new FCanvasPanel();
+        try {
+            panel.setSize(200, 200);
+            replayPanel.setSize(200, 200);
+            panel.addRectangle(10, 10, 50, 50);
+            panel.addText("foo", 20, 100);
+            panel.saveScene(scene);
+            SharedFramebuffer.create(framebuffer, 4, 4).close();
+            panel.startJournal(journal);
+            long[] ids = panel.loadScene(scene);
+            panel.setFillColor(ids[0], 255, 0, 0, 255);
+            panel.setPerformanceHudVisible(true);
+            panel.showFramebuffer(framebuffer, 100, 100);
+            panel.hideFramebuffer();
+            panel.stopJournal();
+            assertTrue(panel.flush(1000));
+            // the scene is embedded in the journal
+            Files.delete(scene);
+            assertEquals(5, new JournalReplay(replayPanel, false).replay(journal));
+            assertTrue(replayPanel.isPerformanceHudVisible());
+            assertEquals(1, replayPanel.componentsAt(30, 30).length);
+            assertImageEquals(panel.toImage(), replayPanel.toImage(), "journal-scene");
+            Files.delete(framebuffer);
+            try {
+                new JournalReplay(replayPanel, false).replay(journal);
+                fail("replay of a journal with a missing framebuffer must fail");
+            } catch (IOException e) {
+                assertTrue(e.getMessage().contains(framebuffer.toString()));
+            }
+        } finally {
+            Files.deleteIfExists(journal);
+            Files.deleteIfExists(scene);
+            Files.deleteIfExists(framebuffer);
+            panel.dispose();
+            replayPanel.dispose();
+        }
+    }
+
+    /**
+     * Test hypothesis: a journal might miss started or cancelled animations, or the replay might
+     * confuse the handles of the recorded animations with its own, so that the replayed animations
+     * end at a different position or wait for the wrong animation.
+     * @throws IOException when the journal cannot be written
+     * @throws InterruptedException when test is interrupted
+     */
+    @Test
+    public void testJournalAnimation() throws IOException, InterruptedException {
+        Path journal = Files.createTempFile("fcanvas", ".journal");
+        FCanvasPanel panel = new FCanvasPanel();
+        FCanvasPanel replayPanel = new FCanvasPanel();
+        try {
+            panel.setSize(300, 200);
+            replayPanel.setSize(300, 200);
+            // the replay panel assigns different handles than the recording panel
+            replayPanel.animate(0, Tween.X, 0, 0, Tween.LINEAR);
+            panel.startJournal(journal);
+            long box = panel.addRectangle(0, 0, 20, 20);
+            long right = panel.animate(box, Tween.X, 200, 100, Tween.EASE_IN_OUT);
+            long down = panel.animateAfter(right, box, Tween.Y, 100, 100, Tween.LINEAR);
+            long spin = panel.animate(box, Tween.ROTATION, 360, 60_000, Tween.LINEAR);
+            panel.cancelAnimation(spin);
+            panel.stopJournal();
+            assertTrue(panel.awaitAnimation(down, 5000));
+            JournalReplay replay = new JournalReplay(replayPanel, false);
+            assertEquals(5, replay.replay(journal));
+            assertNotEquals(down, replay.getAnimation(down));
+            assertTrue(replayPanel.awaitAnimation(replay.getAnimation(spin), 1000));
+            assertTrue(replayPanel.awaitAnimation(replay.getAnimation(down), 5000));
+            assertTrue(replayPanel.flush(1000));
+            assertEquals(1, replayPanel.componentsAt(210, 110).length);
+            assertEquals(0, replayPanel.componentsAt(10, 10).length);
+        } finally {
+            Files.delete(journal);
+            panel.dispose();
+            replayPanel.dispose();
+        }
+    }
+
+    /**
+     * Test hypothesis: concurrent producers might receive the same id, or commands of a single
+     * thread might be applied in a different order than they were issued.
+     * @throws InterruptedException when test is interrupted
+     */
+    @Test
+    public void testConcurrentProducers() throws InterruptedException {
+        final int producers = 8;
+        final int perProducer = 500;
+        final long[][] ids = new long[producers][perProducer];
+        FCanvasMetrics metrics = FCanvas.getMetrics();
+        long stale = metrics.getStaleCommands();
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            final long[] mine = ids[p];
+            threads[p] = new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    mine[i] = FCanvas.drawRectangle(0, 0, 10, 10);
+                    // only visible if the move is applied after the add
+                    FCanvas.move(mine[i], i, i);
+                    if (i % 2 == 1) FCanvas.remove(mine[i - 1]);
+                }
+            });
+            threads[p].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        // the component count is updated when a frame is painted
+        assertTrue(FCanvas.awaitFrame());
+        Set<Long> distinct = new HashSet<Long>();
+        for (long[] mine : ids) {
+            for (long id : mine) {
+                assertTrue(distinct.add(id));
+            }
+        }
+        assertEquals(producers * perProducer / 2, metrics.getComponentCount());
+        assertEquals(stale, metrics.getStaleCommands());
+    }
+
+    /**
+     * Test hypothesis: {@link FCanvas#flush()} might return before all previous commands
+     * have been applied, or {@link FCanvas#awaitFrame()} might return before a frame has been painted.
+     * @throws InterruptedException when test is interrupted
+     */
+    @Test
+    public void testFlushAndAwaitFrame() throws InterruptedException {
+        FCanvasMetrics metrics = FCanvas.getMetrics();
+        long applied = metrics.getCommandsApplied();
+        for (int i = 0; i < 100; i++) {
+            FCanvas.drawRectangle(i, i, 10, 10);
         }
+        assertTrue(FCanvas.flush());
+        // the token of flush itself is also counted as command
+        assertTrue(metrics.getCommandsApplied() >= applied + 100);
+        long frames = metrics.getFramesPainted();
+        FCanvas.setAutoUpdate(false);
+        FCanvas.drawOval(10, 10, 10, 10);
+        assertTrue(FCanvas.awaitFrame());
+        assertTrue(metrics.getFramesPainted() > frames);
+        assertEquals(101, metrics.getComponentCount());
+    }
+
+    /**
+     * Test hypothesis: collision queries might only compare bounding boxes, ignore
+     * rotation or lines, or report components that have been moved, hidden or removed.
+     * @throws InterruptedException when test is interrupted
+     */
+    @Test
+    public void testCollisions() throws InterruptedException {
+        long circle = FCanvas.drawOval(100, 100, 100, 100);
+        // overlaps the bounding box of the circle, but not the circle itself
+        long corner = FCanvas.drawRectangle(90, 90, 20, 20);
+        long bar = FCanvas.drawRectangle(140, 140, 200, 20);
+        long line = FCanvas.drawLine(300, 100, 300, 300);
+        FCanvas.setStrokeWidth(line, 5);
+        long square = FCanvas.drawRectangle(400, 100, 40, 40);
+        waitForEDT();
+        assertFalse(FCanvas.intersects(circle, corner));
+        assertTrue(FCanvas.intersects(circle, bar));
+        assertTrue(FCanvas.intersects(bar, line));
+        assertFalse(FCanvas.intersects(circle, circle));
+        assertEquals(idSet(bar), idSet(FCanvas.collisions(circle)));
+        assertEquals(idSet(circle, line), idSet(FCanvas.collisions(bar)));
+        assertEquals(idSet(circle, corner), idSet(FCanvas.componentsIn(0, 0, 120, 120)));
+        // the rotated square reaches into the line
+        FCanvas.move(square, 305, 150);
+        waitForEDT();
+        assertFalse(FCanvas.intersects(square, line));
+        FCanvas.setRotation(square, 45);
+        waitForEDT();
+        assertTrue(FCanvas.intersects(square, line));
+        FCanvas.setVisible(bar, false);
+        FCanvas.remove(line);
+        waitForEDT();
+        assertEquals(0, FCanvas.collisions(circle).length);
+        assertEquals(0, FCanvas.collisions(square).length);
+        assertEquals(idSet(circle, square), idSet(FCanvas.componentsIn(150, 150, 1000, 1000)));
+    }
+
+    /**
+     * Test hypothesis: picking might ignore the drawing order, rotation, strokes or the
+     * exact shape of ovals, or still find components that have been hidden.
+     * @throws InterruptedException when test is interrupted
+     */
+    @Test
+    public void testComponentAt() throws InterruptedException {
+        long back = FCanvas.drawRectangle(50, 50, 200, 200);
+        long circle = FCanvas.drawOval(100, 100, 100, 100);
+        long line = FCanvas.drawLine(300, 50, 300, 250);
+        FCanvas.setStrokeWidth(line, 9);
+        long bar = FCanvas.drawRectangle(400, 140, 100, 20);
+        FCanvas.setRotation(bar, 90);
+        waitForEDT();
+        assertEquals(circle, FCanvas.componentAt(150, 150));
+        assertArrayEquals(new long[]{circle, back}, FCanvas.componentsAt(150, 150));
+        // inside the bounding box of the circle, but outside of the circle
+        assertEquals(back, FCanvas.componentAt(105, 105));
+        assertEquals(line, FCanvas.componentAt(304, 150));
+        assertEquals(0, FCanvas.componentAt(306, 150));
+        // the rotated bar is vertical
+        assertEquals(bar, FCanvas.componentAt(450, 190));
+        assertEquals(0, FCanvas.componentAt(410, 150));
+        FCanvas.sendToBack(circle);
+        FCanvas.setVisible(back, false);
+        waitForEDT();
+        assertArrayEquals(new long[]{circle}, FCanvas.componentsAt(150, 150));
+        assertEquals(0, FCanvas.componentAt(105, 105));
+    }
+
+    /**
+     * Test hypothesis: an animated object might not end exactly at the target value,
+     * a sequence might not continue from the end of its predecessor, or waiting for an
+     * animation might return before it has finished.
+     * @throws InterruptedException when test is interrupted
+     */
+    @Test
+    public void testAnimate() throws InterruptedException {
+        long box = FCanvas.drawRectangle(0, 0, 20, 20);
+        long start = System.nanoTime();
+        long right = FCanvas.animate(box, Tween.X, 200, 200, Tween.EASE_IN_OUT);
+        long down = FCanvas.animateAfter(right, box, Tween.Y, 100, 100, Tween.LINEAR);
+        FCanvas.awaitAnimation(down);
+        assertTrue(System.nanoTime() - start >= 300_000_000L);
+        waitForEDT();
+        assertEquals(box, FCanvas.componentAt(210, 110));
+        assertEquals(0, FCanvas.componentAt(10, 10));
+        long spin = FCanvas.animate(box, Tween.ROTATION, 360, 60_000, Tween.LINEAR);
+        FCanvas.remove(box);
+        assertTrue(FCanvas.awaitAnimation(spin, 1000));
+    }
+
+    private static Set<Long> idSet(long... ids) {
+        Set<Long> set = new HashSet<Long>();
+        for (long id : ids) {
+            set.add(id);
+        }
+        return set;
+    }
+
+    /**
+     * Waits until all previous drawing commands have been applied
+     * on the event dispatch thread.
+     * @throws InterruptedException
+     */
+    public void waitForEDT() throws InterruptedException {
+        assertTrue(FCanvas.flush());
     }
 
     /**
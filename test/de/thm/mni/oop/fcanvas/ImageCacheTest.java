@@ -0,0 +1,122 @@
+package de.thm.mni.oop.fcanvas;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import javax.imageio.ImageIO;
+
+public class ImageCacheTest {
+
+    private static Path writeImage(int width, int height, int argb) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, argb);
+            }
+        }
+        Path file = Files.createTempFile("fcanvas", ".png");
+        ImageIO.write(image, "png", file.toFile());
+        return file;
+    }
+
+    /**
+     * Test hypothesis: repeated requests for the same file might decode it again, and
+     * different spellings of the same path or a scaled size might not share the original.
+     * @throws IOException when the image cannot be written or read
+     */
+    @Test
+    public void testSharedDecodedCopy() throws IOException {
+        Path file = writeImage(20, 10, 0xFFFF0000);
+        try {
+            ImageCache cache = new ImageCache(ImageCache.DEFAULT_MAX_BYTES);
+            BufferedImage image = cache.get(file.toString());
+            assertEquals(20, image.getWidth());
+            assertEquals(0xFFFF0000, image.getRGB(5, 5));
+            for (int i = 0; i < 100; i++) {
+                assertSame(image, cache.get(file.toString()));
+            }
+            Path other = file.getParent().resolve(".").resolve(file.getFileName());
+            assertSame(image, cache.get(other.toString()));
+            assertSame(image, cache.get(file.toString(), 20, 10));
+            BufferedImage scaled = cache.get(file.toString(), 40, 20);
+            assertEquals(40, scaled.getWidth());
+            assertEquals(0xFFFF0000, scaled.getRGB(30, 15));
+            assertSame(scaled, cache.get(file.toString(), 40, 20));
+            assertEquals(1, cache.getDecodes());
+            assertEquals(4L * (20 * 10 + 40 * 20), cache.getBytes());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Test hypothesis: the cache might grow beyond its bound, or drop the image that was
+     * used most recently instead of the least recently used one.
+     * @throws IOException when the image cannot be written or read
+     */
+    @Test
+    public void testLeastRecentlyUsedEviction() throws IOException {
+        Path a = writeImage(10, 10, 0xFF00FF00);
+        Path b = writeImage(10, 10, 0xFF0000FF);
+        Path c = writeImage(10, 10, 0xFFFFFFFF);
+        try {
+            ImageCache cache = new ImageCache(2 * 4 * 10 * 10);
+            cache.get(a.toString());
+            cache.get(b.toString());
+            cache.get(a.toString());
+            cache.get(c.toString());
+            assertEquals(3, cache.getDecodes());
+            assertTrue(cache.getBytes() <= 2 * 4 * 10 * 10);
+            cache.get(a.toString());
+            assertEquals(3, cache.getDecodes());
+            cache.get(b.toString());
+            assertEquals(4, cache.getDecodes());
+            cache.setMaxBytes(4 * 10 * 10);
+            assertEquals(4 * 10 * 10, cache.getBytes());
+            assertSame(cache.get(b.toString()), cache.get(b.toString()));
+            assertEquals(4, cache.getDecodes());
+        } finally {
+            Files.delete(a);
+            Files.delete(b);
+            Files.delete(c);
+        }
+    }
+
+    /**
+     * Test hypothesis: a prefetched image might be decoded a second time when it is
+     * requested, and errors might be cached so that a repaired file stays unreadable.
+     * @throws Exception when the image cannot be written or read
+     */
+    @Test
+    public void testPrefetchAndErrors() throws Exception {
+        Path file = writeImage(8, 8, 0xFF123456);
+        try {
+            ImageCache cache = new ImageCache(ImageCache.DEFAULT_MAX_BYTES);
+            cache.prefetch(file.toString());
+            long deadline = System.currentTimeMillis() + 5000;
+            while (cache.getDecodes() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(0xFF123456, cache.get(file.toString()).getRGB(4, 4));
+            assertEquals(1, cache.getDecodes());
+            Path broken = Files.createTempFile("fcanvas", ".png");
+            try {
+                try {
+                    cache.get(broken.toString());
+                    fail("empty file decoded");
+                } catch (IOException e) {
+                    // expected
+                }
+                Files.copy(file, broken, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+                assertEquals(0xFF123456, cache.get(broken.toString()).getRGB(0, 0));
+            } finally {
+                Files.delete(broken);
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package de.thm.mni.oop.fcanvas;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class MouseTrailTest {
+
+    /**
+     * Test hypothesis: samples might be returned in the wrong order, lost when the
+     * arrays are too small to take all of them at once, or the oldest samples might
+     * not be the ones that are dropped when the buffer is full.
+     */
+    @Test
+    public void testDrainAndOverflow() {
+        MouseTrail trail = new MouseTrail(4);
+        for (int i = 1; i <= 6; i++) {
+            trail.add(i, 10 * i, 100 * i);
+        }
+        assertEquals(2, trail.getDropped());
+        int[] xs = new int[3];
+        int[] ys = new int[3];
+        long[] ts = new long[3];
+        assertEquals(3, trail.drain(xs, ys, ts));
+        assertArrayEquals(new int[]{3, 4, 5}, xs);
+        assertArrayEquals(new int[]{30, 40, 50}, ys);
+        assertArrayEquals(new long[]{300, 400, 500}, ts);
+        assertEquals(1, trail.drain(xs, ys, null));
+        assertEquals(6, xs[0]);
+        assertEquals(0, trail.drain(xs, ys, ts));
+    }
+
+    /**
+     * Test hypothesis: coalescing might drop the newest position of the mouse, keep
+     * samples that are too close to the previous one, or replace a sample that has
+     * already been read.
+     */
+    @Test
+    public void testCoalescing() {
+        MouseTrail trail = new MouseTrail(16);
+        trail.setCoalescing(5, 0);
+        trail.add(0, 0, 0);
+        trail.add(1, 1, 1);
+        trail.add(2, 2, 2);
+        trail.add(10, 0, 3);
+        trail.add(11, 0, 4);
+        int[] xs = new int[16];
+        int[] ys = new int[16];
+        assertEquals(3, trail.drain(xs, ys, null));
+        assertArrayEquals(new int[]{0, 10, 11}, new int[]{xs[0], xs[1], xs[2]});
+        // the read sample stays, the next close one is added after it
+        trail.add(12, 0, 5);
+        assertEquals(1, trail.drain(xs, ys, null));
+        assertEquals(12, xs[0]);
+        trail.setCoalescing(0, 100);
+        trail.add(20, 0, 200);
+        trail.add(30, 0, 250);
+        trail.add(40, 0, 320);
+        long[] ts = new long[16];
+        assertEquals(2, trail.drain(xs, ys, ts));
+        assertArrayEquals(new long[]{200, 320}, new long[]{ts[0], ts[1]});
+    }
+}
@@ -0,0 +1,39 @@
+package de.thm.mni.oop.fcanvas;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+public class PerformanceHudTest {
+
+    /**
+     * Test hypothesis: the numbers might be formatted incorrectly without the
+     * formatting methods of the Java API, e.g. with missing or reversed digits,
+     * or the overlay might not be painted at all.
+     */
+    @Test
+    public void testValues() {
+        FCanvasMetrics metrics = new FCanvasMetrics();
+        for (int i = 0; i < 100; i++) {
+            metrics.framePainted(1_500_000, 12345, 10305, 2040, 7);
+        }
+        metrics.commandPosted();
+        PerformanceHud hud = new PerformanceHud(metrics);
+        BufferedImage img = new BufferedImage(400, 100, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = img.createGraphics();
+        g2.setColor(java.awt.Color.WHITE);
+        g2.fillRect(0, 0, 400, 100);
+        hud.paint(g2, null);
+        g2.dispose();
+        assertEquals("fps   0.0", hud.getLine(0));
+        // the histogram has buckets of powers of two
+        assertEquals("paint p50 2.0 p95 2.0 p99 2.0 ms", hud.getLine(1));
+        assertEquals("drawn 10305 culled 2040 lod 7", hud.getLine(2));
+        assertEquals("queue 1 stale 0", hud.getLine(3));
+        assertTrue(hud.getLine(4).startsWith("heap  "));
+        // the background of the overlay darkens the corner
+        assertTrue((img.getRGB(1, 1) & 0xFF) < 0xFF);
+        assertEquals(0xFFFFFFFF, img.getRGB(399, 99));
+    }
+}
@@ -0,0 +1,79 @@
+package de.thm.mni.oop.fcanvas;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * <p>Measures the throughput of {@link FCanvasPanel} mutators with an increasing
+ * number of producer threads.</p>
+ *
+ * <p>Each producer adds its own components and then moves and recolors them in a loop.
+ * The time is measured until all commands have been applied on the event dispatch thread.
+ * The panel is never shown, so the benchmark also runs in headless mode:</p>
+ *
+ * <pre>
+ * java -Djava.awt.headless=true de.thm.mni.oop.fcanvas.ProducerBenchmark [commands per producer] [max producers]
+ * </pre>
+ *
+ * @author Christopher Schölzel
+ */
+public class ProducerBenchmark {
+    private static final int COMPONENTS_PER_PRODUCER = 100;
+
+    public static void main(String[] args) throws InterruptedException {
+        int commands = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int maxProducers = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        // warm-up
+        run(2, commands / 10);
+        System.out.printf("%10s %15s %15s %15s%n", "producers", "issued/s", "applied/s", "ms");
+        for (int producers = 1; producers <= maxProducers; producers *= 2) {
+            run(producers, commands);
+        }
+        System.exit(0);
+    }
+
+    private static void run(final int producers, final int commands) throws InterruptedException {
+        final FCanvasPanel panel = new FCanvasPanel();
+        panel.setSize(800, 600);
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch issued = new CountDownLatch(producers);
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            final int offset = p;
+            threads[p] = new Thread(() -> {
+                long[] ids = new long[COMPONENTS_PER_PRODUCER];
+                for (int i = 0; i < ids.length; i++) {
+                    ids[i] = panel.addRectangle(offset, i, 10, 10);
+                }
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < commands; i += 2) {
+                    long id = ids[i % ids.length];
+                    panel.moveComponent(id, i % 800, offset);
+                    panel.setFillColor(id, i & 0xFF, offset & 0xFF, 0, 255);
+                }
+                issued.countDown();
+                try {
+                    panel.flush(60_000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            threads[p].start();
+        }
+        panel.flush(60_000);
+        long t0 = System.nanoTime();
+        start.countDown();
+        issued.await();
+        long t1 = System.nanoTime();
+        for (Thread t : threads) {
+            t.join();
+        }
+        long t2 = System.nanoTime();
+        long total = (long) producers * commands;
+        System.out.printf("%10d %15.0f %15.0f %15.1f%n", producers,
+                total * 1e9 / (t1 - t0), total * 1e9 / (t2 - t0), (t2 - t0) / 1e6);
+    }
+}
@@ -0,0 +1,84 @@
+package de.thm.mni.oop.fcanvas;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class QualityGovernorTest {
+
+    private static final long BUDGET = 16_000_000L;
+
+    /**
+     * Test hypothesis: the governor might lower the quality after a single slow frame,
+     * skip levels or fall below the lowest level when frames stay slow.
+     */
+    @Test
+    public void testStepsDownUnderPressure() {
+        QualityGovernor governor = new QualityGovernor();
+        governor.setEnabled(true);
+        assertEquals(FCanvasPanel.QUALITY_FULL, governor.getLevel());
+        for (int i = 1; i < QualityGovernor.DOWN_FRAMES; i++) {
+            assertFalse(governor.framePainted(2 * BUDGET, BUDGET));
+        }
+        assertTrue(governor.framePainted(2 * BUDGET, BUDGET));
+        assertEquals(FCanvasPanel.QUALITY_STATIC_ANTIALIASING, governor.getLevel());
+        for (int i = 0; i < 100; i++) {
+            governor.framePainted(2 * BUDGET, BUDGET);
+        }
+        assertEquals(FCanvasPanel.QUALITY_LOW, governor.getLevel());
+    }
+
+    /**
+     * Test hypothesis: paint times that alternate around the budget might make the
+     * level flap between two levels, and headroom might raise the quality too early.
+     */
+    @Test
+    public void testHysteresis() {
+        QualityGovernor governor = new QualityGovernor();
+        governor.setEnabled(true);
+        for (int i = 0; i < QualityGovernor.DOWN_FRAMES; i++) {
+            governor.framePainted(2 * BUDGET, BUDGET);
+        }
+        int level = governor.getLevel();
+        // between headroom and pressure: nothing changes
+        for (int i = 0; i < 1000; i++) {
+            assertFalse(governor.framePainted(BUDGET * 7 / 10, BUDGET));
+        }
+        assertEquals(level, governor.getLevel());
+        // single fast and slow frames are smoothed by the average
+        for (int i = 0; i < 1000; i++) {
+            governor.framePainted(i % 2 == 0 ? BUDGET : BUDGET / 2, BUDGET);
+        }
+        assertEquals(level, governor.getLevel());
+        // a level change restarts the average, so from then on every fast frame has headroom
+        for (int i = 1; i < QualityGovernor.DOWN_FRAMES; i++) {
+            assertFalse(governor.framePainted(2 * BUDGET, BUDGET));
+        }
+        assertTrue(governor.framePainted(2 * BUDGET, BUDGET));
+        assertEquals(level - 1, governor.getLevel());
+        for (int i = 1; i < QualityGovernor.UP_FRAMES; i++) {
+            assertFalse(governor.framePainted(BUDGET / 10, BUDGET));
+        }
+        assertTrue(governor.framePainted(BUDGET / 10, BUDGET));
+        assertEquals(level, governor.getLevel());
+    }
+
+    /**
+     * Test hypothesis: disabling the governor might keep a lowered quality, and a
+     * disabled governor might still react to slow frames.
+     */
+    @Test
+    public void testDisableRestoresFullQuality() {
+        QualityGovernor governor = new QualityGovernor();
+        governor.setEnabled(true);
+        for (int i = 0; i < 100; i++) {
+            governor.framePainted(2 * BUDGET, BUDGET);
+        }
+        assertEquals(FCanvasPanel.QUALITY_LOW, governor.getLevel());
+        governor.setEnabled(false);
+        assertEquals(FCanvasPanel.QUALITY_FULL, governor.getLevel());
+        for (int i = 0; i < 100; i++) {
+            assertFalse(governor.framePainted(2 * BUDGET, BUDGET));
+        }
+        assertEquals(FCanvasPanel.QUALITY_FULL, governor.getLevel());
+    }
+}
@@ -0,0 +1,103 @@
+package de.thm.mni.oop.fcanvas;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+public class SharedFramebufferTest {
+
+    /**
+     * Test hypothesis: the header might not follow the documented layout, so that
+     * writers in other languages could not produce frames, or frames might be read
+     * from the wrong one of the two buffers.
+     * @throws IOException when the file cannot be created or read
+     */
+    @Test
+    public void testFileLayout() throws IOException {
+        Path file = Files.createTempFile("fcanvas", ".fb");
+        try (SharedFramebuffer writer = SharedFramebuffer.create(file, 3, 2);
+                SharedFramebuffer reader = SharedFramebuffer.open(file)) {
+            int[] frame = new int[6];
+            assertEquals(0, reader.readFrame(frame));
+            writer.writeFrame(new int[]{1, 2, 3, 4, 5, 6});
+            writer.writeFrame(new int[]{7, 8, 9, 10, 11, 12});
+            assertEquals(2, reader.readFrame(frame));
+            assertArrayEquals(new int[]{7, 8, 9, 10, 11, 12}, frame);
+            ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+            assertEquals(SharedFramebuffer.HEADER_SIZE + 2 * 6 * 4, bytes.capacity());
+            assertEquals('F', bytes.get(0));
+            assertEquals('B', bytes.get(3));
+            assertEquals(3, bytes.getInt(8));
+            assertEquals(2, bytes.getInt(12));
+            assertEquals(2, bytes.getLong(16));
+            assertEquals(2, bytes.getLong(24));
+            // frame 1 in buffer 1, frame 2 in buffer 0
+            assertEquals(7, bytes.getInt(SharedFramebuffer.HEADER_SIZE));
+            assertEquals(1, bytes.getInt(SharedFramebuffer.HEADER_SIZE + 6 * 4));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Test hypothesis: a frame that the writer overwrites while it is copied might be
+     * returned torn, with pixels of two different frames.
+     * @throws IOException when the file cannot be created or read
+     * @throws InterruptedException when test is interrupted
+     */
+    @Test
+    public void testNoTornFrames() throws IOException, InterruptedException {
+        Path file = Files.createTempFile("fcanvas", ".fb");
+        try (final SharedFramebuffer writer = SharedFramebuffer.create(file, 200, 100);
+                SharedFramebuffer reader = SharedFramebuffer.open(file)) {
+            Thread producer = new Thread(() -> {
+                for (int n = 1; n <= 2000; n++) {
+                    IntBuffer buffer = writer.beginFrame();
+                    for (int i = 0; i < 200 * 100; i++) {
+                        buffer.put(i, n);
+                    }
+                    writer.endFrame();
+                }
+            });
+            producer.start();
+            int[] frame = new int[200 * 100];
+            while (producer.isAlive()) {
+                long n = reader.readFrame(frame);
+                if (n == 0) continue;
+                int[] expected = new int[frame.length];
+                Arrays.fill(expected, (int) n);
+                assertArrayEquals(expected, frame);
+            }
+            producer.join();
+            assertEquals(2000, reader.readFrame(frame));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Test hypothesis: files that are not framebuffers might be mapped and shown as garbage.
+     * @throws IOException when the file cannot be created
+     */
+    @Test
+    public void testRejectsOtherFiles() throws IOException {
+        Path file = Files.createTempFile("fcanvas", ".fb");
+        try {
+            Files.write(file, new byte[100]);
+            try {
+                SharedFramebuffer.open(file).close();
+                fail("IOException expected");
+            } catch (IOException e) {
+                // expected
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package de.thm.mni.oop.fcanvas;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>Measures the time from starting a JVM until the first frame of a small program
+ * has been drawn, with and without the background warm-up of {@link FCanvas}.</p>
+ *
+ * <p>Each run starts a new JVM with the same class path. Like a typical program, it first
+ * loads {@link FCanvas}, then spends some time on its own setup code, draws some shapes and
+ * texts, shows the canvas and waits for the first frame. In headless mode, the first frame is
+ * drawn into an image instead. The median of all runs is reported:</p>
+ *
+ * <pre>
+ * java de.thm.mni.oop.fcanvas.StartupBenchmark [runs] [setup ms]
+ * java -Djava.awt.headless=true de.thm.mni.oop.fcanvas.StartupBenchmark [runs] [setup ms]
+ * </pre>
+ *
+ * @author Christopher Schölzel
+ */
+public class StartupBenchmark {
+    private static final String CHILD = "--child";
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length > 0 && args[0].equals(CHILD)) {
+            child(Long.parseLong(args[1]));
+            return;
+        }
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        long setup = args.length > 1 ? Long.parseLong(args[1]) : 200;
+        System.out.printf("%10s %15s %15s %15s%n", "warm-up", "median ms", "min ms", "max ms");
+        for (String warmup : new String[]{"false", "true"}) {
+            long[] times = new long[runs];
+            for (int i = 0; i < runs; i++) {
+                times[i] = launch(warmup, setup);
+            }
+            Arrays.sort(times);
+            System.out.printf("%10s %15d %15d %15d%n", warmup, times[runs / 2], times[0], times[runs - 1]);
+        }
+    }
+
+    /**
+     * Starts a child JVM and returns the time until it has drawn its first frame.
+     */
+    private static long launch(String warmup, long setup) throws IOException, InterruptedException {
+        List<String> cmd = new ArrayList<String>();
+        cmd.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        cmd.add("-Dfcanvas.warmup=" + warmup);
+        cmd.add("-Djava.awt.headless=" + System.getProperty("java.awt.headless", "false"));
+        cmd.add("-cp");
+        cmd.add(System.getProperty("java.class.path"));
+        cmd.add(StartupBenchmark.class.getName());
+        cmd.add(CHILD);
+        cmd.add(Long.toString(setup));
+        long start = System.currentTimeMillis();
+        Process p = new ProcessBuilder(cmd).redirectErrorStream(true).start();
+        String line;
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(p.getInputStream()))) {
+            line = in.readLine();
+        }
+        if (p.waitFor() != 0 || line == null) throw new IllegalStateException("Child failed: " + line);
+        return Long.parseLong(line.trim()) - start;
+    }
+
+    /**
+     * Draws a small scene as a typical program would and prints the time of its first frame.
+     */
+    private static void child(long setup) throws InterruptedException {
+        // loads FCanvas without creating the window
+        FCanvas.getLastMouseX();
+        double[] ys = setup(setup);
+        if (Boolean.getBoolean("java.awt.headless")) {
+            // the window cannot be created, so the panel is drawn directly
+            FCanvasPanel panel = new FCanvasPanel();
+            panel.setSize(800, 600);
+            scene(panel, ys);
+            panel.flush(60_000);
+            panel.toImage();
+        } else {
+            scene(FCanvas.gui().getPanel(), ys);
+            FCanvas.show();
+            FCanvas.awaitFrame(60_000);
+        }
+        System.out.println(System.currentTimeMillis());
+        System.exit(0);
+    }
+
+    /**
+     * Stands for the computations of a program before it draws anything.
+     */
+    private static double[] setup(long millis) {
+        double[] ys = new double[20];
+        long end = System.nanoTime() + millis * 1_000_000L;
+        for (long n = 0; System.nanoTime() < end; n++) {
+            ys[(int) (n % ys.length)] += Math.sin(n) / 1000;
+        }
+        return ys;
+    }
+
+    private static void scene(FCanvasPanel panel, double[] ys) {
+        for (int i = 0; i < ys.length; i++) {
+            panel.addRectangle(10 + 30 * i, 10 + (int) ys[i], 20, 20);
+            panel.addOval(10 + 30 * i, 50, 20, 20);
+            panel.addText("Label " + i, 10 + 30 * i, 100 + 15 * i);
+        }
+    }
+}
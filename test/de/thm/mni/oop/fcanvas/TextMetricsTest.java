@@ -0,0 +1,35 @@
+package de.thm.mni.oop.fcanvas;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+import java.awt.geom.Rectangle2D;
+import de.thm.mni.oop.fcanvas.components.Text;
+
+public class TextMetricsTest {
+
+    /**
+     * Test hypothesis: summing cached advances might not give the same width as the
+     * layout of the string that determines the bounds of a text component, e.g. due to
+     * rounding, and strings with other characters might be measured incorrectly.
+     */
+    @Test
+    public void testSameAsTextBounds() {
+        String[] texts = {"", "Hello, World!", "Game Over", "iiiiWWWW 0123456789", "äöüß©",
+                "αβγ € 42", "tab\tand\nnewline"};
+        int[] sizes = {Text.DEFAULT_FONT_SIZE, 7, 20, 41};
+        TextMetrics metrics = TextMetrics.shared();
+        for (String s : texts) {
+            for (int size : sizes) {
+                Text t = new Text(s, 10, 50);
+                if (size != Text.DEFAULT_FONT_SIZE) t.setFontSize(size);
+                // changing the size twice derives the font from a font that has already been derived
+                if (size == 41) t.setFontSize(size);
+                Rectangle2D b = t.getShape().getBounds2D();
+                assertEquals(s + " " + size, b.getWidth(), metrics.width(s, size), 0);
+                assertEquals(s + " " + size, b.getHeight(), metrics.height(s, size), 0);
+                // a second measurement uses the cache
+                assertEquals(b.getWidth(), metrics.width(s, size), 0);
+            }
+        }
+    }
+}
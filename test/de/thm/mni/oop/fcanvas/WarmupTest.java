@@ -0,0 +1,22 @@
+package de.thm.mni.oop.fcanvas;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+import de.thm.mni.oop.fcanvas.components.Text;
+
+public class WarmupTest {
+
+    /**
+     * Test hypothesis: loading {@link FCanvas} might still create the window, which fails
+     * in headless mode, or the warm-up might fail or never finish, e.g. because it needs
+     * a screen.
+     * @throws InterruptedException when test is interrupted
+     */
+    @Test
+    public void testLazyStartup() throws InterruptedException {
+        // does not need the window
+        double width = FCanvas.measureText("Hello", Text.DEFAULT_FONT_SIZE);
+        assertEquals(new Text("Hello", 0, 0).getShape().getBounds2D().getWidth(), width, 0);
+        assertTrue(Warmup.await(30_000));
+    }
+}
@@ -0,0 +1,93 @@
+package de.thm.mni.oop.fcanvas;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+import java.util.Random;
+import java.util.TreeMap;
+
+public class ZOrderTreeTest {
+
+    /**
+     * Test hypothesis: insertion and removal might break the in-order sequence of keys
+     * or lose nodes when the tree is restructured.
+     */
+    @Test
+    public void testInOrderAfterRandomOperations() {
+        ZOrderTree tree = new ZOrderTree();
+        tree.ensureCapacity(500);
+        TreeMap<Long, Integer> expected = new TreeMap<>();
+        Random rand = new Random(42);
+        int root = ZOrderTree.NIL;
+        for (int i = 0; i < 20000; i++) {
+            int node = rand.nextInt(500);
+            if (expected.containsValue(node)) {
+                root = tree.remove(root, node);
+                expected.values().remove(node);
+            } else {
+                long key = rand.nextLong();
+                root = tree.insert(root, node, key);
+                expected.put(key, node);
+            }
+        }
+        int node = tree.first(root);
+        for (int expectedNode : expected.values()) {
+            assertEquals(expectedNode, node);
+            node = tree.next(node);
+        }
+        assertEquals(ZOrderTree.NIL, node);
+        assertEquals((int) expected.lastEntry().getValue(), tree.last(root));
+    }
+
+    /**
+     * Test hypothesis: building a tree from sorted keys might not produce a valid tree
+     * that supports later insertions and removals.
+     */
+    @Test
+    public void testBuild() {
+        ZOrderTree tree = new ZOrderTree();
+        tree.ensureCapacity(1000);
+        int[] nodes = new int[1000];
+        long[] keys = new long[1000];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = nodes.length - 1 - i;
+            keys[i] = 2 * i;
+        }
+        int root = tree.build(nodes, keys, 0, nodes.length);
+        root = tree.remove(root, 500);
+        root = tree.insert(root, 500, -1);
+        int node = tree.first(root);
+        assertEquals(500, node);
+        node = tree.next(node);
+        for (int i = 0; i < nodes.length; i++) {
+            if (nodes[i] == 500) continue;
+            assertEquals(nodes[i], node);
+            node = tree.next(node);
+        }
+        assertEquals(ZOrderTree.NIL, node);
+    }
+
+    /**
+     * Test hypothesis: {@link Layer#bringToFront(int)} and {@link Layer#sendToBack(int)}
+     * might not respect components with higher or lower z-index.
+     */
+    @Test
+    public void testLayerOrder() {
+        ZOrderTree tree = new ZOrderTree();
+        tree.ensureCapacity(4);
+        Layer layer = new Layer(tree, 0);
+        layer.add(0, 0);
+        layer.add(1, 2);
+        layer.add(2, -1);
+        layer.add(3, 0);
+        layer.bringToFront(0);
+        layer.sendToBack(1);
+        int[] order = new int[4];
+        int i = 0;
+        for (int slot = layer.first(); slot != ZOrderTree.NIL; slot = layer.next(slot)) {
+            order[i++] = slot;
+        }
+        assertArrayEquals(new int[]{1, 2, 3, 0}, order);
+        assertEquals(2, layer.getZIndex(0));
+        assertEquals(-1, layer.getZIndex(1));
+    }
+}